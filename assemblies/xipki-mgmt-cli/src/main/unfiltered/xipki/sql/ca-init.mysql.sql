@@ -199,6 +199,8 @@ ALTER TABLE CERT ADD CONSTRAINT CONST_CA_SN UNIQUE (CA_ID, SN);
 
 CREATE INDEX IDX_CA_FPS ON CERT(CA_ID, FP_S, FP_SAN);
 
+CREATE INDEX IDX_CA_LUPDATE ON CERT(CA_ID, LUPDATE);
+
 CREATE TABLE PUBLISHQUEUE (
     CID BIGINT NOT NULL,
     PID SMALLINT NOT NULL,
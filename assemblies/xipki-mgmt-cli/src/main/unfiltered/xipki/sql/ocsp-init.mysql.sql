@@ -62,6 +62,8 @@ COMMENT='certificate information';
 
 ALTER TABLE CERT ADD CONSTRAINT CONST_ISSUER_SN UNIQUE (IID, SN);
 
+CREATE INDEX IDX_ISSUER_LUPDATE ON CERT(IID, LUPDATE);
+
 -- changeset xipki:2
 ALTER TABLE CERT ADD CONSTRAINT FK_CERT_ISSUER1
     FOREIGN KEY (IID) REFERENCES ISSUER (ID)
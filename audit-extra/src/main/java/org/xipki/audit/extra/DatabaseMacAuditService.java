@@ -34,6 +34,7 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.sql.*;
 import java.time.Instant;
+import java.util.List;
 
 /**
  * Database-based MAC protected audit service.
@@ -84,21 +85,10 @@ public class DatabaseMacAuditService extends MacAuditService {
   protected void storeLog(
           Instant date, long thisId, int eventType, String levelText,
           long previousId, String message, String thisTag) {
-    String logMessage = message.length() <= maxMessageLength
-        ? message : message.substring(0, maxMessageLength - 4) + " ...";
-
     try {
       PreparedStatement ps = datasource.prepareStatement(SQL_ADD_AUDIT);
       try {
-        int idx = 1;
-        ps.setInt   (idx++, shardId);
-        ps.setLong  (idx++, thisId);
-        ps.setString(idx++, formatDate(date));
-        ps.setString(idx++, levelText);
-        ps.setInt   (idx++, eventType);
-        ps.setLong  (idx++, previousId);
-        ps.setString(idx++, logMessage);
-        ps.setString(idx, thisTag);
+        setLogParams(ps, date, thisId, eventType, levelText, previousId, message, thisTag);
         ps.executeUpdate();
       } catch (SQLException ex) {
         throw datasource.translate(SQL_ADD_AUDIT, ex);
@@ -110,6 +100,44 @@ public class DatabaseMacAuditService extends MacAuditService {
     }
   }
 
+  @Override
+  protected void storeLogs(List<LogEntry> entries) {
+    // one JDBC batch for the whole group
+    try {
+      PreparedStatement ps = datasource.prepareStatement(SQL_ADD_AUDIT);
+      try {
+        for (LogEntry m : entries) {
+          setLogParams(ps, m.getDate(), m.getThisId(), m.getEventType(), m.getLevelText(),
+              m.getPreviousId(), m.getMessage(), m.getThisTag());
+          ps.addBatch();
+        }
+        ps.executeBatch();
+      } catch (SQLException ex) {
+        throw datasource.translate(SQL_ADD_AUDIT, ex);
+      } finally {
+        datasource.releaseResources(ps, null);
+      }
+    } catch (Exception ex) {
+      LogUtil.error(LOG, ex, "error storing " + entries.size() + " audit entries");
+    }
+  }
+
+  private void setLogParams(PreparedStatement ps, Instant date, long thisId, int eventType,
+      String levelText, long previousId, String message, String thisTag) throws SQLException {
+    String logMessage = message.length() <= maxMessageLength
+        ? message : message.substring(0, maxMessageLength - 4) + " ...";
+
+    int idx = 1;
+    ps.setInt   (idx++, shardId);
+    ps.setLong  (idx++, thisId);
+    ps.setString(idx++, formatDate(date));
+    ps.setString(idx++, levelText);
+    ps.setInt   (idx++, eventType);
+    ps.setLong  (idx++, previousId);
+    ps.setString(idx++, logMessage);
+    ps.setString(idx, thisTag);
+  }
+
   @Override
   protected void doExtraInit(ConfPairs confPairs, PasswordResolver passwordResolver)
           throws PasswordResolverException {
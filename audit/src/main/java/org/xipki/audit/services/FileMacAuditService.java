@@ -29,6 +29,7 @@ import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.time.Instant;
 import java.util.Calendar;
+import java.util.List;
 import java.util.StringTokenizer;
 import java.util.TimeZone;
 
@@ -55,6 +56,9 @@ public class FileMacAuditService extends MacAuditService {
 
   private OutputStreamWriter writer;
 
+  // stream of the writer, used to sync the file to the disk
+  private FileOutputStream writerStream;
+
   private Path integrityFilePath;
 
   public FileMacAuditService() {
@@ -87,6 +91,22 @@ public class FileMacAuditService extends MacAuditService {
     }
   }
 
+  @Override
+  protected void storeLogs(List<LogEntry> entries) {
+    for (LogEntry m : entries) {
+      storeLog(m.getDate(), m.getThisId(), m.getEventType(), m.getLevelText(), m.getPreviousId(),
+          m.getMessage(), m.getThisTag());
+    }
+
+    // one flush and sync for the whole group
+    try {
+      writer.flush();
+      writerStream.getFD().sync();
+    } catch (IOException ex) {
+      LogUtil.error(LOG, ex, "error syncing audit file");
+    }
+  }
+
   @Override
   protected void storeIntegrity(String integrityText) {
     if (integrityText != null) {
@@ -198,13 +218,14 @@ public class FileMacAuditService extends MacAuditService {
 
   private OutputStreamWriter buildWriter(int yyyyMMdd) {
     File currentLogFile = new File(logDir, buildFilename(yyyyMMdd));
-    OutputStream fw;
+    FileOutputStream fw;
     try {
       fw = new FileOutputStream(currentLogFile, true);
     } catch (IOException ex) {
       throw new IllegalStateException("error opening file " + currentLogFile.getPath());
     }
 
+    writerStream = fw;
     return new OutputStreamWriter(fw);
   }
 
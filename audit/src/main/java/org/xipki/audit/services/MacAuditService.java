@@ -44,8 +44,14 @@ import java.security.spec.KeySpec;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * The Mac protected audit service.
@@ -56,6 +62,145 @@ import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class MacAuditService implements AuditService {
 
+  /**
+   * Stored audit entry.
+   */
+  protected static class LogEntry {
+
+    private final Instant date;
+
+    private final long thisId;
+
+    private final int eventType;
+
+    private final String levelText;
+
+    private final long previousId;
+
+    private final String message;
+
+    private final String thisTag;
+
+    LogEntry(Instant date, long thisId, int eventType, String levelText, long previousId,
+             String message, String thisTag) {
+      this.date = date;
+      this.thisId = thisId;
+      this.eventType = eventType;
+      this.levelText = levelText;
+      this.previousId = previousId;
+      this.message = message;
+      this.thisTag = thisTag;
+    }
+
+    public Instant getDate() {
+      return date;
+    }
+
+    public long getThisId() {
+      return thisId;
+    }
+
+    public int getEventType() {
+      return eventType;
+    }
+
+    public String getLevelText() {
+      return levelText;
+    }
+
+    public long getPreviousId() {
+      return previousId;
+    }
+
+    public String getMessage() {
+      return message;
+    }
+
+    public String getThisTag() {
+      return thisTag;
+    }
+
+  } // class LogEntry
+
+  private static class QueuedEvent {
+
+    private final Instant date;
+
+    private final int eventType;
+
+    private final AuditLevel level;
+
+    private final String message;
+
+    QueuedEvent(Instant date, int eventType, AuditLevel level, String message) {
+      this.date = date;
+      this.eventType = eventType;
+      this.level = level;
+      this.message = message;
+    }
+
+  } // class QueuedEvent
+
+  /**
+   * Single writer of the asynchronous mode. It assigns the ids, computes the MAC chain and
+   * stores the events in groups. If the queue is empty, it parks until a producer wakes it up.
+   */
+  private class AsyncWriter implements Runnable {
+
+    @Override
+    public void run() {
+      List<QueuedEvent> group = new ArrayList<>(asyncMaxBatch);
+      long groupStart = 0;
+
+      while (true) {
+        boolean stopping = asyncStopped.get();
+
+        if (queue.drainTo(group, asyncMaxBatch - group.size()) > 0 && groupStart == 0) {
+          groupStart = System.nanoTime();
+        }
+
+        if (group.isEmpty()) {
+          if (!stopping) {
+            awaitEvents();
+          } else if (activeProducers.get() == 0 && queue.isEmpty()) {
+            // no producer is offering an event any more, all events have been stored
+            return;
+          } else {
+            Thread.yield();
+          }
+          continue;
+        }
+
+        // wait for more events until the group is full or the max. latency is reached
+        if (!stopping && group.size() < asyncMaxBatch) {
+          long remainingNanos = asyncMaxLatencyNanos - (System.nanoTime() - groupStart);
+          if (remainingNanos > 0) {
+            LockSupport.parkNanos(this, remainingNanos);
+            continue;
+          }
+        }
+
+        try {
+          writeGroup(group);
+        } catch (Throwable th) {
+          LOG.error("error writing " + group.size() + " audit events", th);
+        }
+        group.clear();
+        groupStart = 0;
+      }
+    } // method run
+
+    private void awaitEvents() {
+      writerWaiting.set(true);
+      // check again after announcing the wait, so that no wake-up of a producer is lost
+      if (queue.isEmpty() && !asyncStopped.get()) {
+        LockSupport.park(this);
+      }
+      writerWaiting.set(false);
+    } // method awaitEvents
+
+  } // class AsyncWriter
+
   public static final String KEY_SHARD_ID = "shard-id";
 
   public static final String KEY_ALGO = "algo";
@@ -70,6 +215,16 @@ public abstract class MacAuditService implements AuditService {
 
   public static final String KEY_ENC_INTERVAL = "enc-interval";
 
+  public static final String KEY_ASYNC = "async";
+
+  public static final String KEY_ASYNC_QUEUE_SIZE = "async-queue-size";
+
+  public static final String KEY_ASYNC_MAX_BATCH = "async-max-batch";
+
+  public static final String KEY_ASYNC_MAX_LATENCY = "async-max-latency";
+
+  private static final long ASYNC_FULL_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
   private static final int ALGO_ID_HMAC_SHA256 = 1;
 
   private static final String VERSION_V1 = "v1";
@@ -110,6 +265,22 @@ public abstract class MacAuditService implements AuditService {
 
   private int encInterval;
 
+  private MpscRingBuffer<QueuedEvent> queue;
+
+  private int asyncMaxBatch;
+
+  private long asyncMaxLatencyNanos;
+
+  private volatile Thread asyncWriter;
+
+  private final AtomicBoolean asyncStopped = new AtomicBoolean(false);
+
+  // whether the writer is parked because the queue is empty
+  private final AtomicBoolean writerWaiting = new AtomicBoolean(false);
+
+  // number of threads in the asynchronous log method
+  private final AtomicInteger activeProducers = new AtomicInteger();
+
   public MacAuditService() {
   }
 
@@ -127,6 +298,17 @@ public abstract class MacAuditService implements AuditService {
           Instant date, long thisId, int eventType, String levelText,
           long previousId, String message, String thisTag);
 
+  /**
+   * Stores a group of audit entries. Used in the asynchronous mode. The default implementation
+   * stores the entries one by one, overwrite it to store them at once.
+   * @param entries the audit entries in the order of their ids.
+   */
+  protected void storeLogs(List<LogEntry> entries) {
+    for (LogEntry m : entries) {
+      storeLog(m.date, m.thisId, m.eventType, m.levelText, m.previousId, m.message, m.thisTag);
+    }
+  }
+
   protected abstract void storeIntegrity(String integrityText);
 
   protected abstract void doClose() throws Exception;
@@ -276,6 +458,30 @@ public abstract class MacAuditService implements AuditService {
 
     this.rnd = new SecureRandom();
     doExtraInit(new ConfPairs(conf), passwordResolver);
+
+    if (Boolean.parseBoolean(confPairs.value(KEY_ASYNC))) {
+      str = confPairs.value(KEY_ASYNC_QUEUE_SIZE);
+      int queueSize = (str == null) ? 16384 : Integer.parseInt(str);
+
+      str = confPairs.value(KEY_ASYNC_MAX_BATCH);
+      asyncMaxBatch = (str == null) ? 1000 : Integer.parseInt(str);
+
+      // in milliseconds
+      str = confPairs.value(KEY_ASYNC_MAX_LATENCY);
+      asyncMaxLatencyNanos = TimeUnit.MILLISECONDS.toNanos((str == null) ? 50 : Integer.parseInt(str));
+
+      if (queueSize < 1 || asyncMaxBatch < 1 || asyncMaxLatencyNanos < 0) {
+        throw new IllegalArgumentException("invalid " + KEY_ASYNC_QUEUE_SIZE + ", " + KEY_ASYNC_MAX_BATCH
+            + " or " + KEY_ASYNC_MAX_LATENCY);
+      }
+
+      queue = new MpscRingBuffer<>(queueSize);
+      asyncWriter = new Thread(new AsyncWriter(), "audit-writer");
+      asyncWriter.setDaemon(true);
+      asyncWriter.start();
+      LOG.info("started asynchronous audit writer, queue size {}, max. batch {}, max. latency {} ms",
+          queueSize, asyncMaxBatch, TimeUnit.NANOSECONDS.toMillis(asyncMaxLatencyNanos));
+    }
   }
 
   @Override
@@ -288,8 +494,73 @@ public abstract class MacAuditService implements AuditService {
     log(AuditService.PCI_AUDIT_EVENT, event.getLevel(), event.toTextMessage());
   }
 
-  private synchronized void log(int eventType, AuditLevel level, String message) {
-    Instant date = Instant.now();
+  private void log(int eventType, AuditLevel level, String message) {
+    if (queue == null) {
+      logSync(eventType, level, message);
+      return;
+    }
+
+    activeProducers.incrementAndGet();
+    try {
+      if (asyncStopped.get()) {
+        LOG.warn("audit service closed, audit event is not logged: {}", message);
+        return;
+      }
+
+      QueuedEvent event = new QueuedEvent(Instant.now(), eventType, level, message);
+      // the queue is full: wait for the writer instead of losing the event. The writer does not
+      // terminate as long as this thread is active.
+      while (!queue.offer(event)) {
+        wakeUpWriter();
+        LockSupport.parkNanos(ASYNC_FULL_WAIT_NANOS);
+      }
+      wakeUpWriter();
+    } finally {
+      activeProducers.decrementAndGet();
+    }
+  } // method log
+
+  private void wakeUpWriter() {
+    if (writerWaiting.get() && writerWaiting.compareAndSet(true, false)) {
+      Thread writer = asyncWriter;
+      if (writer != null) {
+        LockSupport.unpark(writer);
+      }
+    }
+  } // method wakeUpWriter
+
+  private synchronized void logSync(int eventType, AuditLevel level, String message) {
+    LogEntry entry = chain(Instant.now(), eventType, level, message);
+    storeLog(entry.date, entry.thisId, eventType, entry.levelText, entry.previousId, message, entry.thisTag);
+    if (encInterval <= 1 || entry.thisId % encInterval == 0) {
+      String integrityText = buildIntegrityText();
+      storeIntegrity(integrityText);
+    }
+  } // method logSync
+
+  private void writeGroup(List<QueuedEvent> group) {
+    List<LogEntry> entries = new ArrayList<>(group.size());
+    boolean storeIntegrity = false;
+    for (QueuedEvent m : group) {
+      LogEntry entry = chain(m.date, m.eventType, m.level, m.message);
+      entries.add(entry);
+      if (encInterval <= 1 || entry.thisId % encInterval == 0) {
+        storeIntegrity = true;
+      }
+    }
+
+    storeLogs(entries);
+    // store the integrity text only once per group, it covers the last entry of the group.
+    if (storeIntegrity) {
+      storeIntegrity(buildIntegrityText());
+    }
+  } // method writeGroup
+
+  /**
+   * Assigns the id and computes the tag chained to the previous entry. Must not be called
+   * concurrently.
+   */
+  private LogEntry chain(Instant date, int eventType, AuditLevel level, String message) {
     long previousId = id.get();
     long thisId = id.incrementAndGet();
     String levelText = level.getText();
@@ -303,12 +574,8 @@ public abstract class MacAuditService implements AuditService {
     String tagWithMeta = tagPrefix + Base64.encodeToString(tag);
     this.previousTag = tagWithMeta;
 
-    storeLog(date, thisId, eventType, levelText, previousId, message, tagWithMeta);
-    if (encInterval <= 1 || thisId % encInterval == 0) {
-      String integrityText = buildIntegrityText();
-      storeIntegrity(integrityText);
-    }
-  }
+    return new LogEntry(date, thisId, eventType, levelText, previousId, message, tagWithMeta);
+  } // method chain
 
   private String buildIntegrityText() {
     byte[] plaintext = StringUtil.toUtf8Bytes(VERSION_V1 + DELIM + shardId + DELIM + id.get() + DELIM + previousTag);
@@ -328,6 +595,16 @@ public abstract class MacAuditService implements AuditService {
 
   @Override
   public final void close() throws Exception {
+    Thread writer = asyncWriter;
+    if (writer != null) {
+      // the writer stores the queued events before it terminates, events logged from now on
+      // are rejected.
+      asyncStopped.set(true);
+      LockSupport.unpark(writer);
+      writer.join();
+      asyncWriter = null;
+    }
+
     if (!(encInterval <= 1 | id.get() % encInterval == 0)) {
       String integrityText = buildIntegrityText();
       storeIntegrity(integrityText);
@@ -0,0 +1,128 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.audit.services;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free ring buffer with multiple producers and a single consumer. Each slot
+ * has a sequence number which tells whether it is free for the producer of the given
+ * position, or filled for the consumer.
+ *
+ * @param <E> type of the elements.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+class MpscRingBuffer<E> {
+
+  private final int capacity;
+
+  private final int mask;
+
+  private final AtomicReferenceArray<E> elements;
+
+  private final AtomicLongArray sequences;
+
+  // next position to be claimed by the producers
+  private final AtomicLong tail = new AtomicLong();
+
+  // next position to be read by the consumer, only accessed by the consumer
+  private long head;
+
+  /**
+   * Constructor.
+   * @param minCapacity minimal capacity, will be rounded up to the power of 2.
+   */
+  MpscRingBuffer(int minCapacity) {
+    int cap = 1;
+    while (cap < minCapacity) {
+      cap <<= 1;
+    }
+
+    this.capacity = cap;
+    this.mask = cap - 1;
+    this.elements = new AtomicReferenceArray<>(cap);
+    this.sequences = new AtomicLongArray(cap);
+    for (int i = 0; i < cap; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * Adds the element, may be called by any thread.
+   * @param element the element.
+   * @return true if added, false if the buffer is full.
+   */
+  boolean offer(E element) {
+    while (true) {
+      long pos = tail.get();
+      int idx = (int) pos & mask;
+      long seq = sequences.get(idx);
+      if (seq == pos) {
+        if (tail.compareAndSet(pos, pos + 1)) {
+          elements.lazySet(idx, element);
+          // publish the element to the consumer
+          sequences.set(idx, pos + 1);
+          return true;
+        }
+      } else if (seq < pos) {
+        // the slot has not been consumed yet
+        return false;
+      }
+      // else: another producer claimed this position, retry
+    }
+  } // method offer
+
+  /**
+   * Moves up to {@code maxElements} available elements to the list. Must be called only by
+   * the consumer thread.
+   * @return number of moved elements.
+   */
+  int drainTo(List<E> list, int maxElements) {
+    int count = 0;
+    while (count < maxElements) {
+      int idx = (int) head & mask;
+      if (sequences.get(idx) != head + 1) {
+        // not published yet
+        break;
+      }
+
+      list.add(elements.get(idx));
+      elements.lazySet(idx, null);
+      // release the slot for the producers of the next round
+      sequences.set(idx, head + capacity);
+      head++;
+      count++;
+    }
+    return count;
+  } // method drainTo
+
+  /**
+   * Whether no element is available. Must be called only by the consumer thread.
+   * @return whether the buffer is empty.
+   */
+  boolean isEmpty() {
+    return sequences.get((int) head & mask) != head + 1;
+  }
+
+}
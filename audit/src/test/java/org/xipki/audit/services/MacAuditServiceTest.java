@@ -0,0 +1,140 @@
+/*
+ *
+ * Copyright (c) 2013 - 2022 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.audit.services;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.audit.AuditEvent;
+import org.xipki.audit.AuditLevel;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Test for {@link MacAuditService}.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+public class MacAuditServiceTest {
+
+  private static class MemoryMacAuditService extends MacAuditService {
+
+    private final List<Long> ids = new ArrayList<>();
+
+    private final List<String> messages = new ArrayList<>();
+
+    private int numIntegrityTexts;
+
+    private boolean closed;
+
+    @Override
+    protected synchronized void storeLog(Instant date, long thisId, int eventType, String levelText,
+        long previousId, String message, String thisTag) {
+      Assert.assertFalse("stored after doClose()", closed);
+      Assert.assertEquals("previousId", thisId - 1, previousId);
+      ids.add(thisId);
+      messages.add(message);
+    }
+
+    @Override
+    protected synchronized void storeIntegrity(String integrityText) {
+      numIntegrityTexts++;
+    }
+
+    @Override
+    protected synchronized void doClose() {
+      closed = true;
+    }
+
+  } // class MemoryMacAuditService
+
+  private static AuditEvent newEvent(String name) {
+    AuditEvent event = new AuditEvent(new Date());
+    event.setApplicationName("test");
+    event.setLevel(AuditLevel.INFO);
+    event.addEventData("name", name);
+    return event;
+  }
+
+  private static MemoryMacAuditService newAsyncService() {
+    MemoryMacAuditService service = new MemoryMacAuditService();
+    service.init("keyid=1,password=pwd1,async=true,async-queue-size=64,async-max-batch=10");
+    return service;
+  }
+
+  @Test
+  public void testCloseStoresQueuedEvents() throws Exception {
+    final int numThreads = 4;
+    final int numEventsPerThread = 500;
+    MemoryMacAuditService service = newAsyncService();
+
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>(numThreads);
+    for (int i = 0; i < numThreads; i++) {
+      final String prefix = "thread" + i + "-";
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException ex) {
+          return;
+        }
+        for (int j = 0; j < numEventsPerThread; j++) {
+          service.logEvent(newEvent(prefix + j));
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    service.close();
+
+    Assert.assertTrue("closed", service.closed);
+    Assert.assertEquals("stored events", numThreads * numEventsPerThread, service.ids.size());
+    for (int i = 0; i < service.ids.size(); i++) {
+      Assert.assertEquals("id", i + 1, (long) service.ids.get(i));
+    }
+    Assert.assertTrue("integrity texts", service.numIntegrityTexts > 0);
+  } // method testCloseStoresQueuedEvents
+
+  @Test
+  public void testEventsRejectedAfterClose() throws Exception {
+    MemoryMacAuditService service = newAsyncService();
+    service.logEvent(newEvent("before-close"));
+
+    // the writer is parked on the empty queue, close() must wake it up and wait for it
+    Thread.sleep(100);
+    service.close();
+    Assert.assertEquals("stored events", 1, service.ids.size());
+
+    // rejected without exception, and without storing after doClose()
+    service.logEvent(newEvent("after-close"));
+    Thread.sleep(100);
+    Assert.assertEquals("stored events", 1, service.ids.size());
+    Assert.assertTrue("message", service.messages.get(0).contains("before-close"));
+  } // method testEventsRejectedAfterClose
+
+}
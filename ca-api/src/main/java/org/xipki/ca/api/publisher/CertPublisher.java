@@ -26,6 +26,8 @@ import org.xipki.security.X509Cert;
 import org.xipki.util.FileOrValue;
 
 import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -89,6 +91,26 @@ public abstract class CertPublisher implements Closeable {
    */
   public abstract boolean certificateAdded(CertificateInfo certInfo);
 
+  /**
+   * Publishes several certificates. The default implementation calls
+   * {@link #certificateAdded(CertificateInfo)} for each certificate and stops at the first
+   * failure. Publishers able to publish several certificates at once shall overwrite it.
+   * Since the certificates may be published again after a failure, the publication
+   * must be idempotent.
+   *
+   * @param certInfos
+   *          Certificates to be published.
+   * @return whether all certificates are published.
+   */
+  public boolean certificatesAdded(List<CertificateInfo> certInfos) {
+    for (CertificateInfo certInfo : certInfos) {
+      if (!certificateAdded(certInfo)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Publishes the revocation of a certificate.
    *
@@ -138,6 +160,27 @@ public abstract class CertPublisher implements Closeable {
    */
   public abstract boolean crlAdded(X509Cert caCert, X509CRLHolder crl);
 
+  /**
+   * Publishes a DER-encoded CRL. The default implementation parses the CRL and calls
+   * {@link #crlAdded(X509Cert, X509CRLHolder)}. Publishers which do not need the parsed CRL
+   * shall overwrite it, so that large CRLs are not parsed.
+   *
+   * @param caCert
+   *          CA certificate. Must not be {@code null}.
+   * @param encodedCrl
+   *          DER-encoded CRL to be published. Must not be {@code null}.
+   * @return whether the CRL is published.
+   */
+  public boolean crlAdded(X509Cert caCert, byte[] encodedCrl) {
+    X509CRLHolder crl;
+    try {
+      crl = new X509CRLHolder(encodedCrl);
+    } catch (IOException ex) {
+      return false;
+    }
+    return crlAdded(caCert, crl);
+  }
+
   /**
    * Publishes the revocation of a CA.
    *
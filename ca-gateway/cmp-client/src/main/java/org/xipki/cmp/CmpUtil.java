@@ -29,6 +29,7 @@ import org.bouncycastle.cert.cmp.ProtectedPKIMessageBuilder;
 import org.bouncycastle.cert.crmf.CRMFException;
 import org.bouncycastle.cert.crmf.PKMACBuilder;
 import org.bouncycastle.cert.crmf.jcajce.JcePKMACValuesCalculator;
+import org.bouncycastle.operator.MacCalculator;
 import org.xipki.security.ConcurrentBagEntrySigner;
 import org.xipki.security.ConcurrentContentSigner;
 import org.xipki.security.NoIdleSignerException;
@@ -99,6 +100,14 @@ public class CmpUtil {
     }
   } // method addProtection
 
+  public static PKIMessage addProtection(
+      PKIMessage pkiMessage, MacCalculator macCalculator, GeneralName signerName, byte[] senderKid)
+      throws CMPException {
+    notNull(macCalculator, "macCalculator");
+    ProtectedPKIMessageBuilder builder = newProtectedPKIMessageBuilder(pkiMessage, signerName, senderKid);
+    return builder.build(macCalculator).toASN1Structure();
+  } // method addProtection
+
   private static ProtectedPKIMessageBuilder newProtectedPKIMessageBuilder(PKIMessage pkiMessage,
       GeneralName sender, byte[] senderKid) {
     PKIHeader header = pkiMessage.getHeader();
@@ -36,20 +36,21 @@ import org.bouncycastle.cert.cmp.GeneralPKIMessage;
 import org.bouncycastle.cert.cmp.ProtectedPKIMessage;
 import org.bouncycastle.cert.crmf.CRMFException;
 import org.bouncycastle.cert.crmf.CertificateRequestMessage;
-import org.bouncycastle.cert.crmf.PKMACBuilder;
-import org.bouncycastle.cert.crmf.jcajce.JcePKMACValuesCalculator;
 import org.bouncycastle.jcajce.spec.PBKDF2KeySpec;
 import org.bouncycastle.operator.ContentVerifierProvider;
+import org.bouncycastle.operator.MacCalculator;
 import org.bouncycastle.util.encoders.Hex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.audit.AuditEvent;
 import org.xipki.audit.AuditLevel;
 import org.xipki.audit.AuditStatus;
+import org.xipki.ca.gateway.CaInfoCache;
 import org.xipki.ca.gateway.CaNameSigners;
 import org.xipki.ca.gateway.PopControl;
 import org.xipki.ca.gateway.Requestor;
 import org.xipki.ca.gateway.RequestorAuthenticator;
+import org.xipki.ca.gateway.cmp.PbmMacKeyCache.PbmMacKey;
 import org.xipki.ca.sdk.ErrorResponse;
 import org.xipki.ca.sdk.SdkClient;
 import org.xipki.ca.sdk.SdkErrorResponseException;
@@ -96,6 +97,18 @@ import static org.xipki.util.Args.notNull;
 
 abstract class BaseCmpResponder {
 
+  private static class PbmVerificationResult extends ProtectionVerificationResult {
+
+    // key derived from the password of the requestor, may be reused to protect the response
+    private final PbmMacKey macKey;
+
+    PbmVerificationResult(Object requestor, ProtectionResult protectionResult, PbmMacKey macKey) {
+      super(requestor, protectionResult);
+      this.macKey = macKey;
+    }
+
+  } // class PbmVerificationResult
+
   public static final String HTTP_HEADER_certprofile = "certprofile";
 
   public static final String HTTP_HEADER_groupenroll = "groupenroll";
@@ -146,6 +159,8 @@ abstract class BaseCmpResponder {
 
   protected final SdkClient sdk;
 
+  protected final CaInfoCache caInfoCache;
+
   protected final CmpControl cmpControl;
 
   protected final PopControl popControl;
@@ -156,6 +171,8 @@ abstract class BaseCmpResponder {
 
   private final KeyGenerator aesKeyGen;
 
+  private final PbmMacKeyCache pbmKeyCache;
+
   static {
     String oid = NISTObjectIdentifiers.id_aes128_GCM.getId();
     aesGcm_ciphers = new ConcurrentBag<>();
@@ -212,16 +229,18 @@ abstract class BaseCmpResponder {
   }
 
   protected BaseCmpResponder(
-      CmpControl cmpControl, SdkClient sdk, SecurityFactory securityFactory,
+      CmpControl cmpControl, SdkClient sdk, CaInfoCache caInfoCache, SecurityFactory securityFactory,
       CaNameSigners signers, RequestorAuthenticator authenticator, PopControl popControl)
       throws NoSuchAlgorithmException {
     this.sdk = sdk;
+    this.caInfoCache = caInfoCache;
     this.securityFactory = securityFactory;
     this.authenticator = authenticator;
     this.cmpControl = cmpControl;
     this.popControl = popControl;
     this.signers = signers;
     this.aesKeyGen = KeyGenerator.getInstance("AES");
+    this.pbmKeyCache = new PbmMacKeyCache(cmpControl.getPbmKeyCacheSize(), cmpControl.getPbmKeyCacheTtl());
   }
 
   protected abstract PKIBody cmpEnrollCert(
@@ -475,6 +494,7 @@ abstract class BaseCmpResponder {
 
     Requestor requestor;
     String errorStatus;
+    PbmMacKey requestMacKey = null;
 
     if (isProtected) {
       try {
@@ -505,6 +525,9 @@ abstract class BaseCmpResponder {
         }
 
         requestor = (Requestor) verificationResult.getRequestor();
+        if (pr == ProtectionResult.MAC_VALID && verificationResult instanceof PbmVerificationResult) {
+          requestMacKey = ((PbmVerificationResult) verificationResult).macKey;
+        }
       } catch (Exception ex) {
         LogUtil.error(LOG, ex, "tid=" + tidStr + ": could not verify the signature");
         errorStatus = "request has invalid signature based protection";
@@ -540,7 +563,7 @@ abstract class BaseCmpResponder {
     PKIMessage resp = processPkiMessage0(caName, pkiMessage, requestor, tid, message, parameters, event);
 
     if (isProtected) {
-      resp = addProtection(signer, resp, event, requestor);
+      resp = addProtection(signer, resp, event, requestor, requestMacKey);
     }
     // otherwise protected by TLS connection
 
@@ -601,7 +624,6 @@ abstract class BaseCmpResponder {
         return new ProtectionVerificationResult(null, ProtectionResult.MAC_ALGO_FORBIDDEN);
       }
 
-      PKMACBuilder pkMacBuilder = new PKMACBuilder(new JcePKMACValuesCalculator());
       Requestor requestor = getPasswordRequestor(senderKID);
 
       if (requestor == null) {
@@ -610,9 +632,20 @@ abstract class BaseCmpResponder {
         return new ProtectionVerificationResult(null, ProtectionResult.SENDER_NOT_AUTHORIZED);
       }
 
-      boolean macValid = protectedMsg.verify(pkMacBuilder, requestor.getPassword());
-      return new ProtectionVerificationResult(requestor,
-          macValid ? ProtectionResult.MAC_VALID : ProtectionResult.MAC_INVALID);
+      PbmMacKey macKey;
+      boolean macValid;
+      try {
+        macKey = pbmKeyCache.getMacKey(senderKID, requestor.getPassword(), parameter);
+        macValid = macKey.verify(pkiMessage.toASN1Structure(), parameter.getMac());
+        if (macValid) {
+          pbmKeyCache.verified(macKey);
+        }
+      } catch (CRMFException ex) {
+        throw new CMPException(ex.getMessage(), ex);
+      }
+
+      return new PbmVerificationResult(requestor,
+          macValid ? ProtectionResult.MAC_VALID : ProtectionResult.MAC_INVALID, macKey);
     } else {
       if (!cmpControl.getSigAlgoValidator().isAlgorithmPermitted(protectionAlg)) {
         LOG.warn("SIG_ALGO_FORBIDDEN: {}", pkiMessage.getHeader().getProtectionAlg().getAlgorithm().getId());
@@ -639,12 +672,17 @@ abstract class BaseCmpResponder {
     }
   } // method verifyProtection
 
-  private PKIMessage addProtection(
-      ConcurrentContentSigner signer, PKIMessage pkiMessage, AuditEvent event, Requestor requestor) {
+  private PKIMessage addProtection(ConcurrentContentSigner signer, PKIMessage pkiMessage, AuditEvent event,
+      Requestor requestor, PbmMacKey requestMacKey) {
     GeneralName respSender = pkiMessage.getHeader().getSender();
     try {
       if (requestor.getCert() != null) {
         return CmpUtil.addProtection(pkiMessage, signer, respSender, cmpControl.isSendResponderCert());
+      } else if (requestMacKey != null && cmpControl.isResponsePbmReuseRequestKey()) {
+        // use the salt, owf and iterationCount of the request, the key does not need to be derived again.
+        MacCalculator macCalculator = requestMacKey.newMacCalculator(
+            cmpControl.getResponsePbmMac().getAlgorithmIdentifier());
+        return CmpUtil.addProtection(pkiMessage, macCalculator, respSender, requestor.getKeyId());
       } else {
         PBMParameter parameter = new PBMParameter(
             randomSalt(), cmpControl.getResponsePbmOwf().getAlgorithmIdentifier(),
@@ -964,7 +1002,7 @@ abstract class BaseCmpResponder {
     try {
       if (CMPObjectIdentifiers.it_currentCRL.equals(infoType)) {
         event.addEventType(TYPE_genm_current_crl);
-        byte[] encodedCrl = sdk.currentCrl(caName);
+        byte[] encodedCrl = caInfoCache.currentCrl(caName);
         if (encodedCrl == null) {
           return buildErrorMsgPkiBody(rejection, systemFailure, "no CRL is available");
         }
@@ -973,7 +1011,7 @@ abstract class BaseCmpResponder {
         itvResp = new InfoTypeAndValue(infoType, crl);
       } else { // if (CMPObjectIdentifiers.id_it_caCerts.equals(infoType)) {
         event.addEventType(TYPE_genm_cacerts);
-        byte[][] certchain = sdk.cacerts(caName);
+        byte[][] certchain = caInfoCache.cacerts(caName);
         if (certchain == null || certchain.length == 0) {
           return buildErrorMsgPkiBody(rejection, systemFailure, "no certchain is available");
         }
@@ -45,6 +45,10 @@ public class CmpControl {
 
   private static final int DFLT_PBM_ITERATIONCOUNT = 10240;
 
+  private static final int DFLT_PBM_KEY_CACHE_SIZE = 10000;
+
+  private static final int DFLT_PBM_KEY_CACHE_TTL = 600; // 600 seconds
+
   private final boolean confirmCert;
 
   private final boolean sendCaCert;
@@ -71,6 +75,12 @@ public class CmpControl {
 
   private int responsePbmIterationCount;
 
+  private final boolean responsePbmReuseRequestKey;
+
+  private final int pbmKeyCacheSize;
+
+  private final int pbmKeyCacheTtl;
+
   private final CollectionAlgorithmValidator sigAlgoValidator;
 
   public CmpControl(CmpControlConf conf) throws InvalidConfException {
@@ -86,6 +96,16 @@ public class CmpControl {
     }
     this.confirmWaitTimeMs = this.confirmWaitTime * 1000;
 
+    this.responsePbmReuseRequestKey = getBoolean(conf.getResponsePbmReuseRequestKey(), true);
+    this.pbmKeyCacheSize = getInt(conf.getPbmKeyCacheSize(), DFLT_PBM_KEY_CACHE_SIZE);
+    if (this.pbmKeyCacheSize < 0) {
+      throw new InvalidConfException("invalid pbmKeyCacheSize " + pbmKeyCacheSize);
+    }
+    this.pbmKeyCacheTtl = getInt(conf.getPbmKeyCacheTtl(), DFLT_PBM_KEY_CACHE_TTL);
+    if (this.pbmKeyCacheTtl < 0) {
+      throw new InvalidConfException("invalid pbmKeyCacheTtl " + pbmKeyCacheTtl);
+    }
+
     // protection algorithms
     List<String> requestSigAlgos = conf.getRequestSigAlgos();
     if (CollectionUtil.isEmpty(requestSigAlgos)) {
@@ -217,6 +237,18 @@ public class CmpControl {
     return responsePbmIterationCount;
   }
 
+  public boolean isResponsePbmReuseRequestKey() {
+    return responsePbmReuseRequestKey;
+  }
+
+  public int getPbmKeyCacheSize() {
+    return pbmKeyCacheSize;
+  }
+
+  public int getPbmKeyCacheTtl() {
+    return pbmKeyCacheTtl;
+  }
+
   public boolean isRequestPbmOwfPermitted(HashAlgo pbmOwf) {
     return requestPbmOwfs.contains(pbmOwf);
   }
@@ -54,6 +54,12 @@ public class CmpControlConf {
 
   private Integer responsePbmIterationCount;
 
+  private Boolean responsePbmReuseRequestKey;
+
+  private Integer pbmKeyCacheSize;
+
+  private Integer pbmKeyCacheTtl;
+
   public Boolean getConfirmCert() {
     return confirmCert;
   }
@@ -158,4 +164,28 @@ public class CmpControlConf {
     this.responsePbmIterationCount = responsePbmIterationCount;
   }
 
+  public Boolean getResponsePbmReuseRequestKey() {
+    return responsePbmReuseRequestKey;
+  }
+
+  public void setResponsePbmReuseRequestKey(Boolean responsePbmReuseRequestKey) {
+    this.responsePbmReuseRequestKey = responsePbmReuseRequestKey;
+  }
+
+  public Integer getPbmKeyCacheSize() {
+    return pbmKeyCacheSize;
+  }
+
+  public void setPbmKeyCacheSize(Integer pbmKeyCacheSize) {
+    this.pbmKeyCacheSize = pbmKeyCacheSize;
+  }
+
+  public Integer getPbmKeyCacheTtl() {
+    return pbmKeyCacheTtl;
+  }
+
+  public void setPbmKeyCacheTtl(Integer pbmKeyCacheTtl) {
+    this.pbmKeyCacheTtl = pbmKeyCacheTtl;
+  }
+
 }
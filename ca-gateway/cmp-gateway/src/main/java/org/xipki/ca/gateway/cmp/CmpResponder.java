@@ -60,10 +60,10 @@ public class CmpResponder extends BaseCmpResponder {
   private static final Logger LOG = LoggerFactory.getLogger(BaseCmpResponder.class);
 
   public CmpResponder(
-      CmpControl cmpControl, SdkClient sdk, SecurityFactory securityFactory,
+      CmpControl cmpControl, SdkClient sdk, CaInfoCache caInfoCache, SecurityFactory securityFactory,
       CaNameSigners signers, RequestorAuthenticator authenticator, PopControl popControl)
       throws NoSuchAlgorithmException {
-    super(cmpControl, sdk, securityFactory, signers, authenticator, popControl);
+    super(cmpControl, sdk, caInfoCache, securityFactory, signers, authenticator, popControl);
   }
 
   private CertRepMessage processCertReqMessages(
@@ -518,6 +518,8 @@ public class CmpResponder extends BaseCmpResponder {
       UnSuspendOrRemoveCertsResponse resp = sdk.unsuspendCerts(caName, req);
       respEntries = resp.getEntries();
     }
+    // the cached CRL does not reflect the changed status any more
+    caInfoCache.invalidateCrl(caName);
 
     GeneralName caGn = new GeneralName(issuer);
     RevRepContentBuilder repContentBuilder = new RevRepContentBuilder();
@@ -0,0 +1,297 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.gateway.cmp;
+
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.cmp.CMPObjectIdentifiers;
+import org.bouncycastle.asn1.cmp.PBMParameter;
+import org.bouncycastle.asn1.cmp.PKIMessage;
+import org.bouncycastle.asn1.cmp.ProtectedPart;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.cert.crmf.CRMFException;
+import org.bouncycastle.cert.crmf.PKMACValuesCalculator;
+import org.bouncycastle.cert.crmf.jcajce.JcePKMACValuesCalculator;
+import org.bouncycastle.operator.GenericKey;
+import org.bouncycastle.operator.MacCalculator;
+import org.bouncycastle.operator.RuntimeOperatorException;
+import org.bouncycastle.util.Arrays;
+import org.bouncycastle.util.Strings;
+import org.bouncycastle.util.encoders.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.security.HashAlgo;
+import org.xipki.util.LruCache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of the keys derived from the passwords for the password-based MAC (PBM, RFC 4211).
+ * The derivation iterates the one-way function at least 1000 times, clients reusing the same
+ * salt and iteration count need it only once within the time to live.
+ *
+ * <p>The entries are keyed by (senderKID, salt, owf, iterationCount), and are only used if the
+ * password of the requestor has not been changed. A derived key is cached only after a message
+ * protected with it has been verified, see {@link #verified(PbmMacKey)}.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+class PbmMacKeyCache {
+
+  /**
+   * Key derived from the password, together with the parameters used to derive it.
+   */
+  static class PbmMacKey {
+
+    private final byte[] key;
+
+    private final ASN1OctetString salt;
+
+    private final AlgorithmIdentifier owf;
+
+    private final ASN1Integer iterationCount;
+
+    // key and password hash of the cache entry, set only for keys not yet cached.
+    private String cacheKey;
+
+    private byte[] passwordHash;
+
+    private PbmMacKey(byte[] key, PBMParameter parameter) {
+      this.key = key;
+      this.salt = parameter.getSalt();
+      this.owf = parameter.getOwf();
+      this.iterationCount = parameter.getIterationCount();
+    }
+
+    /**
+     * Verifies the protection of the PKIMessage.
+     * @param pkiMessage the PKIMessage protected by PBM.
+     * @param mac the MAC algorithm of the protection.
+     * @return whether the protection is valid.
+     * @throws CRMFException if the MAC algorithm is not supported.
+     */
+    boolean verify(PKIMessage pkiMessage, AlgorithmIdentifier mac) throws CRMFException {
+      byte[] data;
+      try {
+        data = new ProtectedPart(pkiMessage.getHeader(), pkiMessage.getBody()).getEncoded(ASN1Encoding.DER);
+      } catch (IOException ex) {
+        throw new CRMFException("could not encode ProtectedPart: " + ex.getMessage(), ex);
+      }
+
+      byte[] expected = newCalculator(mac).calculateMac(key, data);
+      return Arrays.constantTimeAreEqual(expected, pkiMessage.getProtection().getBytes());
+    } // method verify
+
+    /**
+     * Creates a MacCalculator with this key. The PBMParameter of the protection contains the
+     * salt, owf and iterationCount used to derive this key.
+     * @param mac the MAC algorithm.
+     * @return the MacCalculator.
+     * @throws CRMFException if the MAC algorithm is not supported.
+     */
+    MacCalculator newMacCalculator(AlgorithmIdentifier mac) throws CRMFException {
+      final PKMACValuesCalculator calculator = newCalculator(mac);
+      final AlgorithmIdentifier algId = new AlgorithmIdentifier(CMPObjectIdentifiers.passwordBasedMac,
+          new PBMParameter(salt, owf, iterationCount, mac));
+
+      return new MacCalculator() {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        @Override
+        public AlgorithmIdentifier getAlgorithmIdentifier() {
+          return algId;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+          return out;
+        }
+
+        @Override
+        public byte[] getMac() {
+          try {
+            return calculator.calculateMac(key, out.toByteArray());
+          } catch (CRMFException ex) {
+            throw new RuntimeOperatorException("exception calculating mac: " + ex.getMessage(), ex);
+          }
+        }
+
+        @Override
+        public GenericKey getKey() {
+          return new GenericKey(algId, key);
+        }
+
+      };
+    } // method newMacCalculator
+
+    private PKMACValuesCalculator newCalculator(AlgorithmIdentifier mac) throws CRMFException {
+      PKMACValuesCalculator calculator = new JcePKMACValuesCalculator();
+      calculator.setup(owf, mac);
+      return calculator;
+    }
+
+  } // class PbmMacKey
+
+  private static class Entry {
+
+    private final PbmMacKey macKey;
+
+    private final byte[] passwordHash;
+
+    private final long expiresAt;
+
+    Entry(PbmMacKey macKey, byte[] passwordHash, long expiresAt) {
+      this.macKey = macKey;
+      this.passwordHash = passwordHash;
+      this.expiresAt = expiresAt;
+    }
+
+  } // class Entry
+
+  private static final Logger LOG = LoggerFactory.getLogger(PbmMacKeyCache.class);
+
+  private static final long LOG_INTERVAL_MS = 300_000; // 5 minutes
+
+  private final LruCache<String, Entry> cache;
+
+  private final long ttlMs;
+
+  private final LongAdder hits = new LongAdder();
+
+  private final LongAdder misses = new LongAdder();
+
+  private final AtomicLong nextLogTime = new AtomicLong(System.currentTimeMillis() + LOG_INTERVAL_MS);
+
+  /**
+   * Constructor.
+   * @param maxSize maximal number of cached keys, 0 to disable the cache.
+   * @param ttlSeconds time to live of the keys in seconds, 0 to disable the cache.
+   */
+  PbmMacKeyCache(int maxSize, int ttlSeconds) {
+    this.cache = (maxSize > 0 && ttlSeconds > 0) ? new LruCache<>(maxSize) : null;
+    this.ttlMs = ttlSeconds * 1000L;
+  }
+
+  /**
+   * Gets the key derived from the password with the given parameter. The key is derived
+   * if it is not cached, and will be cached by {@link #verified(PbmMacKey)}.
+   * @param senderKID the senderKID of the requestor.
+   * @param password the password of the requestor.
+   * @param parameter the PBMParameter.
+   * @return the derived key.
+   * @throws CRMFException if the one-way function is not supported.
+   */
+  PbmMacKey getMacKey(byte[] senderKID, char[] password, PBMParameter parameter) throws CRMFException {
+    if (cache == null) {
+      return deriveKey(password, parameter);
+    }
+
+    String cacheKey = (senderKID == null ? "" : Hex.toHexString(senderKID))
+        + "/" + Hex.toHexString(parameter.getSalt().getOctets())
+        + "/" + parameter.getOwf().getAlgorithm().getId()
+        + "/" + parameter.getIterationCount().getValue();
+    // one hash, instead of iterationCount hashes
+    byte[] passwordHash = HashAlgo.SHA256.hash(Strings.toUTF8ByteArray(password));
+
+    Entry entry = cache.get(cacheKey);
+    PbmMacKey macKey;
+    if (entry != null && entry.expiresAt > System.currentTimeMillis()
+        && Arrays.constantTimeAreEqual(entry.passwordHash, passwordHash)) {
+      hits.increment();
+      macKey = entry.macKey;
+    } else {
+      misses.increment();
+      macKey = deriveKey(password, parameter);
+      macKey.cacheKey = cacheKey;
+      macKey.passwordHash = passwordHash;
+    }
+
+    logStatistics();
+    return macKey;
+  } // method getMacKey
+
+  /**
+   * Notifies that a message protected with the given key has been verified successfully. Keys
+   * derived from a wrong password are therefore never cached.
+   * @param macKey the key returned by {@link #getMacKey(byte[], char[], PBMParameter)}.
+   */
+  void verified(PbmMacKey macKey) {
+    if (cache == null || macKey.cacheKey == null) {
+      return;
+    }
+
+    String cacheKey = macKey.cacheKey;
+    Entry entry = new Entry(macKey, macKey.passwordHash, System.currentTimeMillis() + ttlMs);
+    macKey.cacheKey = null;
+    macKey.passwordHash = null;
+    cache.put(cacheKey, entry);
+  } // method verified
+
+  long getHits() {
+    return hits.sum();
+  }
+
+  long getMisses() {
+    return misses.sum();
+  }
+
+  @Override
+  public String toString() {
+    long h = hits.sum();
+    long m = misses.sum();
+    return String.format("PbmMacKeyCache[size=%d,hits=%d,misses=%d,hitRate=%d%%]",
+        cache == null ? 0 : cache.size(), h, m, (h + m) == 0 ? 0 : h * 100 / (h + m));
+  }
+
+  private void logStatistics() {
+    long now = System.currentTimeMillis();
+    long next = nextLogTime.get();
+    if (now >= next && nextLogTime.compareAndSet(next, now + LOG_INTERVAL_MS)) {
+      LOG.info("{}", this);
+    }
+  }
+
+  /**
+   * Derives the key as {@code PKMACBuilder} of BouncyCastle: the one-way function is applied
+   * iterationCount times to (password || salt).
+   */
+  private static PbmMacKey deriveKey(char[] password, PBMParameter parameter) throws CRMFException {
+    PKMACValuesCalculator calculator = new JcePKMACValuesCalculator();
+    calculator.setup(parameter.getOwf(), parameter.getMac());
+
+    byte[] pw = Strings.toUTF8ByteArray(password);
+    byte[] salt = parameter.getSalt().getOctets();
+    byte[] key = Arrays.concatenate(pw, salt);
+
+    int iterationCount = parameter.getIterationCount().intValueExact();
+    do {
+      key = calculator.calculateDigest(key);
+    } while (--iterationCount > 0);
+
+    return new PbmMacKey(key, parameter);
+  } // method deriveKey
+
+}
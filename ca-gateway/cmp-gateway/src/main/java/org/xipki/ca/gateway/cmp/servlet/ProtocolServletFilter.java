@@ -66,7 +66,7 @@ public class ProtocolServletFilter implements Filter {
       CmpControl cmpControl = new CmpControl(conf0.getCmp());
       conf = new ProtocolProxyConfWrapper(conf0);
 
-      CmpResponder responder = new CmpResponder(cmpControl, conf.getSdkClient(),
+      CmpResponder responder = new CmpResponder(cmpControl, conf.getSdkClient(), conf.getCaInfoCache(),
           conf.getSecurities().getSecurityFactory(), conf.getSigners(), conf.getAuthenticator(), conf.getPopControl());
 
       servlet = new HttpCmpServlet();
@@ -0,0 +1,115 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.gateway.cmp;
+
+import org.bouncycastle.asn1.cmp.*;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.cert.cmp.ProtectedPKIMessage;
+import org.bouncycastle.cert.cmp.ProtectedPKIMessageBuilder;
+import org.bouncycastle.cert.crmf.PKMACBuilder;
+import org.bouncycastle.cert.crmf.jcajce.JcePKMACValuesCalculator;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.ca.gateway.cmp.PbmMacKeyCache.PbmMacKey;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Test for {@link PbmMacKeyCache}.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+public class PbmMacKeyCacheTest {
+
+  private static final byte[] SENDER_KID = "requestor1".getBytes(StandardCharsets.UTF_8);
+
+  private static final char[] PASSWORD = "password1".toCharArray();
+
+  private static final GeneralName CLIENT = new GeneralName(new X500Name("CN=client"));
+
+  private static final GeneralName SERVER = new GeneralName(new X500Name("CN=server"));
+
+  private static PKIMessage protect(char[] password, GeneralName sender, GeneralName recipient) throws Exception {
+    PKMACBuilder pkMacBuilder = new PKMACBuilder(new JcePKMACValuesCalculator());
+    pkMacBuilder.setIterationCount(1000);
+
+    ProtectedPKIMessageBuilder builder = new ProtectedPKIMessageBuilder(sender, recipient);
+    builder.setSenderKID(SENDER_KID);
+    builder.setTransactionID(new byte[] {1, 2, 3, 4});
+    builder.setBody(new PKIBody(PKIBody.TYPE_GEN_MSG,
+        new GenMsgContent(new InfoTypeAndValue(CMPObjectIdentifiers.it_currentCRL))));
+    return builder.build(pkMacBuilder.build(password)).toASN1Structure();
+  } // method protect
+
+  private static PBMParameter getParameter(PKIMessage message) {
+    return PBMParameter.getInstance(message.getHeader().getProtectionAlg().getParameters());
+  }
+
+  @Test
+  public void testInteroperability() throws Exception {
+    PbmMacKeyCache cache = new PbmMacKeyCache(10, 600);
+
+    // request protected by BouncyCastle
+    PKIMessage request = protect(PASSWORD, CLIENT, SERVER);
+    PBMParameter parameter = getParameter(request);
+    PbmMacKey macKey = cache.getMacKey(SENDER_KID, PASSWORD, parameter);
+    Assert.assertTrue("request MAC valid", macKey.verify(request, parameter.getMac()));
+    cache.verified(macKey);
+
+    // the same salt and iterationCount, the cached key is used
+    PbmMacKey cachedMacKey = cache.getMacKey(SENDER_KID, PASSWORD, parameter);
+    Assert.assertSame("cached key", macKey, cachedMacKey);
+    Assert.assertEquals("hits", 1, cache.getHits());
+    Assert.assertEquals("misses", 1, cache.getMisses());
+
+    // response protected with the reused key, verified by BouncyCastle
+    ProtectedPKIMessageBuilder builder = new ProtectedPKIMessageBuilder(SERVER, CLIENT);
+    builder.setTransactionID(request.getHeader().getTransactionID().getOctets());
+    builder.setRecipKID(SENDER_KID);
+    builder.setBody(new PKIBody(PKIBody.TYPE_GEN_REP,
+        new GenRepContent(new InfoTypeAndValue(CMPObjectIdentifiers.it_currentCRL))));
+    ProtectedPKIMessage response = builder.build(cachedMacKey.newMacCalculator(parameter.getMac()));
+
+    Assert.assertTrue("response has PBM protection", response.hasPasswordBasedMacProtection());
+    Assert.assertEquals("response PBMParameter", parameter.getSalt(),
+        getParameter(response.toASN1Structure()).getSalt());
+    Assert.assertTrue("response MAC valid",
+        response.verify(new PKMACBuilder(new JcePKMACValuesCalculator()), PASSWORD));
+    Assert.assertFalse("response MAC valid with wrong password",
+        response.verify(new PKMACBuilder(new JcePKMACValuesCalculator()), "wrong".toCharArray()));
+  } // method testInteroperability
+
+  @Test
+  public void testWrongPasswordNotCached() throws Exception {
+    PbmMacKeyCache cache = new PbmMacKeyCache(10, 600);
+
+    PKIMessage request = protect("wrong".toCharArray(), CLIENT, SERVER);
+    PBMParameter parameter = getParameter(request);
+    PbmMacKey macKey = cache.getMacKey(SENDER_KID, PASSWORD, parameter);
+    Assert.assertFalse("request MAC valid", macKey.verify(request, parameter.getMac()));
+
+    // not verified, the key must be derived again
+    cache.getMacKey(SENDER_KID, PASSWORD, parameter);
+    Assert.assertEquals("hits", 0, cache.getHits());
+    Assert.assertEquals("misses", 2, cache.getMisses());
+  } // method testWrongPasswordNotCached
+
+}
@@ -175,6 +175,8 @@ public class EstResponder {
 
   private final SdkClient sdk;
 
+  private final CaInfoCache caInfoCache;
+
   private final SecurityFactory securityFactory;
 
   private final PopControl popControl;
@@ -191,9 +193,10 @@ public class EstResponder {
         CMD_usimpleenroll, CMD_usimplereenroll, CMD_userverkeygen, CMD_csrattrs, CMD_fullcmc);
   }
 
-  public EstResponder(
-      SdkClient sdk, SecurityFactory securityFactory, RequestorAuthenticator authenticator, PopControl popControl) {
+  public EstResponder(SdkClient sdk, CaInfoCache caInfoCache, SecurityFactory securityFactory,
+                      RequestorAuthenticator authenticator, PopControl popControl) {
     this.sdk = notNull(sdk, "sdk");
+    this.caInfoCache = notNull(caInfoCache, "caInfoCache");
     this.securityFactory = notNull(securityFactory, "securityFactory");
     this.authenticator = notNull(authenticator, "authenticator");
     this.popControl = notNull(popControl, "popControl");
@@ -266,11 +269,21 @@ public class EstResponder {
 
       switch (command) {
         case CMD_cacerts: {
-          byte[][] certsBytes = sdk.cacerts(caName);
-          return toRestResponse(HttpRespContent.ofOk(CT_pkcs7_mime, true, buildCertsOnly(certsBytes)));
+          final String ca = caName;
+          byte[] certsOnly = caInfoCache.getCaDerived(caName, "est-cacerts", () -> {
+            byte[][] certsBytes = caInfoCache.cacerts(ca);
+            return certsBytes == null ? null : buildCertsOnly(certsBytes);
+          });
+
+          if (certsOnly == null) {
+            String message = "unknown CA '" + caName + "'";
+            LOG.error(message);
+            throw new HttpRespAuditException(NOT_FOUND, message, AuditLevel.INFO, AuditStatus.FAILED);
+          }
+          return toRestResponse(HttpRespContent.ofOk(CT_pkcs7_mime, true, certsOnly));
         }
         case CMD_ucacert: {
-          byte[] certBytes = sdk.cacert(caName);
+          byte[] certBytes = caInfoCache.cacert(caName);
           return toRestResponse(HttpRespContent.ofOk(CT_pkix_cert, true, certBytes));
         }
         case CMD_csrattrs: {
@@ -691,7 +704,7 @@ public class EstResponder {
 
   private HttpRespContent getCsrAttrs(String caName, String profile)
       throws HttpRespAuditException, OperationException, IOException, SdkErrorResponseException {
-    CertprofileInfoResponse sdkResp = sdk.profileInfo(caName, profile);
+    CertprofileInfoResponse sdkResp = caInfoCache.profileInfo(caName, profile);
     ASN1EncodableVector csrAttrs = new ASN1EncodableVector();
 
     String[] extnTypes = sdkResp.getRequiredExtensionTypes();
@@ -64,8 +64,8 @@ public class ProtocolServletFilter implements Filter {
     try {
       conf = new ProtocolProxyConfWrapper(conf0);
 
-      EstResponder responder = new EstResponder(conf.getSdkClient(), conf.getSecurities().getSecurityFactory(),
-          conf.getAuthenticator(), conf.getPopControl());
+      EstResponder responder = new EstResponder(conf.getSdkClient(), conf.getCaInfoCache(),
+          conf.getSecurities().getSecurityFactory(), conf.getAuthenticator(), conf.getPopControl());
 
       servlet = new HttpEstServlet();
       servlet.setLogReqResp(conf.isLogReqResp());
@@ -0,0 +1,299 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.gateway;
+
+import org.xipki.ca.gateway.conf.CaInfoCacheConf;
+import org.xipki.ca.sdk.CertprofileInfoResponse;
+import org.xipki.ca.sdk.SdkClient;
+import org.xipki.ca.sdk.SdkErrorResponseException;
+import org.xipki.util.exception.ErrorCode;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import static org.xipki.util.Args.notNull;
+
+/**
+ * Cache of the read-mostly information retrieved from the CA: CA certificates, certificate
+ * profiles, current CRLs and the protocol-specific responses derived from them, e.g. the
+ * degenerate PKCS#7 SignedData.
+ *
+ * <p>The entries expire after the configured time to live, and can be invalidated explicitly.
+ * The entries of a CA are invalidated if the CA is unknown to the CA server, and the CRL
+ * entries if a certificate has been revoked or unsuspended via the gateway. A derived value
+ * expires not later than the entries it is derived from.
+ * Concurrent requests of the same missing entry are served by only one request to the CA. No
+ * lock is held while an entry is loaded, so that a loader may get other entries of the cache.
+ * The returned arrays are shared and must not be modified.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+public class CaInfoCache {
+
+  /**
+   * Loader of a cache entry.
+   *
+   * @param <T> type of the value.
+   */
+  public interface Loader<T> {
+
+    /**
+     * Loads the value.
+     * @return the value, {@code null} values will not be cached.
+     * @throws IOException if IO error occurs.
+     * @throws SdkErrorResponseException if the CA responds with an error.
+     */
+    T load() throws IOException, SdkErrorResponseException;
+
+  } // interface Loader
+
+  private static class Entry {
+
+    private final Object value;
+
+    private final long expiresAt;
+
+    Entry(Object value, long expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+
+  } // class Entry
+
+  private static final String KEY_CACERT = "cacert";
+
+  private static final String KEY_CACERTS = "cacerts";
+
+  private static final String KEY_CRL = "crl";
+
+  private static final String KEY_PROFILE_PREFIX = "profile/";
+
+  private static final String KEY_CA_DERIVED_PREFIX = "derived/";
+
+  private static final String KEY_CRL_DERIVED_PREFIX = "crl-derived/";
+
+  private static final String[] CA_BASE_KEYS = {KEY_CACERT, KEY_CACERTS};
+
+  private static final String[] CRL_BASE_KEYS = {KEY_CRL};
+
+  private static final String[] NO_BASE_KEYS = {};
+
+  private final SdkClient sdk;
+
+  private final long caInfoTtlMs;
+
+  private final long crlTtlMs;
+
+  private final ConcurrentHashMap<String, ConcurrentHashMap<String, Entry>> entries = new ConcurrentHashMap<>();
+
+  // the entries being loaded, removed once loaded, since the keys are partly specified by the client.
+  private final ConcurrentHashMap<String, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+
+  public CaInfoCache(SdkClient sdk, CaInfoCacheConf conf) {
+    this.sdk = notNull(sdk, "sdk");
+    if (conf == null) {
+      conf = new CaInfoCacheConf();
+    }
+    this.caInfoTtlMs = conf.getCaInfoTtl() * 1000L;
+    this.crlTtlMs = conf.getCrlTtl() * 1000L;
+  }
+
+  public SdkClient getSdk() {
+    return sdk;
+  }
+
+  public byte[] cacert(String ca) throws IOException, SdkErrorResponseException {
+    return get(ca, KEY_CACERT, caInfoTtlMs, NO_BASE_KEYS, () -> sdk.cacert(ca));
+  }
+
+  public byte[][] cacerts(String ca) throws IOException, SdkErrorResponseException {
+    return get(ca, KEY_CACERTS, caInfoTtlMs, NO_BASE_KEYS, () -> sdk.cacerts(ca));
+  }
+
+  public CertprofileInfoResponse profileInfo(String ca, String profile)
+      throws IOException, SdkErrorResponseException {
+    return get(ca, KEY_PROFILE_PREFIX + profile, caInfoTtlMs, NO_BASE_KEYS, () -> sdk.profileInfo(ca, profile));
+  }
+
+  public byte[] currentCrl(String ca) throws IOException, SdkErrorResponseException {
+    return get(ca, KEY_CRL, crlTtlMs, NO_BASE_KEYS, () -> sdk.currentCrl(ca));
+  }
+
+  /**
+   * Gets the value derived from the CA certificates, e.g. a pre-encoded response. It
+   * expires not later than the cached CA certificates.
+   * @param ca the CA name.
+   * @param key the key of the value, unique within the CA.
+   * @param loader the loader of the value.
+   * @param <T> type of the value.
+   * @return the value.
+   * @throws IOException if IO error occurs.
+   * @throws SdkErrorResponseException if the CA responds with an error.
+   */
+  public <T> T getCaDerived(String ca, String key, Loader<T> loader)
+      throws IOException, SdkErrorResponseException {
+    return get(ca, KEY_CA_DERIVED_PREFIX + key, caInfoTtlMs, CA_BASE_KEYS, loader);
+  }
+
+  /**
+   * Gets the value derived from the current CRL, e.g. a CRL wrapped in a SignedData. It
+   * expires not later than the cached CRL.
+   * @param ca the CA name.
+   * @param key the key of the value, unique within the CA.
+   * @param loader the loader of the value.
+   * @param <T> type of the value.
+   * @return the value.
+   * @throws IOException if IO error occurs.
+   * @throws SdkErrorResponseException if the CA responds with an error.
+   */
+  public <T> T getCrlDerived(String ca, String key, Loader<T> loader)
+      throws IOException, SdkErrorResponseException {
+    return get(ca, KEY_CRL_DERIVED_PREFIX + key, crlTtlMs, CRL_BASE_KEYS, loader);
+  }
+
+  /**
+   * Removes all entries of the given CA, e.g. if the CA is unknown to the CA server.
+   * @param ca the CA name.
+   */
+  public void invalidate(String ca) {
+    entries.remove(ca.toLowerCase());
+  }
+
+  /**
+   * Removes the current CRL and the values derived from it, e.g. after a certificate has been
+   * revoked.
+   * @param ca the CA name.
+   */
+  public void invalidateCrl(String ca) {
+    ConcurrentHashMap<String, Entry> caEntries = entries.get(ca.toLowerCase());
+    if (caEntries != null) {
+      caEntries.keySet().removeIf(k -> k.equals(KEY_CRL) || k.startsWith(KEY_CRL_DERIVED_PREFIX));
+    }
+  }
+
+  public void invalidateAll() {
+    entries.clear();
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> T get(String ca, String key, long ttlMs, String[] baseKeys, Loader<T> loader)
+      throws IOException, SdkErrorResponseException {
+    if (ttlMs <= 0) {
+      return load(ca, loader);
+    }
+
+    String caKey = ca.toLowerCase();
+    Entry entry = getEntry(caKey, key);
+    if (entry != null) {
+      return (T) entry.value;
+    }
+
+    // only one thread loads the missing entry, the others wait for it
+    String loadingKey = caKey + "\n" + key;
+    CompletableFuture<Object> future = new CompletableFuture<>();
+    CompletableFuture<Object> otherFuture = loading.putIfAbsent(loadingKey, future);
+    if (otherFuture != null) {
+      return (T) await(otherFuture);
+    }
+
+    try {
+      // the entry may have been loaded since the first lookup
+      entry = getEntry(caKey, key);
+      if (entry != null) {
+        future.complete(entry.value);
+        return (T) entry.value;
+      }
+
+      T value = load(ca, loader);
+      if (value != null) {
+        ConcurrentHashMap<String, Entry> caEntries = entries.computeIfAbsent(caKey, k -> new ConcurrentHashMap<>());
+        long expiresAt = System.currentTimeMillis() + ttlMs;
+        // the derived value shall not outlive the entries it is derived from
+        for (String baseKey : baseKeys) {
+          Entry baseEntry = caEntries.get(baseKey);
+          if (baseEntry != null) {
+            expiresAt = Math.min(expiresAt, baseEntry.expiresAt);
+          }
+        }
+        caEntries.put(key, new Entry(value, expiresAt));
+      }
+      future.complete(value);
+      return value;
+    } catch (IOException | SdkErrorResponseException | RuntimeException | Error ex) {
+      future.completeExceptionally(ex);
+      throw ex;
+    } finally {
+      loading.remove(loadingKey, future);
+    }
+  } // method get
+
+  private static Object await(CompletableFuture<Object> future) throws IOException, SdkErrorResponseException {
+    try {
+      return future.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while waiting for the entry being loaded", ex);
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof SdkErrorResponseException) {
+        throw (SdkErrorResponseException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      } else {
+        throw new IOException(cause);
+      }
+    }
+  } // method await
+
+  private <T> T load(String ca, Loader<T> loader) throws IOException, SdkErrorResponseException {
+    try {
+      return loader.load();
+    } catch (SdkErrorResponseException ex) {
+      if (ex.getErrorResponse().getCode() == ErrorCode.PATH_NOT_FOUND) {
+        // the CA is unknown, e.g. it has been removed.
+        invalidate(ca);
+      }
+      throw ex;
+    }
+  } // method load
+
+  private Entry getEntry(String caKey, String key) {
+    ConcurrentHashMap<String, Entry> caEntries = entries.get(caKey);
+    if (caEntries == null) {
+      return null;
+    }
+
+    Entry entry = caEntries.get(key);
+    if (entry == null) {
+      return null;
+    } else if (entry.expiresAt <= System.currentTimeMillis()) {
+      caEntries.remove(key, entry);
+      return null;
+    } else {
+      return entry;
+    }
+  } // method getEntry
+
+}
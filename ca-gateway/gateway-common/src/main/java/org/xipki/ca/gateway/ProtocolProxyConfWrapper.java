@@ -56,6 +56,8 @@ public class ProtocolProxyConfWrapper {
 
   private final SdkClient sdkClient;
 
+  private final CaInfoCache caInfoCache;
+
   private final CaNameSigners signers;
 
   private final RequestorAuthenticator authenticator;
@@ -99,6 +101,7 @@ public class ProtocolProxyConfWrapper {
 
     popControl = new PopControl(conf.getPop());
     sdkClient = new SdkClient(conf.getSdkClient());
+    caInfoCache = new CaInfoCache(sdkClient, conf.getCaInfoCache());
 
     CaNameSignersConf signersConf = conf.getSigners();
     if (signersConf == null) {
@@ -140,6 +143,10 @@ public class ProtocolProxyConfWrapper {
     return sdkClient;
   }
 
+  public CaInfoCache getCaInfoCache() {
+    return caInfoCache;
+  }
+
   public CaNameSigners getSigners() {
     return signers;
   }
@@ -153,6 +160,8 @@ public class ProtocolProxyConfWrapper {
   }
 
   public void destroy() {
+    caInfoCache.invalidateAll();
+
     if (securities != null) {
       securities.close();
     }
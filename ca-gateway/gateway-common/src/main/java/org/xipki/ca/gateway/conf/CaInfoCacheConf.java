@@ -0,0 +1,66 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.gateway.conf;
+
+import org.xipki.util.exception.InvalidConfException;
+
+/**
+ * Configuration of the cache of the CA certificates, certificate profiles and CRLs.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+public class CaInfoCacheConf {
+
+  /**
+   * Time to live in seconds of the cached CA certificates and certificate profiles, 0 to disable the cache.
+   */
+  private int caInfoTtl = 300;
+
+  /**
+   * Time to live in seconds of the cached current CRLs, 0 to disable the cache.
+   */
+  private int crlTtl = 60;
+
+  public int getCaInfoTtl() {
+    return caInfoTtl;
+  }
+
+  public void setCaInfoTtl(int caInfoTtl) {
+    this.caInfoTtl = caInfoTtl;
+  }
+
+  public int getCrlTtl() {
+    return crlTtl;
+  }
+
+  public void setCrlTtl(int crlTtl) {
+    this.crlTtl = crlTtl;
+  }
+
+  public void validate() throws InvalidConfException {
+    if (caInfoTtl < 0) {
+      throw new InvalidConfException("caInfoTtl must not be negative, but is " + caInfoTtl);
+    }
+
+    if (crlTtl < 0) {
+      throw new InvalidConfException("crlTtl must not be negative, but is " + crlTtl);
+    }
+  }
+
+}
@@ -38,6 +38,12 @@ public abstract class ProtocolProxyConf {
 
   protected SdkClientConf sdkClient;
 
+  /**
+   * Cache of the CA certificates, certificate profiles and CRLs. If not set, the default values
+   * of {@link CaInfoCacheConf} are used.
+   */
+  protected CaInfoCacheConf caInfoCache;
+
   protected Audits.AuditConf audit;
 
   protected Securities.SecurityConf security;
@@ -79,6 +85,14 @@ public abstract class ProtocolProxyConf {
     this.sdkClient = sdkClient;
   }
 
+  public CaInfoCacheConf getCaInfoCache() {
+    return caInfoCache;
+  }
+
+  public void setCaInfoCache(CaInfoCacheConf caInfoCache) {
+    this.caInfoCache = caInfoCache;
+  }
+
   public Audits.AuditConf getAudit() {
     return audit;
   }
@@ -109,6 +123,9 @@ public abstract class ProtocolProxyConf {
     notNull(pop, "pop");
     notNull(sdkClient, "sdkClient");
     notNull(security, "security");
+    if (caInfoCache != null) {
+      caInfoCache.validate();
+    }
   }
 
   protected void notNull(Object obj, String name) throws InvalidConfException {
@@ -0,0 +1,320 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.gateway.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.ca.gateway.CaInfoCache;
+import org.xipki.ca.gateway.conf.CaInfoCacheConf;
+import org.xipki.ca.sdk.SdkClient;
+import org.xipki.ca.sdk.SdkErrorResponseException;
+import org.xipki.util.exception.ErrorCode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test for {@link CaInfoCache}.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+public class CaInfoCacheTest {
+
+  private static class MockSdkClient extends SdkClient {
+
+    private final AtomicInteger cacertCalls = new AtomicInteger();
+
+    private final AtomicInteger crlCalls = new AtomicInteger();
+
+    private volatile boolean unknownCa;
+
+    // if set, cacert() signals its entry and waits until the gate is opened
+    private volatile CountDownLatch cacertEntered;
+
+    private volatile CountDownLatch cacertGate;
+
+    MockSdkClient() {
+      super("http://localhost/ca/", null, null);
+    }
+
+    @Override
+    public byte[] cacert(String ca) throws SdkErrorResponseException {
+      cacertCalls.incrementAndGet();
+      if (cacertGate != null) {
+        cacertEntered.countDown();
+        try {
+          cacertGate.await();
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+      }
+
+      if (unknownCa) {
+        throw new SdkErrorResponseException(ErrorCode.PATH_NOT_FOUND, "CA unknown");
+      }
+      return new byte[]{1};
+    }
+
+    @Override
+    public byte[] currentCrl(String ca) {
+      crlCalls.incrementAndGet();
+      return new byte[]{2};
+    }
+
+  } // class MockSdkClient
+
+  private static CaInfoCache newCache(MockSdkClient sdk, int caInfoTtl, int crlTtl) {
+    CaInfoCacheConf conf = new CaInfoCacheConf();
+    conf.setCaInfoTtl(caInfoTtl);
+    conf.setCrlTtl(crlTtl);
+    return new CaInfoCache(sdk, conf);
+  }
+
+  @Test
+  public void testCacheHit() throws Exception {
+    MockSdkClient sdk = new MockSdkClient();
+    CaInfoCache cache = newCache(sdk, 60, 60);
+
+    for (int i = 0; i < 3; i++) {
+      Assert.assertArrayEquals(new byte[]{1}, cache.cacert("myca"));
+      Assert.assertArrayEquals(new byte[]{1}, cache.cacert("MYCA"));
+    }
+    Assert.assertEquals(1, sdk.cacertCalls.get());
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    MockSdkClient sdk = new MockSdkClient();
+    CaInfoCache cache = newCache(sdk, 0, 0);
+
+    cache.cacert("myca");
+    cache.cacert("myca");
+    Assert.assertEquals(2, sdk.cacertCalls.get());
+  }
+
+  @Test
+  public void testInvalidateCrl() throws Exception {
+    MockSdkClient sdk = new MockSdkClient();
+    CaInfoCache cache = newCache(sdk, 60, 60);
+
+    AtomicInteger derivedLoads = new AtomicInteger();
+    CaInfoCache.Loader<byte[]> loader = () -> {
+      derivedLoads.incrementAndGet();
+      return cache.currentCrl("myca");
+    };
+
+    cache.cacert("myca");
+    cache.getCrlDerived("myca", "wrapped", loader);
+    cache.getCrlDerived("myca", "wrapped", loader);
+    Assert.assertEquals(1, derivedLoads.get());
+    Assert.assertEquals(1, sdk.crlCalls.get());
+
+    cache.invalidateCrl("myca");
+    cache.cacert("myca");
+    cache.getCrlDerived("myca", "wrapped", loader);
+    Assert.assertEquals(2, derivedLoads.get());
+    Assert.assertEquals(2, sdk.crlCalls.get());
+    // the CA certificate is still cached
+    Assert.assertEquals(1, sdk.cacertCalls.get());
+
+    cache.invalidateAll();
+    cache.cacert("myca");
+    Assert.assertEquals(2, sdk.cacertCalls.get());
+  }
+
+  @Test
+  public void testUnknownCaInvalidated() throws Exception {
+    MockSdkClient sdk = new MockSdkClient();
+    CaInfoCache cache = newCache(sdk, 60, 60);
+
+    cache.currentCrl("myca");
+    sdk.unknownCa = true;
+    try {
+      cache.cacert("myca");
+      Assert.fail("SdkErrorResponseException expected");
+    } catch (SdkErrorResponseException ex) {
+      Assert.assertEquals(ErrorCode.PATH_NOT_FOUND, ex.getErrorResponse().getCode());
+    }
+
+    // all entries of the CA have been removed
+    cache.currentCrl("myca");
+    Assert.assertEquals(2, sdk.crlCalls.get());
+  }
+
+  @Test
+  public void testDerivedNotOutlivingBase() throws Exception {
+    MockSdkClient sdk = new MockSdkClient();
+    CaInfoCache cache = newCache(sdk, 60, 2);
+
+    AtomicInteger derivedLoads = new AtomicInteger();
+    CaInfoCache.Loader<byte[]> loader = () -> {
+      derivedLoads.incrementAndGet();
+      return cache.currentCrl("myca");
+    };
+
+    // the CRL is cached for 2 seconds
+    cache.currentCrl("myca");
+    Thread.sleep(1200);
+
+    // derived from a CRL which expires in 0.8 seconds
+    cache.getCrlDerived("myca", "wrapped", loader);
+    Assert.assertEquals(1, derivedLoads.get());
+
+    Thread.sleep(1000);
+    cache.getCrlDerived("myca", "wrapped", loader);
+    Assert.assertEquals(2, derivedLoads.get());
+    Assert.assertEquals(2, sdk.crlCalls.get());
+  }
+
+  @Test
+  public void testConcurrentLoad() throws Exception {
+    MockSdkClient sdk = new MockSdkClient();
+    CaInfoCache cache = newCache(sdk, 60, 60);
+
+    CountDownLatch start = new CountDownLatch(1);
+    AtomicInteger loads = new AtomicInteger();
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+          cache.getCaDerived("myca", "slow", () -> {
+            loads.incrementAndGet();
+            try {
+              Thread.sleep(200);
+            } catch (InterruptedException ex) {
+              Thread.currentThread().interrupt();
+            }
+            return new byte[]{3};
+          });
+        } catch (Exception ex) {
+          throw new IllegalStateException(ex);
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    Assert.assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void testDerivedLoadsBaseConcurrently() throws Exception {
+    MockSdkClient sdk = new MockSdkClient();
+    sdk.cacertEntered = new CountDownLatch(1);
+    sdk.cacertGate = new CountDownLatch(1);
+    CaInfoCache cache = newCache(sdk, 60, 60);
+
+    List<Object> results = new ArrayList<>();
+    Thread baseThread = new Thread(() -> {
+      try {
+        byte[] value = cache.cacert("myca");
+        synchronized (results) {
+          results.add(value);
+        }
+      } catch (Exception ex) {
+        throw new IllegalStateException(ex);
+      }
+    });
+
+    // the base entry is being loaded
+    baseThread.start();
+    Assert.assertTrue(sdk.cacertEntered.await(10, TimeUnit.SECONDS));
+
+    CountDownLatch derivedStarted = new CountDownLatch(1);
+    Thread derivedThread = new Thread(() -> {
+      try {
+        byte[] value = cache.getCaDerived("myca", "signeddata", () -> {
+          derivedStarted.countDown();
+          // waits for the base entry loaded by the other thread
+          return cache.cacert("myca");
+        });
+        synchronized (results) {
+          results.add(value);
+        }
+      } catch (Exception ex) {
+        throw new IllegalStateException(ex);
+      }
+    });
+    derivedThread.start();
+    Assert.assertTrue(derivedStarted.await(10, TimeUnit.SECONDS));
+
+    // no lock is held by the loaders, other entries can be loaded meanwhile
+    Assert.assertArrayEquals(new byte[]{4}, cache.getCaDerived("myca", "other", () -> new byte[]{4}));
+    Assert.assertArrayEquals(new byte[]{2}, cache.currentCrl("myca"));
+
+    sdk.cacertGate.countDown();
+    baseThread.join(10000);
+    derivedThread.join(10000);
+    Assert.assertFalse("base loader blocked", baseThread.isAlive());
+    Assert.assertFalse("derived loader blocked", derivedThread.isAlive());
+
+    Assert.assertEquals(2, results.size());
+    for (Object result : results) {
+      Assert.assertArrayEquals(new byte[]{1}, (byte[]) result);
+    }
+    Assert.assertEquals(1, sdk.cacertCalls.get());
+  } // method testDerivedLoadsBaseConcurrently
+
+  @Test
+  public void testWaiterGetsLoadError() throws Exception {
+    MockSdkClient sdk = new MockSdkClient();
+    sdk.unknownCa = true;
+    sdk.cacertEntered = new CountDownLatch(1);
+    sdk.cacertGate = new CountDownLatch(1);
+    CaInfoCache cache = newCache(sdk, 60, 60);
+
+    Thread loaderThread = new Thread(() -> {
+      try {
+        cache.cacert("myca");
+      } catch (Exception ex) {
+        // expected
+      }
+    });
+    loaderThread.start();
+    Assert.assertTrue(sdk.cacertEntered.await(10, TimeUnit.SECONDS));
+
+    AtomicInteger errors = new AtomicInteger();
+    Thread waiterThread = new Thread(() -> {
+      try {
+        cache.getCaDerived("myca", "signeddata", () -> cache.cacert("myca"));
+      } catch (SdkErrorResponseException ex) {
+        errors.incrementAndGet();
+      } catch (Exception ex) {
+        throw new IllegalStateException(ex);
+      }
+    });
+    waiterThread.start();
+
+    Thread.sleep(100);
+    sdk.cacertGate.countDown();
+    loaderThread.join(10000);
+    waiterThread.join(10000);
+    Assert.assertEquals(1, errors.get());
+  } // method testWaiterGetsLoadError
+
+}
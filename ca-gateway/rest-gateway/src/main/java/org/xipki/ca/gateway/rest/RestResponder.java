@@ -194,6 +194,8 @@ public class RestResponder {
 
   private final SdkClient sdk;
 
+  private final CaInfoCache caInfoCache;
+
   private final SecurityFactory securityFactory;
 
   private final PopControl popControl;
@@ -208,9 +210,10 @@ public class RestResponder {
         CMD_enroll_cross_cert, CMD_enroll_serverkeygen, CMD_enroll_cert_twin, CMD_enroll_serverkeygen_twin, CMD_crl);
   }
 
-  public RestResponder(SdkClient sdk, SecurityFactory securityFactory,
+  public RestResponder(SdkClient sdk, CaInfoCache caInfoCache, SecurityFactory securityFactory,
                        RequestorAuthenticator authenticator, PopControl popControl) {
     this.sdk = notNull(sdk, "sdk");
+    this.caInfoCache = notNull(caInfoCache, "caInfoCache");
     this.securityFactory = notNull(securityFactory, "securityFactory");
     this.authenticator = notNull(authenticator, "authenticator");
     this.popControl = notNull(popControl, "popControl");
@@ -271,11 +274,14 @@ public class RestResponder {
       }
 
       if (CMD_cacert.equals(command)) {
-        return toRestResponse(HttpRespContent.ofOk(CT_pkix_cert, sdk.cacert(caName)));
+        return toRestResponse(HttpRespContent.ofOk(CT_pkix_cert, caInfoCache.cacert(caName)));
       } else if (CMD_cacerts.equals(command)) {
-        byte[][] certsBytes = sdk.cacerts(caName);
-        return toRestResponse(HttpRespContent.ofOk(CT_pem_file,
-            StringUtil.toUtf8Bytes(X509Util.encodeCertificates(certsBytes))));
+        final String ca = caName;
+        byte[] pemCerts = caInfoCache.getCaDerived(caName, "rest-cacerts-pem", () -> {
+          byte[][] certsBytes = caInfoCache.cacerts(ca);
+          return certsBytes == null ? null : StringUtil.toUtf8Bytes(X509Util.encodeCertificates(certsBytes));
+        });
+        return toRestResponse(HttpRespContent.ofOk(CT_pem_file, pemCerts));
       } else if (CMD_crl.equals(command)) {
         return toRestResponse(getCrl(caName, httpRetriever));
       }
@@ -839,6 +845,9 @@ public class RestResponder {
       sdkReq.setEntries(Collections.singletonList(entry));
       sdk.revokeCerts(caName, sdkReq);
     }
+
+    // the cached CRL does not reflect the changed status any more
+    caInfoCache.invalidateCrl(caName);
   }
 
   private HttpRespContent getCrl(String caName, HttpRequestMetadataRetriever httpRetriever)
@@ -855,7 +864,9 @@ public class RestResponder {
       }
     }
 
-    byte[] respBytes = sdk.currentCrl(caName, crlNumber, null, null);
+    // only the current CRL is cached
+    byte[] respBytes = (crlNumber == null) ? caInfoCache.currentCrl(caName)
+        : sdk.currentCrl(caName, crlNumber, null, null);
     if (respBytes == null) {
       String message = "could not get CRL";
       LOG.warn(message);
@@ -64,8 +64,8 @@ public class ProtocolServletFilter implements Filter {
     try {
       conf = new ProtocolProxyConfWrapper(conf0);
 
-      RestResponder responder = new RestResponder(conf.getSdkClient(), conf.getSecurities().getSecurityFactory(),
-          conf.getAuthenticator(), conf.getPopControl());
+      RestResponder responder = new RestResponder(conf.getSdkClient(), conf.getCaInfoCache(),
+          conf.getSecurities().getSecurityFactory(), conf.getAuthenticator(), conf.getPopControl());
 
       servlet = new HttpRestServlet();
       servlet.setLogReqResp(conf.isLogReqResp());
@@ -116,6 +116,8 @@ public class ScepResponder {
 
   private final SdkClient sdk;
 
+  private final CaInfoCache caInfoCache;
+
   private final PopControl popControl;
 
   private final CaCaps caCaps;
@@ -126,10 +128,11 @@ public class ScepResponder {
 
   private final CaNameScepSigners signers;
 
-  public ScepResponder(ScepControl control, SdkClient sdk, SecurityFactory securityFactory, CaNameScepSigners signers,
-                       RequestorAuthenticator authenticator, PopControl popControl) {
+  public ScepResponder(ScepControl control, SdkClient sdk, CaInfoCache caInfoCache, SecurityFactory securityFactory,
+                       CaNameScepSigners signers, RequestorAuthenticator authenticator, PopControl popControl) {
     this.control = notNull(control, "control");
     this.sdk = notNull(sdk, "sdk");
+    this.caInfoCache = notNull(caInfoCache, "caInfoCache");
     this.securityFactory = notNull(securityFactory, "securityFactory");
     this.authenticator = notNull(authenticator, "authenticator");
     this.popControl = notNull(popControl, "popControl");
@@ -331,21 +334,29 @@ public class ScepResponder {
         throw new OperationException(PATH_NOT_FOUND, "found na signer for CA " + caName);
       }
 
-      byte[] cacert = sdk.cacert(caName);
-      if (cacert == null) {
-        throw new OperationException(PATH_NOT_FOUND, "unknown CA " + caName);
-      }
+      // the degenerate SignedData is requested before each enrollment, build it only once.
+      byte[] resp = caInfoCache.getCaDerived(caName, "scep-cacert", () -> {
+        byte[] cacert = caInfoCache.cacert(caName);
+        if (cacert == null) {
+          return null;
+        }
+
+        CMSSignedDataGenerator cmsSignedDataGen = new CMSSignedDataGenerator();
+        try {
+          cmsSignedDataGen.addCertificate(new X509CertificateHolder(Certificate.getInstance(cacert)));
+          cmsSignedDataGen.addCertificate(signer.getCert().toBcCert());
+          CMSSignedData degenerateSignedData = cmsSignedDataGen.generate(new CMSAbsentContent());
+          return degenerateSignedData.getEncoded();
+        } catch (CMSException ex) {
+          throw new IOException("could not build CMS SignedDta", ex);
+        }
+      });
 
-      CMSSignedDataGenerator cmsSignedDataGen = new CMSSignedDataGenerator();
-      try {
-        cmsSignedDataGen.addCertificate(new X509CertificateHolder(Certificate.getInstance(cacert)));
-        cmsSignedDataGen.addCertificate(signer.getCert().toBcCert());
-        CMSSignedData degenerateSignedData = cmsSignedDataGen.generate(new CMSAbsentContent());
-        return degenerateSignedData.getEncoded();
-      } catch (IOException ex) {
-        throw new CMSException("could not build CMS SignedDta");
+      if (resp == null) {
+        throw new OperationException(PATH_NOT_FOUND, "unknown CA " + caName);
       }
-    } catch (CMSException | IOException ex) {
+      return resp;
+    } catch (IOException ex) {
       throw new OperationException(SYSTEM_FAILURE, ex.getMessage());
     }
   }
@@ -683,28 +694,33 @@ public class ScepResponder {
       throw FailInfoException.BAD_REQUEST;
     }
 
-    byte[] crl;
+    SignedData signedData;
     try {
-      crl = sdk.currentCrl(caName);
+      signedData = caInfoCache.getCrlDerived(caName, "scep-crl", () -> {
+        byte[] crl = caInfoCache.currentCrl(caName);
+        if (crl == null) {
+          return null;
+        }
+
+        CMSSignedDataGenerator cmsSignedDataGen = new CMSSignedDataGenerator();
+        cmsSignedDataGen.addCRL(new X509CRLHolder(CertificateList.getInstance(crl)));
+        try {
+          CMSSignedData cmsSignedData = cmsSignedDataGen.generate(new CMSAbsentContent());
+          return SignedData.getInstance(cmsSignedData.toASN1Structure().getContent());
+        } catch (CMSException ex) {
+          LogUtil.error(LOG, ex, "could not generate CMSSignedData");
+          throw new IOException("could not generate CMSSignedData", ex);
+        }
+      });
     } catch (IOException e) {
       throw new OperationException(SYSTEM_FAILURE, e.getMessage());
     }
 
-    if (crl == null) {
+    if (signedData == null) {
       LOG.error("found no CRL");
       throw FailInfoException.BAD_REQUEST;
     }
-    CMSSignedDataGenerator cmsSignedDataGen = new CMSSignedDataGenerator();
-    cmsSignedDataGen.addCRL(new X509CRLHolder(CertificateList.getInstance(crl)));
-
-    CMSSignedData signedData;
-    try {
-      signedData = cmsSignedDataGen.generate(new CMSAbsentContent());
-    } catch (CMSException ex) {
-      LogUtil.error(LOG, ex, "could not generate CMSSignedData");
-      throw new OperationException(SYSTEM_FAILURE, ex);
-    }
-    return SignedData.getInstance(signedData.toASN1Structure().getContent());
+    return signedData;
   } // method getCrl
 
   private ContentInfo encodeResponse(
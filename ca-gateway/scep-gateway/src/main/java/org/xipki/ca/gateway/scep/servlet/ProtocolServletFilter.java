@@ -67,7 +67,7 @@ public class ProtocolServletFilter implements Filter {
       conf = new ProtocolProxyConfWrapper(conf0);
 
       CaNameScepSigners signers = new CaNameScepSigners(conf.getSigners());
-      ScepResponder responder = new ScepResponder(conf0.getScep(), conf.getSdkClient(),
+      ScepResponder responder = new ScepResponder(conf0.getScep(), conf.getSdkClient(), conf.getCaInfoCache(),
           conf.getSecurities().getSecurityFactory(),  signers, conf.getAuthenticator(), conf.getPopControl());
 
       servlet = new HttpScepServlet();
@@ -0,0 +1,588 @@
+/*
+ *
+ * Copyright (c) 2013 - 2022 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.sdk;
+
+import java.lang.reflect.*;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Minimal CBOR (RFC 8949) codec of the SDK messages. Like the JSON binding, a message is
+ * mapped via its properties (pairs of public getter and setter): a bean is encoded as map
+ * with the property names as keys, {@code null} properties are omitted, enums are encoded
+ * by name. Unlike JSON, byte arrays are encoded as raw byte strings, and big integers as
+ * integers or bignums (tag 2 and 3).
+ *
+ * <p>Only definite lengths are used and supported.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+class CborCodec {
+
+  private static final class Property {
+
+    private final String name;
+
+    private final Method getter;
+
+    private final Method setter;
+
+    private final Type type;
+
+    Property(String name, Method getter, Method setter) {
+      this.name = name;
+      this.getter = getter;
+      this.setter = setter;
+      this.type = setter.getGenericParameterTypes()[0];
+    }
+
+  } // class Property
+
+  private static final class BeanType {
+
+    private final Constructor<?> constructor;
+
+    private final Property[] properties;
+
+    private final Map<String, Property> propertyMap = new HashMap<>();
+
+    BeanType(Class<?> clazz) {
+      Constructor<?> cons;
+      try {
+        cons = clazz.getDeclaredConstructor();
+        cons.setAccessible(true);
+      } catch (NoSuchMethodException ex) {
+        // can be encoded, but not decoded
+        cons = null;
+      }
+      this.constructor = cons;
+
+      Map<String, Method> setters = new HashMap<>();
+      for (Method m : clazz.getMethods()) {
+        if (m.getName().startsWith("set") && m.getParameterCount() == 1 && !Modifier.isStatic(m.getModifiers())) {
+          setters.put(m.getName().substring(3) + "/" + m.getParameterTypes()[0].getName(), m);
+        }
+      }
+
+      List<Property> list = new ArrayList<>();
+      for (Method m : clazz.getMethods()) {
+        if (m.getParameterCount() != 0 || Modifier.isStatic(m.getModifiers())
+            || m.getDeclaringClass() == Object.class) {
+          continue;
+        }
+
+        String name = m.getName();
+        String suffix;
+        if (name.startsWith("get") && name.length() > 3) {
+          suffix = name.substring(3);
+        } else if (name.startsWith("is") && name.length() > 2 && m.getReturnType() == boolean.class) {
+          suffix = name.substring(2);
+        } else {
+          continue;
+        }
+
+        Method setter = setters.get(suffix + "/" + m.getReturnType().getName());
+        if (setter != null) {
+          String propName = Character.toLowerCase(suffix.charAt(0)) + suffix.substring(1);
+          list.add(new Property(propName, m, setter));
+        }
+      }
+
+      // deterministic order of the encoded properties
+      list.sort(Comparator.comparing(p -> p.name));
+      this.properties = list.toArray(new Property[0]);
+      for (Property p : properties) {
+        propertyMap.put(p.name, p);
+      }
+    } // constructor
+
+  } // class BeanType
+
+  private static final int MAJOR_UNSIGNED = 0;
+
+  private static final int MAJOR_NEGATIVE = 1;
+
+  private static final int MAJOR_BYTES = 2;
+
+  private static final int MAJOR_TEXT = 3;
+
+  private static final int MAJOR_ARRAY = 4;
+
+  private static final int MAJOR_MAP = 5;
+
+  private static final int MAJOR_TAG = 6;
+
+  private static final int MAJOR_SIMPLE = 7;
+
+  private static final int FALSE = 0xF4;
+
+  private static final int TRUE = 0xF5;
+
+  private static final int NULL = 0xF6;
+
+  private static final int TAG_POSITIVE_BIGNUM = 2;
+
+  private static final int TAG_NEGATIVE_BIGNUM = 3;
+
+  private static final int MAX_DEPTH = 32;
+
+  private static final Map<Class<?>, BeanType> BEAN_TYPES = new ConcurrentHashMap<>();
+
+  private byte[] buf;
+
+  private int pos;
+
+  // only for decoding
+  private int limit;
+
+  private CborCodec(byte[] buf, int limit) {
+    this.buf = buf;
+    this.limit = limit;
+  }
+
+  static byte[] encode(Object obj) {
+    CborCodec encoder = new CborCodec(new byte[1024], 0);
+    encoder.writeValue(obj, 0);
+    return Arrays.copyOf(encoder.buf, encoder.pos);
+  }
+
+  /**
+   * Decodes the CBOR-encoded object.
+   * @param encoded the encoded object.
+   * @param clazz the class of the object.
+   * @param <T> type of the object.
+   * @return the decoded object.
+   * @throws IllegalArgumentException if the encoded object is invalid.
+   */
+  static <T> T decode(byte[] encoded, Class<T> clazz) {
+    CborCodec decoder = new CborCodec(encoded, encoded.length);
+    Object obj = decoder.readValue(clazz, 0);
+    if (decoder.pos != decoder.limit) {
+      throw new IllegalArgumentException("invalid CBOR: trailing bytes");
+    }
+    return clazz.cast(obj);
+  }
+
+  private static BeanType beanType(Class<?> clazz) {
+    return BEAN_TYPES.computeIfAbsent(clazz, BeanType::new);
+  }
+
+  // ------------------------------------------------------------------------------------
+  // encoder
+  // ------------------------------------------------------------------------------------
+
+  private void writeValue(Object value, int depth) {
+    if (depth > MAX_DEPTH) {
+      throw new IllegalArgumentException("nesting too deep");
+    }
+
+    if (value == null) {
+      writeByte(NULL);
+    } else if (value instanceof byte[]) {
+      byte[] bytes = (byte[]) value;
+      writeHeader(MAJOR_BYTES, bytes.length);
+      writeBytes(bytes);
+    } else if (value instanceof String) {
+      byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+      writeHeader(MAJOR_TEXT, bytes.length);
+      writeBytes(bytes);
+    } else if (value instanceof Boolean) {
+      writeByte((Boolean) value ? TRUE : FALSE);
+    } else if (value instanceof Integer || value instanceof Long
+        || value instanceof Short || value instanceof Byte) {
+      writeLong(((Number) value).longValue());
+    } else if (value instanceof BigInteger) {
+      writeBigInteger((BigInteger) value);
+    } else if (value instanceof Enum) {
+      writeValue(((Enum<?>) value).name(), depth);
+    } else if (value instanceof Collection) {
+      Collection<?> coll = (Collection<?>) value;
+      writeHeader(MAJOR_ARRAY, coll.size());
+      for (Object m : coll) {
+        writeValue(m, depth + 1);
+      }
+    } else if (value.getClass().isArray()) {
+      int len = Array.getLength(value);
+      writeHeader(MAJOR_ARRAY, len);
+      for (int i = 0; i < len; i++) {
+        writeValue(Array.get(value, i), depth + 1);
+      }
+    } else {
+      writeBean(value, depth);
+    }
+  } // method writeValue
+
+  private void writeBean(Object bean, int depth) {
+    Property[] properties = beanType(bean.getClass()).properties;
+    Object[] values = new Object[properties.length];
+    int count = 0;
+    for (int i = 0; i < properties.length; i++) {
+      try {
+        values[i] = properties[i].getter.invoke(bean);
+      } catch (IllegalAccessException | InvocationTargetException ex) {
+        throw new IllegalStateException("could not get property " + properties[i].name, ex);
+      }
+
+      if (values[i] != null) {
+        count++;
+      }
+    }
+
+    writeHeader(MAJOR_MAP, count);
+    for (int i = 0; i < properties.length; i++) {
+      if (values[i] != null) {
+        writeValue(properties[i].name, depth);
+        writeValue(values[i], depth + 1);
+      }
+    }
+  } // method writeBean
+
+  private void writeLong(long value) {
+    if (value >= 0) {
+      writeHeader(MAJOR_UNSIGNED, value);
+    } else {
+      writeHeader(MAJOR_NEGATIVE, -1 - value);
+    }
+  }
+
+  private void writeBigInteger(BigInteger value) {
+    if (value.bitLength() < 64) {
+      writeLong(value.longValue());
+      return;
+    }
+
+    BigInteger magnitude;
+    if (value.signum() >= 0) {
+      writeHeader(MAJOR_TAG, TAG_POSITIVE_BIGNUM);
+      magnitude = value;
+    } else {
+      writeHeader(MAJOR_TAG, TAG_NEGATIVE_BIGNUM);
+      magnitude = value.negate().subtract(BigInteger.ONE);
+    }
+
+    byte[] bytes = magnitude.toByteArray();
+    // remove the leading sign byte
+    int off = (bytes[0] == 0 && bytes.length > 1) ? 1 : 0;
+    writeHeader(MAJOR_BYTES, bytes.length - off);
+    ensureCapacity(bytes.length - off);
+    System.arraycopy(bytes, off, buf, pos, bytes.length - off);
+    pos += bytes.length - off;
+  } // method writeBigInteger
+
+  private void writeHeader(int major, long len) {
+    int type = major << 5;
+    if (len < 24) {
+      writeByte(type | (int) len);
+    } else if (len <= 0xFF) {
+      writeByte(type | 24);
+      writeByte((int) len);
+    } else if (len <= 0xFFFF) {
+      writeByte(type | 25);
+      writeByte((int) (len >>> 8));
+      writeByte((int) len);
+    } else if (len <= 0xFFFFFFFFL) {
+      writeByte(type | 26);
+      for (int shift = 24; shift >= 0; shift -= 8) {
+        writeByte((int) (len >>> shift));
+      }
+    } else {
+      writeByte(type | 27);
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        writeByte((int) (len >>> shift));
+      }
+    }
+  } // method writeHeader
+
+  private void writeByte(int b) {
+    ensureCapacity(1);
+    buf[pos++] = (byte) b;
+  }
+
+  private void writeBytes(byte[] bytes) {
+    ensureCapacity(bytes.length);
+    System.arraycopy(bytes, 0, buf, pos, bytes.length);
+    pos += bytes.length;
+  }
+
+  private void ensureCapacity(int len) {
+    if (pos + len > buf.length) {
+      buf = Arrays.copyOf(buf, Math.max(buf.length << 1, pos + len));
+    }
+  }
+
+  // ------------------------------------------------------------------------------------
+  // decoder
+  // ------------------------------------------------------------------------------------
+
+  private Object readValue(Type type, int depth) {
+    if (depth > MAX_DEPTH) {
+      throw new IllegalArgumentException("invalid CBOR: nesting too deep");
+    }
+
+    int initialByte = peekByte();
+    if (initialByte == NULL) {
+      pos++;
+      return null;
+    }
+
+    Class<?> clazz = rawClass(type);
+    if (clazz == byte[].class) {
+      return readBytes(MAJOR_BYTES);
+    } else if (clazz == String.class) {
+      return new String(readBytes(MAJOR_TEXT), StandardCharsets.UTF_8);
+    } else if (clazz == boolean.class || clazz == Boolean.class) {
+      int b = readByte();
+      if (b != TRUE && b != FALSE) {
+        throw new IllegalArgumentException("invalid CBOR: expected boolean");
+      }
+      return b == TRUE;
+    } else if (clazz == int.class || clazz == Integer.class) {
+      long value = readLong();
+      if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("invalid CBOR: integer out of range");
+      }
+      return (int) value;
+    } else if (clazz == long.class || clazz == Long.class) {
+      return readLong();
+    } else if (clazz == BigInteger.class) {
+      return readBigInteger();
+    } else if (clazz.isEnum()) {
+      String name = new String(readBytes(MAJOR_TEXT), StandardCharsets.UTF_8);
+      return enumValueOf(clazz, name);
+    } else if (clazz.isArray()) {
+      Class<?> componentType = clazz.getComponentType();
+      int len = readLength(MAJOR_ARRAY);
+      Object array = Array.newInstance(componentType, len);
+      for (int i = 0; i < len; i++) {
+        Array.set(array, i, readValue(componentType, depth + 1));
+      }
+      return array;
+    } else if (List.class.isAssignableFrom(clazz) || clazz == Collection.class) {
+      Type elementType = (type instanceof ParameterizedType)
+          ? ((ParameterizedType) type).getActualTypeArguments()[0] : Object.class;
+      int len = readLength(MAJOR_ARRAY);
+      // the length is bound by the number of remaining bytes
+      List<Object> list = new ArrayList<>(Math.min(len, limit - pos));
+      for (int i = 0; i < len; i++) {
+        list.add(readValue(elementType, depth + 1));
+      }
+      return list;
+    } else {
+      return readBean(clazz, depth);
+    }
+  } // method readValue
+
+  private Object readBean(Class<?> clazz, int depth) {
+    BeanType beanType = beanType(clazz);
+    if (beanType.constructor == null) {
+      throw new IllegalArgumentException("cannot decode " + clazz.getName());
+    }
+
+    Object bean;
+    try {
+      bean = beanType.constructor.newInstance();
+    } catch (InstantiationException | IllegalAccessException | InvocationTargetException ex) {
+      throw new IllegalStateException("could not create " + clazz.getName(), ex);
+    }
+
+    int count = readLength(MAJOR_MAP);
+    for (int i = 0; i < count; i++) {
+      String name = new String(readBytes(MAJOR_TEXT), StandardCharsets.UTF_8);
+      Property property = beanType.propertyMap.get(name);
+      if (property == null) {
+        // ignore unknown properties, as the JSON binding does
+        skipValue(depth + 1);
+        continue;
+      }
+
+      Object value = readValue(property.type, depth + 1);
+      if (value == null && property.setter.getParameterTypes()[0].isPrimitive()) {
+        continue;
+      }
+
+      try {
+        property.setter.invoke(bean, value);
+      } catch (IllegalAccessException | InvocationTargetException ex) {
+        throw new IllegalArgumentException("could not set property " + name, ex);
+      }
+    }
+
+    return bean;
+  } // method readBean
+
+  private void skipValue(int depth) {
+    if (depth > MAX_DEPTH) {
+      throw new IllegalArgumentException("invalid CBOR: nesting too deep");
+    }
+
+    int major = peekByte() >>> 5;
+    long arg = readHeader(major);
+    switch (major) {
+      case MAJOR_BYTES:
+      case MAJOR_TEXT:
+        checkRemaining(arg);
+        pos += (int) arg;
+        break;
+      case MAJOR_ARRAY:
+        for (long i = 0; i < arg; i++) {
+          skipValue(depth + 1);
+        }
+        break;
+      case MAJOR_MAP:
+        for (long i = 0; i < 2 * arg; i++) {
+          skipValue(depth + 1);
+        }
+        break;
+      case MAJOR_TAG:
+        skipValue(depth + 1);
+        break;
+      default:
+        // integers and simple values have no content
+        break;
+    }
+  } // method skipValue
+
+  private long readLong() {
+    int major = peekByte() >>> 5;
+    if (major != MAJOR_UNSIGNED && major != MAJOR_NEGATIVE) {
+      throw new IllegalArgumentException("invalid CBOR: expected integer");
+    }
+
+    long arg = readHeader(major);
+    if (arg < 0) {
+      throw new IllegalArgumentException("invalid CBOR: integer out of range");
+    }
+    return major == MAJOR_UNSIGNED ? arg : -1 - arg;
+  } // method readLong
+
+  private BigInteger readBigInteger() {
+    int major = peekByte() >>> 5;
+    if (major != MAJOR_TAG) {
+      return BigInteger.valueOf(readLong());
+    }
+
+    long tag = readHeader(MAJOR_TAG);
+    if (tag != TAG_POSITIVE_BIGNUM && tag != TAG_NEGATIVE_BIGNUM) {
+      throw new IllegalArgumentException("invalid CBOR: unsupported tag " + tag);
+    }
+
+    BigInteger magnitude = new BigInteger(1, readBytes(MAJOR_BYTES));
+    return tag == TAG_POSITIVE_BIGNUM ? magnitude : magnitude.negate().subtract(BigInteger.ONE);
+  } // method readBigInteger
+
+  private byte[] readBytes(int expectedMajor) {
+    int len = readLength(expectedMajor);
+    checkRemaining(len);
+    byte[] bytes = Arrays.copyOfRange(buf, pos, pos + len);
+    pos += len;
+    return bytes;
+  }
+
+  private int readLength(int expectedMajor) {
+    int major = peekByte() >>> 5;
+    if (major != expectedMajor) {
+      throw new IllegalArgumentException("invalid CBOR: expected major type " + expectedMajor + ", but is " + major);
+    }
+
+    long len = readHeader(major);
+    if (len < 0 || len > limit - pos) {
+      // each element requires at least one byte
+      throw new IllegalArgumentException("invalid CBOR: length too large");
+    }
+    return (int) len;
+  } // method readLength
+
+  // returns the argument of the header
+  private long readHeader(int major) {
+    int info = readByte() & 0x1F;
+    if (major == MAJOR_SIMPLE) {
+      if (info >= 24) {
+        throw new IllegalArgumentException("invalid CBOR: unsupported simple value");
+      }
+      return info;
+    }
+
+    if (info < 24) {
+      return info;
+    }
+
+    int numBytes;
+    switch (info) {
+      case 24:
+        numBytes = 1;
+        break;
+      case 25:
+        numBytes = 2;
+        break;
+      case 26:
+        numBytes = 4;
+        break;
+      case 27:
+        numBytes = 8;
+        break;
+      default:
+        throw new IllegalArgumentException("invalid CBOR: indefinite length is not supported");
+    }
+
+    long value = 0;
+    for (int i = 0; i < numBytes; i++) {
+      value = (value << 8) | readByte();
+    }
+    return value;
+  } // method readHeader
+
+  private int peekByte() {
+    checkRemaining(1);
+    return buf[pos] & 0xFF;
+  }
+
+  private int readByte() {
+    checkRemaining(1);
+    return buf[pos++] & 0xFF;
+  }
+
+  private void checkRemaining(long len) {
+    if (len < 0 || len > limit - pos) {
+      throw new IllegalArgumentException("invalid CBOR: unexpected end of data");
+    }
+  }
+
+  private static Class<?> rawClass(Type type) {
+    if (type instanceof Class) {
+      return (Class<?>) type;
+    } else if (type instanceof ParameterizedType) {
+      return (Class<?>) ((ParameterizedType) type).getRawType();
+    } else {
+      throw new IllegalArgumentException("unsupported type " + type);
+    }
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static Object enumValueOf(Class<?> clazz, String name) {
+    try {
+      return Enum.valueOf((Class<? extends Enum>) clazz, name);
+    } catch (IllegalArgumentException ex) {
+      throw new IllegalArgumentException("invalid CBOR: unknown " + clazz.getSimpleName() + " " + name);
+    }
+  }
+
+}
@@ -36,6 +36,7 @@ package org.xipki.ca.sdk;
 
 import org.bouncycastle.asn1.x500.X500Name;
 import org.xipki.security.KeyCertBytesPair;
+import org.xipki.util.Args;
 import org.xipki.util.exception.ErrorCode;
 import org.xipki.util.exception.ObjectCreationException;
 import org.xipki.util.http.HttpRespContent;
@@ -48,7 +49,9 @@ import java.io.IOException;
 import java.math.BigInteger;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.xipki.ca.sdk.SdkConstants.*;
 
@@ -61,16 +64,24 @@ import static org.xipki.ca.sdk.SdkConstants.*;
 
 public class SdkClient {
 
-  private static final String CONTENT_TYPE_JSON = "application/json";
-
   private final String serverUrl;
 
   private final XiHttpClient client;
 
+  private SdkEncoding encoding = SdkEncoding.JSON;
+
+  private final Map<String, Integer> readTimeouts = new HashMap<>();
+
   public SdkClient(SdkClientConf conf) throws ObjectCreationException {
     this.serverUrl = conf.getServerUrl();
     SslContextConf sdkSslConf = SslContextConf.ofSslConf(conf.getSsl());
-    this.client = new XiHttpClient(sdkSslConf.getSslSocketFactory(), sdkSslConf.buildHostnameVerifier());
+    this.client = new XiHttpClient(sdkSslConf, conf.getHttp());
+    if (conf.getEncoding() != null) {
+      this.encoding = conf.getEncoding();
+    }
+    if (conf.getReadTimeouts() != null) {
+      this.readTimeouts.putAll(conf.getReadTimeouts());
+    }
   }
 
   public SdkClient(String serverUrl, SSLSocketFactory sslSocketFactory, HostnameVerifier hostnameVerifier) {
@@ -78,27 +89,69 @@ public class SdkClient {
     this.client = new XiHttpClient(sslSocketFactory, hostnameVerifier);
   }
 
+  public SdkEncoding getEncoding() {
+    return encoding;
+  }
+
+  /**
+   * Sets the encoding of the requests and the expected encoding of the responses.
+   * @param encoding the encoding, default to {@link SdkEncoding#JSON}.
+   */
+  public void setEncoding(SdkEncoding encoding) {
+    this.encoding = Args.notNull(encoding, "encoding");
+  }
+
+  /**
+   * Returns the metrics of the HTTP requests sent to the server.
+   * @return the metrics.
+   * @since 6.0.1
+   */
+  public XiHttpClient.Metrics getHttpMetrics() {
+    return client.getMetrics();
+  }
+
   public byte[] send(String ca, String command, SdkRequest request)
       throws IOException, SdkErrorResponseException {
-    String ct = request == null ? null : CONTENT_TYPE_JSON;
+    return send0(ca, command, request).getContent();
+  } // method send
+
+  private <T extends SdkResponse> T send(String ca, String command, SdkRequest request, Class<T> responseClass)
+      throws IOException, SdkErrorResponseException {
+    HttpRespContent resp = send0(ca, command, request);
+    return SdkMessage.decode(resp.getContent(), responseEncoding(resp), responseClass);
+  }
+
+  private HttpRespContent send0(String ca, String command, SdkRequest request)
+      throws IOException, SdkErrorResponseException {
+    String ct = encoding.getContentType();
+    Integer readTimeout = readTimeouts.get(command);
+    int timeout = readTimeout == null ? -1 : readTimeout;
+
     HttpRespContent resp;
     if (request == null) {
-      resp = client.httpGet(serverUrl + ca + "/" + command);
+      resp = client.httpGet(serverUrl + ca + "/" + command, ct, timeout);
     } else {
-      resp = client.httpPost(serverUrl + ca + "/" + command, ct, request.encode(), CONTENT_TYPE_JSON);
+      resp = client.httpPost(serverUrl + ca + "/" + command, ct, request.encode(encoding), ct, timeout);
     }
 
     if (resp.isOK()) {
-      return resp.getContent();
+      return resp;
     }
 
     byte[] errorContent = resp.getContent();
-    if (errorContent == null) {
+    if (errorContent == null || errorContent.length == 0) {
       throw new SdkErrorResponseException(ErrorCode.SYSTEM_FAILURE, null);
     } else {
-      throw new SdkErrorResponseException(ErrorResponse.decode(errorContent));
+      throw new SdkErrorResponseException(
+          SdkMessage.decode(errorContent, responseEncoding(resp), ErrorResponse.class));
     }
-  } // method send
+  } // method send0
+
+  private static SdkEncoding responseEncoding(HttpRespContent resp) {
+    // servers not supporting the binary encoding respond always in JSON
+    SdkEncoding respEncoding = SdkEncoding.ofContentType(resp.getContentType());
+    return respEncoding == null ? SdkEncoding.JSON : respEncoding;
+  }
 
   public boolean healthy(String ca) {
     try {
@@ -110,15 +163,13 @@ public class SdkClient {
   }
 
   public byte[] cacert(String ca) throws IOException, SdkErrorResponseException {
-    byte[] respBytes = send(ca, CMD_cacert, null);
-    CertChainResponse resp = CertChainResponse.decode(respBytes);
+    CertChainResponse resp = send(ca, CMD_cacert, null, CertChainResponse.class);
     byte[][] certs = resp.getCertificates();
     return certs == null || certs.length == 0 ? null : certs[0];
   }
 
   public byte[][] cacerts(String ca) throws IOException, SdkErrorResponseException {
-    byte[] respBytes = send(ca, CMD_cacert, null);
-    CertChainResponse resp = CertChainResponse.decode(respBytes);
+    CertChainResponse resp = send(ca, CMD_cacert, null, CertChainResponse.class);
     return resp.getCertificates();
   }
 
@@ -126,16 +177,14 @@ public class SdkClient {
       throws IOException, SdkErrorResponseException {
     CertprofileInfoRequest req = new CertprofileInfoRequest();
     req.setProfile(profileName);
-    byte[] respBytes = send(ca, CMD_profileinfo, req);
-    return CertprofileInfoResponse.decode(respBytes);
+    return send(ca, CMD_profileinfo, req, CertprofileInfoResponse.class);
   }
 
   public byte[] generateCrl(String ca, String crldp)
       throws IOException, SdkErrorResponseException {
     GenCRLRequest req = new GenCRLRequest();
     req.setCrlDp(crldp);
-    byte[] respBytes = send(ca, CMD_gen_crl, req);
-    CrlResponse resp = CrlResponse.decode(respBytes);
+    CrlResponse resp = send(ca, CMD_gen_crl, req, CrlResponse.class);
     return resp.getCrl();
   }
 
@@ -149,8 +198,7 @@ public class SdkClient {
     req.setCrlNumber(crlNumber);
     req.setCrlDp(crlDp);
     req.setThisUpdate(thisUpdate == null ? null : thisUpdate.getTime() / 1000);
-    byte[] respBytes = send(ca, CMD_crl, req);
-    CrlResponse resp = CrlResponse.decode(respBytes);
+    CrlResponse resp = send(ca, CMD_crl, req, CrlResponse.class);
     return resp.getCrl();
   }
 
@@ -160,8 +208,7 @@ public class SdkClient {
     req.setCaCertMode(CertsMode.NONE);
     req.setEntries(Collections.singletonList(reqEntry));
 
-    byte[] respBytes = send(ca, cmd, req);
-    EnrollOrPollCertsResponse resp = EnrollOrPollCertsResponse.decode(respBytes);
+    EnrollOrPollCertsResponse resp = send(ca, cmd, req, EnrollOrPollCertsResponse.class);
     EnrollOrPullCertResponseEntry rEntry = resp.getEntries().get(0);
     byte[] cert = rEntry.getCert();
     if (cert == null) {
@@ -176,8 +223,7 @@ public class SdkClient {
     req.setCaCertMode(CertsMode.NONE);
     req.setEntries(Collections.singletonList(reqEntry));
 
-    byte[] respBytes = send(ca, cmd, req);
-    EnrollOrPollCertsResponse resp = EnrollOrPollCertsResponse.decode(respBytes);
+    EnrollOrPollCertsResponse resp = send(ca, cmd, req, EnrollOrPollCertsResponse.class);
     EnrollOrPullCertResponseEntry rEntry = resp.getEntries().get(0);
     if (rEntry.getCert() == null || rEntry.getPrivateKey() == null) {
       throw new SdkErrorResponseException(ErrorCode.SYSTEM_FAILURE, "error " + func);
@@ -231,25 +277,24 @@ public class SdkClient {
 
   public EnrollOrPollCertsResponse enrollCerts(String ca, EnrollCertsRequest req)
       throws IOException, SdkErrorResponseException {
-    byte[] respBytes = send(ca, CMD_enroll, req);
-    return checkEnrollResp(respBytes, req);
+    EnrollOrPollCertsResponse resp = send(ca, CMD_enroll, req, EnrollOrPollCertsResponse.class);
+    return checkEnrollResp(resp, req);
   }
 
   public EnrollOrPollCertsResponse enrollCrossCerts(String ca, EnrollCertsRequest req)
       throws IOException, SdkErrorResponseException {
-    byte[] respBytes = send(ca, CMD_enroll_cross, req);
-    return checkEnrollResp(respBytes, req);
+    EnrollOrPollCertsResponse resp = send(ca, CMD_enroll_cross, req, EnrollOrPollCertsResponse.class);
+    return checkEnrollResp(resp, req);
   }
 
   public EnrollOrPollCertsResponse reenrollCerts(String ca, EnrollCertsRequest req)
       throws IOException, SdkErrorResponseException {
-    byte[] respBytes = send(ca, CMD_reenroll, req);
-    return checkEnrollResp(respBytes, req);
+    EnrollOrPollCertsResponse resp = send(ca, CMD_reenroll, req, EnrollOrPollCertsResponse.class);
+    return checkEnrollResp(resp, req);
   }
 
-  private EnrollOrPollCertsResponse checkEnrollResp(byte[] respBytes, EnrollCertsRequest req)
+  private EnrollOrPollCertsResponse checkEnrollResp(EnrollOrPollCertsResponse resp, EnrollCertsRequest req)
       throws IOException {
-    EnrollOrPollCertsResponse resp = EnrollOrPollCertsResponse.decode(respBytes);
     List<EnrollOrPullCertResponseEntry> entries = resp.getEntries();
     int expectedSize = req.getEntries().size();
     int size = entries == null ? 0 : entries.size();
@@ -273,26 +318,22 @@ public class SdkClient {
 
   public EnrollOrPollCertsResponse pollCerts(String ca, PollCertRequest req)
       throws IOException, SdkErrorResponseException {
-    byte[] respBytes = send(ca, CMD_poll_cert, req);
-    return EnrollOrPollCertsResponse.decode(respBytes);
+    return send(ca, CMD_poll_cert, req, EnrollOrPollCertsResponse.class);
   }
 
   public RevokeCertsResponse revokeCerts(String ca, RevokeCertsRequest req)
       throws IOException, SdkErrorResponseException {
-    byte[] respBytes = send(ca, CMD_revoke_cert, req);
-    return RevokeCertsResponse.decode(respBytes);
+    return send(ca, CMD_revoke_cert, req, RevokeCertsResponse.class);
   }
 
   public UnSuspendOrRemoveCertsResponse unsuspendCerts(String ca, UnsuspendOrRemoveRequest req)
       throws IOException, SdkErrorResponseException {
-    byte[] respBytes = send(ca, CMD_unsuspend_cert, req);
-    return UnSuspendOrRemoveCertsResponse.decode(respBytes);
+    return send(ca, CMD_unsuspend_cert, req, UnSuspendOrRemoveCertsResponse.class);
   }
 
   public UnSuspendOrRemoveCertsResponse removeCerts(String ca, UnsuspendOrRemoveRequest req)
       throws IOException, SdkErrorResponseException {
-    byte[] respBytes = send(ca, CMD_remove_cert, req);
-    return UnSuspendOrRemoveCertsResponse.decode(respBytes);
+    return send(ca, CMD_remove_cert, req, UnSuspendOrRemoveCertsResponse.class);
   }
 
   public byte[] getCert(String caName, X500Name issuer, BigInteger serialNumber)
@@ -300,8 +341,7 @@ public class SdkClient {
     GetCertRequest req = new GetCertRequest();
     req.setIssuer(new X500NameType(issuer));
     req.setSerialNumber(serialNumber);
-    byte[] respBytes = send(caName, CMD_get_cert, req);
-    PayloadResponse resp = PayloadResponse.decode(respBytes);
+    PayloadResponse resp = send(caName, CMD_get_cert, req, PayloadResponse.class);
     return resp.getPayload();
   }
 
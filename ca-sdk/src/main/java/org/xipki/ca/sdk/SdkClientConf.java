@@ -20,9 +20,11 @@ package org.xipki.ca.sdk;
 import com.alibaba.fastjson.JSON;
 import org.xipki.util.IoUtil;
 import org.xipki.util.exception.InvalidConfException;
+import org.xipki.util.http.HttpClientConf;
 import org.xipki.util.http.SslConf;
 
 import java.io.IOException;
+import java.util.Map;
 
 /**
  *
@@ -36,6 +38,22 @@ public class SdkClientConf {
 
   private SslConf ssl;
 
+  /**
+   * Encoding of the messages, default to JSON. Set it to CBOR to use the binary encoding.
+   */
+  private SdkEncoding encoding;
+
+  /**
+   * Configuration of the HTTP connections, e.g. timeouts and limit of the concurrent connections.
+   */
+  private HttpClientConf http;
+
+  /**
+   * Read timeout in milliseconds per command (e.g. enroll, gen_crl), overwrites the readTimeout
+   * of {@link #http}.
+   */
+  private Map<String, Integer> readTimeouts;
+
   public String getServerUrl() {
     return serverUrl;
   }
@@ -52,11 +70,49 @@ public class SdkClientConf {
     this.ssl = ssl;
   }
 
+  public SdkEncoding getEncoding() {
+    return encoding;
+  }
+
+  public void setEncoding(SdkEncoding encoding) {
+    this.encoding = encoding;
+  }
+
+  public HttpClientConf getHttp() {
+    return http;
+  }
+
+  public void setHttp(HttpClientConf http) {
+    this.http = http;
+  }
+
+  public Map<String, Integer> getReadTimeouts() {
+    return readTimeouts;
+  }
+
+  public void setReadTimeouts(Map<String, Integer> readTimeouts) {
+    this.readTimeouts = readTimeouts;
+  }
+
   public void validate() throws InvalidConfException {
     if (ssl == null) {
       throw new InvalidConfException("ssl must not be null");
     }
     ssl.validate();
+
+    if (http != null) {
+      http.validate();
+    }
+
+    if (readTimeouts != null) {
+      for (Map.Entry<String, Integer> entry : readTimeouts.entrySet()) {
+        Integer timeout = entry.getValue();
+        if (timeout == null || timeout < 0) {
+          throw new InvalidConfException("readTimeouts[" + entry.getKey() + "] must not be negative, but is "
+              + timeout);
+        }
+      }
+    }
   }
 
   public static SdkClientConf decode(byte[] encoded) throws InvalidConfException {
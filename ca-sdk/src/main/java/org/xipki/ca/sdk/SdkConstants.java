@@ -56,6 +56,12 @@ public class SdkConstants {
 
   public static final String CMD_crl = "crl";
 
+  /**
+   * Download of the current CRL as raw DER bytes (application/pkix-crl) via HTTP GET,
+   * supports the conditional requests with If-None-Match and If-Modified-Since.
+   */
+  public static final String CMD_crl_der = "crl_der";
+
   public static final String CMD_gen_crl = "gen_crl";
 
   public static final String CMD_revoke_pending_cert = "revoke_pending_cert";
@@ -0,0 +1,85 @@
+/*
+ *
+ * Copyright (c) 2013 - 2022 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.sdk;
+
+/**
+ * Wire format of the SDK messages.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+public enum SdkEncoding {
+
+  /**
+   * JSON, binary values are base64-encoded.
+   */
+  JSON("application/json"),
+
+  /**
+   * CBOR (RFC 8949), binary values are encoded as raw byte strings.
+   */
+  CBOR("application/cbor");
+
+  private final String contentType;
+
+  SdkEncoding(String contentType) {
+    this.contentType = contentType;
+  }
+
+  public String getContentType() {
+    return contentType;
+  }
+
+  /**
+   * Returns the encoding for the given content type.
+   * @param contentType the content type, may contain parameters, e.g. "; charset=UTF-8".
+   * @return the encoding, or {@code null} if the content type is not supported.
+   */
+  public static SdkEncoding ofContentType(String contentType) {
+    if (contentType == null) {
+      return null;
+    }
+
+    int idx = contentType.indexOf(';');
+    String mimeType = (idx == -1 ? contentType : contentType.substring(0, idx)).trim();
+    for (SdkEncoding m : values()) {
+      if (m.contentType.equalsIgnoreCase(mimeType)) {
+        return m;
+      }
+    }
+    return null;
+  } // method ofContentType
+
+  /**
+   * Returns the preferred encoding accepted by the client.
+   * @param accept the value of the HTTP header Accept, may be {@code null}.
+   * @return {@link #CBOR} if accepted explicitly, {@link #JSON} otherwise.
+   */
+  public static SdkEncoding ofAccept(String accept) {
+    if (accept != null) {
+      for (String token : accept.split(",")) {
+        if (ofContentType(token) == CBOR) {
+          return CBOR;
+        }
+      }
+    }
+    return JSON;
+  } // method ofAccept
+
+}
@@ -31,4 +31,20 @@ public abstract class SdkMessage {
     return JSON.toJSONBytes(this);
   }
 
+  public byte[] encode(SdkEncoding encoding) {
+    return encoding == SdkEncoding.CBOR ? CborCodec.encode(this) : encode();
+  }
+
+  /**
+   * Decodes the message.
+   * @param encoded the encoded message.
+   * @param encoding the encoding of the message.
+   * @param clazz the class of the message.
+   * @param <T> type of the message.
+   * @return the decoded message.
+   */
+  public static <T extends SdkMessage> T decode(byte[] encoded, SdkEncoding encoding, Class<T> clazz) {
+    return encoding == SdkEncoding.CBOR ? CborCodec.decode(encoded, clazz) : JSON.parseObject(encoded, clazz);
+  }
+
 }
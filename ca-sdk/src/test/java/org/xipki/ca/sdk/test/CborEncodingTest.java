@@ -0,0 +1,126 @@
+/*
+ *
+ * Copyright (c) 2013 - 2022 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.sdk.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.ca.sdk.*;
+import org.xipki.security.CrlReason;
+import org.xipki.util.exception.ErrorCode;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test of the CBOR encoding of the SDK messages.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+public class CborEncodingTest {
+
+  @Test
+  public void testEnrollCertsRequest() {
+    EnrollCertRequestEntry entry = new EnrollCertRequestEntry();
+    entry.setCertReqId(BigInteger.ONE);
+    entry.setCertprofile("tls");
+    entry.setSubject(new X500NameType("CN=abc"));
+    entry.setSubjectPublicKey(new byte[]{1, 2, 3});
+    entry.setNotBefore(1600000000L);
+
+    EnrollCertsRequest req = new EnrollCertsRequest();
+    req.setTransactionId("tid-1");
+    req.setExplicitConfirm(true);
+    req.setCaCertMode(CertsMode.CHAIN);
+    req.setEntries(Arrays.asList(entry));
+
+    EnrollCertsRequest decoded = roundTrip(req, EnrollCertsRequest.class);
+    Assert.assertEquals("tid-1", decoded.getTransactionId());
+    Assert.assertEquals(Boolean.TRUE, decoded.getExplicitConfirm());
+    Assert.assertNull(decoded.getGroupEnroll());
+    Assert.assertEquals(CertsMode.CHAIN, decoded.getCaCertMode());
+
+    EnrollCertRequestEntry decodedEntry = decoded.getEntries().get(0);
+    Assert.assertEquals(BigInteger.ONE, decodedEntry.getCertReqId());
+    Assert.assertEquals("tls", decodedEntry.getCertprofile());
+    Assert.assertEquals("CN=abc", decodedEntry.getSubject().getText());
+    Assert.assertArrayEquals(new byte[]{1, 2, 3}, decodedEntry.getSubjectPublicKey());
+    Assert.assertEquals(Long.valueOf(1600000000L), decodedEntry.getNotBefore());
+    Assert.assertNull(decodedEntry.getNotAfter());
+  } // method testEnrollCertsRequest
+
+  @Test
+  public void testEnrollOrPollCertsResponse() {
+    byte[] cert = new byte[1500];
+    Arrays.fill(cert, (byte) 0x5A);
+
+    EnrollOrPullCertResponseEntry entry1 = new EnrollOrPullCertResponseEntry();
+    entry1.setId(new BigInteger("1234567890123456789012345678901234567890"));
+    entry1.setCert(cert);
+
+    EnrollOrPullCertResponseEntry entry2 = new EnrollOrPullCertResponseEntry();
+    entry2.setId(BigInteger.valueOf(2));
+    entry2.setError(new ErrorEntry(ErrorCode.BAD_REQUEST, "bad request"));
+
+    EnrollOrPollCertsResponse resp = new EnrollOrPollCertsResponse();
+    resp.setEntries(Arrays.asList(entry1, entry2));
+    resp.setExtraCerts(Arrays.asList(cert));
+
+    byte[] cborEncoded = resp.encode(SdkEncoding.CBOR);
+    // the certificates are not base64-encoded
+    Assert.assertTrue("CBOR encoding too large", cborEncoded.length < resp.encode(SdkEncoding.JSON).length * 4 / 5);
+
+    EnrollOrPollCertsResponse decoded = SdkMessage.decode(cborEncoded, SdkEncoding.CBOR,
+        EnrollOrPollCertsResponse.class);
+    List<EnrollOrPullCertResponseEntry> entries = decoded.getEntries();
+    Assert.assertEquals(2, entries.size());
+    Assert.assertEquals(entry1.getId(), entries.get(0).getId());
+    Assert.assertArrayEquals(cert, entries.get(0).getCert());
+    Assert.assertEquals(ErrorCode.BAD_REQUEST.getCode(), entries.get(1).getError().getCode());
+    Assert.assertEquals("bad request", entries.get(1).getError().getMessage());
+    Assert.assertArrayEquals(cert, decoded.getExtraCerts().get(0));
+  } // method testEnrollOrPollCertsResponse
+
+  @Test
+  public void testRevokeCertsRequest() {
+    RevokeCertRequestEntry entry = new RevokeCertRequestEntry();
+    entry.setSerialNumber(BigInteger.valueOf(-5));
+    entry.setReason(CrlReason.KEY_COMPROMISE);
+
+    RevokeCertsRequest req = new RevokeCertsRequest();
+    req.setEntries(Arrays.asList(entry));
+
+    RevokeCertsRequest decoded = roundTrip(req, RevokeCertsRequest.class);
+    Assert.assertEquals(BigInteger.valueOf(-5), decoded.getEntries().get(0).getSerialNumber());
+    Assert.assertEquals(CrlReason.KEY_COMPROMISE, decoded.getEntries().get(0).getReason());
+  } // method testRevokeCertsRequest
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTruncated() {
+    ErrorResponse resp = new ErrorResponse("tid", ErrorCode.SYSTEM_FAILURE, "message");
+    byte[] encoded = resp.encode(SdkEncoding.CBOR);
+    SdkMessage.decode(Arrays.copyOf(encoded, encoded.length - 1), SdkEncoding.CBOR, ErrorResponse.class);
+  }
+
+  private static <T extends SdkMessage> T roundTrip(T msg, Class<T> clazz) {
+    return SdkMessage.decode(msg.encode(SdkEncoding.CBOR), SdkEncoding.CBOR, clazz);
+  }
+
+}
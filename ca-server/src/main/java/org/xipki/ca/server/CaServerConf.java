@@ -126,6 +126,155 @@ public class CaServerConf extends ValidatableConf {
 
   } // class CtLogConf
 
+  public static class AsyncPublishConf extends ValidatableConf {
+
+    /**
+     * Number of threads publishing the certificates in the PUBLISHQUEUE, default to 4.
+     */
+    private int threads = 4;
+
+    /**
+     * Maximal number of certificates published at once, default to 100.
+     */
+    private int batchSize = 100;
+
+    /**
+     * Interval in seconds to check the PUBLISHQUEUE, default to 1.
+     */
+    private int interval = 1;
+
+    public int getThreads() {
+      return threads;
+    }
+
+    public void setThreads(int threads) {
+      this.threads = threads;
+    }
+
+    public int getBatchSize() {
+      return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+      this.batchSize = batchSize;
+    }
+
+    public int getInterval() {
+      return interval;
+    }
+
+    public void setInterval(int interval) {
+      this.interval = interval;
+    }
+
+    @Override
+    public void validate() throws InvalidConfException {
+      positive(threads, "threads");
+      positive(batchSize, "batchSize");
+      positive(interval, "interval");
+    }
+
+    private static void positive(int value, String name) throws InvalidConfException {
+      if (value < 1) {
+        throw new InvalidConfException(name + " of asyncPublish must be positive, but is " + value);
+      }
+    }
+
+  } // class AsyncPublishConf
+
+  public static class CertBatchInsertConf {
+
+    /**
+     * Maximal number of certificates inserted in one transaction, default to 100.
+     */
+    private int maxBatchSize = 100;
+
+    /**
+     * Maximal time in milliseconds to wait for further certificates, default to 5.
+     */
+    private int maxWait = 5;
+
+    public int getMaxBatchSize() {
+      return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+      this.maxBatchSize = maxBatchSize;
+    }
+
+    public int getMaxWait() {
+      return maxWait;
+    }
+
+    public void setMaxWait(int maxWait) {
+      this.maxWait = maxWait;
+    }
+
+  } // class CertBatchInsertConf
+
+  public static class SerialNumberFilterConf {
+
+    /**
+     * Minimal number of expected serial numbers per CA, default to 1000000. The filter is sized
+     * for the larger one of this value and the doubled number of certificates in the database.
+     */
+    private long minExpectedEntries = 1000000;
+
+    /**
+     * False positive rate of the filter, default to 0.01.
+     */
+    private double falsePositiveRate = 0.01;
+
+    public long getMinExpectedEntries() {
+      return minExpectedEntries;
+    }
+
+    public void setMinExpectedEntries(long minExpectedEntries) {
+      this.minExpectedEntries = minExpectedEntries;
+    }
+
+    public double getFalsePositiveRate() {
+      return falsePositiveRate;
+    }
+
+    public void setFalsePositiveRate(double falsePositiveRate) {
+      this.falsePositiveRate = falsePositiveRate;
+    }
+
+  } // class SerialNumberFilterConf
+
+  public static class CrlCacheConf {
+
+    /**
+     * If present, the current CRLs are memory-mapped from files in this directory instead
+     * of being held in the heap.
+     */
+    private String mmapDir;
+
+    /**
+     * Interval in seconds to check whether a CRL has been generated by another CA instance,
+     * default to 60.
+     */
+    private int checkInterval = 60;
+
+    public String getMmapDir() {
+      return mmapDir;
+    }
+
+    public void setMmapDir(String mmapDir) {
+      this.mmapDir = mmapDir;
+    }
+
+    public int getCheckInterval() {
+      return checkInterval;
+    }
+
+    public void setCheckInterval(int checkInterval) {
+      this.checkInterval = checkInterval;
+    }
+
+  } // class CrlCacheConf
+
   private AuditConf audit;
 
   private SecurityConf security;
@@ -162,6 +311,42 @@ public class CaServerConf extends ValidatableConf {
 
   private CtLogConf ctLog;
 
+  /**
+   * If present, the certificates are published asynchronously: the enrollment only adds
+   * them to the PUBLISHQUEUE, which is drained by a pool of workers.
+   */
+  private AsyncPublishConf asyncPublish;
+
+  /**
+   * Number of threads generating the certificates of one enrollment request with more than
+   * one certificate template in parallel. Default to 0, the certificates are generated sequentially.
+   */
+  private int batchEnrollThreads = 0;
+
+  /**
+   * Number of random serial numbers pre-generated for each serial number length. The buffer
+   * is refilled in the background. Default to 0, the serial numbers are generated on request.
+   */
+  private int serialNumberBufferSize = 0;
+
+  /**
+   * If present, the certificates saved by concurrent requests are inserted into the database
+   * in one transaction (group commit).
+   */
+  private CertBatchInsertConf certBatchInsert;
+
+  /**
+   * If present, the uniqueness of new serial numbers is checked with an in-memory Bloom filter
+   * per CA, and the database is queried only if the filter reports a possible hit.
+   */
+  private SerialNumberFilterConf serialNumberFilter;
+
+  /**
+   * Configuration of the cache of the current CRLs in encoded form. If not present,
+   * the CRLs are cached in the heap.
+   */
+  private CrlCacheConf crlCache;
+
   /**
    * list of classes that implement org.xipki.ca.api.profile.CertprofileFactory
    */
@@ -290,6 +475,54 @@ public class CaServerConf extends ValidatableConf {
     this.ctLog = ctLog;
   }
 
+  public AsyncPublishConf getAsyncPublish() {
+    return asyncPublish;
+  }
+
+  public void setAsyncPublish(AsyncPublishConf asyncPublish) {
+    this.asyncPublish = asyncPublish;
+  }
+
+  public int getBatchEnrollThreads() {
+    return batchEnrollThreads;
+  }
+
+  public void setBatchEnrollThreads(int batchEnrollThreads) {
+    this.batchEnrollThreads = batchEnrollThreads;
+  }
+
+  public int getSerialNumberBufferSize() {
+    return serialNumberBufferSize;
+  }
+
+  public void setSerialNumberBufferSize(int serialNumberBufferSize) {
+    this.serialNumberBufferSize = serialNumberBufferSize;
+  }
+
+  public CertBatchInsertConf getCertBatchInsert() {
+    return certBatchInsert;
+  }
+
+  public void setCertBatchInsert(CertBatchInsertConf certBatchInsert) {
+    this.certBatchInsert = certBatchInsert;
+  }
+
+  public SerialNumberFilterConf getSerialNumberFilter() {
+    return serialNumberFilter;
+  }
+
+  public void setSerialNumberFilter(SerialNumberFilterConf serialNumberFilter) {
+    this.serialNumberFilter = serialNumberFilter;
+  }
+
+  public CrlCacheConf getCrlCache() {
+    return crlCache;
+  }
+
+  public void setCrlCache(CrlCacheConf crlCache) {
+    this.crlCache = crlCache;
+  }
+
   public void initSsl() throws CaMgmtException {
     if (sslContexts == null || sslContexts.isEmpty()) {
       return;
@@ -321,7 +554,38 @@ public class CaServerConf extends ValidatableConf {
     }
 
     notEmpty(datasources, "datasources");
-    validate(remoteMgmt, security);
+    validate(remoteMgmt, security, asyncPublish);
+
+    if (batchEnrollThreads < 0) {
+      throw new InvalidConfException("batchEnrollThreads must not be negative");
+    }
+
+    if (serialNumberBufferSize < 0) {
+      throw new InvalidConfException("serialNumberBufferSize must not be negative");
+    }
+
+    if (certBatchInsert != null) {
+      if (certBatchInsert.maxBatchSize < 1 || certBatchInsert.maxWait < 0) {
+        throw new InvalidConfException("invalid maxBatchSize or maxWait of certBatchInsert");
+      }
+    }
+
+    if (serialNumberFilter != null) {
+      if (serialNumberFilter.minExpectedEntries < 1) {
+        throw new InvalidConfException("minExpectedEntries of serialNumberFilter must be positive, but is "
+            + serialNumberFilter.minExpectedEntries);
+      }
+
+      double rate = serialNumberFilter.falsePositiveRate;
+      if (!(rate > 0 && rate < 1)) {
+        throw new InvalidConfException("falsePositiveRate of serialNumberFilter must be in (0, 1), but is " + rate);
+      }
+    }
+
+    if (crlCache != null && crlCache.checkInterval < 0) {
+      throw new InvalidConfException("checkInterval of crlCache must not be negative, but is "
+          + crlCache.checkInterval);
+    }
   } // method validate
 
 }
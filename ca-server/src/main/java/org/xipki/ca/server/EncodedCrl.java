@@ -0,0 +1,148 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+
+import static org.xipki.util.Args.notNull;
+
+/**
+ * DER-encoded CRL together with the information required to serve it over HTTP, without
+ * parsing it. The content is either held in the heap, or memory-mapped from a local file.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+public class EncodedCrl {
+
+  private final BigInteger crlNumber;
+
+  private final Date thisUpdate;
+
+  private final String sha1;
+
+  // exactly one of encoded and mappedEncoded is set
+  private final byte[] encoded;
+
+  private final ByteBuffer mappedEncoded;
+
+  public EncodedCrl(BigInteger crlNumber, Date thisUpdate, String sha1, byte[] encoded) {
+    this.crlNumber = notNull(crlNumber, "crlNumber");
+    this.thisUpdate = notNull(thisUpdate, "thisUpdate");
+    this.sha1 = notNull(sha1, "sha1");
+    this.encoded = notNull(encoded, "encoded");
+    this.mappedEncoded = null;
+  }
+
+  private EncodedCrl(EncodedCrl crl, ByteBuffer mappedEncoded) {
+    this.crlNumber = crl.crlNumber;
+    this.thisUpdate = crl.thisUpdate;
+    this.sha1 = crl.sha1;
+    this.encoded = null;
+    this.mappedEncoded = mappedEncoded;
+  }
+
+  public BigInteger getCrlNumber() {
+    return crlNumber;
+  }
+
+  public Date getThisUpdate() {
+    return thisUpdate;
+  }
+
+  /**
+   * Returns the entity tag of the CRL.
+   * @return the quoted base64-encoded SHA-1 fingerprint of the CRL.
+   */
+  public String getEtag() {
+    return "\"" + sha1 + "\"";
+  }
+
+  public int getLength() {
+    return encoded != null ? encoded.length : mappedEncoded.capacity();
+  }
+
+  /**
+   * Returns the DER-encoded CRL. If the CRL is held in the heap, the internal array
+   * will be returned, and must not be modified.
+   * @return the DER-encoded CRL.
+   */
+  public byte[] getEncoded() {
+    if (encoded != null) {
+      return encoded;
+    }
+
+    byte[] bytes = new byte[mappedEncoded.capacity()];
+    mappedEncoded.duplicate().get(bytes);
+    return bytes;
+  } // method getEncoded
+
+  /**
+   * Writes the DER-encoded CRL to the stream without copying it to a new array.
+   * @param out the output stream.
+   * @throws IOException if error occurs while writing the stream.
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    if (encoded != null) {
+      out.write(encoded);
+    } else {
+      // the channel is not closed, since it would close the underlying stream.
+      WritableByteChannel channel = Channels.newChannel(out);
+      ByteBuffer buffer = mappedEncoded.duplicate();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+  } // method writeTo
+
+  /**
+   * Writes this CRL to the file and returns a CRL memory-mapped from the file.
+   * @param file the target file. Will be overwritten if it exists.
+   * @return the memory-mapped CRL.
+   * @throws IOException if error occurs while writing or mapping the file.
+   */
+  public EncodedCrl mapTo(Path file) throws IOException {
+    if (encoded == null) {
+      return this;
+    }
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buffer = ByteBuffer.wrap(encoded);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+
+      // the mapping remains valid after the channel is closed.
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, encoded.length);
+      return new EncodedCrl(this, mapped);
+    }
+  } // method mapTo
+
+}
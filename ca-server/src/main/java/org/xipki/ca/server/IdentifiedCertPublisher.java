@@ -30,6 +30,7 @@ import org.xipki.security.X509Cert;
 import org.xipki.util.FileOrValue;
 
 import java.io.Closeable;
+import java.util.List;
 import java.util.Map;
 
 import static org.xipki.util.Args.notNull;
@@ -65,6 +66,10 @@ public class IdentifiedCertPublisher implements Closeable {
     return certPublisher.certificateAdded(certInfo);
   }
 
+  public boolean certificatesAdded(List<CertificateInfo> certInfos) {
+    return certPublisher.certificatesAdded(certInfos);
+  }
+
   public boolean certificateRevoked(X509Cert caCert, CertWithDbId cert, String certprofile,
                                     CertRevocationInfo revInfo) {
     return certPublisher.certificateRevoked(caCert, cert, certprofile, revInfo);
@@ -74,6 +79,10 @@ public class IdentifiedCertPublisher implements Closeable {
     return certPublisher.crlAdded(caCert, crl);
   }
 
+  public boolean crlAdded(X509Cert caCert, byte[] encodedCrl) {
+    return certPublisher.crlAdded(caCert, encodedCrl);
+  }
+
   public PublisherEntry getDbEntry() {
     return entry;
   }
@@ -0,0 +1,215 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ca.api.CertificateInfo;
+import org.xipki.util.LogUtil;
+import org.xipki.util.exception.OperationException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.xipki.util.Args.notNull;
+import static org.xipki.util.Args.positive;
+
+/**
+ * Publishes the certificates of one CA queued in PUBLISHQUEUE for one publisher, in batches.
+ * If a batch fails, its certificates are published one by one, and the drain stops at the
+ * first failed certificate, which remains in the queue.
+ * <p>
+ * The lag of the queue, namely the age of the oldest entry not yet published, is tracked in
+ * memory, without counting the entries in the database.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+class PublishQueueDrainer {
+
+  /**
+   * Entries of one CA and one publisher in the table PUBLISHQUEUE.
+   */
+  interface PublishQueue {
+
+    /**
+     * Returns the ids of the next queued certificates.
+     * @param num maximal number of ids.
+     * @return the certificate ids, empty if the queue is empty.
+     * @throws OperationException if database error occurs.
+     */
+    List<Long> nextCertIds(int num) throws OperationException;
+
+    CertificateInfo getCert(long certId) throws OperationException;
+
+    void remove(long certId) throws OperationException;
+
+  } // interface PublishQueue
+
+  private static final Logger LOG = LoggerFactory.getLogger(PublishQueueDrainer.class);
+
+  private final String name;
+
+  private final int batchSize;
+
+  private final LongAdder published = new LongAdder();
+
+  private final LongAdder failedRuns = new LongAdder();
+
+  // time (in ms) since when the queue is not empty, 0 if the queue is empty or unknown.
+  private final AtomicLong oldestQueuedAt = new AtomicLong();
+
+  // time (in ms) of the last entry added to the queue.
+  private volatile long lastQueuedAt;
+
+  /**
+   * Constructor.
+   * @param name name of the CA and publisher, used in the log.
+   * @param batchSize maximal number of certificates published at once.
+   */
+  PublishQueueDrainer(String name, int batchSize) {
+    this.name = notNull(name, "name");
+    this.batchSize = positive(batchSize, "batchSize");
+  }
+
+  /**
+   * Publishes the queued certificates until the queue is empty or a certificate could not be
+   * published.
+   * @param queue the queue.
+   * @param publisher the publisher.
+   * @return whether all queued certificates are published.
+   */
+  boolean drain(PublishQueue queue, IdentifiedCertPublisher publisher) {
+    int numPublished = 0;
+    boolean successful = true;
+    long queryTime;
+
+    while (true) {
+      List<Long> certIds;
+      List<CertificateInfo> certInfos;
+      queryTime = System.currentTimeMillis();
+      try {
+        certIds = queue.nextCertIds(batchSize);
+        if (certIds.isEmpty()) {
+          break;
+        }
+
+        // entries queued before the start of this CA system are not known by entryQueued().
+        oldestQueuedAt.compareAndSet(0, queryTime);
+
+        certInfos = new ArrayList<>(certIds.size());
+        for (Long certId : certIds) {
+          certInfos.add(queue.getCert(certId));
+        }
+      } catch (OperationException ex) {
+        LogUtil.error(LOG, ex);
+        successful = false;
+        break;
+      }
+
+      List<Long> publishedCertIds;
+      if (publisher.certificatesAdded(certInfos)) {
+        publishedCertIds = certIds;
+      } else {
+        // publish the certificates one by one to find the failed one
+        publishedCertIds = new ArrayList<>(certIds.size());
+        for (int i = 0; i < certIds.size(); i++) {
+          Long certId = certIds.get(i);
+          if (publisher.certificateAdded(certInfos.get(i))) {
+            publishedCertIds.add(certId);
+          } else {
+            LOG.error("{}: republishing certificate id={} failed", name, certId);
+            successful = false;
+            break;
+          }
+        }
+      }
+
+      for (Long certId : publishedCertIds) {
+        try {
+          queue.remove(certId);
+        } catch (OperationException ex) {
+          LogUtil.warn(LOG, ex, name + ": could not remove republished cert id=" + certId);
+        }
+      }
+      numPublished += publishedCertIds.size();
+
+      // a partial batch means that the queue has been emptied, no further query is required
+      if (!successful || certIds.size() < batchSize) {
+        break;
+      }
+    } // end while
+
+    published.add(numPublished);
+    if (successful) {
+      // entries queued after the last query may be still in the queue.
+      oldestQueuedAt.set(0);
+      if (lastQueuedAt >= queryTime) {
+        oldestQueuedAt.compareAndSet(0, queryTime);
+      }
+
+      if (numPublished > 0) {
+        LOG.debug("{}: published {} certificates from PUBLISHQUEUE, queue drained (total published: {}, "
+            + "failed runs: {})", name, numPublished, published.sum(), failedRuns.sum());
+      }
+    } else {
+      failedRuns.increment();
+      LOG.info("{}: published {} certificates from PUBLISHQUEUE, stopped at failure, lag {} ms "
+          + "(total published: {}, failed runs: {})", name, numPublished, getLagMs(), published.sum(),
+          failedRuns.sum());
+    }
+    return successful;
+  } // method drain
+
+  /**
+   * Notifies that an entry has been added to the queue.
+   */
+  void entryQueued() {
+    long now = System.currentTimeMillis();
+    lastQueuedAt = now;
+    oldestQueuedAt.compareAndSet(0, now);
+  }
+
+  /**
+   * Notifies that the queue has been cleared.
+   */
+  void queueCleared() {
+    oldestQueuedAt.set(0);
+  }
+
+  /**
+   * Returns the lag of the queue.
+   * @return the age of the oldest entry not yet published in milliseconds, 0 if the queue is empty.
+   */
+  long getLagMs() {
+    long since = oldestQueuedAt.get();
+    return since == 0 ? 0 : Math.max(0, System.currentTimeMillis() - since);
+  }
+
+  long getPublished() {
+    return published.sum();
+  }
+
+  long getFailedRuns() {
+    return failedRuns.sum();
+  }
+
+}
@@ -17,25 +17,131 @@
 
 package org.xipki.ca.server;
 
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.prng.SP800SecureRandom;
+import org.bouncycastle.crypto.prng.SP800SecureRandomBuilder;
+import org.bouncycastle.util.Pack;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.util.LogUtil;
+
 import java.math.BigInteger;
 import java.security.SecureRandom;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.xipki.util.Args.positive;
 
 /**
  * Random serial number generator.
+ * <p>
+ * The random bytes are generated by several SP 800-90A Hash-DRBG (SHA-256) instances, each
+ * seeded from the system source and reseeded periodically. The instance is selected by the
+ * id of the current thread, so that concurrent threads do not contend on one SecureRandom.
+ * <p>
+ * Optionally, serial numbers are pre-generated in a buffer which is refilled in the background.
  *
  * @author Lijun Liao
  * @since 2.0.0
  */
 
-class RandomSerialNumberGenerator {
+public class RandomSerialNumberGenerator {
+
+  private static class Stripe {
+
+    private final SP800SecureRandom drbg;
+
+    private int count;
+
+    private long nextReseed;
+
+    Stripe(SecureRandom entropySource, int index) {
+      byte[] nonce = new byte[16];
+      entropySource.nextBytes(nonce);
+      byte[] personalization = new byte[12];
+      Pack.intToBigEndian(index, personalization, 0);
+      Pack.longToBigEndian(System.nanoTime(), personalization, 4);
+
+      this.drbg = new SP800SecureRandomBuilder(entropySource, false)
+          .setPersonalizationString(personalization).buildHash(new SHA256Digest(), nonce, false);
+      this.nextReseed = System.currentTimeMillis() + RESEED_INTERVAL_MS;
+    }
+
+    synchronized void nextBytes(byte[] bytes) {
+      if (++count > RESEED_INTERVAL_COUNT || System.currentTimeMillis() > nextReseed) {
+        // fresh entropy from the system source
+        drbg.reseed(Pack.longToBigEndian(System.nanoTime()));
+        count = 1;
+        nextReseed = System.currentTimeMillis() + RESEED_INTERVAL_MS;
+      }
+      drbg.nextBytes(bytes);
+    } // method nextBytes
+
+  } // class Stripe
+
+  private static class SerialBuffer {
+
+    private final ConcurrentLinkedQueue<BigInteger> queue = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicBoolean refilling = new AtomicBoolean();
+
+  } // class SerialBuffer
+
+  private static final Logger LOG = LoggerFactory.getLogger(RandomSerialNumberGenerator.class);
+
+  // reseed after 65536 serial numbers or 10 minutes
+  private static final int RESEED_INTERVAL_COUNT = 1 << 16;
+
+  private static final long RESEED_INTERVAL_MS = 10 * 60 * 1000L;
 
   private static RandomSerialNumberGenerator instance;
 
-  private final SecureRandom random;
+  private final Stripe[] stripes;
+
+  private final int stripeMask;
+
+  // buffers of pre-generated serial numbers, with the byte length as key.
+  private final ConcurrentHashMap<Integer, SerialBuffer> buffers = new ConcurrentHashMap<>();
+
+  private volatile int bufferSize;
+
+  private ExecutorService refiller;
 
   private RandomSerialNumberGenerator() {
-    this.random = new SecureRandom();
-  }
+    int minStripes = 2 * Runtime.getRuntime().availableProcessors();
+    int numStripes = 1;
+    while (numStripes < minStripes && numStripes < 64) {
+      numStripes <<= 1;
+    }
+
+    SecureRandom entropySource = new SecureRandom();
+    this.stripes = new Stripe[numStripes];
+    for (int i = 0; i < numStripes; i++) {
+      stripes[i] = new Stripe(entropySource, i);
+    }
+    this.stripeMask = numStripes - 1;
+  } // constructor
+
+  /**
+   * Pre-generates serial numbers for each byte length, the buffer is refilled in the background
+   * once it is at most half full.
+   * @param bufferSize number of pre-generated serial numbers for each byte length.
+   */
+  public synchronized void enableBuffer(int bufferSize) {
+    positive(bufferSize, "bufferSize");
+    if (refiller == null) {
+      refiller = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "serial-refill");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    this.bufferSize = bufferSize;
+    LOG.info("enabled buffer of random serial numbers, bufferSize={}", bufferSize);
+  } // method enableBuffer
 
   /**
    * Generate the next serial number.
@@ -43,15 +149,55 @@ class RandomSerialNumberGenerator {
    * @return the serial number.
    */
   public BigInteger nextSerialNumber(int byteLen) {
+    int size = bufferSize;
+    if (size > 0) {
+      SerialBuffer buffer = buffers.computeIfAbsent(byteLen, k -> new SerialBuffer());
+      BigInteger serial = buffer.queue.poll();
+      int remaining = serial == null ? 0 : buffer.size.decrementAndGet();
+      if (remaining <= size / 2) {
+        triggerRefill(buffer, byteLen);
+      }
+
+      if (serial != null) {
+        return serial;
+      }
+    }
+
+    return generateSerialNumber(byteLen);
+  } // method nextSerialNumber
+
+  private BigInteger generateSerialNumber(int byteLen) {
     final byte[] rndBytes = new byte[byteLen];
-    random.nextBytes(rndBytes);
+    stripes[(int) Thread.currentThread().getId() & stripeMask].nextBytes(rndBytes);
     // clear the highest bit.
     rndBytes[0] &= 0x7F;
     // set the second-highest bit
     rndBytes[0] |= 0x40;
     return new BigInteger(rndBytes);
+  } // method generateSerialNumber
 
-  } // method nextSerialNumber
+  private void triggerRefill(SerialBuffer buffer, int byteLen) {
+    if (!buffer.refilling.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+      refiller.execute(() -> {
+        try {
+          while (buffer.size.get() < bufferSize) {
+            buffer.queue.add(generateSerialNumber(byteLen));
+            buffer.size.incrementAndGet();
+          }
+        } catch (Throwable th) {
+          LogUtil.error(LOG, th, "could not refill the random serial numbers");
+        } finally {
+          buffer.refilling.set(false);
+        }
+      });
+    } catch (RejectedExecutionException ex) {
+      buffer.refilling.set(false);
+    }
+  } // method triggerRefill
 
   public static synchronized RandomSerialNumberGenerator getInstance() {
     if (instance == null) {
@@ -24,7 +24,6 @@ import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x509.Extension;
 import org.bouncycastle.asn1.x509.Extensions;
 import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
-import org.bouncycastle.cert.X509CRLHolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.ca.api.CertificateInfo;
@@ -127,8 +126,21 @@ public class SdkResponder {
   }
 
   public SdkResponse service(String path, byte[] request, HttpRequestMetadataRetriever httpRetriever) {
+    return service(path, request, SdkEncoding.JSON, httpRetriever);
+  }
+
+  /**
+   * Processes the request.
+   * @param path the path of the request, e.g. /myca/enroll.
+   * @param request the encoded request, may be empty.
+   * @param encoding encoding of the request.
+   * @param httpRetriever the HTTP request metadata retriever.
+   * @return the response, may be {@code null}.
+   */
+  public SdkResponse service(String path, byte[] request, SdkEncoding encoding,
+      HttpRequestMetadataRetriever httpRetriever) {
     try {
-      SdkResponse resp = service0(path, request, httpRetriever);
+      SdkResponse resp = service0(path, request, encoding, httpRetriever);
       if (resp instanceof ErrorResponse) {
         LOG.warn("returned ErrorResponse: {}", resp);
       }
@@ -139,16 +151,16 @@ public class SdkResponder {
     }
   }
 
-  private SdkResponse service0(String path, byte[] request, HttpRequestMetadataRetriever httpRetriever) {
+  private SdkResponse service0(String path, byte[] request, SdkEncoding encoding,
+      HttpRequestMetadataRetriever httpRetriever) {
     try {
       if (caManager == null) {
         return new ErrorResponse(null, SYSTEM_FAILURE, "responderManager in servlet not configured");
       }
 
-      String caName = null;
+      String caAlias = null;
       String command = null;
 
-      X509Ca ca = null;
       if (path.length() > 1) {
         // the first char is always '/'
         String coreUri = path;
@@ -158,45 +170,16 @@ public class SdkResponder {
         }
 
         // skip also the first char ('/')
-        String caAlias = coreUri.substring(1, sepIndex).toLowerCase();
+        caAlias = coreUri.substring(1, sepIndex).toLowerCase();
         command = coreUri.substring(sepIndex + 1).toLowerCase();
-
-        caName = caManager.getCaNameForAlias(caAlias);
-        if (caName == null) {
-          caName = caAlias;
-        }
-
-        try {
-          ca = caManager.getX509Ca(caName);
-        } catch (CaMgmtException e) {
-          return new ErrorResponse(null, PATH_NOT_FOUND, "CA unknown");
-        }
       }
 
       if (StringUtil.isBlank(command)) {
         return new ErrorResponse(null, PATH_NOT_FOUND, "command is not specified");
       }
 
-      if (ca == null || ca.getCaInfo().getStatus() != CaStatus.ACTIVE) {
-        String message = (ca == null) ? "unknown CA '" + caName + "'" : "CA '" + caName + "' is out of service";
-        return new ErrorResponse(null, PATH_NOT_FOUND, message);
-      }
-
-      X509Cert clientCert;
-      try {
-        clientCert = httpRetriever.getTlsClientCert();
-      } catch (IOException ex) {
-        LogUtil.error(LOG, ex, "error getTlsClientCert");
-        return new ErrorResponse(null, UNAUTHORIZED, "error retrieving client certificate");
-      }
-      if (clientCert == null) {
-        return new ErrorResponse(null, UNAUTHORIZED, "no client certificate");
-      }
-      RequestorInfo requestor = ca.getRequestor(clientCert);
-
-      if (requestor == null) {
-        return new ErrorResponse(null, NOT_PERMITTED, "no requestor specified");
-      }
+      X509Ca ca = getActiveCa(caAlias);
+      RequestorInfo requestor = getRequestor(ca, httpRetriever);
 
       switch (command) {
         case CMD_health: {
@@ -227,37 +210,37 @@ public class SdkResponder {
         }
         case CMD_enroll: {
           assertPermitted(requestor, ENROLL_CERT);
-          return enroll(ca, request, requestor, false, false);
+          return enroll(ca, request, encoding, requestor, false, false);
         }
         case CMD_reenroll: {
           assertPermitted(requestor, REENROLL_CERT);
-          return enroll(ca, request, requestor, true, false);
+          return enroll(ca, request, encoding, requestor, true, false);
         }
         case CMD_enroll_cross: {
           assertPermitted(requestor, ENROLL_CROSS);
-          return enroll(ca, request, requestor, false, true);
+          return enroll(ca, request, encoding, requestor, false, true);
         }
         case CMD_poll_cert: {
           if (!(requestor.isPermitted(ENROLL_CERT) || requestor.isPermitted(REENROLL_CERT))) {
             throw new OperationException(NOT_PERMITTED);
           }
-          return poll(ca, request);
+          return poll(ca, request, encoding);
         }
         case CMD_revoke_cert: {
           assertPermitted(requestor, REVOKE_CERT);
-          return revoke(requestor, ca, request);
+          return revoke(requestor, ca, request, encoding);
         }
         case CMD_confirm_enroll: {
           if (!(requestor.isPermitted(ENROLL_CERT) || requestor.isPermitted(REENROLL_CERT))) {
             throw new OperationException(NOT_PERMITTED);
           }
-          return confirmCertificates(requestor, ca, request);
+          return confirmCertificates(requestor, ca, request, encoding);
         }
         case CMD_revoke_pending_cert: {
           if (!(requestor.isPermitted(ENROLL_CERT) || requestor.isPermitted(REENROLL_CERT))) {
             throw new OperationException(NOT_PERMITTED);
           }
-          TransactionIdRequest req = TransactionIdRequest.decode(request);
+          TransactionIdRequest req = SdkMessage.decode(request, encoding, TransactionIdRequest.class);
           revokePendingCertificates(requestor, ca, req.getTid());
           return null;
         }
@@ -265,21 +248,21 @@ public class SdkResponder {
         case CMD_remove_cert: {
           boolean unsuspend = CMD_unsuspend_cert.equals(command);
           assertPermitted(requestor, unsuspend ? UNSUSPEND_CERT : REMOVE_CERT);
-          return removeOrUnsuspend(requestor, ca, request, unsuspend);
+          return removeOrUnsuspend(requestor, ca, request, encoding, unsuspend);
         }
         case CMD_gen_crl: {
           assertPermitted(requestor, GEN_CRL);
-          return genCrl(requestor, ca, request);
+          return genCrl(requestor, ca, request, encoding);
         }
         case CMD_crl: {
-          return getCrl(requestor, ca, request);
+          return getCrl(requestor, ca, request, encoding);
         }
         case CMD_get_cert: {
           assertPermitted(requestor, GET_CERT);
-          return getCert(ca, request);
+          return getCert(ca, request, encoding);
         }
         case CMD_profileinfo: {
-          return getProfileInfo(request);
+          return getProfileInfo(request, encoding);
         }
         default: {
           return new ErrorResponse(null, PATH_NOT_FOUND, "invalid command '" + command + "'");
@@ -290,9 +273,67 @@ public class SdkResponder {
     }
   } // method service
 
-  private SdkResponse enroll(X509Ca ca, byte[] request, RequestorInfo requestor, boolean reenroll, boolean crossCert)
+  /**
+   * Returns the current CRL of the CA in encoded form, without parsing it.
+   * @param caAlias alias or name of the CA.
+   * @param httpRetriever the HTTP request metadata retriever.
+   * @return the current CRL, or {@code null} if not available.
+   * @throws OperationException if the CA or requestor is unknown, or error occurs.
+   */
+  public EncodedCrl getCurrentCrl(String caAlias, HttpRequestMetadataRetriever httpRetriever)
+      throws OperationException {
+    if (caManager == null) {
+      throw new OperationException(SYSTEM_FAILURE, "responderManager in servlet not configured");
+    }
+
+    X509Ca ca = getActiveCa(caAlias.toLowerCase());
+    RequestorInfo requestor = getRequestor(ca, httpRetriever);
+    return ca.getEncodedCurrentCrl(requestor);
+  } // method getCurrentCrl
+
+  private X509Ca getActiveCa(String caAlias) throws OperationException {
+    String caName = caManager.getCaNameForAlias(caAlias);
+    if (caName == null) {
+      caName = caAlias;
+    }
+
+    X509Ca ca;
+    try {
+      ca = caManager.getX509Ca(caName);
+    } catch (CaMgmtException e) {
+      throw new OperationException(PATH_NOT_FOUND, "CA unknown");
+    }
+
+    if (ca == null || ca.getCaInfo().getStatus() != CaStatus.ACTIVE) {
+      String message = (ca == null) ? "unknown CA '" + caName + "'" : "CA '" + caName + "' is out of service";
+      throw new OperationException(PATH_NOT_FOUND, message);
+    }
+    return ca;
+  } // method getActiveCa
+
+  private static RequestorInfo getRequestor(X509Ca ca, HttpRequestMetadataRetriever httpRetriever)
       throws OperationException {
-    EnrollCertsRequest req = EnrollCertsRequest.decode(request);
+    X509Cert clientCert;
+    try {
+      clientCert = httpRetriever.getTlsClientCert();
+    } catch (IOException ex) {
+      LogUtil.error(LOG, ex, "error getTlsClientCert");
+      throw new OperationException(UNAUTHORIZED, "error retrieving client certificate");
+    }
+    if (clientCert == null) {
+      throw new OperationException(UNAUTHORIZED, "no client certificate");
+    }
+
+    RequestorInfo requestor = ca.getRequestor(clientCert);
+    if (requestor == null) {
+      throw new OperationException(NOT_PERMITTED, "no requestor specified");
+    }
+    return requestor;
+  } // method getRequestor
+
+  private SdkResponse enroll(X509Ca ca, byte[] request, SdkEncoding encoding, RequestorInfo requestor,
+      boolean reenroll, boolean crossCert) throws OperationException {
+    EnrollCertsRequest req = SdkMessage.decode(request, encoding, EnrollCertsRequest.class);
     List<EnrollCertRequestEntry> entries = req.getEntries();
 
     List<CertTemplateData> certTemplates = new ArrayList<>(req.getEntries().size());
@@ -495,8 +536,8 @@ public class SdkResponder {
     }
   } // enroll
 
-  private SdkResponse poll(X509Ca ca, byte[] request) throws OperationException {
-    PollCertRequest req = PollCertRequest.decode(request);
+  private SdkResponse poll(X509Ca ca, byte[] request, SdkEncoding encoding) throws OperationException {
+    PollCertRequest req = SdkMessage.decode(request, encoding, PollCertRequest.class);
     assertIssuerMatch(ca, req.getIssuer(), req.getAuthorityKeyIdentifier(), req.getIssuerCertSha1Fp());
 
     String tid = req.getTransactionId();
@@ -529,9 +570,9 @@ public class SdkResponder {
     return resp;
   }
 
-  private SdkResponse revoke(RequestorInfo requestor, X509Ca ca, byte[] request)
+  private SdkResponse revoke(RequestorInfo requestor, X509Ca ca, byte[] request, SdkEncoding encoding)
       throws OperationException {
-    RevokeCertsRequest req = RevokeCertsRequest.decode(request);
+    RevokeCertsRequest req = SdkMessage.decode(request, encoding, RevokeCertsRequest.class);
     assertIssuerMatch(ca, req);
 
     List<RevokeCertRequestEntry> entries = req.getEntries();
@@ -563,9 +604,9 @@ public class SdkResponder {
     return resp;
   }
 
-  private SdkResponse removeOrUnsuspend(RequestorInfo requestor, X509Ca ca, byte[] request, boolean unsuspend)
-      throws OperationException {
-    UnsuspendOrRemoveRequest req = UnsuspendOrRemoveRequest.decode(request);
+  private SdkResponse removeOrUnsuspend(RequestorInfo requestor, X509Ca ca, byte[] request, SdkEncoding encoding,
+      boolean unsuspend) throws OperationException {
+    UnsuspendOrRemoveRequest req = SdkMessage.decode(request, encoding, UnsuspendOrRemoveRequest.class);
     assertIssuerMatch(ca, req);
 
     List<BigInteger> entries = req.getEntries();
@@ -633,37 +674,44 @@ public class SdkResponder {
     }
   }
 
-  private SdkResponse genCrl(RequestorInfo requestor, X509Ca ca, byte[] request) throws OperationException {
-    GenCRLRequest req = GenCRLRequest.decode(request);
+  private SdkResponse genCrl(RequestorInfo requestor, X509Ca ca, byte[] request, SdkEncoding encoding)
+      throws OperationException {
+    GenCRLRequest req = SdkMessage.decode(request, encoding, GenCRLRequest.class);
     // TODO: consider req
-    X509CRLHolder crl = ca.generateCrlOnDemand(requestor);
+    byte[] crl = ca.generateCrlOnDemand(requestor);
     return buildCrlResp(crl, "generate CRL");
   }
 
-  private SdkResponse getCrl(RequestorInfo requestor, X509Ca ca, byte[] request) throws OperationException {
-    GetCRLRequest req = GetCRLRequest.decode(request);
-    X509CRLHolder crl = ca.getCrl(requestor, req.getCrlNumber());
-    return buildCrlResp(crl, "get CRL");
+  private SdkResponse getCrl(RequestorInfo requestor, X509Ca ca, byte[] request, SdkEncoding encoding)
+      throws OperationException {
+    GetCRLRequest req = SdkMessage.decode(request, encoding, GetCRLRequest.class);
+    byte[] crl = ca.getEncodedCrl(requestor, req.getCrlNumber());
+    if (crl == null) {
+      String message = "could not get CRL";
+      LOG.warn(message);
+      return new ErrorResponse(null, SYSTEM_FAILURE, message);
+    }
+
+    // the encoded CRL is used directly, without parsing and re-encoding it
+    CrlResponse resp = new CrlResponse();
+    resp.setCrl(crl);
+    return resp;
   }
 
-  private static SdkResponse buildCrlResp(X509CRLHolder crl, String desc) {
+  private static SdkResponse buildCrlResp(byte[] crl, String desc) {
     if (crl == null) {
       String message = "could not " + desc;
       LOG.warn(message);
       return new ErrorResponse(null, SYSTEM_FAILURE, message);
     }
 
-    try {
-      CrlResponse resp = new CrlResponse();
-      resp.setCrl(crl.getEncoded());
-      return resp;
-    } catch (IOException e) {
-      return new ErrorResponse(null, SYSTEM_FAILURE, "error encoding CRL");
-    }
+    CrlResponse resp = new CrlResponse();
+    resp.setCrl(crl);
+    return resp;
   }
 
-  private SdkResponse getCert(X509Ca ca, byte[] request) throws OperationException {
-    GetCertRequest req = GetCertRequest.decode(request);
+  private SdkResponse getCert(X509Ca ca, byte[] request, SdkEncoding encoding) throws OperationException {
+    GetCertRequest req = SdkMessage.decode(request, encoding, GetCertRequest.class);
 
     X500Name issuer;
     try {
@@ -690,9 +738,9 @@ public class SdkResponder {
     return resp;
   }
 
-  private SdkResponse getProfileInfo(byte[] request)
+  private SdkResponse getProfileInfo(byte[] request, SdkEncoding encoding)
       throws OperationException {
-    CertprofileInfoRequest req = CertprofileInfoRequest.decode(request);
+    CertprofileInfoRequest req = SdkMessage.decode(request, encoding, CertprofileInfoRequest.class);
     String profileName = req.getProfile();
     return caManager.getCertprofileInfo(profileName);
   }
@@ -794,8 +842,8 @@ public class SdkResponder {
     rentry.setCert(certInfo.getCert().getCert().getEncoded());
   }
 
-  protected SdkResponse confirmCertificates(RequestorInfo requestor, X509Ca ca, byte[] request) {
-    ConfirmCertsRequest req = ConfirmCertsRequest.decode(request);
+  protected SdkResponse confirmCertificates(RequestorInfo requestor, X509Ca ca, byte[] request, SdkEncoding encoding) {
+    ConfirmCertsRequest req = SdkMessage.decode(request, encoding, ConfirmCertsRequest.class);
     String tid = req.getTransactionId();
     boolean successful = true;
     for (ConfirmCertRequestEntry m : req.getEntries()) {
@@ -57,7 +57,8 @@ import java.io.IOException;
 import java.math.BigInteger;
 import java.security.cert.CertificateException;
 import java.util.*;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.xipki.ca.sdk.CaAuditConstants.*;
 import static org.xipki.util.Args.notEmpty;
@@ -204,6 +205,9 @@ public class X509Ca extends X509CaModule implements Closeable {
       LOG.warn("CA {}: Certificates will not be saved in the database and will not be published!",
           caInfo.getIdent().getName());
     }
+
+    // does nothing if the serial number filter is not enabled
+    certstore.loadSerialNumberFilter(caIdent);
   } // constructor
 
   public NameId getCaIdent() {
@@ -263,7 +267,15 @@ public class X509Ca extends X509CaModule implements Closeable {
     return crlModule.getCrl(requestor, crlNumber);
   } // method getCrl
 
-  public X509CRLHolder generateCrlOnDemand(RequestorInfo requestor) throws OperationException {
+  public byte[] getEncodedCrl(RequestorInfo requestor, BigInteger crlNumber) throws OperationException {
+    return crlModule.getEncodedCrl(requestor, crlNumber);
+  }
+
+  public EncodedCrl getEncodedCurrentCrl(RequestorInfo requestor) throws OperationException {
+    return crlModule.getEncodedCurrentCrl(requestor);
+  }
+
+  public byte[] generateCrlOnDemand(RequestorInfo requestor) throws OperationException {
     return crlModule.generateCrlOnDemand(requestor);
   }
 
@@ -312,6 +324,14 @@ public class X509Ca extends X509CaModule implements Closeable {
     return publisherModule.publishCertsInQueue();
   }
 
+  public long getPublishQueueLagMs(String publisherName) {
+    return publisherModule.getPublishQueueLagMs(publisherName);
+  }
+
+  public boolean publishCertsInQueue(IdentifiedCertPublisher publisher) {
+    return publisherModule.publishCertsInQueue(publisher);
+  }
+
   public CertWithRevocationInfo revokeCert(
       RequestorInfo requestor, BigInteger serialNumber, CrlReason reason, Date invalidityTime)
       throws OperationException {
@@ -448,60 +468,76 @@ public class X509Ca extends X509CaModule implements Closeable {
     List<CertificateInfo> certInfos = new ArrayList<>(n);
     OperationExceptionWithIndex exception = null;
 
-    for (int i = 0; i < n; i++) {
-      if (exception != null) {
-        break;
-      }
-      GrantedCertTemplate gct = gcts.get(i);
-      final NameId certprofilIdent = gct.certprofile.getIdent();
-      final String subjectText = gct.grantedSubjectText;
-      LOG.info("     START generateCertificate: CA={}, profile={}, subject='{}'",
-          caIdent.getName(), certprofilIdent.getName(), subjectText);
-
-      boolean successful = false;
-      try {
-        //-----begin license-----
-        // check CA
-        String caSubject = caInfo.getCert().getSubjectText();
-        if (!(license.grantAllCAs() || license.grant(caSubject))) {
-          LOG.error("Not granted for CA {}, need new license", caSubject);
-          throw new OperationException(SYSTEM_FAILURE, "new license needed");
+    ExecutorService batchExecutor = batch ? caManager.getBatchEnrollExecutor() : null;
+    if (batchExecutor != null) {
+      // fan out the generation, the results are collected in the order of the templates.
+      List<Future<CertificateInfo>> futures = new ArrayList<>(n);
+      // once a template failed, the templates not started yet are skipped.
+      AtomicBoolean failed = new AtomicBoolean(false);
+      for (int i = 0; i < n; i++) {
+        final int index = i;
+        final GrantedCertTemplate gct = gcts.get(i);
+        try {
+          futures.add(batchExecutor.submit(() -> {
+            if (failed.get()) {
+              return null;
+            }
+
+            try {
+              return generateCertInBatch(requestor, license, index, gct, transactionId, event);
+            } catch (OperationExceptionWithIndex ex) {
+              failed.set(true);
+              throw ex;
+            }
+          }));
+        } catch (RejectedExecutionException ex) {
+          failed.set(true);
+          exception = new OperationExceptionWithIndex(i, new OperationException(SYSTEM_FAILURE, ex));
+          break;
         }
+      }
 
-        // check number of certificate
-        long maxNumOfCerts = license.getMaxNumberOfCerts();
-        if (maxNumOfCerts >= 0) {
-          long numOfCerts = certstore.getCountOfCerts(0);
-          if (numOfCerts >= maxNumOfCerts) {
-            LOG.error("Maximal {} certificates is allowed, {} already issued, need new license",
-                maxNumOfCerts, numOfCerts);
-            throw new OperationException(SYSTEM_FAILURE, "new license needed");
+      // wait for all submitted tasks, so that all generated certificates can be reverted on failure.
+      boolean interrupted = false;
+      for (int i = 0; i < futures.size(); i++) {
+        Future<CertificateInfo> future = futures.get(i);
+        while (true) {
+          try {
+            CertificateInfo certInfo = future.get();
+            if (certInfo != null) {
+              certInfos.add(certInfo);
+            }
+            break;
+          } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            // keep the exception of the first template which failed
+            if (exception == null || exception.getIndex() > i) {
+              exception = (cause instanceof OperationExceptionWithIndex) ? (OperationExceptionWithIndex) cause
+                  : new OperationExceptionWithIndex(i, new OperationException(SYSTEM_FAILURE, cause));
+            }
+            break;
+          } catch (InterruptedException ex) {
+            // cancel the tasks not started yet, and keep waiting for the running ones, since a
+            // cancelled running task would lose its generated certificate which cannot be reverted then.
+            interrupted = true;
+            failed.set(true);
+            if (exception == null || exception.getIndex() > i) {
+              exception = new OperationExceptionWithIndex(i, new OperationException(SYSTEM_FAILURE, ex));
+            }
           }
         }
+      }
 
-        // regulate speed
-        license.regulateSpeed();
-        //-----end license-----
-
-        CertificateInfo certInfo = generateCert(requestor, i, gct, transactionId, event);
-        successful = true;
-        certInfos.add(certInfo);
-
-        if (LOG.isInfoEnabled()) {
-          String prefix = certInfo.isAlreadyIssued() ? "RETURN_OLD_CERT" : "SUCCESSFUL";
-          CertWithDbId cert = certInfo.getCert();
-          LOG.info("{} generateCertificate: CA={}, profile={}, subject='{}', serialNumber={}",
-              prefix, caIdent.getName(), certprofilIdent.getName(),
-              cert.getCert().getSubjectText(), cert.getCert().getSerialNumberHex());
-        }
-      } catch (OperationException ex) {
-        exception = new OperationExceptionWithIndex(i, ex);
-      } catch (Throwable th) {
-        exception = new OperationExceptionWithIndex(i, new OperationException(SYSTEM_FAILURE, th));
-      } finally {
-        if (!successful) {
-          LOG.error("    FAILED generateCertificate: CA={}, profile={}, subject='{}'",
-              caIdent.getName(), certprofilIdent.getName(), subjectText);
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    } else {
+      for (int i = 0; i < n; i++) {
+        try {
+          certInfos.add(generateCertInBatch(requestor, license, i, gcts.get(i), transactionId, event));
+        } catch (OperationExceptionWithIndex ex) {
+          exception = ex;
+          break;
         }
       }
     }
@@ -526,6 +562,63 @@ public class X509Ca extends X509CaModule implements Closeable {
     return certInfos;
   }
 
+  private CertificateInfo generateCertInBatch(RequestorInfo requestor, CmLicense license, int index,
+      GrantedCertTemplate gct, String transactionId, AuditEvent event) throws OperationExceptionWithIndex {
+    final NameId certprofilIdent = gct.certprofile.getIdent();
+    final String subjectText = gct.grantedSubjectText;
+    LOG.info("     START generateCertificate: CA={}, profile={}, subject='{}'",
+        caIdent.getName(), certprofilIdent.getName(), subjectText);
+
+    boolean successful = false;
+    try {
+      //-----begin license-----
+      // check CA
+      String caSubject = caInfo.getCert().getSubjectText();
+      if (!(license.grantAllCAs() || license.grant(caSubject))) {
+        LOG.error("Not granted for CA {}, need new license", caSubject);
+        throw new OperationException(SYSTEM_FAILURE, "new license needed");
+      }
+
+      // check number of certificate
+      long maxNumOfCerts = license.getMaxNumberOfCerts();
+      if (maxNumOfCerts >= 0) {
+        long numOfCerts = certstore.getCountOfCerts(0);
+        if (numOfCerts >= maxNumOfCerts) {
+          LOG.error("Maximal {} certificates is allowed, {} already issued, need new license",
+              maxNumOfCerts, numOfCerts);
+          throw new OperationException(SYSTEM_FAILURE, "new license needed");
+        }
+      }
+
+      // regulate speed
+      license.regulateSpeed();
+      //-----end license-----
+
+      CertificateInfo certInfo = generateCert(requestor, index, gct, transactionId, event);
+      successful = true;
+
+      if (LOG.isInfoEnabled()) {
+        String prefix = certInfo.isAlreadyIssued() ? "RETURN_OLD_CERT" : "SUCCESSFUL";
+        CertWithDbId cert = certInfo.getCert();
+        LOG.info("{} generateCertificate: CA={}, profile={}, subject='{}', serialNumber={}",
+            prefix, caIdent.getName(), certprofilIdent.getName(),
+            cert.getCert().getSubjectText(), cert.getCert().getSerialNumberHex());
+      }
+      return certInfo;
+    } catch (OperationExceptionWithIndex ex) {
+      throw ex;
+    } catch (OperationException ex) {
+      throw new OperationExceptionWithIndex(index, ex);
+    } catch (Throwable th) {
+      throw new OperationExceptionWithIndex(index, new OperationException(SYSTEM_FAILURE, th));
+    } finally {
+      if (!successful) {
+        LOG.error("    FAILED generateCertificate: CA={}, profile={}, subject='{}'",
+            caIdent.getName(), certprofilIdent.getName(), subjectText);
+      }
+    }
+  } // method generateCertInBatch
+
   public CertificateInfo generateCert(RequestorInfo requestor, CertTemplateData certTemplate, String transactionId)
       throws OperationException {
     notNull(certTemplate, "certTemplate");
@@ -549,12 +642,17 @@ public class X509Ca extends X509CaModule implements Closeable {
       throws OperationExceptionWithIndex {
     try {
       CertificateInfo ret = generateCert0(requestor, gct, transactionId, event);
-      finish(event, ret != null);
-      setEventStatus(event, ret != null);
+      // the event is shared by the certificates generated in parallel
+      synchronized (event) {
+        finish(event, ret != null);
+        setEventStatus(event, ret != null);
+      }
       return ret;
     } catch (OperationException ex) {
-      event.addEventData(gct.auditPrefix() + CaAuditConstants.NAME_message, ex.getMessage());
-      setEventStatus(event, false);
+      synchronized (event) {
+        event.addEventData(gct.auditPrefix() + CaAuditConstants.NAME_message, ex.getMessage());
+        setEventStatus(event, false);
+      }
       if (ex instanceof OperationExceptionWithIndex) {
         throw (OperationExceptionWithIndex) ex;
       } else {
@@ -612,12 +710,14 @@ public class X509Ca extends X509CaModule implements Closeable {
         throw new OperationException(BAD_CERT_TEMPLATE, "unknown SerialNumberMode '" + serialNumberMode + "'");
       }
 
-      if (certstore.getCertId(caIdent, serialNumber) == 0) {
+      if (!certstore.isSerialNumberUsed(caIdent, serialNumber)) {
           break;
       }
     }
 
-    event.addEventData(auditPrefix + CaAuditConstants.NAME_serial, LogUtil.formatCsn(serialNumber));
+    synchronized (event) {
+      event.addEventData(auditPrefix + CaAuditConstants.NAME_serial, LogUtil.formatCsn(serialNumber));
+    }
 
     X509v3CertificateBuilder certBuilder = new X509v3CertificateBuilder(
         caInfo.getPublicCaInfo().getSubject(), serialNumber, gct.grantedNotBefore,
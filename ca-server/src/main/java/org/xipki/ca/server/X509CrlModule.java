@@ -17,14 +17,11 @@
 
 package org.xipki.ca.server;
 
-import org.bouncycastle.asn1.ASN1GeneralizedTime;
 import org.bouncycastle.asn1.ASN1Integer;
 import org.bouncycastle.asn1.DERGeneralizedTime;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x509.*;
-import org.bouncycastle.cert.CertIOException;
 import org.bouncycastle.cert.X509CRLHolder;
-import org.bouncycastle.cert.X509v2CRLBuilder;
 import org.xipki.audit.AuditEvent;
 import org.xipki.ca.api.PublicCaInfo;
 import org.xipki.ca.api.mgmt.CrlControl;
@@ -33,16 +30,21 @@ import org.xipki.ca.server.db.CertStore;
 import org.xipki.ca.server.mgmt.CaManagerImpl;
 import org.xipki.security.KeyUsage;
 import org.xipki.security.*;
+import org.xipki.security.asn1.CrlStreamWriter;
 import org.xipki.security.util.X509Util;
 import org.xipki.util.CollectionUtil;
 import org.xipki.util.DateUtil;
 import org.xipki.util.HourMinute;
+import org.xipki.util.IoUtil;
 import org.xipki.util.LogUtil;
 import org.xipki.util.exception.OperationException;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.cert.CRLException;
 import java.util.*;
 import java.util.concurrent.ScheduledFuture;
@@ -152,6 +154,49 @@ public class X509CrlModule extends X509CaModule implements Closeable {
 
   } // class CrlGenerationService
 
+  private static class CrlEntryAdder {
+
+    private final CrlStreamWriter crlWriter;
+
+    private final CrlControl crlControl;
+
+    CrlEntryAdder(CrlStreamWriter crlWriter, CrlControl crlControl) {
+      this.crlWriter = crlWriter;
+      this.crlControl = crlControl;
+    }
+
+    void add(CertRevInfoWithSerial revInfo) throws IOException {
+      CrlReason reason = revInfo.getReason();
+      if (crlControl.isExcludeReason() && reason != CrlReason.REMOVE_FROM_CRL) {
+        reason = CrlReason.UNSPECIFIED;
+      }
+
+      Date revocationTime = revInfo.getRevocationTime();
+      Date invalidityTime = revInfo.getInvalidityTime();
+
+      switch (crlControl.getInvalidityDateMode()) {
+        case forbidden:
+          invalidityTime = null;
+          break;
+        case optional:
+          break;
+        case required:
+          if (invalidityTime == null) {
+            invalidityTime = revocationTime;
+          }
+          break;
+        default:
+          throw new IllegalStateException("unknown TripleState " + crlControl.getInvalidityDateMode());
+      }
+
+      crlWriter.addRevokedCert(revInfo.getSerial(), revocationTime, reason, invalidityTime);
+    } // method add
+
+  } // class CrlEntryAdder
+
+  // number of revoked certificates read from the database at a time
+  private static final int CRL_PAGE_SIZE = 1000;
+
   private final X509Cert caCert;
 
   private final CertStore certstore;
@@ -164,6 +209,20 @@ public class X509CrlModule extends X509CaModule implements Closeable {
 
   private final X509PublisherModule publisher;
 
+  private final Object currentCrlLock = new Object();
+
+  private final long crlCheckIntervalMs;
+
+  private final Path crlMmapDir;
+
+  // the current CRL in encoded form, updated only within currentCrlLock
+  private volatile EncodedCrl currentCrl;
+
+  private volatile long currentCrlCheckTime;
+
+  // file of the memory-mapped current CRL, accessed only within currentCrlLock
+  private Path currentCrlFile;
+
   public X509CrlModule(CaManagerImpl caManager, CaInfo caInfo, CertStore certstore, X509PublisherModule publisher)
       throws OperationException {
     super(caInfo);
@@ -173,6 +232,11 @@ public class X509CrlModule extends X509CaModule implements Closeable {
     this.caCert = caInfo.getCert();
     this.certstore = notNull(certstore, "certstore");
 
+    CaServerConf.CrlCacheConf cacheConf = caManager.getCrlCacheConf();
+    this.crlCheckIntervalMs = (cacheConf == null ? 60 : cacheConf.getCheckInterval()) * 1000L;
+    this.crlMmapDir = (cacheConf == null || cacheConf.getMmapDir() == null) ? null
+        : Paths.get(IoUtil.expandFilepath(cacheConf.getMmapDir(), true));
+
     if (caInfo.getCrlControl() != null) {
       X509Cert crlSignerCert;
       if (caInfo.getCrlSignerName() != null) {
@@ -206,7 +270,12 @@ public class X509CrlModule extends X509CaModule implements Closeable {
       crlGenerationService.cancel(false);
       crlGenerationService = null;
     }
-  }
+
+    synchronized (currentCrlLock) {
+      currentCrl = null;
+      deleteCurrentCrlFile();
+    }
+  } // method close
 
   public X509CRLHolder getCurrentCrl(RequestorInfo requstor) throws OperationException {
     return getCrl(requstor, null);
@@ -223,7 +292,7 @@ public class X509CrlModule extends X509CaModule implements Closeable {
     }
 
     try {
-      byte[] encodedCrl = certstore.getEncodedCrl(caIdent, crlNumber);
+      byte[] encodedCrl = getEncodedCrl0(crlNumber);
       if (encodedCrl == null) {
         return null;
       }
@@ -261,7 +330,7 @@ public class X509CrlModule extends X509CaModule implements Closeable {
     }
 
     try {
-      byte[] encodedCrl = certstore.getEncodedCrl(caIdent, crlNumber);
+      byte[] encodedCrl = getEncodedCrl0(crlNumber);
       if (encodedCrl == null) {
         return null;
       }
@@ -284,6 +353,148 @@ public class X509CrlModule extends X509CaModule implements Closeable {
     }
   } // method getCrl
 
+  /**
+   * Returns the CRL in encoded form without parsing it.
+   * @param requestor the requestor.
+   * @param crlNumber CRL number, {@code null} for the current CRL.
+   * @return the DER-encoded CRL, or {@code null} if not available. Must not be modified.
+   * @throws OperationException if error occurs.
+   */
+  public byte[] getEncodedCrl(RequestorInfo requestor, BigInteger crlNumber) throws OperationException {
+    LOG.info("     START getCrl: ca={}, crlNumber={}", caIdent.getName(), crlNumber);
+    boolean successful = false;
+
+    AuditEvent event = newAuditEvent(crlNumber == null ? TYPE_download_crl : TYPE_downlaod_crl4number, requestor);
+    if (crlNumber != null) {
+      event.addEventData(NAME_crl_number, crlNumber);
+    }
+
+    try {
+      byte[] encodedCrl = getEncodedCrl0(crlNumber);
+      successful = encodedCrl != null;
+      if (successful) {
+        LOG.info("SUCCESSFUL getCrl: ca={}, crlNumber={}", caIdent.getName(), crlNumber);
+      }
+      return encodedCrl;
+    } finally {
+      if (!successful) {
+        LOG.info("    FAILED getCrl: ca={}", caIdent.getName());
+      }
+      finish(event, successful);
+    }
+  } // method getEncodedCrl
+
+  /**
+   * Returns the current CRL in encoded form from the cache.
+   * @param requestor the requestor.
+   * @return the current CRL, or {@code null} if not available.
+   * @throws OperationException if error occurs.
+   */
+  public EncodedCrl getEncodedCurrentCrl(RequestorInfo requestor) throws OperationException {
+    LOG.info("     START getCrl: ca={}, crlNumber=null", caIdent.getName());
+    boolean successful = false;
+
+    AuditEvent event = newAuditEvent(TYPE_download_crl, requestor);
+    try {
+      EncodedCrl crl = getCachedCurrentCrl();
+      successful = crl != null;
+      if (successful) {
+        LOG.info("SUCCESSFUL getCrl: ca={}, crlNumber={}, thisUpdate={}", caIdent.getName(),
+            crl.getCrlNumber(), crl.getThisUpdate());
+      }
+      return crl;
+    } finally {
+      if (!successful) {
+        LOG.info("    FAILED getCrl: ca={}", caIdent.getName());
+      }
+      finish(event, successful);
+    }
+  } // method getEncodedCurrentCrl
+
+  private byte[] getEncodedCrl0(BigInteger crlNumber) throws OperationException {
+    if (crlNumber != null) {
+      return certstore.getEncodedCrl(caIdent, crlNumber);
+    }
+
+    EncodedCrl crl = getCachedCurrentCrl();
+    return crl == null ? null : crl.getEncoded();
+  } // method getEncodedCrl0
+
+  private EncodedCrl getCachedCurrentCrl() throws OperationException {
+    EncodedCrl crl = currentCrl;
+    if (crl != null && System.currentTimeMillis() - currentCrlCheckTime < crlCheckIntervalMs) {
+      return crl;
+    }
+
+    synchronized (currentCrlLock) {
+      crl = currentCrl;
+      if (crl != null) {
+        if (System.currentTimeMillis() - currentCrlCheckTime < crlCheckIntervalMs) {
+          // checked by another thread
+          return crl;
+        }
+
+        // a new CRL may have been generated by another CA instance
+        if (crl.getCrlNumber().longValue() == certstore.getMaxCrlNumber(caIdent)) {
+          currentCrlCheckTime = System.currentTimeMillis();
+          return crl;
+        }
+      }
+
+      crl = certstore.getCurrentEncodedCrl(caIdent);
+      if (crl != null && crlMmapDir != null) {
+        crl = mapCrl(crl);
+      }
+
+      currentCrl = crl;
+      currentCrlCheckTime = System.currentTimeMillis();
+      return crl;
+    }
+  } // method getCachedCurrentCrl
+
+  private void invalidateCurrentCrl() {
+    // waits for the threads loading the CRL from the database
+    synchronized (currentCrlLock) {
+      currentCrl = null;
+    }
+  } // method invalidateCurrentCrl
+
+  private EncodedCrl mapCrl(EncodedCrl crl) {
+    try {
+      Files.createDirectories(crlMmapDir);
+      // new file for each CRL, a mapped file must not be truncated.
+      Path file = Files.createTempFile(crlMmapDir, caIdent.getName() + "-" + crl.getCrlNumber() + "-", ".crl");
+      EncodedCrl mappedCrl;
+      try {
+        mappedCrl = crl.mapTo(file);
+      } catch (IOException ex) {
+        Files.deleteIfExists(file);
+        throw ex;
+      }
+
+      deleteCurrentCrlFile();
+      currentCrlFile = file;
+      return mappedCrl;
+    } catch (IOException ex) {
+      LogUtil.warn(LOG, ex, "could not memory-map the CRL of CA " + caIdent.getName() + ", hold it in the heap");
+      return crl;
+    }
+  } // method mapCrl
+
+  private void deleteCurrentCrlFile() {
+    if (currentCrlFile == null) {
+      return;
+    }
+
+    // on POSIX systems the existing mappings remain valid after the file is deleted.
+    try {
+      Files.deleteIfExists(currentCrlFile);
+    } catch (IOException ex) {
+      currentCrlFile.toFile().deleteOnExit();
+    }
+    currentCrlFile = null;
+  } // method deleteCurrentCrlFile
+
   private void cleanupCrlsWithoutException() {
     try {
       int numCrls = caInfo.getNumCrls();
@@ -307,7 +518,13 @@ public class X509CrlModule extends X509CaModule implements Closeable {
     }
   }
 
-  public X509CRLHolder generateCrlOnDemand(RequestorInfo requestor) throws OperationException {
+  /**
+   * Generates a full CRL.
+   * @param requestor the requestor.
+   * @return the DER-encoded CRL.
+   * @throws OperationException if the CRL could not be generated.
+   */
+  public byte[] generateCrlOnDemand(RequestorInfo requestor) throws OperationException {
     CrlControl control = caInfo.getCrlControl();
     if (control == null) {
       throw new OperationException(NOT_PERMITTED, "CA could not generate CRL");
@@ -339,11 +556,11 @@ public class X509CrlModule extends X509CaModule implements Closeable {
     }
   } // method generateCrlOnDemand
 
-  private X509CRLHolder generateCrl(RequestorInfo requestor, boolean deltaCrl, Date thisUpdate, Date nextUpdate)
+  private byte[] generateCrl(RequestorInfo requestor, boolean deltaCrl, Date thisUpdate, Date nextUpdate)
       throws OperationException {
     AuditEvent event = newAuditEvent(TYPE_gen_crl, requestor);
     try {
-      X509CRLHolder ret = generateCrl0(deltaCrl, thisUpdate, nextUpdate, event);
+      byte[] ret = generateCrl0(deltaCrl, thisUpdate, nextUpdate, event);
       finish(event, true);
       return ret;
     } catch (OperationException ex) {
@@ -352,7 +569,7 @@ public class X509CrlModule extends X509CaModule implements Closeable {
     }
   }
 
-  private X509CRLHolder generateCrl0(boolean deltaCrl, Date thisUpdate, Date nextUpdate, AuditEvent event)
+  private byte[] generateCrl0(boolean deltaCrl, Date thisUpdate, Date nextUpdate, AuditEvent event)
       throws OperationException {
     CrlControl control = caInfo.getCrlControl();
     if (control == null) {
@@ -391,13 +608,6 @@ public class X509CrlModule extends X509CaModule implements Closeable {
       boolean indirectCrl = (crlSigner != null);
       X500Name crlIssuer = indirectCrl ? crlSigner.getSubject() : pci.getSubject();
 
-      X509v2CRLBuilder crlBuilder = new X509v2CRLBuilder(crlIssuer, thisUpdate);
-      if (nextUpdate != null) {
-        crlBuilder.setNextUpdate(nextUpdate);
-      }
-
-      final int numEntries = 100;
-
       CrlControl crlControl = caInfo.getCrlControl();
 
       boolean withExpiredCerts = crlControl.isIncludeExpiredcerts();
@@ -405,179 +615,131 @@ public class X509CrlModule extends X509CaModule implements Closeable {
       // 10 minutes buffer
       Date notExpiredAt = withExpiredCerts ? new Date(0) : new Date(thisUpdate.getTime() - 600L * MS_PER_SECOND);
 
-      // we have to cache the serial entries to sort them
-      List<CertRevInfoWithSerial> allRevInfos = new LinkedList<>();
-
-      if (deltaCrl) {
-        allRevInfos = certstore.getCertsForDeltaCrl(caIdent, baseCrlNumber, notExpiredAt);
-      } else {
-        long startId = 1;
-
-        List<CertRevInfoWithSerial> revInfos;
-        do {
-          revInfos = certstore.getRevokedCerts(caIdent, notExpiredAt, startId, numEntries);
-          allRevInfos.addAll(revInfos);
+      byte[] encodedCrl;
+      BigInteger crlNumber;
+      // the revoked certificates are written sorted by serial number to temporary files instead of
+      // being kept in memory. In indirect CRL, the certificateIssuer is set in the first entry.
+      try (CrlStreamWriter crlWriter = new CrlStreamWriter(crlIssuer, indirectCrl ? pci.getSubject() : null,
+          thisUpdate, nextUpdate)) {
+        CrlEntryAdder entryAdder = new CrlEntryAdder(crlWriter, crlControl);
 
-          long maxId = 1;
+        if (deltaCrl) {
+          List<CertRevInfoWithSerial> revInfos = certstore.getCertsForDeltaCrl(caIdent, baseCrlNumber, notExpiredAt);
           for (CertRevInfoWithSerial revInfo : revInfos) {
-            if (revInfo.getId() > maxId) {
-              maxId = revInfo.getId();
-            }
-          } // end for
-          startId = maxId + 1;
-        } while (revInfos.size() >= numEntries); // end do
+            entryAdder.add(revInfo);
+          }
+        } else {
+          long startId = 1;
 
-        revInfos.clear();
-      }
+          List<CertRevInfoWithSerial> revInfos;
+          do {
+            revInfos = certstore.getRevokedCerts(caIdent, notExpiredAt, startId, CRL_PAGE_SIZE);
 
-      if (indirectCrl && allRevInfos.isEmpty()) {
-        // add dummy entry, see https://github.com/xipki/xipki/issues/189
-        Extensions extensions = new Extensions(createCertificateIssuerExtension(pci.getSubject()));
-        crlBuilder.addCRLEntry(BigInteger.ZERO, new Date(0), extensions);
-        LOG.debug("added cert ca={} serial=0 to the indirect CRL", caIdent);
-      } else {
-        // sort the list by SerialNumber ASC
-        Collections.sort(allRevInfos);
+            long maxId = 1;
+            for (CertRevInfoWithSerial revInfo : revInfos) {
+              entryAdder.add(revInfo);
+              if (revInfo.getId() > maxId) {
+                maxId = revInfo.getId();
+              }
+            } // end for
+            startId = maxId + 1;
+          } while (revInfos.size() >= CRL_PAGE_SIZE); // end do
+        }
 
-        boolean isFirstCrlEntry = true;
+        if (indirectCrl && crlWriter.getNumRevokedCerts() == 0) {
+          // add dummy entry, see https://github.com/xipki/xipki/issues/189
+          crlWriter.addRevokedCert(BigInteger.ZERO, new Date(0), null, null);
+          LOG.debug("added cert ca={} serial=0 to the indirect CRL", caIdent);
+        }
 
-        for (CertRevInfoWithSerial revInfo : allRevInfos) {
-          CrlReason reason = revInfo.getReason();
-          if (crlControl.isExcludeReason() && reason != CrlReason.REMOVE_FROM_CRL) {
-            reason = CrlReason.UNSPECIFIED;
-          }
+        crlNumber = caInfo.nextCrlNumber();
+        event.addEventData(NAME_crl_number, crlNumber);
+        if (baseCrlNumber != null) {
+          event.addEventData(NAME_basecrl_number, baseCrlNumber);
+        }
 
-          Date revocationTime = revInfo.getRevocationTime();
-          Date invalidityTime = revInfo.getInvalidityTime();
-
-          switch (crlControl.getInvalidityDateMode()) {
-            case forbidden:
-              invalidityTime = null;
-              break;
-            case optional:
-              break;
-            case required:
-              if (invalidityTime == null) {
-                invalidityTime = revocationTime;
-              }
-              break;
-            default:
-              throw new IllegalStateException("unknown TripleState " + crlControl.getInvalidityDateMode());
+        event.addEventData(NAME_num, crlWriter.getNumRevokedCerts());
+
+        try {
+          // AuthorityKeyIdentifier
+          byte[] akiValues = indirectCrl
+              ? crlSigner.getSigner().getCertificate().getSubjectKeyId() : pci.getSubjectKeyIdentifer();
+          AuthorityKeyIdentifier aki = new AuthorityKeyIdentifier(akiValues);
+          crlWriter.addExtension(Extension.authorityKeyIdentifier, false, aki);
+
+          // add extension CRL Number
+          crlWriter.addExtension(Extension.cRLNumber, false, new ASN1Integer(crlNumber));
+
+          // IssuingDistributionPoint
+          if (indirectCrl) {
+            IssuingDistributionPoint idp = new IssuingDistributionPoint(
+                null, // distributionPoint,
+                false, // onlyContainsUserCerts,
+                false, // onlyContainsCACerts,
+                null, // onlySomeReasons,
+                true, // indirectCRL,
+                false); // onlyContainsAttributeCerts
+
+            crlWriter.addExtension(Extension.issuingDistributionPoint, true, idp);
           }
 
-          BigInteger serial = revInfo.getSerial();
-          LOG.debug("added cert ca={} serial={} to CRL", caIdent, serial);
-
-          if (!indirectCrl || !isFirstCrlEntry) {
-            if (invalidityTime != null) {
-              crlBuilder.addCRLEntry(serial, revocationTime, reason.getCode(), invalidityTime);
-            } else {
-              crlBuilder.addCRLEntry(serial, revocationTime, reason.getCode());
-            }
-            continue;
+          // Delta CRL Indicator
+          if (deltaCrl) {
+            crlWriter.addExtension(Extension.deltaCRLIndicator, true, new ASN1Integer(baseCrlNumber));
           }
 
-          List<Extension> extensions = new ArrayList<>(3);
-          if (reason != CrlReason.UNSPECIFIED) {
-            Extension ext = createReasonExtension(reason.getCode());
-            extensions.add(ext);
-          }
-          if (invalidityTime != null) {
-            Extension ext = createInvalidityDateExtension(invalidityTime);
-            extensions.add(ext);
+          // freshestCRL
+          List<String> deltaCrlUris = pci.getCaUris().getDeltaCrlUris();
+          if (control.getDeltaCrlIntervals() > 0 && CollectionUtil.isNotEmpty(deltaCrlUris)) {
+            CRLDistPoint cdp = CaUtil.createCrlDistributionPoints(deltaCrlUris, pci.getSubject(), crlIssuer);
+            crlWriter.addExtension(Extension.freshestCRL, false, cdp);
           }
 
-          Extension ext = createCertificateIssuerExtension(pci.getSubject());
-          extensions.add(ext);
-
-          crlBuilder.addCRLEntry(serial, revocationTime, new Extensions(extensions.toArray(new Extension[0])));
-          isFirstCrlEntry = false;
-        }
-
-        allRevInfos.clear(); // free the memory
-      }
-
-      BigInteger crlNumber = caInfo.nextCrlNumber();
-      event.addEventData(NAME_crl_number, crlNumber);
-      if (baseCrlNumber != null) {
-        event.addEventData(NAME_basecrl_number, baseCrlNumber);
-      }
-
-      try {
-        // AuthorityKeyIdentifier
-        byte[] akiValues = indirectCrl
-            ? crlSigner.getSigner().getCertificate().getSubjectKeyId() : pci.getSubjectKeyIdentifer();
-        AuthorityKeyIdentifier aki = new AuthorityKeyIdentifier(akiValues);
-        crlBuilder.addExtension(Extension.authorityKeyIdentifier, false, aki);
-
-        // add extension CRL Number
-        crlBuilder.addExtension(Extension.cRLNumber, false, new ASN1Integer(crlNumber));
-
-        // IssuingDistributionPoint
-        if (indirectCrl) {
-          IssuingDistributionPoint idp = new IssuingDistributionPoint(
-              null, // distributionPoint,
-              false, // onlyContainsUserCerts,
-              false, // onlyContainsCACerts,
-              null, // onlySomeReasons,
-              true, // indirectCRL,
-              false); // onlyContainsAttributeCerts
-
-          crlBuilder.addExtension(Extension.issuingDistributionPoint, true, idp);
+          if (withExpiredCerts) {
+            DERGeneralizedTime statusSince = new DERGeneralizedTime(caCert.getNotBefore());
+            crlWriter.addExtension(Extension.expiredCertsOnCRL, false, statusSince);
+          }
+        } catch (IOException ex) {
+          LogUtil.error(LOG, ex, "crlWriter.addExtension");
+          throw new OperationException(INVALID_EXTENSION, ex);
         }
 
-        // Delta CRL Indicator
-        if (deltaCrl) {
-          crlBuilder.addExtension(Extension.deltaCRLIndicator, true, new ASN1Integer(baseCrlNumber));
-        }
+        @SuppressWarnings("resource")
+        ConcurrentContentSigner concurrentSigner = (crlSigner == null)
+            ? caInfo.getSigner(null) : crlSigner.getSigner();
 
-        // freshestCRL
-        List<String> deltaCrlUris = pci.getCaUris().getDeltaCrlUris();
-        if (control.getDeltaCrlIntervals() > 0 && CollectionUtil.isNotEmpty(deltaCrlUris)) {
-          CRLDistPoint cdp = CaUtil.createCrlDistributionPoints(deltaCrlUris, pci.getSubject(), crlIssuer);
-          crlBuilder.addExtension(Extension.freshestCRL, false, cdp);
+        ConcurrentBagEntrySigner signer0;
+        try {
+          signer0 = concurrentSigner.borrowSigner();
+        } catch (NoIdleSignerException ex) {
+          throw new OperationException(SYSTEM_FAILURE, "NoIdleSignerException: " + ex.getMessage());
         }
 
-        if (withExpiredCerts) {
-          DERGeneralizedTime statusSince = new DERGeneralizedTime(caCert.getNotBefore());
-          crlBuilder.addExtension(Extension.expiredCertsOnCRL, false, statusSince);
+        try {
+          encodedCrl = crlWriter.build(signer0.value());
+        } finally {
+          concurrentSigner.requiteSigner(signer0);
         }
-      } catch (CertIOException ex) {
-        LogUtil.error(LOG, ex, "crlBuilder.addExtension");
-        throw new OperationException(INVALID_EXTENSION, ex);
-      }
-
-      @SuppressWarnings("resource")
-      ConcurrentContentSigner concurrentSigner = (crlSigner == null)
-          ? caInfo.getSigner(null) : crlSigner.getSigner();
-
-      ConcurrentBagEntrySigner signer0;
-      try {
-        signer0 = concurrentSigner.borrowSigner();
-      } catch (NoIdleSignerException ex) {
-        throw new OperationException(SYSTEM_FAILURE, "NoIdleSignerException: " + ex.getMessage());
-      }
-
-      X509CRLHolder crl;
-      try {
-        crl = crlBuilder.build(signer0.value());
-      } finally {
-        concurrentSigner.requiteSigner(signer0);
+      } catch (IOException ex) {
+        LogUtil.error(LOG, ex, "could not generate CRL");
+        throw new OperationException(CRL_FAILURE, ex);
       }
 
       caInfo.setNextCrlNumber(crlNumber.longValue() + 1);
       caManager.commitNextCrlNo(caIdent, caInfo.getNextCrlNumber());
-      publisher.publishCrl(crl);
+      // the encoded CRL is passed on without parsing it again
+      publisher.publishCrl(encodedCrl, crlNumber, baseCrlNumber, thisUpdate, nextUpdate);
+      invalidateCurrentCrl();
 
       successful = true;
       LOG.info("SUCCESSFUL generateCrl: ca={}, crlNumber={}, thisUpdate={}", caIdent.getName(),
-          crlNumber, crl.getThisUpdate());
+          crlNumber, thisUpdate);
 
       if (!deltaCrl) {
         // clean up the CRL
         cleanupCrlsWithoutException();
       }
-      return crl;
+      return encodedCrl;
     } finally {
       if (!successful) {
         LOG.info("    FAILED generateCrl: ca={}", caIdent.getName());
@@ -640,31 +802,4 @@ public class X509CrlModule extends X509CaModule implements Closeable {
     return true;
   }
 
-  private static Extension createReasonExtension(int reasonCode) {
-    CRLReason crlReason = CRLReason.lookup(reasonCode);
-    try {
-      return new Extension(Extension.reasonCode, false, crlReason.getEncoded());
-    } catch (IOException ex) {
-      throw new IllegalArgumentException("error encoding reason: " + ex.getMessage(), ex);
-    }
-  }
-
-  private static Extension createInvalidityDateExtension(Date invalidityDate) {
-    try {
-      ASN1GeneralizedTime asnTime = new ASN1GeneralizedTime(invalidityDate);
-      return new Extension(Extension.invalidityDate, false, asnTime.getEncoded());
-    } catch (IOException ex) {
-      throw new IllegalArgumentException("error encoding reason: " + ex.getMessage(), ex);
-    }
-  }
-
-  private static Extension createCertificateIssuerExtension(X500Name certificateIssuer) {
-    try {
-      GeneralNames generalNames = new GeneralNames(new GeneralName(certificateIssuer));
-      return new Extension(Extension.certificateIssuer, true, generalNames.getEncoded());
-    } catch (IOException ex) {
-      throw new IllegalArgumentException("error encoding reason: " + ex.getMessage(), ex);
-    }
-  }
-
 }
@@ -17,7 +17,6 @@
 
 package org.xipki.ca.server;
 
-import org.bouncycastle.cert.X509CRLHolder;
 import org.xipki.ca.api.CertWithDbId;
 import org.xipki.ca.api.CertificateInfo;
 import org.xipki.ca.api.NameId;
@@ -32,8 +31,12 @@ import org.xipki.util.CollectionUtil;
 import org.xipki.util.LogUtil;
 import org.xipki.util.exception.OperationException;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.xipki.util.Args.notNull;
 
@@ -47,6 +50,11 @@ class X509PublisherModule extends X509CaModule {
 
   private final CertStore certstore;
 
+  private final CaServerConf.AsyncPublishConf asyncPublishConf;
+
+  // drainers of PUBLISHQUEUE, with publisher name as key.
+  private final ConcurrentHashMap<String, PublishQueueDrainer> publishQueueDrainers = new ConcurrentHashMap<>();
+
   private final CaIdNameMap caIdNameMap;
 
   private final CaManagerImpl caManager;
@@ -57,6 +65,7 @@ class X509PublisherModule extends X509CaModule {
     this.caManager = notNull(caManager, "caManager");
     this.caIdNameMap = caManager.idNameMap();
     this.certstore = notNull(certstore, "certstore");
+    this.asyncPublishConf = caManager.getAsyncPublishConf();
 
     for (IdentifiedCertPublisher publisher : publishers()) {
       publisher.caAdded(caCert);
@@ -80,6 +89,21 @@ class X509PublisherModule extends X509CaModule {
       return 1;
     }
 
+    if (asyncPublishConf != null) {
+      // the certificate will be published by the workers draining the PUBLISHQUEUE
+      Long certId = certInfo.getCert().getCertId();
+      for (IdentifiedCertPublisher publisher : publishers()) {
+        try {
+          certstore.addToPublishQueue(publisher.getIdent(), certId, caIdent);
+          publishQueueDrainer(publisher.getIdent()).entryQueued();
+        } catch (Throwable th) {
+          LogUtil.error(LOG, th, "could not add entry to PublishQueue");
+          return 2;
+        }
+      }
+      return 0;
+    }
+
     for (IdentifiedCertPublisher publisher : publishers()) {
       boolean successful;
       try {
@@ -96,6 +120,7 @@ class X509PublisherModule extends X509CaModule {
       Long certId = certInfo.getCert().getCertId();
       try {
         certstore.addToPublishQueue(publisher.getIdent(), certId, caIdent);
+        publishQueueDrainer(publisher.getIdent()).entryQueued();
       } catch (Throwable th) {
         LogUtil.error(LOG, th, "could not add entry to PublishQueue");
         return 2;
@@ -148,6 +173,7 @@ class X509PublisherModule extends X509CaModule {
       try {
         LOG.info("clearing PublishQueue for publisher {}", name);
         certstore.clearPublishQueue(caIdent, publisherIdent);
+        queueCleared(name);
         LOG.info(" cleared PublishQueue for publisher {}", name);
       } catch (OperationException ex) {
         LogUtil.error(LOG, ex, "could not clear PublishQueue for publisher " + name);
@@ -186,6 +212,9 @@ class X509PublisherModule extends X509CaModule {
     if (publisherNames == null) {
       try {
         certstore.clearPublishQueue(caIdent, null);
+        for (PublishQueueDrainer drainer : publishQueueDrainers.values()) {
+          drainer.queueCleared();
+        }
       } catch (OperationException ex) {
         throw new CaMgmtException("could not clear publish queue of CA " + caIdent + ": " + ex.getMessage(), ex);
       }
@@ -197,6 +226,7 @@ class X509PublisherModule extends X509CaModule {
       NameId publisherIdent = caIdNameMap.getPublisher(publisherName);
       try {
         certstore.clearPublishQueue(caIdent, publisherIdent);
+        queueCleared(publisherName);
       } catch (OperationException ex) {
         throw new CaMgmtException("could not clear publish queue of CA " + caIdent + ": " + ex.getMessage()
             + " for publisher " + publisherName, ex);
@@ -217,62 +247,66 @@ class X509PublisherModule extends X509CaModule {
 
   boolean publishCertsInQueue(IdentifiedCertPublisher publisher) {
     notNull(publisher, "publisher");
-    final int numEntries = 500;
+    final NameId publisherIdent = publisher.getIdent();
+    return publishQueueDrainer(publisherIdent).drain(new PublishQueueDrainer.PublishQueue() {
 
-    while (true) {
-      List<Long> certIds;
-      try {
-        certIds = certstore.getPublishQueueEntries(caIdent, publisher.getIdent(), numEntries);
-      } catch (OperationException ex) {
-        LogUtil.error(LOG, ex);
-        return false;
+      @Override
+      public List<Long> nextCertIds(int num) throws OperationException {
+        List<Long> certIds = certstore.getPublishQueueEntries(caIdent, publisherIdent, num);
+        return certIds == null ? Collections.emptyList() : certIds;
       }
 
-      if (CollectionUtil.isEmpty(certIds)) {
-        break;
+      @Override
+      public CertificateInfo getCert(long certId) throws OperationException {
+        return certstore.getCertForId(caIdent, caCert, certId, caIdNameMap);
       }
 
-      for (Long certId : certIds) {
-        CertificateInfo certInfo;
+      @Override
+      public void remove(long certId) throws OperationException {
+        certstore.removeFromPublishQueue(publisherIdent, certId);
+      }
 
-        try {
-          certInfo = certstore.getCertForId(caIdent, caCert, certId, caIdNameMap);
-        } catch (OperationException ex) {
-          LogUtil.error(LOG, ex);
-          return false;
-        }
+    }, publisher);
+  } // method publishCertsInQueue
 
-        boolean successful = publisher.certificateAdded(certInfo);
-        if (!successful) {
-          LOG.error("republishing certificate id={} failed", certId);
-          return false;
-        }
+  /**
+   * Returns the lag of the PUBLISHQUEUE for the given publisher.
+   * @param publisherName name of the publisher.
+   * @return the age of the oldest entry not yet published in milliseconds, 0 if the queue is empty.
+   */
+  long getPublishQueueLagMs(String publisherName) {
+    PublishQueueDrainer drainer = publishQueueDrainers.get(notNull(publisherName, "publisherName"));
+    return drainer == null ? 0 : drainer.getLagMs();
+  }
 
-        try {
-          certstore.removeFromPublishQueue(publisher.getIdent(), certId);
-        } catch (OperationException ex) {
-          LogUtil.warn(LOG, ex, "could not remove republished cert id=" + certId
-              + " and publisher=" + publisher.getIdent().getName());
-        }
-      } // end for
-    } // end while
+  private void queueCleared(String publisherName) {
+    PublishQueueDrainer drainer = publishQueueDrainers.get(publisherName);
+    if (drainer != null) {
+      drainer.queueCleared();
+    }
+  }
 
-    return true;
-  } // method publishCertsInQueue
+  private PublishQueueDrainer publishQueueDrainer(NameId publisherIdent) {
+    return publishQueueDrainers.computeIfAbsent(publisherIdent.getName(), k -> {
+      int batchSize = (asyncPublishConf == null) ? 500 : asyncPublishConf.getBatchSize();
+      return new PublishQueueDrainer("CA " + caIdent.getName() + ", publisher " + k, batchSize);
+    });
+  }
 
-  void publishCrl(X509CRLHolder crl) {
+  void publishCrl(byte[] encodedCrl, BigInteger crlNumber, BigInteger baseCrlNumber,
+      Date thisUpdate, Date nextUpdate) {
     try {
-      certstore.addCrl(caIdent, crl);
+      certstore.addCrl(caIdent, encodedCrl, crlNumber, baseCrlNumber, thisUpdate, nextUpdate);
     } catch (Exception ex) {
       LOG.error("could not add CRL ca={}, thisUpdate={}: {}, ",
-          caIdent.getName(), crl.getThisUpdate(), ex.getMessage());
+          caIdent.getName(), thisUpdate, ex.getMessage());
       LOG.debug("Exception", ex);
       return;
     }
 
     for (IdentifiedCertPublisher publisher : publishers()) {
       try {
-        publisher.crlAdded(caCert, crl);
+        publisher.crlAdded(caCert, encodedCrl);
       } catch (RuntimeException ex) {
         LogUtil.error(LOG, ex, "could not publish CRL to the publisher " + publisher.getIdent());
       }
@@ -325,6 +359,7 @@ class X509PublisherModule extends X509CaModule {
       Long certId = revokedCert.getCert().getCertId();
       try {
         certstore.addToPublishQueue(publisher.getIdent(), certId, caIdent);
+        publishQueueDrainer(publisher.getIdent()).entryQueued();
       } catch (Throwable th) {
         LogUtil.error(LOG, th, "could not add entry to PublishQueue");
       }
@@ -349,6 +384,7 @@ class X509PublisherModule extends X509CaModule {
       Long certId = unrevokedCert.getCertId();
       try {
         certstore.addToPublishQueue(publisher.getIdent(), certId, caIdent);
+        publishQueueDrainer(publisher.getIdent()).entryQueued();
       } catch (Throwable th) {
         LogUtil.error(LOG, th, "could not add entry to PublishQueue");
       }
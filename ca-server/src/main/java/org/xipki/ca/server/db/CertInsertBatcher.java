@@ -0,0 +1,257 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ca.server.db.QueryExecutor.SqlColumn2;
+import org.xipki.datasource.DataAccessException;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.util.LogUtil;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.xipki.util.Args.notNull;
+import static org.xipki.util.Args.positive;
+
+/**
+ * Group commit of the inserts into the table CERT. The rows added by concurrent threads
+ * are inserted with one JDBC batch in one transaction. A caller returns only after the
+ * transaction containing its row has been committed.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+class CertInsertBatcher implements Closeable {
+
+  private static class PendingRow {
+
+    private final SqlColumn2[] columns;
+
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private DataAccessException error;
+
+    PendingRow(SqlColumn2[] columns) {
+      this.columns = columns;
+    }
+
+  } // class PendingRow
+
+  private static final Logger LOG = LoggerFactory.getLogger(CertInsertBatcher.class);
+
+  private final QueryExecutor executor;
+
+  private final DataSourceWrapper datasource;
+
+  private final String sql;
+
+  private final int maxBatchSize;
+
+  private final long maxWaitNanos;
+
+  private final LinkedBlockingQueue<PendingRow> queue = new LinkedBlockingQueue<>();
+
+  private final Thread flusher;
+
+  private volatile boolean stopped;
+
+  CertInsertBatcher(QueryExecutor executor, String sql, int maxBatchSize, int maxWaitMs) {
+    this.executor = notNull(executor, "executor");
+    this.datasource = executor.datasource;
+    this.sql = notNull(sql, "sql");
+    this.maxBatchSize = positive(maxBatchSize, "maxBatchSize");
+    this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+
+    this.flusher = new Thread(this::run, "cert-insert-batcher");
+    this.flusher.setDaemon(true);
+    this.flusher.start();
+  }
+
+  /**
+   * Inserts the row, and waits until it is committed.
+   * @param columns the column values of the row.
+   * @throws DataAccessException if the row could not be inserted.
+   */
+  void insert(SqlColumn2[] columns) throws DataAccessException {
+    if (stopped) {
+      throw new DataAccessException("CertInsertBatcher has been closed");
+    }
+
+    PendingRow row = new PendingRow(columns);
+    queue.add(row);
+
+    try {
+      while (!row.done.await(1, TimeUnit.SECONDS)) {
+        if (!flusher.isAlive() && row.done.getCount() > 0) {
+          throw new DataAccessException("CertInsertBatcher has been closed");
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new DataAccessException("interrupted while waiting for the commit");
+    }
+
+    if (row.error != null) {
+      throw row.error;
+    }
+  } // method insert
+
+  private void run() {
+    List<PendingRow> batch = new ArrayList<>(maxBatchSize);
+    while (!(stopped && queue.isEmpty())) {
+      try {
+        PendingRow first = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+
+        batch.add(first);
+        // collect the rows arriving within the max. wait time
+        long deadline = System.nanoTime() + maxWaitNanos;
+        while (batch.size() < maxBatchSize) {
+          if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+            continue;
+          }
+
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0) {
+            break;
+          }
+
+          PendingRow next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+          if (next == null) {
+            break;
+          }
+          batch.add(next);
+        }
+
+        flush(batch);
+      } catch (InterruptedException ex) {
+        stopped = true;
+      } catch (Throwable th) {
+        LogUtil.error(LOG, th, "error inserting certificates");
+        for (PendingRow m : batch) {
+          if (m.done.getCount() > 0) {
+            m.error = new DataAccessException(th.getMessage(), th);
+            m.done.countDown();
+          }
+        }
+      } finally {
+        batch.clear();
+      }
+    }
+
+    // fail the rows not inserted
+    PendingRow row;
+    while ((row = queue.poll()) != null) {
+      row.error = new DataAccessException("CertInsertBatcher has been closed");
+      row.done.countDown();
+    }
+  } // method run
+
+  private void flush(List<PendingRow> batch) {
+    try {
+      insertInTransaction(batch);
+      for (PendingRow m : batch) {
+        m.done.countDown();
+      }
+    } catch (DataAccessException ex) {
+      if (batch.size() == 1) {
+        PendingRow m = batch.get(0);
+        m.error = ex;
+        m.done.countDown();
+        return;
+      }
+
+      // a row may violate a constraint (e.g. duplicated serial number), insert the rows one by one,
+      // so that only the failed rows are reported.
+      LOG.warn("could not insert {} certificates in one batch, insert them one by one: {}",
+          batch.size(), ex.getMessage());
+      for (PendingRow m : batch) {
+        try {
+          insertInTransaction(Collections.singletonList(m));
+        } catch (DataAccessException ex2) {
+          m.error = ex2;
+        }
+        m.done.countDown();
+      }
+    }
+  } // method flush
+
+  private void insertInTransaction(List<PendingRow> rows) throws DataAccessException {
+    Connection conn = datasource.getConnection();
+    try {
+      boolean autoCommit = conn.getAutoCommit();
+      if (autoCommit) {
+        conn.setAutoCommit(false);
+      }
+
+      PreparedStatement ps = null;
+      boolean committed = false;
+      try {
+        ps = datasource.prepareStatement(conn, sql);
+        for (PendingRow row : rows) {
+          executor.setColumns(ps, sql, row.columns);
+          ps.addBatch();
+        }
+        ps.executeBatch();
+        conn.commit();
+        committed = true;
+      } finally {
+        if (!committed) {
+          try {
+            conn.rollback();
+          } catch (SQLException ex) {
+            LOG.warn("could not rollback: {}", ex.getMessage());
+          }
+        }
+
+        datasource.releaseResources(ps, null, false);
+        if (autoCommit) {
+          conn.setAutoCommit(true);
+        }
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.returnConnection(conn);
+    }
+  } // method insertInTransaction
+
+  @Override
+  public void close() {
+    stopped = true;
+    try {
+      flusher.join(10_000);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  } // method close
+
+}
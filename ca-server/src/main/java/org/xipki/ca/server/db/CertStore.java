@@ -38,6 +38,7 @@ import org.xipki.ca.api.mgmt.CertWithRevocationInfo;
 import org.xipki.ca.server.CaIdNameMap;
 import org.xipki.ca.server.CaUtil;
 import org.xipki.ca.server.CertRevInfoWithSerial;
+import org.xipki.ca.server.EncodedCrl;
 import org.xipki.ca.server.UniqueIdGenerator;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceWrapper;
@@ -58,6 +59,10 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.xipki.util.Args.*;
@@ -169,6 +174,25 @@ public class CertStore extends CertStoreBase {
 
   private long earliestNotBefore;
 
+  // group commit of the certificates, null if each certificate is inserted in its own transaction.
+  private CertInsertBatcher certInsertBatcher;
+
+  // Bloom filters of the serial numbers, with CA id as key. Only the completely loaded filters are contained.
+  private final ConcurrentHashMap<Integer, SerialNumberFilter> serialNumberFilters = new ConcurrentHashMap<>();
+
+  // filters being loaded from the database, they receive the serial numbers of new certificates as well.
+  private final ConcurrentHashMap<Integer, SerialNumberFilter> loadingSerialNumberFilters =
+      new ConcurrentHashMap<>();
+
+  // CAs whose filter is scheduled to be loaded or is being loaded.
+  private final Set<Integer> scheduledSerialNumberFilters = ConcurrentHashMap.newKeySet();
+
+  private volatile ExecutorService serialNumberFilterLoader;
+
+  private long minSerialNumberFilterEntries;
+
+  private double serialNumberFilterFpRate;
+
   public CertStore(DataSourceWrapper datasource, UniqueIdGenerator idGenerator, PasswordResolver passwordResolver)
       throws DataAccessException, CaMgmtException {
     super(datasource, passwordResolver);
@@ -183,7 +207,7 @@ public class CertStore extends CertStoreBase {
     this.sqlCertInfo = buildSelectFirstSql("PID,RID,REV,RR,RT,RIT,CERT FROM CERT WHERE CA_ID=? AND SN=?");
     this.sqlKnowsCertForSerial = buildSelectFirstSql("ID FROM CERT WHERE SN=? AND CA_ID=?");
     this.sqlCertStatusForSubjectFp = buildSelectFirstSql("REV FROM CERT WHERE FP_S=? AND CA_ID=?");
-    this.sqlCrl = buildSelectFirstSql("THISUPDATE DESC", "THISUPDATE,CRL FROM CRL WHERE CA_ID=?");
+    this.sqlCrl = buildSelectFirstSql("THISUPDATE DESC", "THISUPDATE,CRL_NO,CRL FROM CRL WHERE CA_ID=?");
     this.sqlCrlWithNo = buildSelectFirstSql("THISUPDATE DESC",
         "THISUPDATE,CRL FROM CRL WHERE CA_ID=? AND CRL_NO=?");
 
@@ -193,6 +217,157 @@ public class CertStore extends CertStoreBase {
     this.earliestNotBefore = datasource.getMin(null, "CERT", "NBEFORE");
   } // constructor
 
+  /**
+   * Inserts the certificates added by concurrent threads in one transaction.
+   * @param maxBatchSize maximal number of certificates in one transaction.
+   * @param maxWaitMs maximal time in milliseconds to wait for further certificates.
+   */
+  public synchronized void enableBatchInsert(int maxBatchSize, int maxWaitMs) {
+    if (certInsertBatcher != null) {
+      certInsertBatcher.close();
+    }
+    certInsertBatcher = new CertInsertBatcher(this, SQL_ADD_CERT, maxBatchSize, maxWaitMs);
+    LOG.info("enabled batch insert of certificates, maxBatchSize={}, maxWait={} ms", maxBatchSize, maxWaitMs);
+  }
+
+  /**
+   * Checks the uniqueness of new serial numbers with an in-memory Bloom filter per CA, so that
+   * the database is queried only if the filter reports a possible hit. The filter of a CA is
+   * loaded in the background by {@link #loadSerialNumberFilter(NameId)}.
+   * @param minExpectedEntries minimal number of expected serial numbers per CA.
+   * @param falsePositiveRate the false positive rate.
+   */
+  public synchronized void enableSerialNumberFilter(long minExpectedEntries, double falsePositiveRate) {
+    this.minSerialNumberFilterEntries = positive(minExpectedEntries, "minExpectedEntries");
+    this.serialNumberFilterFpRate = falsePositiveRate;
+    if (serialNumberFilterLoader == null) {
+      serialNumberFilterLoader = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "serial-filter-loader");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    LOG.info("enabled serial number filter, minExpectedEntries={}, falsePositiveRate={}",
+        minExpectedEntries, falsePositiveRate);
+  } // method enableSerialNumberFilter
+
+  /**
+   * Loads the serial numbers of the given CA into a new Bloom filter in the background. Does
+   * nothing if the serial number filter is not enabled or is being loaded for this CA.
+   * @param ca the CA.
+   */
+  public void loadSerialNumberFilter(NameId ca) {
+    notNull(ca, "ca");
+    ExecutorService loader = serialNumberFilterLoader;
+    if (loader == null || !scheduledSerialNumberFilters.add(ca.getId())) {
+      return;
+    }
+
+    try {
+      loader.execute(() -> loadSerialNumberFilter0(ca));
+    } catch (RejectedExecutionException ex) {
+      scheduledSerialNumberFilters.remove(ca.getId());
+    }
+  } // method loadSerialNumberFilter
+
+  private void loadSerialNumberFilter0(NameId ca) {
+    final int pageSize = 10000;
+    long start = System.currentTimeMillis();
+    SerialNumberFilter filter = null;
+    try {
+      long expectedEntries = Math.max(minSerialNumberFilterEntries, 2 * getCountOfCerts(ca, false));
+
+      // register the filter before the scan, so that the certificates added during the scan are
+      // contained as well.
+      filter = new SerialNumberFilter(expectedEntries, serialNumberFilterFpRate);
+      loadingSerialNumberFilters.put(ca.getId(), filter);
+
+      long startId = 1;
+      while (true) {
+        List<SerialWithId> serials = getSerialNumbers(ca, startId, pageSize, false);
+        for (SerialWithId m : serials) {
+          filter.add(m.getSerial());
+          startId = Math.max(startId, m.getId() + 1);
+        }
+
+        if (serials.size() < pageSize) {
+          break;
+        }
+      }
+
+      serialNumberFilters.put(ca.getId(), filter);
+      LOG.info("loaded serial number filter of CA {} with {} entries ({} bits) in {} ms", ca.getName(),
+          filter.getNumEntries(), filter.getNumBits(), System.currentTimeMillis() - start);
+    } catch (Throwable th) {
+      // the database will be queried for each serial number
+      serialNumberFilters.remove(ca.getId());
+      LogUtil.error(LOG, th, "could not load serial number filter of CA " + ca.getName());
+    } finally {
+      if (filter != null) {
+        loadingSerialNumberFilters.remove(ca.getId(), filter);
+      }
+      scheduledSerialNumberFilters.remove(ca.getId());
+    }
+  } // method loadSerialNumberFilter0
+
+  private void addToSerialNumberFilter(NameId ca, BigInteger serialNumber) {
+    if (serialNumberFilterLoader == null) {
+      return;
+    }
+
+    SerialNumberFilter filter = serialNumberFilters.get(ca.getId());
+    if (filter != null) {
+      filter.add(serialNumber);
+    }
+
+    SerialNumberFilter loadingFilter = loadingSerialNumberFilters.get(ca.getId());
+    if (loadingFilter != null) {
+      loadingFilter.add(serialNumber);
+    } else if (filter != null && filter.isSaturated()) {
+      // the false positive rate increases, rebuild a larger filter
+      loadSerialNumberFilter(ca);
+    }
+  } // method addToSerialNumberFilter
+
+  /**
+   * Checks whether the serial number has been used by a certificate issued by the given CA. If
+   * the serial number filter of the CA has been loaded, the database is queried only if the
+   * filter contains the serial number.
+   * <p>
+   * The filter contains only the certificates saved by this CertStore and those in the database
+   * while loading the filter. Certificates saved by other CA instances in the same database are
+   * still rejected by the unique constraint (CA_ID, SN) of the table CERT.
+   *
+   * @param ca the CA.
+   * @param serialNumber the serial number.
+   * @return whether the serial number is used.
+   * @throws OperationException if database error occurs.
+   */
+  public boolean isSerialNumberUsed(NameId ca, BigInteger serialNumber) throws OperationException {
+    notNulls(ca, "ca", serialNumber, "serialNumber");
+    SerialNumberFilter filter = serialNumberFilters.get(ca.getId());
+    if (filter != null && !filter.mightContain(serialNumber)) {
+      return false;
+    }
+    return getCertId(ca, serialNumber) != 0;
+  } // method isSerialNumberUsed
+
+  public synchronized void close() {
+    if (certInsertBatcher != null) {
+      // the pending certificates are inserted before the batcher terminates
+      certInsertBatcher.close();
+      certInsertBatcher = null;
+    }
+
+    if (serialNumberFilterLoader != null) {
+      serialNumberFilterLoader.shutdownNow();
+      serialNumberFilterLoader = null;
+    }
+    serialNumberFilters.clear();
+    loadingSerialNumberFilters.clear();
+    scheduledSerialNumberFilters.clear();
+  } // method close
+
   public boolean addCert(CertificateInfo certInfo, boolean saveKeypair) {
     if (saveKeypair && certInfo.getPrivateKey() != null) {
       if (keypairEncKey == null) {
@@ -276,9 +451,17 @@ public class CertStore extends CertStoreBase {
       columns.add(col2Str(Base64.encodeToString(encodedCert)));
       columns.add(col2Str(privateKeyInfo));
 
-      execUpdatePrepStmt0(SQL_ADD_CERT, columns.toArray(new SqlColumn2[0]));
+      SqlColumn2[] params = columns.toArray(new SqlColumn2[0]);
+      CertInsertBatcher batcher = certInsertBatcher;
+      if (batcher == null) {
+        execUpdatePrepStmt0(SQL_ADD_CERT, params);
+      } else {
+        // returns after the transaction containing this certificate has been committed
+        batcher.insert(params);
+      }
 
       cert.setCertId(certId);
+      addToSerialNumberFilter(certInfo.getIssuer(), cert0.getSerialNumber());
     } catch (Exception ex) {
       LOG.error("could not save certificate {}: {}. Message: {}",
           certInfo.getCert().getCert().getSubject(),
@@ -345,30 +528,24 @@ public class CertStore extends CertStoreBase {
     return execQueryLongPrepStmt(SQL_MAX_THISUPDAATE_CRL, col2Int(ca.getId()), col2Int(deltaCrl ? 1 : 0));
   } // method getThisUpdateOfCurrentCrl
 
-  public void addCrl(NameId ca, X509CRLHolder crl) throws OperationException, CRLException {
-    notNulls(ca, "ca", crl, "crl");
-
-    Extensions extns = crl.getExtensions();
-    byte[] extnValue = X509Util.getCoreExtValue(extns, Extension.cRLNumber);
-    Long crlNumber = (extnValue == null) ? null : ASN1Integer.getInstance(extnValue).getPositiveValue().longValue();
-
-    extnValue = X509Util.getCoreExtValue(extns, Extension.deltaCRLIndicator);
-    Long baseCrlNumber = null;
-    if (extnValue != null) {
-      baseCrlNumber = ASN1Integer.getInstance(extnValue).getPositiveValue().longValue();
-    }
+  /**
+   * Adds a CRL whose fields are known to the caller, without parsing it.
+   * @param ca the CA.
+   * @param encodedCrl the DER-encoded CRL.
+   * @param crlNumber the CRL number. May be {@code null}.
+   * @param baseCrlNumber the base CRL number for delta CRL, {@code null} for full CRL.
+   * @param thisUpdate the thisUpdate.
+   * @param nextUpdate the nextUpdate. May be {@code null}.
+   * @throws OperationException if database error occurs.
+   */
+  public void addCrl(NameId ca, byte[] encodedCrl, BigInteger crlNumber, BigInteger baseCrlNumber,
+      Date thisUpdate, Date nextUpdate) throws OperationException {
+    notNulls(ca, "ca", encodedCrl, "encodedCrl", thisUpdate, "thisUpdate");
 
     int currentMaxCrlId = (int) getMax("CRL", "ID");
     int crlId = Math.max(cachedCrlId.get(), currentMaxCrlId) + 1;
     cachedCrlId.set(crlId);
 
-    byte[] encodedCrl;
-    try {
-      encodedCrl = crl.getEncoded();
-    } catch (IOException ex) {
-      throw new CRLException(ex.getMessage(), ex);
-    }
-
     boolean withSha1Column = dbSchemaVersion >= 7;
     String b64Sha1 = withSha1Column ? HashAlgo.SHA1.base64Hash(encodedCrl) : null;
     String b64Crl = Base64.encodeToString(encodedCrl);
@@ -376,11 +553,11 @@ public class CertStore extends CertStoreBase {
     List<SqlColumn2> columns = new ArrayList<>(10);
     columns.add(col2Int(crlId));
     columns.add(col2Int(ca.getId()));
-    columns.add(col2Long(crlNumber));
-    columns.add(col2Long(crl.getThisUpdate().getTime() / 1000));
-    columns.add(col2Long(getDateSeconds(crl.getNextUpdate())));
+    columns.add(col2Long(crlNumber == null ? null : crlNumber.longValue()));
+    columns.add(col2Long(thisUpdate.getTime() / 1000));
+    columns.add(col2Long(getDateSeconds(nextUpdate)));
     columns.add(col2Bool((baseCrlNumber != null)));
-    columns.add(col2Long(baseCrlNumber));
+    columns.add(col2Long(baseCrlNumber == null ? null : baseCrlNumber.longValue()));
     // in this version we set CRL_SCOPE to fixed value 0
     columns.add(col2Int(0));
     if (withSha1Column) {
@@ -637,30 +814,44 @@ public class CertStore extends CertStoreBase {
     return ret;
   } // method getExpiredSerialNumbers
 
-  private byte[] getEncodedCrl(NameId ca) throws OperationException {
+  /**
+   * Returns the current CRL, namely the CRL with the latest thisUpdate.
+   * @param ca the CA.
+   * @return the current CRL, or {@code null} if no CRL is available.
+   * @throws OperationException if error occurs while accessing the database.
+   */
+  public EncodedCrl getCurrentEncodedCrl(NameId ca) throws OperationException {
     notNull(ca, "ca");
 
     List<ResultRow> rows = execQueryPrepStmt0(sqlCrl, col2Int(ca.getId()));
     long currentThisUpdate = 0;
 
-    String b64Crl = null;
+    ResultRow currentRow = null;
     // iterate all entries to make sure that the latest CRL will be returned
     for (ResultRow rs : rows) {
       long thisUpdate = rs.getLong("THISUPDATE");
       if (thisUpdate >= currentThisUpdate) {
-        b64Crl = rs.getString("CRL");
+        currentRow = rs;
         currentThisUpdate = thisUpdate;
       }
     }
 
-    return (b64Crl == null) ? null : Base64.decodeFast(b64Crl);
-  } // method getEncodedCrl
+    if (currentRow == null) {
+      return null;
+    }
+
+    // the column SHA1 is not available in older database schemas
+    byte[] encodedCrl = Base64.decodeFast(currentRow.getString("CRL"));
+    return new EncodedCrl(BigInteger.valueOf(currentRow.getLong("CRL_NO")), new Date(currentThisUpdate * 1000),
+        HashAlgo.SHA1.base64Hash(encodedCrl), encodedCrl);
+  } // method getCurrentEncodedCrl
 
   public byte[] getEncodedCrl(NameId ca, BigInteger crlNumber) throws OperationException {
     notNull(ca, "ca");
 
     if (crlNumber == null) {
-      return getEncodedCrl(ca);
+      EncodedCrl crl = getCurrentEncodedCrl(ca);
+      return crl == null ? null : crl.getEncoded();
     }
 
     ResultRow rs = execQuery1PrepStmt0(sqlCrlWithNo, col2Int(ca.getId()), col2Long(crlNumber.longValue()));
@@ -232,13 +232,7 @@ public class CertStoreBase extends QueryExecutor {
   } // method borrowPrepStatement
 
   protected static String buildArraySql(DataSourceWrapper datasource, String prefix, int num) {
-    StringBuilder sb = new StringBuilder(prefix.length() + num * 2);
-    sb.append(prefix).append(" IN (?");
-    for (int i = 1; i < num; i++) {
-      sb.append(",?");
-    }
-    sb.append(")");
-    return datasource.buildSelectFirstSql(num, sb.toString());
+    return datasource.buildArraySql(prefix, num);
   }
 
   protected static X509Cert parseCert(byte[] encodedCert) throws OperationException {
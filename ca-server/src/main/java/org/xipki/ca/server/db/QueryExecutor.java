@@ -276,48 +276,7 @@ class QueryExecutor {
     boolean succ = false;
     try {
       ps = datasource.prepareStatement(sql);
-
-      int index = 0;
-      for (SqlColumn2 col : columns) {
-        index++;
-
-        ColumnType type = col.type();
-        Object value = col.value();
-
-        try {
-          if (type == ColumnType.STRING) {
-            ps.setString(index, (String) value);
-          } else if (type == ColumnType.INT) {
-            if (value == null) {
-              ps.setNull(index, Types.INTEGER);
-            } else {
-              ps.setInt(index, (Integer) value);
-            }
-          } else if (type == ColumnType.LONG) {
-            if (value == null) {
-              ps.setNull(index, Types.BIGINT);
-            } else {
-              ps.setLong(index, (Long) value);
-            }
-          } else if (type == ColumnType.BOOL) {
-            if (value == null) {
-              ps.setNull(index, Types.INTEGER);
-            } else {
-              ps.setInt(index, (Boolean) value ? 1 : 0);
-            }
-          } else if (type == ColumnType.TIMESTAMP) {
-            if (value == null) {
-              ps.setNull(index, Types.TIMESTAMP);
-            } else {
-              ps.setTimestamp(index, (Timestamp) value);
-            }
-          } else {
-            throw new IllegalStateException("should not reach here, unknown type " + type);
-          }
-        } catch (SQLException ex) {
-          throw datasource.translate(sql, ex);
-        }
-      }
+      setColumns(ps, sql, columns);
 
       succ = true;
       return ps;
@@ -328,6 +287,50 @@ class QueryExecutor {
     }
   }
 
+  protected void setColumns(PreparedStatement ps, String sql, SqlColumn2... columns) throws DataAccessException {
+    int index = 0;
+    for (SqlColumn2 col : columns) {
+      index++;
+
+      ColumnType type = col.type();
+      Object value = col.value();
+
+      try {
+        if (type == ColumnType.STRING) {
+          ps.setString(index, (String) value);
+        } else if (type == ColumnType.INT) {
+          if (value == null) {
+            ps.setNull(index, Types.INTEGER);
+          } else {
+            ps.setInt(index, (Integer) value);
+          }
+        } else if (type == ColumnType.LONG) {
+          if (value == null) {
+            ps.setNull(index, Types.BIGINT);
+          } else {
+            ps.setLong(index, (Long) value);
+          }
+        } else if (type == ColumnType.BOOL) {
+          if (value == null) {
+            ps.setNull(index, Types.INTEGER);
+          } else {
+            ps.setInt(index, (Boolean) value ? 1 : 0);
+          }
+        } else if (type == ColumnType.TIMESTAMP) {
+          if (value == null) {
+            ps.setNull(index, Types.TIMESTAMP);
+          } else {
+            ps.setTimestamp(index, (Timestamp) value);
+          }
+        } else {
+          throw new IllegalStateException("should not reach here, unknown type " + type);
+        }
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      }
+    }
+  } // method setColumns
+
   protected void notNulls(Object param1, String name1, Object param2, String name2) {
     notNull(param1, name1);
     notNull(param2, name2);
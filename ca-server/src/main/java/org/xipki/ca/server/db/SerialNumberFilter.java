@@ -0,0 +1,141 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server.db;
+
+import java.math.BigInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free Bloom filter of the serial numbers of one CA. {@link #mightContain(BigInteger)}
+ * returns {@code false} only if the serial number has never been added, so that the
+ * database needs to be queried only if the filter returns {@code true}.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+class SerialNumberFilter {
+
+  // 2^36 bits, 8 GiB
+  private static final long MAX_BITS = 1L << 36;
+
+  private final AtomicLongArray words;
+
+  private final long numBits;
+
+  private final int numHashes;
+
+  private final long expectedEntries;
+
+  private final AtomicLong numEntries = new AtomicLong();
+
+  /**
+   * Constructor.
+   * @param expectedEntries expected number of serial numbers.
+   * @param falsePositiveRate false positive rate if not more than {@code expectedEntries}
+   *        serial numbers are added, between 0 and 1 exclusive.
+   */
+  SerialNumberFilter(long expectedEntries, double falsePositiveRate) {
+    if (expectedEntries < 1) {
+      throw new IllegalArgumentException("expectedEntries must be positive, but is " + expectedEntries);
+    }
+    if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+      throw new IllegalArgumentException("falsePositiveRate must be in (0, 1), but is " + falsePositiveRate);
+    }
+
+    double ln2 = Math.log(2);
+    long bits = (long) Math.ceil(-expectedEntries * Math.log(falsePositiveRate) / (ln2 * ln2));
+    bits = Math.min(MAX_BITS, Math.max(64, bits));
+    int numWords = (int) ((bits + 63) >>> 6);
+
+    this.words = new AtomicLongArray(numWords);
+    this.numBits = (long) numWords << 6;
+    this.numHashes = Math.max(1, (int) Math.round((double) numBits / expectedEntries * ln2));
+    this.expectedEntries = expectedEntries;
+  } // constructor
+
+  void add(BigInteger serialNumber) {
+    long h1 = hash(serialNumber);
+    long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+    for (int i = 0; i < numHashes; i++) {
+      long bitIndex = Long.remainderUnsigned(h1 + i * h2, numBits);
+      int wordIndex = (int) (bitIndex >>> 6);
+      long mask = 1L << bitIndex;
+
+      long word;
+      while (((word = words.get(wordIndex)) & mask) == 0) {
+        if (words.compareAndSet(wordIndex, word, word | mask)) {
+          break;
+        }
+      }
+    }
+    numEntries.incrementAndGet();
+  } // method add
+
+  boolean mightContain(BigInteger serialNumber) {
+    long h1 = hash(serialNumber);
+    long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+    for (int i = 0; i < numHashes; i++) {
+      long bitIndex = Long.remainderUnsigned(h1 + i * h2, numBits);
+      if ((words.get((int) (bitIndex >>> 6)) & (1L << bitIndex)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  } // method mightContain
+
+  /**
+   * Whether more serial numbers than expected have been added, so that the false positive
+   * rate is higher than the configured one.
+   * @return whether the filter is saturated.
+   */
+  boolean isSaturated() {
+    return numEntries.get() > expectedEntries;
+  }
+
+  long getNumEntries() {
+    return numEntries.get();
+  }
+
+  long getNumBits() {
+    return numBits;
+  }
+
+  private static long hash(BigInteger serialNumber) {
+    byte[] bytes = serialNumber.toByteArray();
+    // FNV-1a, followed by a finalizer to spread the bits
+    long h = 0xCBF29CE484222325L;
+    for (byte b : bytes) {
+      h ^= b & 0xFF;
+      h *= 0x100000001B3L;
+    }
+    return mix(h ^ bytes.length);
+  } // method hash
+
+  // finalizer of MurmurHash3
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB9FE1A85EC53L;
+    h ^= h >>> 33;
+    return h;
+  } // method mix
+
+}
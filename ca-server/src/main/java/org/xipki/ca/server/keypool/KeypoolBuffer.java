@@ -0,0 +1,245 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server.keypool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ca.server.keypool.KeypoolKeypairGenerator.CipherData;
+import org.xipki.datasource.DataAccessException;
+import org.xipki.security.XiSecurityException;
+import org.xipki.util.LogUtil;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.xipki.util.Args.notNull;
+import static org.xipki.util.Args.positive;
+
+/**
+ * In-memory buffer of the encrypted keys per keyspec. The buffer of a keyspec is refilled by a
+ * background thread when it is half empty. Only if a buffer is empty, the consumer reads the
+ * keypool itself, under a per-keyspec lock.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+class KeypoolBuffer implements Closeable {
+
+  /**
+   * Source of the keys, namely the table KEYPOOL.
+   */
+  interface KeySource {
+
+    /**
+     * Removes a batch of keys from the keypool and returns them.
+     * @param keyspecId the keyspec id.
+     * @return the removed keys, empty if the keypool contains no more key of the keyspec.
+     * @throws DataAccessException if database error occurs.
+     */
+    List<CipherData> nextKeyData(int keyspecId) throws DataAccessException;
+
+    int countKeyData(int keyspecId) throws DataAccessException;
+
+  } // interface KeySource
+
+  private static class KeyBuffer {
+
+    private final String keyspec;
+
+    private final int keyspecId;
+
+    private final LinkedBlockingQueue<CipherData> keys = new LinkedBlockingQueue<>();
+
+    private final AtomicBoolean refillScheduled = new AtomicBoolean();
+
+    KeyBuffer(String keyspec, int keyspecId) {
+      this.keyspec = keyspec;
+      this.keyspecId = keyspecId;
+    }
+
+  } // class KeyBuffer
+
+  private static final Logger LOG = LoggerFactory.getLogger(KeypoolBuffer.class);
+
+  private final KeySource source;
+
+  private final Map<String, KeyBuffer> buffers = new HashMap<>();
+
+  private final int prefetch;
+
+  private final int lowWatermark;
+
+  private final KeypoolProducer producer;
+
+  private final ExecutorService refiller;
+
+  /**
+   * Constructor.
+   * @param source the source of the keys.
+   * @param keyspecToId map of the upper-case keyspecs to their ids.
+   * @param prefetch number of keys read in one batch.
+   * @param lowWatermark a warning is logged if fewer keys remain in the keypool, 0 to disable.
+   * @param producer the producer to be triggered if the keypool is running low. May be {@code null}.
+   */
+  KeypoolBuffer(KeySource source, Map<String, Integer> keyspecToId, int prefetch, int lowWatermark,
+      KeypoolProducer producer) {
+    this.source = notNull(source, "source");
+    this.prefetch = positive(prefetch, "prefetch");
+    this.lowWatermark = lowWatermark;
+    this.producer = producer;
+
+    for (Map.Entry<String, Integer> entry : notNull(keyspecToId, "keyspecToId").entrySet()) {
+      buffers.put(entry.getKey(), new KeyBuffer(entry.getKey(), entry.getValue()));
+    }
+
+    this.refiller = Executors.newSingleThreadExecutor(r -> {
+      Thread thread = new Thread(r, "keypool-refiller");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    // fill the buffers in the background
+    for (KeyBuffer buffer : buffers.values()) {
+      scheduleRefill(buffer);
+    }
+  } // constructor
+
+  /**
+   * Takes a key of the given keyspec.
+   * @param keyspec the upper-case keyspec.
+   * @return the key, {@code null} if the keyspec is not supported.
+   * @throws XiSecurityException if the keypool contains no more key of the keyspec, or database error occurs.
+   */
+  CipherData take(String keyspec) throws XiSecurityException {
+    KeyBuffer buffer = buffers.get(keyspec);
+    if (buffer == null) {
+      return null;
+    }
+
+    CipherData cd = buffer.keys.poll();
+    if (cd == null) {
+      cd = takeKeyData(buffer);
+    }
+
+    if (buffer.keys.size() <= prefetch / 2) {
+      scheduleRefill(buffer);
+    }
+
+    if (cd == null) {
+      throw new XiSecurityException("found no keypair of spec " + keyspec + " in the keypool");
+    }
+    return cd;
+  } // method take
+
+  /**
+   * Returns the number of buffered keys of the given keyspec.
+   * @param keyspec the upper-case keyspec.
+   * @return the number of buffered keys.
+   */
+  int size(String keyspec) {
+    KeyBuffer buffer = buffers.get(keyspec);
+    return buffer == null ? 0 : buffer.keys.size();
+  }
+
+  /**
+   * Takes a key if the buffer is empty. Only one thread per keyspec reads the database, the
+   * others take the keys read by it.
+   */
+  private CipherData takeKeyData(KeyBuffer buffer) throws XiSecurityException {
+    synchronized (buffer) {
+      CipherData cd = buffer.keys.poll();
+      if (cd != null) {
+        return cd;
+      }
+
+      try {
+        refill(buffer);
+      } catch (DataAccessException ex) {
+        throw new XiSecurityException(ex);
+      }
+      return buffer.keys.poll();
+    }
+  } // method takeKeyData
+
+  private void scheduleRefill(KeyBuffer buffer) {
+    if (refiller.isShutdown() || !buffer.refillScheduled.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+      refiller.execute(() -> {
+        try {
+          synchronized (buffer) {
+            if (buffer.keys.size() <= prefetch / 2) {
+              refill(buffer);
+            }
+          }
+        } catch (Throwable th) {
+          LogUtil.error(LOG, th, "could not refill the keypool buffer of keyspec " + buffer.keyspec);
+        } finally {
+          buffer.refillScheduled.set(false);
+        }
+      });
+    } catch (RuntimeException ex) {
+      // rejected, e.g. while closing
+      buffer.refillScheduled.set(false);
+    }
+  } // method scheduleRefill
+
+  // must be called while holding the lock of buffer.
+  private void refill(KeyBuffer buffer) throws DataAccessException {
+    List<CipherData> keys = source.nextKeyData(buffer.keyspecId);
+    buffer.keys.addAll(keys);
+
+    if (keys.isEmpty()) {
+      LOG.error("keypool contains no more keypair of spec {}", buffer.keyspec);
+      if (producer != null) {
+        producer.trigger();
+      }
+    } else if (lowWatermark > 0 || producer != null) {
+      int remaining = source.countKeyData(buffer.keyspecId);
+      if (remaining < lowWatermark) {
+        LOG.warn("keypool is running low for spec {}: {} keypairs left, low-watermark is {}",
+            buffer.keyspec, remaining, lowWatermark);
+      }
+
+      if (producer != null && remaining < producer.getWatermark()) {
+        producer.trigger();
+      }
+    }
+  } // method refill
+
+  @Override
+  public void close() {
+    refiller.shutdown();
+    try {
+      refiller.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  } // method close
+
+}
@@ -40,16 +40,27 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
 import java.security.spec.KeySpec;
 import java.sql.Connection;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
 /**
  * Keypool based keypair generator.
  *
+ * <p>The keys are taken from the database in batches of {@code prefetch} (default 100) keys and
+ * buffered encrypted in memory per keyspec. The buffer is refilled by a background thread when
+ * it is half empty, so that concurrent consumers do not wait for the database. A warning is
+ * logged if fewer than {@code low-watermark} (default 1000, 0 to disable) keys of a keyspec
+ * remain in the database. Prefetched keys not used before the shutdown are discarded.
+ *
+ * <p>If {@code refill-watermark} is set, the keypool is refilled by this CA instance: if fewer
+ * than {@code refill-watermark} keys of a keyspec remain, new keys are generated until
+ * {@code refill-target} (default twice the watermark) keys are available, see {@link KeypoolProducer}.
+ * Optional: {@code refill-threads} (default number of processors), {@code refill-interval} in
+ * seconds (default 60), {@code refill-max-load} (default number of processors, 0 to ignore the
+ * system load) and {@code enc-alg} (AES128/GCM (default), AES192/GCM or AES256/GCM).
+ *
  * @since 6.0.0
  * @author Lijun Liao
  */
@@ -74,11 +85,23 @@ public class KeypoolKeypairGenerator extends KeypairGenerator {
 
   private SecretKey aes256key;
 
-  private Cipher cipher;
+  private final ThreadLocal<Cipher> cipher = ThreadLocal.withInitial(() -> {
+    try {
+      return Cipher.getInstance("AES/GCM/NoPadding");
+    } catch (NoSuchAlgorithmException | NoSuchPaddingException ex) {
+      throw new IllegalStateException("could not initialize Cipher", ex);
+    }
+  });
 
   private Map<String, FileOrValue> datasourceConfs;
 
-  private Map<String, Integer> keyspecToId = new HashMap<>();
+  private int prefetch = 100;
+
+  private int lowWatermark = 1000;
+
+  private KeypoolBuffer keyBuffer;
+
+  private KeypoolProducer producer;
 
   public void setShardId(int shardId) {
     this.shardId = shardId;
@@ -120,17 +143,35 @@ public class KeypoolKeypairGenerator extends KeypairGenerator {
       throw new XiSecurityException("no datasource named '" + datasourceName + "' is specified");
     }
 
+    String str = conf.value("prefetch");
+    if (str != null) {
+      prefetch = Integer.parseInt(str);
+      if (prefetch < 1) {
+        throw new XiSecurityException("prefetch must be positive, but is " + prefetch);
+      }
+    }
+
+    str = conf.value("low-watermark");
+    if (str != null) {
+      lowWatermark = Integer.parseInt(str);
+      if (lowWatermark < 0) {
+        throw new XiSecurityException("low-watermark must not be negative, but is " + lowWatermark);
+      }
+    }
+
     DataSourceWrapper datasource = loadDatasource(datasourceName, datasourceConf, passwordResolver);
 
+    Map<String, Integer> usedKeyspecToId = new HashMap<>();
     try {
-      queryExecutor = new KeypoolQueryExecutor(datasource, shardId);
-      keyspecToId.clear();
-      keyspecToId.putAll(queryExecutor.getKeyspecs());
+      queryExecutor = new KeypoolQueryExecutor(datasource, shardId, prefetch);
+      Map<String, Integer> keyspecToId = queryExecutor.getKeyspecs();
 
       Set<String> set = new HashSet<>();
       for (String m : keyspecs) {
-        if (keyspecToId.containsKey(m)) {
+        Integer keyspecId = keyspecToId.get(m);
+        if (keyspecId != null) {
           set.add(m);
+          usedKeyspecToId.put(m, keyspecId);
         }
       }
       super.keyspecs.clear();
@@ -160,34 +201,58 @@ public class KeypoolKeypairGenerator extends KeypairGenerator {
           aes256key = key;
         }
       }
-
-      cipher = Cipher.getInstance("AES/GCM/NoPadding");
     } catch (Exception ex) {
       throw new IllegalStateException("could not initialize Cipher", ex);
     }
 
-  }
+    str = conf.value("refill-watermark");
+    if (str != null) {
+      int watermark = Integer.parseInt(str);
+      str = conf.value("refill-target");
+      int target = (str == null) ? 2 * watermark : Integer.parseInt(str);
+
+      int cores = Runtime.getRuntime().availableProcessors();
+      str = conf.value("refill-threads");
+      int threads = (str == null) ? cores : Integer.parseInt(str);
+
+      str = conf.value("refill-interval");
+      int interval = (str == null) ? 60 : Integer.parseInt(str);
+
+      str = conf.value("refill-max-load");
+      double maxLoad = (str == null) ? cores : Double.parseDouble(str);
+
+      str = conf.value("enc-alg");
+      int encAlg;
+      SecretKey encKey;
+      if (str == null || "AES128/GCM".equalsIgnoreCase(str)) {
+        encAlg = 1;
+        encKey = aes128key;
+      } else if ("AES192/GCM".equalsIgnoreCase(str)) {
+        encAlg = 2;
+        encKey = aes192key;
+      } else if ("AES256/GCM".equalsIgnoreCase(str)) {
+        encAlg = 3;
+        encKey = aes256key;
+      } else {
+        throw new XiSecurityException("invalid enc-alg " + str);
+      }
 
-  @Override
-  public synchronized PrivateKeyInfo generateKeypair(String keyspec)
-      throws XiSecurityException {
-    Integer keyspecId = keyspecToId.get(keyspec);
-    if (keyspecId == null) {
-      return null;
+      producer = new KeypoolProducer(queryExecutor, usedKeyspecToId, encAlg, encKey,
+          watermark, target, threads, maxLoad, interval);
     }
 
-    CipherData cd ;
-    synchronized (keyspecId) {
-      // need to synchronize to prevent from the reuse of the same keypair.
-      try {
-        cd = queryExecutor.nextKeyData(keyspecId);
-      } catch (DataAccessException ex) {
-        throw new XiSecurityException(ex);
-      }
+    if (keyBuffer != null) {
+      keyBuffer.close();
     }
+    keyBuffer = new KeypoolBuffer(queryExecutor, usedKeyspecToId, prefetch, lowWatermark, producer);
+  } // method initialize0
 
+  @Override
+  public PrivateKeyInfo generateKeypair(String keyspec)
+      throws XiSecurityException {
+    CipherData cd = keyBuffer.take(keyspec.toUpperCase(Locale.ROOT));
     if (cd == null) {
-      throw new XiSecurityException("found no keypair of spec " + keyspec + " in the keypool");
+      return null;
     }
 
     GCMParameterSpec spec = new GCMParameterSpec(128, cd.encMeta);
@@ -204,14 +269,15 @@ public class KeypoolKeypairGenerator extends KeypairGenerator {
 
     byte[] plain;
     try {
-      cipher.init(Cipher.DECRYPT_MODE, key, spec);
-      plain = cipher.doFinal(cd.cipherText);
+      Cipher cipher0 = cipher.get();
+      cipher0.init(Cipher.DECRYPT_MODE, key, spec);
+      plain = cipher0.doFinal(cd.cipherText);
     } catch (IllegalBlockSizeException | BadPaddingException | InvalidKeyException
              | InvalidAlgorithmParameterException ex) {
       throw new XiSecurityException("error decrypting ciphertext", ex);
     }
     return PrivateKeyInfo.getInstance(plain);
-  }
+  } // method generateKeypair
 
   @Override
   public boolean isHealthy() {
@@ -220,6 +286,14 @@ public class KeypoolKeypairGenerator extends KeypairGenerator {
 
   @Override
   public void close() throws IOException {
+    if (producer != null) {
+      producer.close();
+    }
+
+    if (keyBuffer != null) {
+      keyBuffer.close();
+    }
+
     queryExecutor.close();
   }
 
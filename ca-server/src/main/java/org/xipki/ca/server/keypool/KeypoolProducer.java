@@ -0,0 +1,251 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server.keypool;
+
+import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.datasource.DataAccessException;
+import org.xipki.security.XiSecurityException;
+import org.xipki.security.pkcs12.SoftwareKeypairGenerator;
+import org.xipki.util.LogUtil;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.xipki.util.Args.notNull;
+import static org.xipki.util.Args.positive;
+
+/**
+ * Producer of the keypool. If fewer than watermark keys of a keyspec remain in the keypool,
+ * keypairs are generated on a fork-join pool until the keypool contains target keys. The keys
+ * are encrypted and inserted in batches.
+ *
+ * <p>To not compete with the handling of the requests, the worker threads have the minimal
+ * priority, and the generation is paused while the system load average exceeds maxLoad.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+class KeypoolProducer implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(KeypoolProducer.class);
+
+  private static final int CHUNK_SIZE = 100;
+
+  private final KeypoolQueryExecutor queryExecutor;
+
+  private final Map<String, Integer> keyspecToId;
+
+  private final int encAlg;
+
+  private final SecretKey encKey;
+
+  private final int watermark;
+
+  private final int target;
+
+  private final double maxLoad;
+
+  private final SoftwareKeypairGenerator keypairGenerator;
+
+  private final SecureRandom random = new SecureRandom();
+
+  private final ThreadLocal<Cipher> cipher = ThreadLocal.withInitial(() -> {
+    try {
+      return Cipher.getInstance("AES/GCM/NoPadding");
+    } catch (GeneralSecurityException ex) {
+      throw new IllegalStateException("could not initialize Cipher", ex);
+    }
+  });
+
+  private final ForkJoinPool workers;
+
+  private final ScheduledExecutorService scheduler;
+
+  private final AtomicBoolean running = new AtomicBoolean();
+
+  private volatile boolean closed;
+
+  /**
+   * Constructor.
+   * @param queryExecutor the query executor.
+   * @param keyspecToId map of the keyspecs to be filled to their ids.
+   * @param encAlg the encryption algorithm code, 1 for AES128/GCM, 2 for AES192/GCM and 3 for AES256/GCM.
+   * @param encKey the encryption key.
+   * @param watermark the filling starts if fewer keys of a keyspec remain.
+   * @param target number of keys of a keyspec after the filling.
+   * @param parallelism number of the worker threads.
+   * @param maxLoad the generation is paused if the system load average is greater than it.
+   * @param intervalSeconds interval in seconds to check the number of keys.
+   * @throws XiSecurityException if the software keypair generator could not be initialized.
+   */
+  KeypoolProducer(KeypoolQueryExecutor queryExecutor, Map<String, Integer> keyspecToId, int encAlg,
+      SecretKey encKey, int watermark, int target, int parallelism, double maxLoad, int intervalSeconds)
+      throws XiSecurityException {
+    this.queryExecutor = notNull(queryExecutor, "queryExecutor");
+    this.keyspecToId = notNull(keyspecToId, "keyspecToId");
+    this.encAlg = encAlg;
+    this.encKey = notNull(encKey, "encKey");
+    this.watermark = positive(watermark, "watermark");
+    this.target = Math.max(watermark, target);
+    this.maxLoad = maxLoad;
+
+    this.keypairGenerator = new SoftwareKeypairGenerator(random);
+    this.keypairGenerator.initialize(null, null);
+
+    AtomicInteger threadIndex = new AtomicInteger();
+    this.workers = new ForkJoinPool(positive(parallelism, "parallelism"), pool -> {
+      ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+      thread.setName("keypool-producer-" + threadIndex.incrementAndGet());
+      thread.setDaemon(true);
+      thread.setPriority(Thread.MIN_PRIORITY);
+      return thread;
+    }, null, false);
+
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "keypool-producer-scheduler");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.scheduler.scheduleWithFixedDelay(this::refill, 0, positive(intervalSeconds, "intervalSeconds"),
+        TimeUnit.SECONDS);
+  } // constructor
+
+  int getWatermark() {
+    return watermark;
+  }
+
+  /**
+   * Checks the keypool now, e.g. if the consumer has detected that it is running low.
+   */
+  void trigger() {
+    if (!closed && !running.get()) {
+      try {
+        scheduler.execute(this::refill);
+      } catch (RejectedExecutionException ex) {
+        // closed
+      }
+    }
+  }
+
+  private void refill() {
+    if (!running.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+      for (Map.Entry<String, Integer> entry : keyspecToId.entrySet()) {
+        if (closed) {
+          return;
+        }
+
+        String keyspec = entry.getKey();
+        try {
+          int count = queryExecutor.countKeyData(entry.getValue());
+          if (count < watermark) {
+            fill(keyspec, entry.getValue(), target - count);
+          }
+        } catch (Exception ex) {
+          LogUtil.error(LOG, ex, "could not refill the keypool for keyspec " + keyspec);
+        }
+      }
+    } finally {
+      running.set(false);
+    }
+  } // method refill
+
+  private void fill(String keyspec, int keyspecId, int num)
+      throws DataAccessException, InterruptedException, ExecutionException {
+    LOG.info("refilling keypool with {} keypairs of spec {}", num, keyspec);
+    long start = System.currentTimeMillis();
+
+    int remaining = num;
+    while (remaining > 0) {
+      if (closed) {
+        return;
+      }
+
+      if (isOverloaded()) {
+        LOG.info("paused refilling keypool for keyspec {}, system is busy", keyspec);
+        return;
+      }
+
+      int n = Math.min(CHUNK_SIZE, remaining);
+      List<KeypoolKeypairGenerator.CipherData> keys = workers.submit(() ->
+          IntStream.range(0, n).parallel().mapToObj(i -> generate(keyspec)).collect(Collectors.toList())).get();
+
+      queryExecutor.addKeyData(keyspecId, keys);
+      remaining -= n;
+    }
+
+    LOG.info("refilled keypool with {} keypairs of spec {}, took {} ms",
+        num, keyspec, System.currentTimeMillis() - start);
+  } // method fill
+
+  private KeypoolKeypairGenerator.CipherData generate(String keyspec) {
+    try {
+      PrivateKeyInfo keyInfo = keypairGenerator.generateKeypair(keyspec);
+
+      byte[] nonce = new byte[12];
+      random.nextBytes(nonce);
+
+      Cipher cipher0 = cipher.get();
+      cipher0.init(Cipher.ENCRYPT_MODE, encKey, new GCMParameterSpec(128, nonce));
+
+      KeypoolKeypairGenerator.CipherData cd = new KeypoolKeypairGenerator.CipherData();
+      cd.encAlg = encAlg;
+      cd.encMeta = nonce;
+      cd.cipherText = cipher0.doFinal(keyInfo.getEncoded());
+      return cd;
+    } catch (Exception ex) {
+      throw new IllegalStateException("could not generate keypair of spec " + keyspec, ex);
+    }
+  } // method generate
+
+  private boolean isOverloaded() {
+    if (maxLoad <= 0) {
+      return false;
+    }
+
+    // -1 if not available, e.g. on Windows
+    double load = ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+    return load > maxLoad;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    scheduler.shutdownNow();
+    workers.shutdownNow();
+  }
+
+}
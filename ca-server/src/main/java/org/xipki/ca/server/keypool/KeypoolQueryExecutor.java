@@ -19,18 +19,20 @@ package org.xipki.ca.server.keypool;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xipki.ca.server.UniqueIdGenerator;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.datasource.DatabaseType;
 import org.xipki.util.Base64;
+import org.xipki.util.DateUtil;
 import org.xipki.util.LogUtil;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.HashMap;
-import java.util.Locale;
-import java.util.Map;
+import java.util.*;
 
 import static org.xipki.util.Args.notNull;
 
@@ -41,20 +43,50 @@ import static org.xipki.util.Args.notNull;
  * @since 6.0.0
  */
 
-class KeypoolQueryExecutor {
+class KeypoolQueryExecutor implements KeypoolBuffer.KeySource {
 
   private static final Logger LOG = LoggerFactory.getLogger(KeypoolQueryExecutor.class);
 
+  private static final int MAX_CLAIM_ATTEMPTS = 3;
+
   private final DataSourceWrapper datasource;
 
+  private final int shardId;
+
+  private final int batchSize;
+
   private final String sqlGetKeyData;
 
+  private final String sqlClaimKeyData;
+
+  private final String sqlCountKeyData;
+
   private final String sqlDeleteKeyData = "DELETE FROM KEYPOOL WHERE ID=?";
 
-  KeypoolQueryExecutor(DataSourceWrapper datasource, int shardId) throws DataAccessException {
+  private final String sqlAddKeyData =
+      "INSERT INTO KEYPOOL (ID,KID,SHARD_ID,ENC_ALG,ENC_META,DATA) VALUES(?,?,?,?,?,?)";
+
+  private final UniqueIdGenerator idGenerator;
+
+  // false if the JDBC driver does not return the update count of each statement in a batch.
+  private volatile boolean batchDeleteSupported = true;
+
+  KeypoolQueryExecutor(DataSourceWrapper datasource, int shardId, int batchSize) throws DataAccessException {
     this.datasource = notNull(datasource, "datasource");
-    this.sqlGetKeyData = datasource.buildSelectFirstSql(1,
+    this.shardId = shardId;
+    this.idGenerator = new UniqueIdGenerator(DateUtil.parseUtcTimeyyyyMMdd("20100101").getTime(), shardId);
+    this.batchSize = Math.max(1, batchSize);
+    this.sqlGetKeyData = datasource.buildSelectFirstSql(this.batchSize,
         "ID,ENC_ALG,ENC_META,DATA FROM KEYPOOL WHERE SHARD_ID=" + shardId + " AND KID=?");
+    this.sqlCountKeyData = "SELECT COUNT(*) FROM KEYPOOL WHERE SHARD_ID=" + shardId + " AND KID=?";
+
+    if (datasource.getDatabaseType() == DatabaseType.POSTGRES) {
+      // claim the rows with one statement, rows locked by other CA instances are skipped.
+      this.sqlClaimKeyData = "DELETE FROM KEYPOOL WHERE ID IN (SELECT ID FROM KEYPOOL WHERE SHARD_ID=" + shardId
+          + " AND KID=? LIMIT " + this.batchSize + " FOR UPDATE SKIP LOCKED) RETURNING ID,ENC_ALG,ENC_META,DATA";
+    } else {
+      this.sqlClaimKeyData = null;
+    }
   } // constructor
 
   void close() {
@@ -84,37 +116,202 @@ class KeypoolQueryExecutor {
     }
   } // method initIssuerStore
 
-  KeypoolKeypairGenerator.CipherData nextKeyData(int keyspecId) throws DataAccessException {
-    final String sql = sqlGetKeyData;
+  /**
+   * Removes up to batchSize keys from the table KEYPOOL and returns them. Each key is returned to
+   * only one caller, also if the table is shared by several CA instances.
+   * @param keyspecId the keyspec id.
+   * @return the removed keys, empty if the keypool contains no more key of the keyspec.
+   * @throws DataAccessException if database error occurs.
+   */
+  @Override
+  public List<KeypoolKeypairGenerator.CipherData> nextKeyData(int keyspecId) throws DataAccessException {
+    if (sqlClaimKeyData != null) {
+      return claimKeyData(keyspecId);
+    }
+
+    for (int i = 0; i < MAX_CLAIM_ATTEMPTS; i++) {
+      Map<Long, KeypoolKeypairGenerator.CipherData> candidates = getKeyData(keyspecId);
+      if (candidates.isEmpty()) {
+        return Collections.emptyList();
+      }
+
+      List<KeypoolKeypairGenerator.CipherData> claimed = deleteKeyData(candidates);
+      if (!claimed.isEmpty()) {
+        return claimed;
+      }
+      // all candidates have been claimed by other CA instances, try again.
+    }
+    return Collections.emptyList();
+  } // method nextKeyData
+
+  private List<KeypoolKeypairGenerator.CipherData> claimKeyData(int keyspecId) throws DataAccessException {
+    final String sql = sqlClaimKeyData;
     PreparedStatement ps = datasource.prepareStatement(sql);
 
     ResultSet rs = null;
     try {
       ps.setInt(1, keyspecId);
       rs = ps.executeQuery();
-      if (!rs.next()) {
-        return null;
+      List<KeypoolKeypairGenerator.CipherData> rv = new ArrayList<>(batchSize);
+      while (rs.next()) {
+        rv.add(toCipherData(rs));
       }
+      return rv;
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+  } // method claimKeyData
 
-      int id = rs.getInt("ID");
-      KeypoolKeypairGenerator.CipherData cd = new KeypoolKeypairGenerator.CipherData();
-      cd.encAlg = rs.getInt("ENC_ALG");
-      cd.encMeta = Base64.decodeFast(rs.getString("ENC_META"));
-      cd.cipherText = Base64.decodeFast(rs.getString("DATA"));
+  private Map<Long, KeypoolKeypairGenerator.CipherData> getKeyData(int keyspecId) throws DataAccessException {
+    final String sql = sqlGetKeyData;
+    PreparedStatement ps = datasource.prepareStatement(sql);
+
+    ResultSet rs = null;
+    try {
+      ps.setInt(1, keyspecId);
+      rs = ps.executeQuery();
+      Map<Long, KeypoolKeypairGenerator.CipherData> rv = new LinkedHashMap<>();
+      while (rs.next()) {
+        rv.put(rs.getLong("ID"), toCipherData(rs));
+      }
+      return rv;
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
       datasource.releaseResources(ps, rs);
-      ps = null;
-      rs = null;
+    }
+  } // method getKeyData
+
+  private List<KeypoolKeypairGenerator.CipherData> deleteKeyData(
+      Map<Long, KeypoolKeypairGenerator.CipherData> candidates) throws DataAccessException {
+    final String sql = sqlDeleteKeyData;
+    PreparedStatement ps = datasource.prepareStatement(sql);
+
+    try {
+      List<KeypoolKeypairGenerator.CipherData> rv = new ArrayList<>(candidates.size());
+      if (!batchDeleteSupported) {
+        for (Map.Entry<Long, KeypoolKeypairGenerator.CipherData> entry : candidates.entrySet()) {
+          ps.setLong(1, entry.getKey());
+          // the row belongs to the one who deleted it
+          if (ps.executeUpdate() == 1) {
+            rv.add(entry.getValue());
+          }
+        }
+        return rv;
+      }
+
+      List<KeypoolKeypairGenerator.CipherData> values = new ArrayList<>(candidates.size());
+      for (Map.Entry<Long, KeypoolKeypairGenerator.CipherData> entry : candidates.entrySet()) {
+        ps.setLong(1, entry.getKey());
+        ps.addBatch();
+        values.add(entry.getValue());
+      }
+
+      int[] counts = ps.executeBatch();
+      for (int i = 0; i < counts.length; i++) {
+        // the row belongs to the one who deleted it
+        if (counts[i] == 1) {
+          rv.add(values.get(i));
+        } else if (counts[i] == Statement.SUCCESS_NO_INFO) {
+          // we cannot tell whether we or another CA instance deleted the row, so the key is
+          // discarded. Delete the rows one by one from now on.
+          if (batchDeleteSupported) {
+            batchDeleteSupported = false;
+            LOG.warn("JDBC driver does not return the update counts of batch, delete the keys one by one");
+          }
+        }
+      }
+      return rv;
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(ps, null);
+    }
+  } // method deleteKeyData
+
+  /**
+   * Adds the keys to the table KEYPOOL in one transaction.
+   * @param keyspecId the keyspec id.
+   * @param keys the encrypted keys.
+   * @throws DataAccessException if database error occurs.
+   */
+  void addKeyData(int keyspecId, List<KeypoolKeypairGenerator.CipherData> keys) throws DataAccessException {
+    if (keys.isEmpty()) {
+      return;
+    }
+
+    final String sql = sqlAddKeyData;
+    Connection conn = datasource.getConnection();
+    PreparedStatement ps = null;
+    try {
+      boolean autoCommit = conn.getAutoCommit();
+      if (autoCommit) {
+        conn.setAutoCommit(false);
+      }
 
-      ps = datasource.prepareStatement(sqlDeleteKeyData);
-      ps.setInt(1, id);
-      ps.executeUpdate();
-      return cd;
+      boolean committed = false;
+      try {
+        ps = datasource.prepareStatement(conn, sql);
+        for (KeypoolKeypairGenerator.CipherData cd : keys) {
+          int idx = 1;
+          ps.setLong(idx++, idGenerator.nextId());
+          ps.setInt(idx++, keyspecId);
+          ps.setInt(idx++, shardId);
+          ps.setInt(idx++, cd.encAlg);
+          ps.setString(idx++, Base64.encodeToString(cd.encMeta));
+          ps.setString(idx, Base64.encodeToString(cd.cipherText));
+          ps.addBatch();
+        }
+        ps.executeBatch();
+        conn.commit();
+        committed = true;
+      } finally {
+        if (!committed) {
+          try {
+            conn.rollback();
+          } catch (SQLException ex) {
+            LOG.warn("could not rollback: {}", ex.getMessage());
+          }
+        }
+
+        if (autoCommit) {
+          conn.setAutoCommit(true);
+        }
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(ps, null, false);
+      datasource.returnConnection(conn);
+    }
+  } // method addKeyData
+
+  @Override
+  public int countKeyData(int keyspecId) throws DataAccessException {
+    final String sql = sqlCountKeyData;
+    PreparedStatement ps = datasource.prepareStatement(sql);
+
+    ResultSet rs = null;
+    try {
+      ps.setInt(1, keyspecId);
+      rs = ps.executeQuery();
+      return rs.next() ? rs.getInt(1) : 0;
     } catch (SQLException ex) {
       throw datasource.translate(sql, ex);
     } finally {
       datasource.releaseResources(ps, rs);
     }
-  } // method nextKeyData
+  } // method countKeyData
+
+  private static KeypoolKeypairGenerator.CipherData toCipherData(ResultSet rs) throws SQLException {
+    KeypoolKeypairGenerator.CipherData cd = new KeypoolKeypairGenerator.CipherData();
+    cd.encAlg = rs.getInt("ENC_ALG");
+    cd.encMeta = Base64.decodeFast(rs.getString("ENC_META"));
+    cd.cipherText = Base64.decodeFast(rs.getString("DATA"));
+    return cd;
+  }
 
   boolean isHealthy() {
     final String sql = "SELECT ID FROM KEYSPEC";
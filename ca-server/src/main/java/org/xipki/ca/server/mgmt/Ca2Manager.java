@@ -56,8 +56,12 @@ import org.xipki.util.http.SslContextConf;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.security.cert.CRLException;
 import java.security.cert.CertificateException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 import static org.xipki.ca.sdk.CaAuditConstants.APPNAME;
 import static org.xipki.ca.server.CaUtil.canonicalizeSignerConf;
@@ -74,6 +78,9 @@ class Ca2Manager {
 
   private static final Logger LOG = LoggerFactory.getLogger(Ca2Manager.class);
 
+  // CA and publisher pairs whose PUBLISHQUEUE entries are being published
+  private final Set<String> publishQueueWorkers = ConcurrentHashMap.newKeySet();
+
   private boolean caAliasesInitialized;
 
   private boolean casInitialized;
@@ -789,8 +796,8 @@ class Ca2Manager {
 
     X509Ca ca = getX509Ca(caName);
     try {
-      return ca.generateCrlOnDemand(manager.byCaRequestor);
-    } catch (OperationException ex) {
+      return X509Util.parseCrl(ca.generateCrlOnDemand(manager.byCaRequestor));
+    } catch (OperationException | CRLException ex) {
       throw new CaMgmtException(ex.getMessage(), ex);
     }
   } // method generateCrlOnDemand
@@ -885,6 +892,12 @@ class Ca2Manager {
 
   void pulishCertsInQueue() {
     LOG.debug("publishing certificates in PUBLISHQUEUE");
+    ExecutorService executor = manager.getPublishQueueExecutor();
+    if (executor != null) {
+      pulishCertsInQueue(executor);
+      return;
+    }
+
     try {
       for (String name : manager.x509cas.keySet()) {
         X509Ca ca = manager.x509cas.get(name);
@@ -900,6 +913,45 @@ class Ca2Manager {
     }
   }
 
+  /**
+   * Publishes the certificates in PUBLISHQUEUE in parallel, at most one worker per CA and
+   * publisher. A pair whose previous worker is still running is skipped, so the queue is
+   * drained by at most the configured number of workers.
+   */
+  private void pulishCertsInQueue(ExecutorService executor) {
+    try {
+      for (String name : manager.x509cas.keySet()) {
+        X509Ca ca = manager.x509cas.get(name);
+        for (IdentifiedCertPublisher publisher : manager.getIdentifiedPublishersForCa(name)) {
+          String key = name + "/" + publisher.getIdent().getName();
+          if (!publishQueueWorkers.add(key)) {
+            continue;
+          }
+
+          try {
+            executor.execute(() -> {
+              try {
+                if (!ca.publishCertsInQueue(publisher)) {
+                  LOG.warn("publishing certificates of CA {} in PUBLISHQUEUE to publisher {} failed, "
+                      + "will retry", name, publisher.getIdent().getName());
+                }
+              } catch (Throwable th) {
+                LogUtil.error(LOG, th, "could not publish certificates in PUBLISHQUEUE for " + key);
+              } finally {
+                publishQueueWorkers.remove(key);
+              }
+            });
+          } catch (RejectedExecutionException ex) {
+            // executor has been shutdown
+            publishQueueWorkers.remove(key);
+          }
+        }
+      }
+    } catch (Throwable th) {
+      LogUtil.error(LOG, th, "could not publish CertsInQueue");
+    }
+  } // method pulishCertsInQueue
+
   void clearPublishQueue(String caName, List<String> publisherNames) throws CaMgmtException {
     assertMasterModeAndSetuped();
 
@@ -55,8 +55,7 @@ import java.net.SocketException;
 import java.sql.Connection;
 import java.util.*;
 import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.*;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.xipki.util.Args.notNull;
@@ -203,6 +202,12 @@ public class CaManagerImpl implements CaManager, Closeable {
 
   private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
 
+  // workers publishing the certificates in PUBLISHQUEUE, only used for the asynchronous publishing.
+  private ExecutorService publishQueueExecutor;
+
+  // workers generating the certificates of a batch enrollment, null if generated sequentially.
+  private ExecutorService batchEnrollExecutor;
+
   private final DataSourceFactory datasourceFactory;
 
   private CtLogPublicKeyFinder ctLogPublicKeyFinder;
@@ -398,9 +403,25 @@ public class CaManagerImpl implements CaManager, Closeable {
     final long epoch = DateUtil.parseUtcTimeyyyyMMdd("20100101").getTime();
     UniqueIdGenerator idGen = new UniqueIdGenerator(epoch, shardId);
 
+    if (this.certstore != null) {
+      this.certstore.close();
+    }
+
     boolean initSucc = true;
     try {
       this.certstore = new CertStore(datasource, idGen, securityFactory.getPasswordResolver());
+      CaServerConf.CertBatchInsertConf batchInsertConf = caServerConf == null ? null
+          : caServerConf.getCertBatchInsert();
+      if (batchInsertConf != null) {
+        certstore.enableBatchInsert(batchInsertConf.getMaxBatchSize(), batchInsertConf.getMaxWait());
+      }
+
+      CaServerConf.SerialNumberFilterConf serialFilterConf = caServerConf == null ? null
+          : caServerConf.getSerialNumberFilter();
+      if (serialFilterConf != null) {
+        certstore.enableSerialNumberFilter(serialFilterConf.getMinExpectedEntries(),
+            serialFilterConf.getFalsePositiveRate());
+      }
     } catch (DataAccessException ex) {
       initSucc = false;
       LogUtil.error(LOG, ex, "error constructing CertStore");
@@ -671,6 +692,23 @@ public class CaManagerImpl implements CaManager, Closeable {
       scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(10);
       scheduledThreadPoolExecutor.setRemoveOnCancelPolicy(true);
 
+      int batchEnrollThreads = caServerConf == null ? 0 : caServerConf.getBatchEnrollThreads();
+      if (batchEnrollThreads > 0) {
+        // bounded queue, if it is full the templates are processed by the requesting thread.
+        batchEnrollExecutor = new ThreadPoolExecutor(batchEnrollThreads, batchEnrollThreads,
+            0, SECONDS, new ArrayBlockingQueue<>(batchEnrollThreads * 10), (r, executor) -> {
+              if (executor.isShutdown()) {
+                throw new RejectedExecutionException("batchEnrollExecutor has been shutdown");
+              }
+              r.run();
+            });
+      }
+
+      int serialNumberBufferSize = caServerConf == null ? 0 : caServerConf.getSerialNumberBufferSize();
+      if (serialNumberBufferSize > 0) {
+        RandomSerialNumberGenerator.getInstance().enableBuffer(serialNumberBufferSize);
+      }
+
       List<String> failedCaNames = new LinkedList<>();
 
       // Add the CAs to the store
@@ -713,7 +751,14 @@ public class CaManagerImpl implements CaManager, Closeable {
         int len = sb.length();
         sb.delete(len - 2, len);
 
-        scheduledThreadPoolExecutor.scheduleAtFixedRate(new CertsInQueuePublisher(), 120, 120, SECONDS);
+        CaServerConf.AsyncPublishConf asyncPublishConf = getAsyncPublishConf();
+        if (asyncPublishConf == null) {
+          scheduledThreadPoolExecutor.scheduleAtFixedRate(new CertsInQueuePublisher(), 120, 120, SECONDS);
+        } else {
+          publishQueueExecutor = Executors.newFixedThreadPool(asyncPublishConf.getThreads());
+          scheduledThreadPoolExecutor.scheduleWithFixedDelay(new CertsInQueuePublisher(),
+              asyncPublishConf.getInterval(), asyncPublishConf.getInterval(), SECONDS);
+        }
       } else {
         sb.append(": no CA is configured");
       }
@@ -767,6 +812,10 @@ public class CaManagerImpl implements CaManager, Closeable {
 
     ca2Manager.close();
 
+    if (certstore != null) {
+      certstore.close();
+    }
+
     if (caLockedByMe) {
       try {
         unlockCa();
@@ -804,6 +853,22 @@ public class CaManagerImpl implements CaManager, Closeable {
     return scheduledThreadPoolExecutor;
   }
 
+  /**
+   * Returns the executor to generate the certificates of a batch enrollment in parallel.
+   * @return the executor, or {@code null} if the certificates are generated sequentially.
+   */
+  public ExecutorService getBatchEnrollExecutor() {
+    return batchEnrollExecutor;
+  }
+
+  /**
+   * Returns the configuration of the CRL cache.
+   * @return the configuration, or {@code null} to use the default one.
+   */
+  public CaServerConf.CrlCacheConf getCrlCacheConf() {
+    return caServerConf == null ? null : caServerConf.getCrlCache();
+  }
+
   @Override
   public Set<String> getCertprofileNames() {
     return certprofileDbEntries.keySet();
@@ -1100,6 +1165,17 @@ public class CaManagerImpl implements CaManager, Closeable {
   }
 
   private void shutdownScheduledThreadPoolExecutor() {
+    if (publishQueueExecutor != null) {
+      // the certificates not published yet remain in the PUBLISHQUEUE
+      publishQueueExecutor.shutdown();
+      publishQueueExecutor = null;
+    }
+
+    if (batchEnrollExecutor != null) {
+      batchEnrollExecutor.shutdown();
+      batchEnrollExecutor = null;
+    }
+
     if (scheduledThreadPoolExecutor == null) {
       return;
     }
@@ -1108,6 +1184,22 @@ public class CaManagerImpl implements CaManager, Closeable {
     scheduledThreadPoolExecutor = null;
   } // method shutdownScheduledThreadPoolExecutor
 
+  /**
+   * Returns the configuration of the asynchronous publishing.
+   * @return the configuration, or {@code null} if the certificates are published synchronously.
+   */
+  public CaServerConf.AsyncPublishConf getAsyncPublishConf() {
+    return caServerConf == null ? null : caServerConf.getAsyncPublish();
+  }
+
+  /**
+   * Returns the workers publishing the certificates in PUBLISHQUEUE.
+   * @return the workers, or {@code null} if the certificates are published synchronously.
+   */
+  ExecutorService getPublishQueueExecutor() {
+    return publishQueueExecutor;
+  }
+
   @Override
   public void revokeCertificate(String caName, BigInteger serialNumber, CrlReason reason, Date invalidityTime)
       throws CaMgmtException {
@@ -43,6 +43,7 @@ import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -139,6 +140,19 @@ public class OcspCertPublisher extends CertPublisher {
     }
   } // method certificateAdded
 
+  @Override
+  public boolean certificatesAdded(List<CertificateInfo> certInfos) {
+    try {
+      queryExecutor.addCerts(certInfos);
+      return true;
+    } catch (Exception ex) {
+      // the caller will publish the certificates one by one, and log the failed ones.
+      LOG.warn("could not save {} certificates in batch: {}", certInfos.size(), ex.getMessage());
+      LOG.debug("error", ex);
+      return false;
+    }
+  } // method certificatesAdded
+
   @Override
   public boolean certificateRevoked(X509Cert caCert, CertWithDbId cert,
       String certprofile, CertRevocationInfo revInfo) {
@@ -191,6 +205,11 @@ public class OcspCertPublisher extends CertPublisher {
     return true;
   }
 
+  @Override
+  public boolean crlAdded(X509Cert caCert, byte[] encodedCrl) {
+    return true;
+  }
+
   @Override
   public boolean isHealthy() {
     return queryExecutor.isHealthy();
@@ -20,6 +20,7 @@ package org.xipki.ca.server.publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.ca.api.CertWithDbId;
+import org.xipki.ca.api.CertificateInfo;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.security.CertRevocationInfo;
@@ -114,10 +115,15 @@ class OcspStoreQueryExecutor {
 
   private static final Logger LOG = LoggerFactory.getLogger(OcspStoreQueryExecutor.class);
 
+  // number of serial numbers queried in one SELECT ... IN statement.
+  private static final int CERT_IDS_PER_SELECT = 100;
+
   private final DataSourceWrapper datasource;
 
   private final String sqlCertRegistered;
 
+  private final String sqlCertsRegistered;
+
   private final IssuerStore issuerStore;
 
   private final boolean publishGoodCerts;
@@ -138,6 +144,7 @@ class OcspStoreQueryExecutor {
     this.publishGoodCerts = publishGoodCerts;
 
     this.sqlCertRegistered = datasource.buildSelectFirstSql(1, "ID FROM CERT WHERE SN=? AND IID=?");
+    this.sqlCertsRegistered = datasource.buildArraySql("ID,SN FROM CERT WHERE IID=? AND SN", CERT_IDS_PER_SELECT);
     final String sql = "SELECT NAME,VALUE2 FROM DBSCHEMA";
 
     Map<String, String> variables = new HashMap<>();
@@ -218,40 +225,10 @@ class OcspStoreQueryExecutor {
     final String sql = revoked ? SQL_ADD_REVOKED_CERT : SQL_ADD_CERT;
 
     long certId = certificate.getCertId();
-    byte[] encodedCert = certificate.getCert().getEncoded();
-    String certHash = certhashAlgo.base64Hash(encodedCert);
-
-    X509Cert cert = certificate.getCert();
-    long notBeforeSeconds = cert.getNotBefore().getTime() / 1000;
-    long notAfterSeconds = cert.getNotAfter().getTime() / 1000;
-    String cuttedSubject = X509Util.cutText(certificate.getCert().getSubjectText(), maxX500nameLen);
-
     PreparedStatement ps = datasource.prepareStatement(sql);
 
     try {
-      // CERT
-      int idx = 1;
-      ps.setLong(idx++, certId);
-      ps.setLong(idx++, System.currentTimeMillis() / 1000); // currentTimeSeconds
-      ps.setString(idx++, serialNumber.toString(16));
-      ps.setLong(idx++, notBeforeSeconds);
-      ps.setLong(idx++, notAfterSeconds);
-      setBoolean(ps, idx++, revoked);
-      ps.setInt(idx++, issuerId);
-      ps.setString(idx++, certHash);
-      ps.setString(idx++, cuttedSubject);
-
-      if (revoked) {
-        long revTime = revInfo.getRevocationTime().getTime() / 1000;
-        ps.setLong(idx++, revTime);
-        if (revInfo.getInvalidityTime() != null) {
-          ps.setLong(idx++, revInfo.getInvalidityTime().getTime() / 1000);
-        } else {
-          ps.setNull(idx++, Types.BIGINT);
-        }
-        int reasonCode = (revInfo.getReason() == null) ? 0 : revInfo.getReason().getCode();
-        ps.setInt(idx, reasonCode);
-      }
+      setCertParams(ps, issuerId, certificate, revInfo);
 
       try {
         ps.executeUpdate();
@@ -275,6 +252,112 @@ class OcspStoreQueryExecutor {
     }
   } // method addOrUpdateCert
 
+  /**
+   * Adds the certificates. The certificates not registered yet are added with JDBC batch
+   * inserts, the registered ones are updated one by one.
+   */
+  void addCerts(List<CertificateInfo> certInfos) throws DataAccessException, OperationException {
+    // separate lists since the SQL statements for good and revoked certificates are different
+    List<CertificateInfo> newGoodCerts = new ArrayList<>(certInfos.size());
+    List<CertificateInfo> newRevokedCerts = new LinkedList<>();
+
+    // group by issuer to look up the registered certificates with one query per issuer
+    Map<Integer, List<CertificateInfo>> issuerCertInfos = new HashMap<>();
+    for (CertificateInfo certInfo : certInfos) {
+      int issuerId = getIssuerId(certInfo.getIssuerCert());
+      issuerCertInfos.computeIfAbsent(issuerId, k -> new ArrayList<>()).add(certInfo);
+    }
+
+    for (Map.Entry<Integer, List<CertificateInfo>> entry : issuerCertInfos.entrySet()) {
+      List<CertificateInfo> issuerInfos = entry.getValue();
+      List<BigInteger> serialNumbers = new ArrayList<>(issuerInfos.size());
+      for (CertificateInfo certInfo : issuerInfos) {
+        serialNumbers.add(certInfo.getCert().getCert().getSerialNumber());
+      }
+
+      Map<BigInteger, Long> certRegisteredIds = getCertIds(entry.getKey(), serialNumbers);
+
+      for (CertificateInfo certInfo : issuerInfos) {
+        CertRevocationInfo revInfo = certInfo.getRevocationInfo();
+        boolean revoked = (revInfo != null);
+
+        Long certRegisteredId = certRegisteredIds.get(certInfo.getCert().getCert().getSerialNumber());
+        if (certRegisteredId != null) {
+          if (publishGoodCerts || revoked) {
+            updateRegisteredCert(certRegisteredId, revInfo);
+          }
+        } else {
+          (revoked ? newRevokedCerts : newGoodCerts).add(certInfo);
+        }
+      }
+    }
+
+    addNewCerts(SQL_ADD_CERT, newGoodCerts);
+    addNewCerts(SQL_ADD_REVOKED_CERT, newRevokedCerts);
+  } // method addCerts
+
+  private void addNewCerts(String sql, List<CertificateInfo> certInfos) throws DataAccessException {
+    if (certInfos.isEmpty()) {
+      return;
+    }
+
+    Connection conn = datasource.getConnection();
+    try {
+      PreparedStatement ps = datasource.prepareStatement(conn, sql);
+      try {
+        for (CertificateInfo certInfo : certInfos) {
+          setCertParams(ps, getIssuerId(certInfo.getIssuerCert()), certInfo.getCert(),
+              certInfo.getRevocationInfo());
+          ps.addBatch();
+        }
+
+        ps.executeBatch();
+      } catch (SQLException ex) {
+        LOG.error("datasource {} could not add {} certificates: {}",
+            datasource.getName(), certInfos.size(), ex.getMessage());
+        throw datasource.translate(sql, ex);
+      } finally {
+        datasource.releaseResources(ps, null, false);
+      }
+    } finally {
+      datasource.returnConnection(conn);
+    }
+  } // method addNewCerts
+
+  private void setCertParams(PreparedStatement ps, int issuerId, CertWithDbId certificate,
+      CertRevocationInfo revInfo) throws SQLException {
+    boolean revoked = (revInfo != null);
+    X509Cert cert = certificate.getCert();
+    String certHash = certhashAlgo.base64Hash(cert.getEncoded());
+    long notBeforeSeconds = cert.getNotBefore().getTime() / 1000;
+    long notAfterSeconds = cert.getNotAfter().getTime() / 1000;
+    String cuttedSubject = X509Util.cutText(cert.getSubjectText(), maxX500nameLen);
+
+    // CERT
+    int idx = 1;
+    ps.setLong(idx++, certificate.getCertId());
+    ps.setLong(idx++, System.currentTimeMillis() / 1000); // currentTimeSeconds
+    ps.setString(idx++, cert.getSerialNumber().toString(16));
+    ps.setLong(idx++, notBeforeSeconds);
+    ps.setLong(idx++, notAfterSeconds);
+    setBoolean(ps, idx++, revoked);
+    ps.setInt(idx++, issuerId);
+    ps.setString(idx++, certHash);
+    ps.setString(idx++, cuttedSubject);
+
+    if (revoked) {
+      long revTime = revInfo.getRevocationTime().getTime() / 1000;
+      ps.setLong(idx++, revTime);
+      if (revInfo.getInvalidityTime() != null) {
+        ps.setLong(idx++, revInfo.getInvalidityTime().getTime() / 1000);
+      } else {
+        ps.setNull(idx++, Types.BIGINT);
+      }
+      int reasonCode = (revInfo.getReason() == null) ? 0 : revInfo.getReason().getCode();
+      ps.setInt(idx, reasonCode);
+    }
+  } // method setCertParams
+
   private void updateRegisteredCert(long registeredCertId, CertRevocationInfo revInfo)
       throws DataAccessException {
     boolean revoked = (revInfo != null);
@@ -492,6 +575,52 @@ class OcspStoreQueryExecutor {
     }
   } // method getCertId
 
+  /**
+   * Returns the database ids for the given issuer and serial numbers.
+   * @return map of the registered serial numbers to their database table ids.
+   */
+  private Map<BigInteger, Long> getCertIds(int issuerId, List<BigInteger> serialNumbers)
+      throws DataAccessException {
+    Map<BigInteger, Long> ret = new HashMap<>();
+    if (!datasource.getDatabaseType().supportsInArray()) {
+      for (BigInteger serialNumber : serialNumbers) {
+        Long certId = getCertId(issuerId, serialNumber);
+        if (certId != null) {
+          ret.put(serialNumber, certId);
+        }
+      }
+      return ret;
+    }
+
+    final String sql = sqlCertsRegistered;
+    PreparedStatement ps = datasource.prepareStatement(sql);
+
+    try {
+      ps.setInt(1, issuerId);
+      for (int off = 0; off < serialNumbers.size(); off += CERT_IDS_PER_SELECT) {
+        int num = Math.min(CERT_IDS_PER_SELECT, serialNumbers.size() - off);
+        // unused parameters are filled with the last serial number
+        for (int i = 0; i < CERT_IDS_PER_SELECT; i++) {
+          ps.setString(i + 2, serialNumbers.get(off + Math.min(i, num - 1)).toString(16));
+        }
+
+        ResultSet rs = ps.executeQuery();
+        try {
+          while (rs.next()) {
+            ret.put(new BigInteger(rs.getString("SN"), 16), rs.getLong("ID"));
+          }
+        } finally {
+          datasource.releaseResources(null, rs);
+        }
+      }
+      return ret;
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(ps, null);
+    }
+  } // method getCertIds
+
   boolean isHealthy() {
     final String sql = "SELECT ID FROM ISSUER";
 
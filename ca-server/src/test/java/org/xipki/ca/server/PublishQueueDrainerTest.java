@@ -0,0 +1,291 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.cert.X509CRLHolder;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.ca.api.CertWithDbId;
+import org.xipki.ca.api.CertificateInfo;
+import org.xipki.ca.api.NameId;
+import org.xipki.ca.api.mgmt.entry.PublisherEntry;
+import org.xipki.ca.api.publisher.CertPublisher;
+import org.xipki.password.PasswordResolver;
+import org.xipki.security.CertRevocationInfo;
+import org.xipki.security.X509Cert;
+import org.xipki.util.FileOrValue;
+import org.xipki.util.exception.ErrorCode;
+import org.xipki.util.exception.OperationException;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.*;
+
+/**
+ * Test for {@link PublishQueueDrainer}.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+public class PublishQueueDrainerTest {
+
+  private static final NameId CA = new NameId(1, "ca1");
+
+  private static X509Cert caCert;
+
+  private static class MockPublishQueue implements PublishQueueDrainer.PublishQueue {
+
+    private final TreeSet<Long> certIds = new TreeSet<>();
+
+    private int numQueries;
+
+    MockPublishQueue(int numCerts) {
+      for (long i = 1; i <= numCerts; i++) {
+        certIds.add(i);
+      }
+    }
+
+    @Override
+    public List<Long> nextCertIds(int num) {
+      numQueries++;
+      List<Long> rv = new ArrayList<>(num);
+      for (Long certId : certIds) {
+        if (rv.size() == num) {
+          break;
+        }
+        rv.add(certId);
+      }
+      return rv;
+    }
+
+    @Override
+    public CertificateInfo getCert(long certId) throws OperationException {
+      if (!certIds.contains(certId)) {
+        throw new OperationException(ErrorCode.UNKNOWN_CERT, "unknown cert id " + certId);
+      }
+
+      CertWithDbId cert = new CertWithDbId(caCert);
+      cert.setCertId(certId);
+      return new CertificateInfo(cert, null, CA, caCert, new NameId(2, "profile1"), new NameId(3, "requestor1"));
+    }
+
+    @Override
+    public void remove(long certId) {
+      certIds.remove(certId);
+    }
+
+  } // class MockPublishQueue
+
+  private static class MockCertPublisher extends CertPublisher {
+
+    private final List<Long> publishedCertIds = new ArrayList<>();
+
+    private long failedCertId = -1;
+
+    @Override
+    public void initialize(String conf, PasswordResolver passwordResolver,
+        Map<String, FileOrValue> datasourceConfs) {
+    }
+
+    @Override
+    public boolean publishsGoodCert() {
+      return true;
+    }
+
+    @Override
+    public boolean caAdded(X509Cert caCert) {
+      return true;
+    }
+
+    @Override
+    public boolean certificateAdded(CertificateInfo certInfo) {
+      long certId = certInfo.getCert().getCertId();
+      if (certId == failedCertId) {
+        return false;
+      }
+      publishedCertIds.add(certId);
+      return true;
+    }
+
+    @Override
+    public boolean certificatesAdded(List<CertificateInfo> certInfos) {
+      for (CertificateInfo certInfo : certInfos) {
+        if (certInfo.getCert().getCertId() == failedCertId) {
+          return false;
+        }
+      }
+      return super.certificatesAdded(certInfos);
+    }
+
+    @Override
+    public boolean certificateRevoked(X509Cert caCert, CertWithDbId cert, String certprofile,
+        CertRevocationInfo revInfo) {
+      return true;
+    }
+
+    @Override
+    public boolean certificateUnrevoked(X509Cert caCert, CertWithDbId cert) {
+      return true;
+    }
+
+    @Override
+    public boolean certificateRemoved(X509Cert caCert, CertWithDbId cert) {
+      return true;
+    }
+
+    @Override
+    public boolean crlAdded(X509Cert caCert, X509CRLHolder crl) {
+      return true;
+    }
+
+    @Override
+    public boolean caRevoked(X509Cert caCert, CertRevocationInfo revInfo) {
+      return true;
+    }
+
+    @Override
+    public boolean caUnrevoked(X509Cert caCert) {
+      return true;
+    }
+
+    @Override
+    public boolean isHealthy() {
+      return true;
+    }
+
+  } // class MockCertPublisher
+
+  @BeforeClass
+  public static void init() throws Exception {
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+    kpGen.initialize(256);
+    KeyPair keypair = kpGen.generateKeyPair();
+
+    X500Name name = new X500Name("CN=CA1");
+    Date notBefore = new Date();
+    Date notAfter = new Date(notBefore.getTime() + 365L * 24 * 3600 * 1000);
+    X509v3CertificateBuilder builder = new X509v3CertificateBuilder(name, BigInteger.ONE, notBefore, notAfter,
+        name, SubjectPublicKeyInfo.getInstance(keypair.getPublic().getEncoded()));
+    caCert = new X509Cert(builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(keypair.getPrivate())));
+  } // method init
+
+  private static IdentifiedCertPublisher publisher(MockCertPublisher mock) {
+    return new IdentifiedCertPublisher(new PublisherEntry(new NameId(1, "publisher1"), "mock", null), mock);
+  }
+
+  @Test
+  public void testDrain() {
+    MockPublishQueue queue = new MockPublishQueue(25);
+    MockCertPublisher mock = new MockCertPublisher();
+    PublishQueueDrainer drainer = new PublishQueueDrainer("test", 10);
+
+    Assert.assertTrue("drain", drainer.drain(queue, publisher(mock)));
+    Assert.assertTrue("queue empty", queue.certIds.isEmpty());
+    Assert.assertEquals("published certificates", 25, mock.publishedCertIds.size());
+    // 10 + 10 + 5, the partial batch ends the drain without a further query
+    Assert.assertEquals("queries", 3, queue.numQueries);
+    Assert.assertEquals("published", 25, drainer.getPublished());
+    Assert.assertEquals("failed runs", 0, drainer.getFailedRuns());
+
+    // empty queue
+    Assert.assertTrue("drain", drainer.drain(queue, publisher(mock)));
+    Assert.assertEquals("queries", 4, queue.numQueries);
+    Assert.assertEquals("published", 25, drainer.getPublished());
+  } // method testDrain
+
+  @Test
+  public void testDrainFullBatches() {
+    MockPublishQueue queue = new MockPublishQueue(20);
+    PublishQueueDrainer drainer = new PublishQueueDrainer("test", 10);
+
+    Assert.assertTrue("drain", drainer.drain(queue, publisher(new MockCertPublisher())));
+    Assert.assertTrue("queue empty", queue.certIds.isEmpty());
+    // the empty third batch ends the drain
+    Assert.assertEquals("queries", 3, queue.numQueries);
+  } // method testDrainFullBatches
+
+  @Test
+  public void testStopAtFailure() {
+    MockPublishQueue queue = new MockPublishQueue(25);
+    MockCertPublisher mock = new MockCertPublisher();
+    mock.failedCertId = 15;
+    PublishQueueDrainer drainer = new PublishQueueDrainer("test", 10);
+
+    Assert.assertFalse("drain", drainer.drain(queue, publisher(mock)));
+    // the first batch, and the certificates of the second batch before the failed one
+    Assert.assertEquals("published", 14, drainer.getPublished());
+    Assert.assertEquals("failed runs", 1, drainer.getFailedRuns());
+    Assert.assertEquals("remaining certificates", 11, queue.certIds.size());
+    Assert.assertEquals("first remaining certificate", 15L, (long) queue.certIds.first());
+
+    // the failed certificate is published in the next run
+    mock.failedCertId = -1;
+    Assert.assertTrue("drain", drainer.drain(queue, publisher(mock)));
+    Assert.assertTrue("queue empty", queue.certIds.isEmpty());
+    Assert.assertEquals("published", 25, drainer.getPublished());
+    Assert.assertEquals("failed runs", 1, drainer.getFailedRuns());
+    Assert.assertEquals("published certificates", 25, new HashSet<>(mock.publishedCertIds).size());
+  } // method testStopAtFailure
+
+  @Test
+  public void testLag() throws Exception {
+    MockPublishQueue queue = new MockPublishQueue(25);
+    MockCertPublisher mock = new MockCertPublisher();
+    PublishQueueDrainer drainer = new PublishQueueDrainer("test", 10);
+    Assert.assertEquals("lag of empty queue", 0, drainer.getLagMs());
+
+    drainer.entryQueued();
+    Thread.sleep(20);
+    // the oldest entry determines the lag
+    drainer.entryQueued();
+    Assert.assertTrue("lag", drainer.getLagMs() >= 20);
+
+    mock.failedCertId = 15;
+    Assert.assertFalse("drain", drainer.drain(queue, publisher(mock)));
+    Assert.assertTrue("lag after failed drain", drainer.getLagMs() >= 20);
+
+    mock.failedCertId = -1;
+    Assert.assertTrue("drain", drainer.drain(queue, publisher(mock)));
+    Assert.assertEquals("lag after drained queue", 0, drainer.getLagMs());
+
+    drainer.entryQueued();
+    drainer.queueCleared();
+    Assert.assertEquals("lag after cleared queue", 0, drainer.getLagMs());
+  } // method testLag
+
+  @Test
+  public void testLagOfUnknownEntries() throws Exception {
+    // entries queued before the start, e.g. by a previous run of the CA system
+    MockPublishQueue queue = new MockPublishQueue(25);
+    MockCertPublisher mock = new MockCertPublisher();
+    mock.failedCertId = 1;
+    PublishQueueDrainer drainer = new PublishQueueDrainer("test", 10);
+
+    Assert.assertFalse("drain", drainer.drain(queue, publisher(mock)));
+    Thread.sleep(20);
+    Assert.assertTrue("lag", drainer.getLagMs() >= 20);
+  } // method testLagOfUnknownEntries
+
+}
@@ -0,0 +1,92 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Test for {@link RandomSerialNumberGenerator}.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+public class RandomSerialNumberGeneratorTest {
+
+  private static final int NUM_THREADS = 8;
+
+  private static final int NUM_SERIALS_PER_THREAD = 5000;
+
+  private static List<BigInteger> generateConcurrently(RandomSerialNumberGenerator generator, int byteLen)
+      throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<List<BigInteger>>> futures = new ArrayList<>(NUM_THREADS);
+      for (int i = 0; i < NUM_THREADS; i++) {
+        futures.add(executor.submit(() -> {
+          start.await();
+          List<BigInteger> serials = new ArrayList<>(NUM_SERIALS_PER_THREAD);
+          for (int j = 0; j < NUM_SERIALS_PER_THREAD; j++) {
+            serials.add(generator.nextSerialNumber(byteLen));
+          }
+          return serials;
+        }));
+      }
+
+      start.countDown();
+      List<BigInteger> serials = new ArrayList<>(NUM_THREADS * NUM_SERIALS_PER_THREAD);
+      for (Future<List<BigInteger>> future : futures) {
+        serials.addAll(future.get(60, TimeUnit.SECONDS));
+      }
+      return serials;
+    } finally {
+      executor.shutdown();
+    }
+  } // method generateConcurrently
+
+  private static void assertSerials(List<BigInteger> serials, int byteLen) {
+    Assert.assertEquals("number of serials", NUM_THREADS * NUM_SERIALS_PER_THREAD, serials.size());
+    Assert.assertEquals("unique serials", serials.size(), new HashSet<>(serials).size());
+    for (BigInteger serial : serials) {
+      // the highest bit is cleared, and the second-highest bit is set
+      Assert.assertEquals("bit length of " + serial.toString(16), byteLen * 8 - 1, serial.bitLength());
+    }
+  } // method assertSerials
+
+  @Test
+  public void testConcurrentSerials() throws Exception {
+    RandomSerialNumberGenerator generator = RandomSerialNumberGenerator.getInstance();
+
+    for (int byteLen : new int[] {8, 20}) {
+      assertSerials(generateConcurrently(generator, byteLen), byteLen);
+    }
+
+    // serials from the buffer refilled in the background
+    generator.enableBuffer(1000);
+    for (int byteLen : new int[] {9, 16}) {
+      assertSerials(generateConcurrently(generator, byteLen), byteLen);
+    }
+  } // method testConcurrentSerials
+
+}
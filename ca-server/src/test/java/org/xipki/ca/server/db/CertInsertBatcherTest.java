@@ -0,0 +1,300 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server.db;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xipki.ca.server.db.QueryExecutor.SqlColumn2;
+import org.xipki.datasource.DataAccessException;
+import org.xipki.datasource.DataSourceFactory;
+import org.xipki.datasource.DataSourceWrapper;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
+
+/**
+ * Test for {@link CertInsertBatcher}.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+public class CertInsertBatcherTest {
+
+  private static final String SQL = "INSERT INTO CERT (ID,SN) VALUES (?,?)";
+
+  private static final int NUM_THREADS = 8;
+
+  /**
+   * State of the mocked database, shared by all connections.
+   */
+  private static class MockDatabase {
+
+    private final Set<Long> committedIds = new HashSet<>();
+
+    private final List<Integer> batchSizes = new ArrayList<>();
+
+    private final Set<Long> failedIds = new HashSet<>();
+
+    private boolean failAll;
+
+    private int numCommits;
+
+    private int numRollbacks;
+
+  } // class MockDatabase
+
+  private static volatile MockDatabase database;
+
+  /**
+   * DataSource whose connections record the batches, commits and rollbacks in {@link #database}.
+   * Instantiated by HikariCP.
+   */
+  public static class MockDataSource implements DataSource {
+
+    @Override
+    public Connection getConnection() {
+      List<Long> uncommittedIds = new ArrayList<>();
+      boolean[] autoCommit = {true};
+
+      return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Connection.class},
+          (proxy, method, args) -> {
+            switch (method.getName()) {
+              case "prepareStatement":
+                return newPreparedStatement(uncommittedIds);
+              case "getAutoCommit":
+                return autoCommit[0];
+              case "setAutoCommit":
+                autoCommit[0] = (Boolean) args[0];
+                return null;
+              case "commit":
+                synchronized (database) {
+                  database.numCommits++;
+                  database.committedIds.addAll(uncommittedIds);
+                }
+                uncommittedIds.clear();
+                return null;
+              case "rollback":
+                synchronized (database) {
+                  database.numRollbacks++;
+                }
+                uncommittedIds.clear();
+                return null;
+              case "isValid":
+                return true;
+              default:
+                return defaultValue(method.getReturnType());
+            }
+          });
+    } // method getConnection
+
+    private static PreparedStatement newPreparedStatement(List<Long> uncommittedIds) {
+      List<Long> batch = new ArrayList<>();
+      long[] currentId = new long[1];
+
+      return (PreparedStatement) Proxy.newProxyInstance(MockDataSource.class.getClassLoader(),
+          new Class<?>[] {PreparedStatement.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+              case "setLong":
+                if ((Integer) args[0] == 1) {
+                  currentId[0] = (Long) args[1];
+                }
+                return null;
+              case "addBatch":
+                batch.add(currentId[0]);
+                return null;
+              case "executeBatch":
+                synchronized (database) {
+                  database.batchSizes.add(batch.size());
+                  if (database.failAll || !Collections.disjoint(batch, database.failedIds)) {
+                    batch.clear();
+                    throw new SQLException("unique constraint violated", "23505", 23505);
+                  }
+                }
+                uncommittedIds.addAll(batch);
+                int[] rv = new int[batch.size()];
+                Arrays.fill(rv, 1);
+                batch.clear();
+                return rv;
+              default:
+                return defaultValue(method.getReturnType());
+            }
+          });
+    } // method newPreparedStatement
+
+    private static Object defaultValue(Class<?> type) {
+      if (type == boolean.class) {
+        return false;
+      } else if (type == int.class) {
+        return 0;
+      } else if (type == long.class) {
+        return 0L;
+      } else {
+        return null;
+      }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) {
+      return getConnection();
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+      return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+    }
+
+    @Override
+    public int getLoginTimeout() {
+      return 0;
+    }
+
+    @Override
+    public Logger getParentLogger() {
+      return Logger.getGlobal();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+      throw new SQLException("not a wrapper");
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+      return false;
+    }
+
+  } // class MockDataSource
+
+  private DataSourceWrapper datasource;
+
+  @Before
+  public void setUp() throws Exception {
+    database = new MockDatabase();
+    Properties props = new Properties();
+    props.setProperty("dataSourceClassName", MockDataSource.class.getName());
+    props.setProperty("sql.type", "H2");
+    props.setProperty("maximumPoolSize", "2");
+    datasource = new DataSourceFactory().createDataSource("mock", props, null);
+  }
+
+  @After
+  public void tearDown() {
+    datasource.close();
+  }
+
+  /**
+   * Inserts the rows with the ids 1 to {@link #NUM_THREADS} concurrently.
+   * @return the exception of each row, null if the row has been inserted.
+   */
+  private List<DataAccessException> insertConcurrently() throws Exception {
+    // wait long enough to collect the rows of all threads in one batch
+    CertInsertBatcher batcher = new CertInsertBatcher(new QueryExecutor(datasource), SQL, NUM_THREADS, 2000);
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<DataAccessException>> futures = new ArrayList<>(NUM_THREADS);
+      for (long i = 1; i <= NUM_THREADS; i++) {
+        final SqlColumn2[] columns = {QueryExecutor.col2Long(i), QueryExecutor.col2Long(i * 100)};
+        futures.add(executor.submit(() -> {
+          start.await();
+          try {
+            batcher.insert(columns);
+            return null;
+          } catch (DataAccessException ex) {
+            return ex;
+          }
+        }));
+      }
+
+      start.countDown();
+      List<DataAccessException> errors = new ArrayList<>(NUM_THREADS);
+      for (Future<DataAccessException> future : futures) {
+        errors.add(future.get(30, TimeUnit.SECONDS));
+      }
+      return errors;
+    } finally {
+      executor.shutdown();
+      batcher.close();
+    }
+  } // method insertConcurrently
+
+  @Test
+  public void testGroupCommit() throws Exception {
+    List<DataAccessException> errors = insertConcurrently();
+
+    for (DataAccessException error : errors) {
+      Assert.assertNull("error", error);
+    }
+    Assert.assertEquals("batch sizes", Collections.singletonList(NUM_THREADS), database.batchSizes);
+    Assert.assertEquals("commits", 1, database.numCommits);
+    Assert.assertEquals("committed rows", NUM_THREADS, database.committedIds.size());
+  } // method testGroupCommit
+
+  @Test
+  public void testFailedBatchReportedToEveryWaiter() throws Exception {
+    database.failAll = true;
+    List<DataAccessException> errors = insertConcurrently();
+
+    for (int i = 0; i < NUM_THREADS; i++) {
+      Assert.assertNotNull("error of row " + (i + 1), errors.get(i));
+    }
+    Assert.assertEquals("first batch size", NUM_THREADS, (int) database.batchSizes.get(0));
+    // the batch, and then each row inserted one by one
+    Assert.assertEquals("rollbacks", 1 + NUM_THREADS, database.numRollbacks);
+    Assert.assertEquals("commits", 0, database.numCommits);
+    Assert.assertTrue("committed rows", database.committedIds.isEmpty());
+  } // method testFailedBatchReportedToEveryWaiter
+
+  @Test
+  public void testFailedRowReportedToItsWaiter() throws Exception {
+    database.failedIds.add(3L);
+    List<DataAccessException> errors = insertConcurrently();
+
+    for (int i = 0; i < NUM_THREADS; i++) {
+      long id = i + 1;
+      if (id == 3) {
+        Assert.assertNotNull("error of row " + id, errors.get(i));
+      } else {
+        Assert.assertNull("error of row " + id, errors.get(i));
+      }
+    }
+    // the batch and the failed row are rolled back
+    Assert.assertEquals("rollbacks", 2, database.numRollbacks);
+    Assert.assertEquals("committed rows", NUM_THREADS - 1, database.committedIds.size());
+    Assert.assertFalse("failed row committed", database.committedIds.contains(3L));
+  } // method testFailedRowReportedToItsWaiter
+
+}
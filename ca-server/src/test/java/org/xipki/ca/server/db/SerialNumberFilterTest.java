@@ -0,0 +1,146 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server.db;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+
+/**
+ * Test for {@link SerialNumberFilter}.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+public class SerialNumberFilterTest {
+
+  private static BigInteger[] randomSerials(int count, long seed) {
+    Random random = new Random(seed);
+    BigInteger[] serials = new BigInteger[count];
+    for (int i = 0; i < count; i++) {
+      serials[i] = new BigInteger(159, random);
+    }
+    return serials;
+  }
+
+  @Test
+  public void testNoFalseNegatives() {
+    SerialNumberFilter filter = new SerialNumberFilter(10000, 0.001);
+    BigInteger[] serials = randomSerials(10000, 1);
+    for (BigInteger serial : serials) {
+      filter.add(serial);
+    }
+
+    for (BigInteger serial : serials) {
+      Assert.assertTrue("missing serial " + serial.toString(16), filter.mightContain(serial));
+    }
+    Assert.assertEquals(serials.length, filter.getNumEntries());
+    Assert.assertFalse(filter.isSaturated());
+  }
+
+  @Test
+  public void testFalsePositiveRate() {
+    SerialNumberFilter filter = new SerialNumberFilter(10000, 0.01);
+    for (BigInteger serial : randomSerials(10000, 2)) {
+      filter.add(serial);
+    }
+
+    int falsePositives = 0;
+    for (BigInteger serial : randomSerials(10000, 3)) {
+      if (filter.mightContain(serial)) {
+        falsePositives++;
+      }
+    }
+    // expected are about 100
+    Assert.assertTrue("too many false positives: " + falsePositives, falsePositives < 300);
+  }
+
+  @Test
+  public void testSmallSerialNumbers() {
+    SerialNumberFilter filter = new SerialNumberFilter(100, 0.001);
+    for (int i = 1; i <= 100; i++) {
+      filter.add(BigInteger.valueOf(i));
+    }
+
+    for (int i = 1; i <= 100; i++) {
+      Assert.assertTrue(filter.mightContain(BigInteger.valueOf(i)));
+    }
+  }
+
+  @Test
+  public void testSaturated() {
+    SerialNumberFilter filter = new SerialNumberFilter(10, 0.01);
+    BigInteger[] serials = randomSerials(11, 4);
+    for (int i = 0; i < 10; i++) {
+      filter.add(serials[i]);
+    }
+    Assert.assertFalse(filter.isSaturated());
+
+    filter.add(serials[10]);
+    Assert.assertTrue(filter.isSaturated());
+  }
+
+  @Test
+  public void testConcurrentAdd() throws Exception {
+    final int numThreads = 8;
+    final int perThread = 20000;
+    SerialNumberFilter filter = new SerialNumberFilter(numThreads * perThread, 0.001);
+
+    List<BigInteger[]> serialsList = new ArrayList<>(numThreads);
+    for (int i = 0; i < numThreads; i++) {
+      serialsList.add(randomSerials(perThread, 100 + i));
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<?>> futures = new ArrayList<>(numThreads);
+      for (BigInteger[] serials : serialsList) {
+        futures.add(executor.submit(() -> {
+          start.await();
+          for (BigInteger serial : serials) {
+            filter.add(serial);
+          }
+          return null;
+        }));
+      }
+
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    // no bit set by one thread may be lost by the concurrent update of the same word
+    for (BigInteger[] serials : serialsList) {
+      for (BigInteger serial : serials) {
+        Assert.assertTrue("missing serial " + serial.toString(16), filter.mightContain(serial));
+      }
+    }
+    Assert.assertEquals(numThreads * perThread, filter.getNumEntries());
+  }
+
+}
@@ -0,0 +1,150 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server.keypool;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.ca.server.keypool.KeypoolKeypairGenerator.CipherData;
+import org.xipki.security.XiSecurityException;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Test for {@link KeypoolBuffer}.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+public class KeypoolBufferTest {
+
+  private static final String KEYSPEC = "RSA/2048";
+
+  private static class MockKeySource implements KeypoolBuffer.KeySource {
+
+    private final Deque<CipherData> keys = new ArrayDeque<>();
+
+    private final int batchSize;
+
+    private int numReads;
+
+    MockKeySource(int numKeys, int batchSize) {
+      this.batchSize = batchSize;
+      for (int i = 0; i < numKeys; i++) {
+        CipherData cd = new CipherData();
+        // use encAlg as the identifier of the key
+        cd.encAlg = i;
+        keys.add(cd);
+      }
+    }
+
+    @Override
+    public synchronized List<CipherData> nextKeyData(int keyspecId) {
+      numReads++;
+      List<CipherData> rv = new ArrayList<>(batchSize);
+      while (rv.size() < batchSize && !keys.isEmpty()) {
+        rv.add(keys.poll());
+      }
+      return rv;
+    }
+
+    @Override
+    public synchronized int countKeyData(int keyspecId) {
+      return keys.size();
+    }
+
+    synchronized int getNumReads() {
+      return numReads;
+    }
+
+  } // class MockKeySource
+
+  @Test
+  public void testClaimAndRefill() throws Exception {
+    MockKeySource source = new MockKeySource(100, 10);
+    try (KeypoolBuffer buffer = newBuffer(source, 10)) {
+      // filled in the background
+      waitFor(() -> buffer.size(KEYSPEC) == 10);
+      Assert.assertEquals("keys in the source", 90, source.countKeyData(1));
+
+      Set<Integer> ids = new HashSet<>();
+      for (int i = 0; i < 6; i++) {
+        Assert.assertTrue("duplicated key", ids.add(buffer.take(KEYSPEC).encAlg));
+      }
+
+      // at most half full, refilled in the background
+      waitFor(() -> buffer.size(KEYSPEC) == 14);
+      Assert.assertEquals("keys in the source", 80, source.countKeyData(1));
+      Assert.assertNull("unknown keyspec", buffer.take("EC/SECP256R1"));
+    }
+  } // method testClaimAndRefill
+
+  @Test
+  public void testConcurrentTake() throws Exception {
+    final int numKeys = 1000;
+    MockKeySource source = new MockKeySource(numKeys, 16);
+    Set<Integer> ids = ConcurrentHashMap.newKeySet();
+
+    try (KeypoolBuffer buffer = newBuffer(source, 16)) {
+      ExecutorService executor = Executors.newFixedThreadPool(8);
+      List<Future<Integer>> futures = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        futures.add(executor.submit(() -> {
+          int n = 0;
+          while (true) {
+            CipherData cd;
+            try {
+              cd = buffer.take(KEYSPEC);
+            } catch (XiSecurityException ex) {
+              // keypool is empty
+              return n;
+            }
+            Assert.assertTrue("duplicated key " + cd.encAlg, ids.add(cd.encAlg));
+            n++;
+          }
+        }));
+      }
+
+      int total = 0;
+      for (Future<Integer> future : futures) {
+        total += future.get(30, TimeUnit.SECONDS);
+      }
+      executor.shutdown();
+
+      Assert.assertEquals("number of taken keys", numKeys, total);
+      Assert.assertEquals("number of distinct keys", numKeys, ids.size());
+      Assert.assertTrue("keys are read in batches", source.getNumReads() < numKeys / 2);
+    }
+  } // method testConcurrentTake
+
+  private static KeypoolBuffer newBuffer(MockKeySource source, int prefetch) {
+    return new KeypoolBuffer(source, Collections.singletonMap(KEYSPEC, 1), prefetch, 0, null);
+  }
+
+  private static void waitFor(Callable<Boolean> condition) throws Exception {
+    long deadline = System.currentTimeMillis() + 10_000;
+    while (!condition.call()) {
+      if (System.currentTimeMillis() > deadline) {
+        Assert.fail("timeout while waiting for the condition");
+      }
+      Thread.sleep(10);
+    }
+  }
+
+}
@@ -22,13 +22,18 @@ import org.slf4j.LoggerFactory;
 import org.xipki.audit.AuditService;
 import org.xipki.audit.Audits;
 import org.xipki.ca.sdk.ErrorResponse;
+import org.xipki.ca.sdk.SdkConstants;
+import org.xipki.ca.sdk.SdkEncoding;
 import org.xipki.ca.sdk.SdkResponse;
+import org.xipki.ca.server.EncodedCrl;
 import org.xipki.ca.server.SdkResponder;
 import org.xipki.security.util.HttpRequestMetadataRetriever;
 import org.xipki.util.Args;
+import org.xipki.util.Base64;
 import org.xipki.util.HttpConstants;
 import org.xipki.util.IoUtil;
 import org.xipki.util.exception.ErrorCode;
+import org.xipki.util.exception.OperationException;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -47,6 +52,10 @@ public class HttpRaServlet extends HttpServlet {
 
   private static final Logger LOG = LoggerFactory.getLogger(HttpRaServlet.class);
 
+  private static final String CT_PKIX_CRL = "application/pkix-crl";
+
+  private static final String CRL_DER_SUFFIX = "/" + SdkConstants.CMD_crl_der;
+
   private boolean logReqResp;
 
   private SdkResponder responder;
@@ -77,51 +86,45 @@ public class HttpRaServlet extends HttpServlet {
     try {
       String path = (String) req.getAttribute(HttpConstants.ATTR_XIPKI_PATH);
       HttpRequestMetadataRetriever httpRetriever = new HttpRequestMetadataRetrieverImpl(req);
+      if (!viaPost && path.length() > CRL_DER_SUFFIX.length() + 1
+          && path.toLowerCase().endsWith(CRL_DER_SUFFIX)) {
+        // skip the first char ('/')
+        String caAlias = path.substring(1, path.length() - CRL_DER_SUFFIX.length());
+        if (caAlias.indexOf('/') == -1) {
+          serviceCrl(req, resp, caAlias, httpRetriever);
+          return;
+        }
+      }
+
       byte[] requestBytes = IoUtil.read(req.getInputStream());
 
-      SdkResponse response = responder.service(path, requestBytes, httpRetriever);
-      byte[] respBody = response == null ? null : response.encode();
+      // the request is encoded as indicated by the Content-Type, JSON if not specified.
+      SdkEncoding reqEncoding = SdkEncoding.ofContentType(req.getContentType());
+      if (reqEncoding == null || requestBytes.length == 0) {
+        reqEncoding = SdkEncoding.JSON;
+      }
+
+      // response in the encoding of the request, or as accepted by the client
+      SdkEncoding respEncoding = reqEncoding == SdkEncoding.CBOR ? reqEncoding
+          : SdkEncoding.ofAccept(req.getHeader("Accept"));
+
+      SdkResponse response = responder.service(path, requestBytes, reqEncoding, httpRetriever);
+      byte[] respBody = response == null ? null : response.encode(respEncoding);
       int httpStatus = HttpServletResponse.SC_OK;
       if (response instanceof ErrorResponse) {
-        ErrorCode errCode = ((ErrorResponse) response).getCode();
-        switch (errCode) {
-          case UNAUTHORIZED:
-          case NOT_PERMITTED:
-            httpStatus = HttpServletResponse.SC_UNAUTHORIZED;
-            break;
-          case BAD_CERT_TEMPLATE:
-          case BAD_POP:
-          case BAD_REQUEST:
-          case INVALID_EXTENSION:
-          case UNKNOWN_CERT_PROFILE:
-          case UNKNOWN_CERT:
-          case ALREADY_ISSUED:
-          case CERT_REVOKED:
-          case CERT_UNREVOKED:
-            httpStatus = HttpServletResponse.SC_BAD_REQUEST;
-            break;
-          case PATH_NOT_FOUND:
-            httpStatus = HttpServletResponse.SC_NOT_FOUND;
-            break;
-          case CRL_FAILURE:
-          case DATABASE_FAILURE:
-          case SYSTEM_FAILURE:
-          case SYSTEM_UNAVAILABLE:
-          default:
-            httpStatus = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
-            break;
-        }
+        httpStatus = toHttpStatus(((ErrorResponse) response).getCode());
       }
 
       resp.setStatus(httpStatus);
-      resp.setContentType("application/json");
+      resp.setContentType(respEncoding.getContentType());
 
       if (logReqResp && LOG.isDebugEnabled()) {
         if (viaPost) {
           LOG.debug("HTTP POST CA REST path: {}\nRequest:\n{}\nResponse:\n{}", req.getRequestURI(),
-              new String(requestBytes), new String(respBody));
+              toLogText(requestBytes, reqEncoding), toLogText(respBody, respEncoding));
         } else {
-          LOG.debug("HTTP GET CA REST path: {}\nResponse:\n{}", req.getRequestURI(), new String(respBody));
+          LOG.debug("HTTP GET CA REST path: {}\nResponse:\n{}", req.getRequestURI(),
+              toLogText(respBody, respEncoding));
         }
       }
 
@@ -137,4 +140,102 @@ public class HttpRaServlet extends HttpServlet {
     }
   } // method service0
 
+  private void serviceCrl(HttpServletRequest req, HttpServletResponse resp, String caAlias,
+      HttpRequestMetadataRetriever httpRetriever) throws IOException {
+    EncodedCrl crl;
+    try {
+      crl = responder.getCurrentCrl(caAlias, httpRetriever);
+    } catch (OperationException ex) {
+      LOG.warn("could not get CRL of CA {}: {}", caAlias, ex.getErrorMessage());
+      resp.sendError(toHttpStatus(ex.getErrorCode()));
+      return;
+    }
+
+    if (crl == null) {
+      resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    String etag = crl.getEtag();
+    // HTTP dates have the precision of seconds
+    long lastModified = crl.getThisUpdate().getTime() / 1000 * 1000;
+
+    resp.setHeader("ETag", etag);
+    resp.setDateHeader("Last-Modified", lastModified);
+    // the clients may cache the CRL, but must revalidate it
+    resp.setHeader("Cache-Control", "no-cache");
+
+    if (isNotModified(req, etag, lastModified)) {
+      resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    resp.setStatus(HttpServletResponse.SC_OK);
+    resp.setContentType(CT_PKIX_CRL);
+    resp.setContentLength(crl.getLength());
+    crl.writeTo(resp.getOutputStream());
+  } // method serviceCrl
+
+  private static boolean isNotModified(HttpServletRequest req, String etag, long lastModified) {
+    // If-None-Match takes precedence over If-Modified-Since (RFC 7232, section 6)
+    String ifNoneMatch = req.getHeader("If-None-Match");
+    if (ifNoneMatch != null) {
+      for (String tag : ifNoneMatch.split(",")) {
+        tag = tag.trim();
+        if (tag.startsWith("W/")) {
+          // weak comparison
+          tag = tag.substring(2);
+        }
+
+        if ("*".equals(tag) || etag.equals(tag)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    long ifModifiedSince;
+    try {
+      ifModifiedSince = req.getDateHeader("If-Modified-Since");
+    } catch (IllegalArgumentException ex) {
+      // invalid date, ignore the header
+      return false;
+    }
+
+    return ifModifiedSince != -1 && lastModified <= ifModifiedSince;
+  } // method isNotModified
+
+  private static String toLogText(byte[] bytes, SdkEncoding encoding) {
+    if (bytes == null) {
+      return "";
+    }
+    return encoding == SdkEncoding.CBOR ? "CBOR " + Base64.encodeToString(bytes) : new String(bytes);
+  }
+
+  private static int toHttpStatus(ErrorCode errCode) {
+    switch (errCode) {
+      case UNAUTHORIZED:
+      case NOT_PERMITTED:
+        return HttpServletResponse.SC_UNAUTHORIZED;
+      case BAD_CERT_TEMPLATE:
+      case BAD_POP:
+      case BAD_REQUEST:
+      case INVALID_EXTENSION:
+      case UNKNOWN_CERT_PROFILE:
+      case UNKNOWN_CERT:
+      case ALREADY_ISSUED:
+      case CERT_REVOKED:
+      case CERT_UNREVOKED:
+        return HttpServletResponse.SC_BAD_REQUEST;
+      case PATH_NOT_FOUND:
+        return HttpServletResponse.SC_NOT_FOUND;
+      case CRL_FAILURE:
+      case DATABASE_FAILURE:
+      case SYSTEM_FAILURE:
+      case SYSTEM_UNAVAILABLE:
+      default:
+        return HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+    }
+  } // method toHttpStatus
+
 }
@@ -537,6 +537,23 @@ public abstract class DataSourceWrapper implements Closeable {
 
   public abstract String buildSelectFirstSql(int rows, String orderBy, String coreSql);
 
+  /**
+   * Builds the SQL statement to select the rows whose column is one of {@code num} values.
+   * @param prefix the SQL statement without SELECT, ended by the column, e.g.
+   *        "ID,SN FROM CERT WHERE IID=? AND SN".
+   * @param num number of the values.
+   * @return the SQL statement, with {@code num} parameters in the IN list.
+   */
+  public String buildArraySql(String prefix, int num) {
+    StringBuilder sb = new StringBuilder(prefix.length() + num * 2 + 5);
+    sb.append(prefix).append(" IN (?");
+    for (int i = 1; i < num; i++) {
+      sb.append(",?");
+    }
+    sb.append(")");
+    return buildSelectFirstSql(num, sb.toString());
+  } // method buildArraySql
+
   public String getFirstStringValue(Connection conn, String table, String column, String criteria)
       throws DataAccessException {
     final String sql = "SELECT " + column + " FROM " + table + " WHERE " + criteria;
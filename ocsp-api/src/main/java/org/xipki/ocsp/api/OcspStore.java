@@ -24,8 +24,12 @@ import org.xipki.util.Validity;
 
 import java.io.Closeable;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import static org.xipki.util.Args.notBlank;
 
@@ -119,6 +123,87 @@ public abstract class OcspStore implements Closeable {
       return null;
     }
 
+    limitNextUpdate(time, info);
+    return info;
+  } // method getCertStatus
+
+  /**
+   * Return the status of several certificates issued by the same issuer.
+   *
+   * @param time
+   *          Time of the certificate status. Must not be {@code null}.
+   * @param reqIssuer
+   *          Requested issuer
+   * @param serialNumbers
+   *          Serial numbers of the target certificates. Must not be {@code null}.
+   * @param includeCertHash
+   *          Whether to include the hash of target certificate in the response.
+   * @param includeRit
+   *          Whether to include the revocation invalidity time in the response.
+   * @param inheritCaRevocation
+   *          Whether to inherit CA revocation
+   * @return the certificate statuses in the same order as the serialNumbers, or {@code null} if
+   *          the issuer is unknown.
+   * @throws OcspStoreException
+   *           If OCSP store failed to retrieve the status.
+   */
+  public final List<CertStatusInfo> getCertStatuses(
+      Date time, RequestIssuer reqIssuer, List<BigInteger> serialNumbers, boolean includeCertHash,
+      boolean includeRit, boolean inheritCaRevocation)
+      throws OcspStoreException {
+    List<CertStatusInfo> infos = getCertStatuses0(time, reqIssuer, serialNumbers,
+        includeCertHash, includeRit, inheritCaRevocation);
+
+    if (infos == null) {
+      return null;
+    }
+
+    for (CertStatusInfo info : infos) {
+      limitNextUpdate(time, info);
+    }
+    return infos;
+  } // method getCertStatuses
+
+  /**
+   * Return the status of several certificates issued by the same issuer. The default
+   * implementation calls {@link #getCertStatus0(Date, RequestIssuer, BigInteger, boolean, boolean, boolean)}
+   * for each serial number, stores capable of retrieving multiple statuses in one query shall
+   * overwrite it.
+   *
+   * @param time
+   *          Time of the certificate status. Must not be {@code null}.
+   * @param reqIssuer
+   *          Requested issuer
+   * @param serialNumbers
+   *          Serial numbers of the target certificates. Must not be {@code null}.
+   * @param includeCertHash
+   *          Whether to include the hash of target certificate in the response.
+   * @param includeRit
+   *          Whether to include the revocation invalidity time in the response.
+   * @param inheritCaRevocation
+   *          Whether to inherit CA revocation
+   * @return the certificate statuses in the same order as the serialNumbers, or {@code null} if
+   *          the issuer is unknown.
+   * @throws OcspStoreException
+   *           If OCSP store failed to retrieve the status.
+   */
+  protected List<CertStatusInfo> getCertStatuses0(
+      Date time, RequestIssuer reqIssuer, List<BigInteger> serialNumbers,
+      boolean includeCertHash, boolean includeRit, boolean inheritCaRevocation)
+      throws OcspStoreException {
+    List<CertStatusInfo> infos = new ArrayList<>(serialNumbers.size());
+    for (BigInteger serialNumber : serialNumbers) {
+      CertStatusInfo info = getCertStatus0(time, reqIssuer, serialNumber,
+          includeCertHash, includeRit, inheritCaRevocation);
+      if (info == null) {
+        return null;
+      }
+      infos.add(info);
+    }
+    return infos;
+  } // method getCertStatuses0
+
+  private void limitNextUpdate(Date time, CertStatusInfo info) {
     Date nextUpdate = info.getNextUpdate();
 
     if (minNextUpdatePeriod != null) {
@@ -134,9 +219,7 @@ public abstract class OcspStore implements Closeable {
         info.setNextUpdate(maxNextUpdate);
       }
     }
-
-    return info;
-  } // method getCertStatus
+  } // method limitNextUpdate
 
   /**
    * Return the certificate status.
@@ -177,6 +260,36 @@ public abstract class OcspStore implements Closeable {
 
   public abstract boolean isHealthy();
 
+  /**
+   * Returns the certificates of all issuers known by this store. Used to pre-sign the responses.
+   * The default implementation returns an empty list.
+   *
+   * @return the issuer certificates, empty if this store cannot enumerate its issuers.
+   */
+  public List<X509Cert> getIssuerCerts() {
+    return Collections.emptyList();
+  }
+
+  /**
+   * Lists the serial numbers of the certificates issued by the given issuer. Used to pre-sign the
+   * responses. The default implementation does not support the listing and returns {@code false}.
+   *
+   * @param reqIssuer
+   *          Requested issuer
+   * @param sinceInSec
+   *          Only the certificates whose status has been changed at or after this time (in seconds
+   *          since January 1, 1970, 00:00:00 GMT) are listed. Use 0 to list all certificates.
+   * @param consumer
+   *          Consumer of the serial numbers.
+   * @return whether this store supports the listing.
+   * @throws OcspStoreException
+   *           If OCSP store failed to list the serial numbers.
+   */
+  public boolean listSerialNumbers(RequestIssuer reqIssuer, long sinceInSec, Consumer<BigInteger> consumer)
+      throws OcspStoreException {
+    return false;
+  }
+
   public void setName(String name) {
     this.name = notBlank(name, "name");
   }
@@ -44,6 +44,9 @@ public class RequestIssuer {
 
   private final int length;
 
+  // lazily computed hash code, 0 if not computed yet.
+  private int hashCode;
+
   public RequestIssuer(HashAlgo hashAlgo, byte[] hashData) {
     int algIdLen = 2 + hashAlgo.getEncodedLength() + 2;
     data = new byte[algIdLen + hashData.length];
@@ -120,8 +123,16 @@ public class RequestIssuer {
 
   @Override
   public int hashCode() {
-    return toString().hashCode();
-  }
+    int h = hashCode;
+    if (h == 0) {
+      h = 1;
+      for (int i = from; i < from + length; i++) {
+        h = 31 * h + data[i];
+      }
+      hashCode = h;
+    }
+    return h;
+  } // method hashCode
 
   @Override
   public boolean equals(Object obj) {
@@ -0,0 +1,168 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.benchmark;
+
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.ocsp.CertID;
+import org.bouncycastle.asn1.ocsp.OCSPRequest;
+import org.bouncycastle.asn1.ocsp.Request;
+import org.bouncycastle.asn1.ocsp.TBSRequest;
+import org.bouncycastle.asn1.sec.SECObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.xipki.ocsp.server.store.IssuerEntry;
+import org.xipki.security.ConcurrentContentSigner;
+import org.xipki.security.EdECConstants;
+import org.xipki.security.HashAlgo;
+import org.xipki.security.Providers;
+import org.xipki.security.SignAlgo;
+import org.xipki.security.X509Cert;
+import org.xipki.security.pkcs12.P12ContentSignerBuilder;
+import org.xipki.security.util.KeyUtil;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Software key with self-signed certificate generated on the fly, so that the benchmarks
+ * run offline without any keystore.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+public class BenchmarkIdentity {
+
+  public enum KeyType {
+    RSA(SignAlgo.RSA_SHA256),
+    EC(SignAlgo.ECDSA_SHA256),
+    ED25519(SignAlgo.ED25519);
+
+    private final SignAlgo signAlgo;
+
+    KeyType(SignAlgo signAlgo) {
+      this.signAlgo = signAlgo;
+    }
+
+    public SignAlgo getSignAlgo() {
+      return signAlgo;
+    }
+
+  } // class KeyType
+
+  private static final SecureRandom RANDOM = new SecureRandom();
+
+  static {
+    new Providers().init();
+  }
+
+  private final ConcurrentContentSigner signer;
+
+  private final X509Cert cert;
+
+  private final byte[] issuerHash;
+
+  /**
+   * Generates the key and certificate.
+   * @param keyType the key type.
+   * @param parallelism number of signers in the pool of the {@link ConcurrentContentSigner}.
+   * @throws Exception if the key or certificate could not be generated.
+   */
+  public BenchmarkIdentity(KeyType keyType, int parallelism) throws Exception {
+    KeyPair keypair;
+    switch (keyType) {
+      case RSA:
+        keypair = KeyUtil.generateRSAKeypair(2048, null, RANDOM);
+        break;
+      case EC:
+        keypair = KeyUtil.generateECKeypair(SECObjectIdentifiers.secp256r1, RANDOM);
+        break;
+      case ED25519:
+        keypair = KeyUtil.generateEdECKeypair(EdECConstants.id_ED25519, RANDOM);
+        break;
+      default:
+        throw new IllegalStateException("unknown KeyType " + keyType);
+    }
+
+    P12ContentSignerBuilder signerBuilder = new P12ContentSignerBuilder(keypair.getPrivate(), keypair.getPublic());
+
+    X500Name subject = new X500Name("CN=benchmark " + keyType.name() + ",O=xipki");
+    Date notBefore = new Date(System.currentTimeMillis() - 60_000L);
+    Date notAfter = new Date(notBefore.getTime() + 365L * 24 * 3600 * 1000);
+    X509v3CertificateBuilder certBuilder = new X509v3CertificateBuilder(subject, BigInteger.ONE,
+        notBefore, notAfter, subject, SubjectPublicKeyInfo.getInstance(keypair.getPublic().getEncoded()));
+    this.cert = new X509Cert(certBuilder.build(signerBuilder.createContentSigner(keyType.getSignAlgo(), RANDOM)));
+
+    this.signer = signerBuilder.createSigner(keyType.getSignAlgo(), parallelism, RANDOM);
+    this.signer.setCertificateChain(new X509Cert[]{cert});
+    this.issuerHash = new IssuerEntry(0, cert).getEncodedHash(HashAlgo.SHA1);
+  } // constructor
+
+  public ConcurrentContentSigner getSigner() {
+    return signer;
+  }
+
+  public X509Cert getCert() {
+    return cert;
+  }
+
+  /**
+   * Returns the SHA-1 issuerNameHash and issuerKeyHash, both encoded as OCTET STRING.
+   * @return the encoded issuer hash.
+   */
+  public byte[] getIssuerHash() {
+    return issuerHash;
+  }
+
+  /**
+   * Builds an unsigned OCSP request for certificates issued by this identity.
+   * @param numCertIds number of CertIDs in the request.
+   * @return the DER-encoded OCSP request.
+   * @throws IOException if the request could not be encoded.
+   */
+  public byte[] buildRequest(int numCertIds) throws IOException {
+    // issuerHash: OCTET STRING of issuerNameHash followed by OCTET STRING of issuerKeyHash
+    int hlen = HashAlgo.SHA1.getLength();
+    AlgorithmIdentifier hashAlgId = new AlgorithmIdentifier(HashAlgo.SHA1.getOid(), DERNull.INSTANCE);
+    DEROctetString nameHash = new DEROctetString(Arrays.copyOfRange(issuerHash, 2, 2 + hlen));
+    DEROctetString keyHash = new DEROctetString(Arrays.copyOfRange(issuerHash, 4 + hlen, 4 + 2 * hlen));
+
+    ASN1EncodableVector requests = new ASN1EncodableVector(numCertIds);
+    for (int i = 0; i < numCertIds; i++) {
+      // 16-byte serial numbers, as generated by the CA
+      BigInteger serialNumber = new BigInteger(127, RANDOM).setBit(126);
+      CertID certId = new CertID(hashAlgId, nameHash, keyHash, new ASN1Integer(serialNumber));
+      requests.add(new Request(certId, null));
+    }
+
+    TBSRequest tbsRequest = new TBSRequest(null, new DERSequence(requests), (Extensions) null);
+    return new OCSPRequest(tbsRequest, null).getEncoded();
+  } // method buildRequest
+
+}
@@ -0,0 +1,61 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.xipki.ocsp.server.type.EncodingException;
+import org.xipki.ocsp.server.type.OcspRequest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the parsing of OCSP requests by {@link OcspRequest}.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OcspRequestBenchmark {
+
+  @Param({"1", "10", "100"})
+  private int numCertIds;
+
+  private byte[] request;
+
+  @Setup
+  public void setup() throws Exception {
+    request = new BenchmarkIdentity(BenchmarkIdentity.KeyType.EC, 1).buildRequest(numCertIds);
+  }
+
+  @Benchmark
+  public OcspRequest parseRequest() throws EncodingException {
+    return OcspRequest.getInstance(request);
+  }
+
+  @Benchmark
+  public int readRequestVersion() throws EncodingException {
+    return OcspRequest.readRequestVersion(request);
+  }
+
+}
@@ -0,0 +1,119 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.xipki.ocsp.server.OCSPRespBuilder;
+import org.xipki.ocsp.server.type.*;
+import org.xipki.security.ConcurrentContentSigner;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the building of OCSP responses by {@link ResponseData} and
+ * {@link OCSPRespBuilder}. The signing is done with an EC key, see {@link SignerBenchmark}
+ * for the comparison of the key types.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OcspResponseBenchmark {
+
+  static final byte[] CERTSTATUS_GOOD = new byte[]{(byte) 0x80, 0x00};
+
+  @Param({"1", "10", "100"})
+  private int numCertIds;
+
+  private List<CertID> certIds;
+
+  private ResponderID responderId;
+
+  private ConcurrentContentSigner signer;
+
+  private TaggedCertSequence certsInResp;
+
+  private Date thisUpdate;
+
+  private Date nextUpdate;
+
+  @Setup
+  public void setup() throws Exception {
+    BenchmarkIdentity identity = new BenchmarkIdentity(BenchmarkIdentity.KeyType.EC,
+        Runtime.getRuntime().availableProcessors());
+    signer = identity.getSigner();
+    certIds = OcspRequest.getInstance(identity.buildRequest(numCertIds)).getRequestList();
+    responderId = newResponderId(identity);
+    certsInResp = new TaggedCertSequence(identity.getCert().getEncoded());
+    thisUpdate = new Date();
+    nextUpdate = new Date(thisUpdate.getTime() + 24L * 3600 * 1000);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    signer.close();
+  }
+
+  @Benchmark
+  public byte[] encodeResponseData() {
+    List<SingleResponse> responses = new ArrayList<>(certIds.size());
+    for (CertID certId : certIds) {
+      responses.add(new SingleResponse(certId, CERTSTATUS_GOOD, thisUpdate, nextUpdate, null));
+    }
+
+    ResponseData responseData = new ResponseData(0, responderId, thisUpdate, responses, null);
+    byte[] encoded = new byte[responseData.getEncodedLength()];
+    responseData.write(encoded, 0);
+    return encoded;
+  }
+
+  @Benchmark
+  public byte[] buildResponse() throws Exception {
+    return buildResponse(null);
+  }
+
+  @Benchmark
+  public byte[] buildResponseWithCerts() throws Exception {
+    return buildResponse(certsInResp);
+  }
+
+  private byte[] buildResponse(TaggedCertSequence certs) throws Exception {
+    OCSPRespBuilder builder = new OCSPRespBuilder(responderId);
+    for (CertID certId : certIds) {
+      builder.addResponse(certId, CERTSTATUS_GOOD, thisUpdate, nextUpdate, null);
+    }
+    return builder.buildOCSPResponse(signer, certs, thisUpdate);
+  }
+
+  static ResponderID newResponderId(BenchmarkIdentity identity) throws Exception {
+    byte[] encodedKey = identity.getCert().getSubjectPublicKeyInfo().getPublicKeyData().getBytes();
+    return new ResponderID(MessageDigest.getInstance("SHA-1").digest(encodedKey));
+  }
+
+}
@@ -0,0 +1,79 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.xipki.ocsp.server.OCSPRespBuilder;
+import org.xipki.ocsp.server.type.CertID;
+import org.xipki.ocsp.server.type.OcspRequest;
+import org.xipki.ocsp.server.type.ResponderID;
+import org.xipki.security.ConcurrentContentSigner;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the signing of OCSP responses with one CertID through the
+ * {@link org.xipki.security.DfltConcurrentContentSigner} with software keys.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SignerBenchmark {
+
+  @Param({"RSA", "EC", "ED25519"})
+  private BenchmarkIdentity.KeyType keyType;
+
+  private CertID certId;
+
+  private ResponderID responderId;
+
+  private ConcurrentContentSigner signer;
+
+  private Date thisUpdate;
+
+  @Setup
+  public void setup() throws Exception {
+    BenchmarkIdentity identity = new BenchmarkIdentity(keyType, Runtime.getRuntime().availableProcessors());
+    signer = identity.getSigner();
+    certId = OcspRequest.getInstance(identity.buildRequest(1)).getRequestList().get(0);
+    responderId = OcspResponseBenchmark.newResponderId(identity);
+    thisUpdate = new Date();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    signer.close();
+  }
+
+  @Benchmark
+  public byte[] signResponse() throws Exception {
+    OCSPRespBuilder builder = new OCSPRespBuilder(responderId);
+    builder.addResponse(certId, OcspResponseBenchmark.CERTSTATUS_GOOD, thisUpdate, null, null);
+    return builder.buildOCSPResponse(signer, null, thisUpdate);
+  }
+
+}
@@ -0,0 +1,60 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server;
+
+import org.openjdk.jmh.annotations.*;
+import org.xipki.ocsp.server.type.WritableOnlyExtension;
+import org.xipki.security.CrlReason;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the {@link Template} encoding of revoked info. Placed in the package of
+ * {@link Template}, since the latter is package-private.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TemplateBenchmark {
+
+  private final Date revocationTime = new Date();
+
+  @Benchmark
+  public byte[] encodeRevokedInfo() {
+    return Template.getEncodeRevokedInfo(CrlReason.KEY_COMPROMISE, revocationTime);
+  }
+
+  @Benchmark
+  public byte[] encodeRevokedInfoWithoutReason() {
+    return Template.getEncodeRevokedInfo(null, revocationTime);
+  }
+
+  @Benchmark
+  public WritableOnlyExtension encodeInvalidityDate() {
+    return Template.getInvalidityDateExtension(revocationTime);
+  }
+
+}
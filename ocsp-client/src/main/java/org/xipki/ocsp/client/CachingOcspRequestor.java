@@ -0,0 +1,612 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.client;
+
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ocsp.ResponderID;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.SingleResp;
+import org.bouncycastle.operator.ContentVerifierProvider;
+import org.bouncycastle.operator.DigestCalculatorProvider;
+import org.bouncycastle.operator.bc.BcDigestCalculatorProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.security.HashAlgo;
+import org.xipki.security.SecurityFactory;
+import org.xipki.security.X509Cert;
+import org.xipki.util.LogUtil;
+import org.xipki.util.LruCache;
+import org.xipki.util.ReqRespDebug;
+
+import java.io.Closeable;
+import java.math.BigInteger;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.xipki.util.Args.notNull;
+import static org.xipki.util.Args.positive;
+
+/**
+ * OCSP requestor which caches the verified responses until their nextUpdate.
+ *
+ * <p>The responses are cached per (responder URL, hash algorithm of the CertID, issuer, serial number)
+ * in an LRU cache, a response is therefore only returned for requests with the same hash algorithm.
+ * Concurrent identical requests are sent only once to the responder. The method
+ * {@link #getSingleResponses(X509Cert, BigInteger[], URL, RequestOptions)} requests only the
+ * serial numbers not cached, with one request for up to {@code maxSerialsPerRequest} serial
+ * numbers. Optionally the responses are requested again in the background shortly before
+ * their nextUpdate.
+ *
+ * <p>Only successful responses with valid signature and nextUpdate are cached, and only the single
+ * responses whose CertID matches the issuer of the request. A cached response
+ * does not match a new nonce, requests with nonce are therefore always sent to the responder.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+public class CachingOcspRequestor implements OcspRequestor, Closeable {
+
+  /**
+   * Verifies the response before it is cached, or its single responses are returned.
+   */
+  public interface ResponseVerifier {
+
+    /**
+     * Verifies the response.
+     * @param issuerCert the issuer of the requested certificates.
+     * @param response the response.
+     * @return whether the response is trusted.
+     */
+    boolean verify(X509Cert issuerCert, BasicOCSPResp response);
+
+  } // interface ResponseVerifier
+
+  private static class Entry {
+
+    private final OCSPResp response;
+
+    private final SingleResp singleResponse;
+
+    private final int numSingleResponses;
+
+    private final long nextUpdate;
+
+    private final AtomicBoolean prefetchScheduled = new AtomicBoolean(false);
+
+    Entry(OCSPResp response, SingleResp singleResponse, int numSingleResponses, long nextUpdate) {
+      this.response = response;
+      this.singleResponse = singleResponse;
+      this.numSingleResponses = numSingleResponses;
+      this.nextUpdate = nextUpdate;
+    }
+
+  } // class Entry
+
+  private static final Logger LOG = LoggerFactory.getLogger(CachingOcspRequestor.class);
+
+  private static final DigestCalculatorProvider DIGEST_CALCULATOR_PROVIDER = new BcDigestCalculatorProvider();
+
+  private final OcspRequestor requestor;
+
+  private final SecurityFactory securityFactory;
+
+  private final LruCache<String, Entry> cache;
+
+  private final ConcurrentHashMap<String, CompletableFuture<OCSPResp>> inFlight = new ConcurrentHashMap<>();
+
+  private final LongAdder hits = new LongAdder();
+
+  private final LongAdder misses = new LongAdder();
+
+  private final LongAdder coalesced = new LongAdder();
+
+  private final LongAdder prefetches = new LongAdder();
+
+  private ResponseVerifier responseVerifier;
+
+  private int maxSerialsPerRequest = 50;
+
+  private long prefetchBeforeMs;
+
+  private ScheduledExecutorService prefetcher;
+
+  /**
+   * Constructor.
+   * @param requestor the requestor which sends the requests. Must not be {@code null}.
+   * @param securityFactory the security factory to verify the signature of the responses.
+   *          Must not be {@code null}.
+   * @param maxSize maximal number of cached single responses.
+   */
+  public CachingOcspRequestor(OcspRequestor requestor, SecurityFactory securityFactory, int maxSize) {
+    this.requestor = notNull(requestor, "requestor");
+    this.securityFactory = notNull(securityFactory, "securityFactory");
+    this.cache = new LruCache<>(positive(maxSize, "maxSize"));
+    this.responseVerifier = this::verifySignature;
+  }
+
+  /**
+   * Sets the verifier of the responses. The default verifier accepts responses signed by the
+   * issuer, or by an OCSP signer issued by the issuer.
+   * @param responseVerifier the verifier. Must not be {@code null}.
+   */
+  public void setResponseVerifier(ResponseVerifier responseVerifier) {
+    this.responseVerifier = notNull(responseVerifier, "responseVerifier");
+  }
+
+  public void setMaxSerialsPerRequest(int maxSerialsPerRequest) {
+    this.maxSerialsPerRequest = positive(maxSerialsPerRequest, "maxSerialsPerRequest");
+  }
+
+  /**
+   * Sets the time before the nextUpdate, from when on a requested response is requested again
+   * in the background.
+   * @param prefetchBeforeSeconds the time in seconds, 0 to disable the prefetch.
+   */
+  public synchronized void setPrefetchBefore(int prefetchBeforeSeconds) {
+    this.prefetchBeforeMs = prefetchBeforeSeconds * 1000L;
+    if (prefetchBeforeMs > 0 && prefetcher == null) {
+      prefetcher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ocsp-prefetch");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  } // method setPrefetchBefore
+
+  @Override
+  public OCSPResp ask(X509Cert issuerCert, X509Cert cert, URL responderUrl,
+                      RequestOptions requestOptions, ReqRespDebug debug)
+      throws OcspResponseException, OcspRequestorException {
+    notNull(cert, "cert");
+    return ask(issuerCert, new BigInteger[]{cert.getSerialNumber()}, responderUrl, requestOptions, debug);
+  }
+
+  @Override
+  public OCSPResp ask(X509Cert issuerCert, X509Cert[] certs, URL responderUrl,
+                      RequestOptions requestOptions, ReqRespDebug debug)
+      throws OcspResponseException, OcspRequestorException {
+    notNull(certs, "certs");
+    BigInteger[] serialNumbers = new BigInteger[certs.length];
+    for (int i = 0; i < certs.length; i++) {
+      serialNumbers[i] = certs[i].getSerialNumber();
+    }
+    return ask(issuerCert, serialNumbers, responderUrl, requestOptions, debug);
+  }
+
+  @Override
+  public OCSPResp ask(X509Cert issuerCert, BigInteger serialNumber, URL responderUrl,
+                      RequestOptions requestOptions, ReqRespDebug debug)
+      throws OcspResponseException, OcspRequestorException {
+    return ask(issuerCert, new BigInteger[]{serialNumber}, responderUrl, requestOptions, debug);
+  }
+
+  /**
+   * Returns the cached response if it contains exactly the requested serial numbers, otherwise
+   * the response is requested from the responder.
+   */
+  @Override
+  public OCSPResp ask(X509Cert issuerCert, BigInteger[] serialNumbers, URL responderUrl,
+                      RequestOptions requestOptions, ReqRespDebug debug)
+      throws OcspResponseException, OcspRequestorException {
+    notNull(issuerCert, "issuerCert");
+    notNull(serialNumbers, "serialNumbers");
+    notNull(responderUrl, "responderUrl");
+    notNull(requestOptions, "requestOptions");
+
+    if (!requestOptions.isUseNonce() && debug == null) {
+      String keyPrefix = keyPrefix(issuerCert, responderUrl, requestOptions.getHashAlgorithm().getOid());
+      OCSPResp cachedResp = null;
+      Set<BigInteger> distinctSerials = new HashSet<>(Arrays.asList(serialNumbers));
+      for (BigInteger serialNumber : distinctSerials) {
+        Entry entry = getFreshEntry(keyPrefix + serialNumber.toString(16));
+        if (entry == null || entry.numSingleResponses != distinctSerials.size()
+            || (cachedResp != null && cachedResp != entry.response)) {
+          cachedResp = null;
+          break;
+        }
+        cachedResp = entry.response;
+      }
+
+      if (cachedResp != null) {
+        hits.increment();
+        for (BigInteger serialNumber : distinctSerials) {
+          schedulePrefetch(issuerCert, serialNumber, responderUrl, requestOptions);
+        }
+        return cachedResp;
+      }
+      misses.increment();
+    }
+
+    return fetch(issuerCert, serialNumbers, responderUrl, requestOptions, debug);
+  } // method ask
+
+  /**
+   * Gets the status of the given certificate.
+   * @param issuerCert Issuer certificate. Must not be {@code null}.
+   * @param serialNumber Serial number of the target certificate. Must not be {@code null}.
+   * @param responderUrl Responder URL. Must not be {@code null}.
+   * @param requestOptions Request options. Must not be {@code null}.
+   * @return the single response of the given certificate.
+   * @throws OcspRequestorException if cannot build the OCSP request.
+   * @throws OcspResponseException if the OCSP responder cannot be reached, or the response is
+   *         not successful, or could not be verified, or does not match the requested certificate.
+   */
+  public SingleResp getSingleResponse(X509Cert issuerCert, BigInteger serialNumber, URL responderUrl,
+      RequestOptions requestOptions) throws OcspResponseException, OcspRequestorException {
+    notNull(serialNumber, "serialNumber");
+    return getSingleResponses(issuerCert, new BigInteger[]{serialNumber}, responderUrl, requestOptions)
+        .get(serialNumber);
+  }
+
+  /**
+   * Gets the status of the given certificates. The cached responses are used, the other
+   * certificates are requested with one request for up to {@code maxSerialsPerRequest}
+   * serial numbers.
+   * @param issuerCert Issuer certificate. Must not be {@code null}.
+   * @param serialNumbers Serial numbers of the target certificates. Must not be {@code null}.
+   * @param responderUrl Responder URL. Must not be {@code null}.
+   * @param requestOptions Request options. Must not be {@code null}.
+   * @return the single responses of the given certificates.
+   * @throws OcspRequestorException if cannot build the OCSP request.
+   * @throws OcspResponseException if the OCSP responder cannot be reached, or the response is
+   *         not successful, or could not be verified, or does not match the requested certificates.
+   */
+  public Map<BigInteger, SingleResp> getSingleResponses(X509Cert issuerCert, BigInteger[] serialNumbers,
+      URL responderUrl, RequestOptions requestOptions) throws OcspResponseException, OcspRequestorException {
+    notNull(issuerCert, "issuerCert");
+    notNull(serialNumbers, "serialNumbers");
+    notNull(responderUrl, "responderUrl");
+    notNull(requestOptions, "requestOptions");
+
+    Map<BigInteger, SingleResp> result = new HashMap<>();
+    List<BigInteger> missing = new ArrayList<>();
+
+    String keyPrefix = keyPrefix(issuerCert, responderUrl, requestOptions.getHashAlgorithm().getOid());
+    for (BigInteger serialNumber : new LinkedHashSet<>(Arrays.asList(serialNumbers))) {
+      Entry entry = requestOptions.isUseNonce() ? null : getFreshEntry(keyPrefix + serialNumber.toString(16));
+      if (entry == null) {
+        misses.increment();
+        missing.add(serialNumber);
+      } else {
+        hits.increment();
+        result.put(serialNumber, entry.singleResponse);
+        schedulePrefetch(issuerCert, serialNumber, responderUrl, requestOptions);
+      }
+    }
+
+    for (int from = 0; from < missing.size(); from += maxSerialsPerRequest) {
+      BigInteger[] group = missing.subList(from, Math.min(missing.size(), from + maxSerialsPerRequest))
+          .toArray(new BigInteger[0]);
+      OCSPResp resp = fetch(issuerCert, group, responderUrl, requestOptions, null);
+      result.putAll(getMatchingSingleResponses(resp, issuerCert, group, requestOptions.getHashAlgorithm()));
+    }
+
+    return result;
+  } // method getSingleResponses
+
+  /**
+   * Removes all cached responses.
+   */
+  public void clear() {
+    cache.evictAll();
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public long getCoalesced() {
+    return coalesced.sum();
+  }
+
+  public long getPrefetches() {
+    return prefetches.sum();
+  }
+
+  @Override
+  public String toString() {
+    long h = hits.sum();
+    long m = misses.sum();
+    return String.format("CachingOcspRequestor[size=%d,hits=%d,misses=%d,hitRate=%d%%,coalesced=%d,prefetches=%d]",
+        cache.size(), h, m, (h + m) == 0 ? 0 : h * 100 / (h + m), coalesced.sum(), prefetches.sum());
+  }
+
+  @Override
+  public synchronized void close() {
+    if (prefetcher != null) {
+      prefetcher.shutdownNow();
+      prefetcher = null;
+    }
+  }
+
+  private OCSPResp fetch(X509Cert issuerCert, BigInteger[] serialNumbers, URL responderUrl,
+      RequestOptions requestOptions, ReqRespDebug debug) throws OcspResponseException, OcspRequestorException {
+    if (requestOptions.isUseNonce() || debug != null) {
+      // the request is unique
+      OCSPResp resp = requestor.ask(issuerCert, serialNumbers, responderUrl, requestOptions, debug);
+      store(issuerCert, responderUrl, resp);
+      return resp;
+    }
+
+    BigInteger[] sortedSerials = serialNumbers.clone();
+    Arrays.sort(sortedSerials);
+    StringBuilder sb = new StringBuilder(
+        keyPrefix(issuerCert, responderUrl, requestOptions.getHashAlgorithm().getOid()));
+    for (BigInteger serialNumber : sortedSerials) {
+      sb.append(serialNumber.toString(16)).append(",");
+    }
+    String requestKey = sb.toString();
+
+    CompletableFuture<OCSPResp> future = new CompletableFuture<>();
+    CompletableFuture<OCSPResp> existingFuture = inFlight.putIfAbsent(requestKey, future);
+    if (existingFuture != null) {
+      // the same request is being sent by another thread
+      coalesced.increment();
+      return await(existingFuture);
+    }
+
+    try {
+      OCSPResp resp = requestor.ask(issuerCert, serialNumbers, responderUrl, requestOptions, null);
+      store(issuerCert, responderUrl, resp);
+      future.complete(resp);
+      return resp;
+    } catch (OcspResponseException | OcspRequestorException | RuntimeException ex) {
+      future.completeExceptionally(ex);
+      throw ex;
+    } finally {
+      inFlight.remove(requestKey, future);
+    }
+  } // method fetch
+
+  private static OCSPResp await(CompletableFuture<OCSPResp> future)
+      throws OcspResponseException, OcspRequestorException {
+    try {
+      return future.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new OcspResponseException.ResponderUnreachable("interrupted while waiting for the response", ex);
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof OcspResponseException) {
+        throw (OcspResponseException) cause;
+      } else if (cause instanceof OcspRequestorException) {
+        throw (OcspRequestorException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else {
+        throw new OcspRequestorException(cause.getMessage(), cause);
+      }
+    }
+  } // method await
+
+  private void store(X509Cert issuerCert, URL responderUrl, OCSPResp resp) {
+    BasicOCSPResp basicResp;
+    try {
+      if (resp.getStatus() != OCSPResp.SUCCESSFUL || !(resp.getResponseObject() instanceof BasicOCSPResp)) {
+        return;
+      }
+      basicResp = (BasicOCSPResp) resp.getResponseObject();
+    } catch (OCSPException ex) {
+      return;
+    }
+
+    if (!responseVerifier.verify(issuerCert, basicResp)) {
+      LOG.warn("response from {} could not be verified, it will not be cached", responderUrl);
+      return;
+    }
+
+    SingleResp[] singleResponses = basicResp.getResponses();
+    long now = System.currentTimeMillis();
+    for (SingleResp singleResp : singleResponses) {
+      Date nextUpdate = singleResp.getNextUpdate();
+      if (nextUpdate == null || nextUpdate.getTime() <= now) {
+        // no newer information is available at any time
+        continue;
+      }
+
+      CertificateID certId = singleResp.getCertID();
+      if (!matchesIssuer(certId, issuerCert)) {
+        LOG.warn("CertID of the single response from {} does not match the issuer, it will not be cached",
+            responderUrl);
+        continue;
+      }
+
+      String key = keyPrefix(issuerCert, responderUrl, certId.getHashAlgOID()) + certId.getSerialNumber().toString(16);
+      cache.put(key, new Entry(resp, singleResp, singleResponses.length, nextUpdate.getTime()));
+    }
+  } // method store
+
+  private Entry getFreshEntry(String key) {
+    Entry entry = cache.get(key);
+    if (entry == null) {
+      return null;
+    } else if (entry.nextUpdate <= System.currentTimeMillis()) {
+      cache.remove(key);
+      return null;
+    } else {
+      return entry;
+    }
+  } // method getFreshEntry
+
+  private void schedulePrefetch(X509Cert issuerCert, BigInteger serialNumber, URL responderUrl,
+      RequestOptions requestOptions) {
+    ScheduledExecutorService executor;
+    synchronized (this) {
+      executor = prefetcher;
+    }
+
+    if (executor == null) {
+      return;
+    }
+
+    Entry entry = cache.get(keyPrefix(issuerCert, responderUrl, requestOptions.getHashAlgorithm().getOid())
+        + serialNumber.toString(16));
+    if (entry == null || entry.nextUpdate - System.currentTimeMillis() > prefetchBeforeMs
+        || !entry.prefetchScheduled.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+      executor.execute(() -> {
+        try {
+          prefetches.increment();
+          fetch(issuerCert, new BigInteger[]{serialNumber}, responderUrl, requestOptions, null);
+        } catch (Exception ex) {
+          // the entry will be requested again by the next caller after the nextUpdate
+          LogUtil.warn(LOG, ex, "could not prefetch OCSP response from " + responderUrl);
+        }
+      });
+    } catch (RejectedExecutionException ex) {
+      // closed
+    }
+  } // method schedulePrefetch
+
+  /**
+   * Returns the single responses of the requested serial numbers.
+   * @throws OcspResponseException if the response is not successful, or could not be verified, or contains
+   *         a single response of another certificate, or does not contain a single response for each
+   *         requested serial number.
+   */
+  private Map<BigInteger, SingleResp> getMatchingSingleResponses(
+      OCSPResp resp, X509Cert issuerCert, BigInteger[] serialNumbers, HashAlgo hashAlgo)
+      throws OcspResponseException {
+    if (resp.getStatus() != OCSPResp.SUCCESSFUL) {
+      throw new OcspResponseException.InvalidResponse("response status is " + resp.getStatus());
+    }
+
+    Object respObject;
+    try {
+      respObject = resp.getResponseObject();
+    } catch (OCSPException ex) {
+      throw new OcspResponseException.InvalidResponse("responseObject is invalid", ex);
+    }
+
+    if (!(respObject instanceof BasicOCSPResp)) {
+      throw new OcspResponseException.InvalidResponse("response is not a BasicOCSPResponse");
+    }
+
+    // the caller gets only the single responses and cannot verify the response itself
+    if (!responseVerifier.verify(issuerCert, (BasicOCSPResp) respObject)) {
+      throw new OcspResponseException.InvalidResponse("response could not be verified");
+    }
+
+    Set<BigInteger> requestedSerials = new HashSet<>(Arrays.asList(serialNumbers));
+    Map<BigInteger, SingleResp> result = new HashMap<>();
+    for (SingleResp singleResp : ((BasicOCSPResp) respObject).getResponses()) {
+      CertificateID certId = singleResp.getCertID();
+      if (!hashAlgo.getOid().equals(certId.getHashAlgOID()) || !matchesIssuer(certId, issuerCert)) {
+        throw new OcspResponseException.OcspTargetUnmatched("the issuer of a singleResponse is not requested");
+      }
+
+      BigInteger serialNumber = certId.getSerialNumber();
+      if (!requestedSerials.contains(serialNumber)) {
+        throw new OcspResponseException.OcspTargetUnmatched(
+            "serialNumber " + LogUtil.formatCsn(serialNumber) + " is not requested");
+      }
+      result.put(serialNumber, singleResp);
+    }
+
+    if (result.size() != requestedSerials.size()) {
+      throw new OcspResponseException.OcspTargetUnmatched("response contains " + result.size()
+          + " of the " + requestedSerials.size() + " requested certificates");
+    }
+    return result;
+  } // method getMatchingSingleResponses
+
+  private static boolean matchesIssuer(CertificateID certId, X509Cert issuerCert) {
+    try {
+      return certId.matchesIssuer(issuerCert.toBcCert(), DIGEST_CALCULATOR_PROVIDER);
+    } catch (OCSPException ex) {
+      // unsupported hash algorithm
+      return false;
+    }
+  } // method matchesIssuer
+
+  private static String keyPrefix(X509Cert issuerCert, URL responderUrl, ASN1ObjectIdentifier hashAlgOid) {
+    return responderUrl + "|" + hashAlgOid.getId() + "|" + HashAlgo.SHA1.hexHash(issuerCert.getEncoded()) + "|";
+  }
+
+  /**
+   * Accepts the responses signed by the issuer, or by a currently valid OCSP signer
+   * (with extended key usage id-kp-OCSPSigning) issued by the issuer.
+   */
+  private boolean verifySignature(X509Cert issuerCert, BasicOCSPResp response) {
+    try {
+      X509Cert signer = null;
+      ResponderID respId = response.getResponderId().toASN1Primitive();
+      if (matches(respId, issuerCert)) {
+        signer = issuerCert;
+      } else {
+        X509CertificateHolder[] certs = response.getCerts();
+        Date now = new Date();
+        for (int i = 0; certs != null && i < certs.length; i++) {
+          X509Cert cert = new X509Cert(certs[i]);
+          if (!matches(respId, cert) || !cert.getIssuer().equals(issuerCert.getSubject())
+              || !certs[i].isValidOn(now)) {
+            continue;
+          }
+
+          byte[] ekuValue = cert.getExtensionCoreValue(Extension.extendedKeyUsage);
+          if (ekuValue == null
+              || !ExtendedKeyUsage.getInstance(ekuValue).hasKeyPurposeId(KeyPurposeId.id_kp_OCSPSigning)) {
+            continue;
+          }
+
+          cert.verify(issuerCert.getPublicKey());
+          signer = cert;
+          break;
+        }
+      }
+
+      if (signer == null) {
+        return false;
+      }
+
+      ContentVerifierProvider cvp = securityFactory.getContentVerifierProvider(signer.getPublicKey());
+      return response.isSignatureValid(cvp);
+    } catch (Exception ex) {
+      LogUtil.warn(LOG, ex, "could not verify the signature of OCSP response");
+      return false;
+    }
+  } // method verifySignature
+
+  private static boolean matches(ResponderID respId, X509Cert cert) {
+    if (respId.getName() != null) {
+      return respId.getName().equals(cert.getSubject());
+    } else {
+      byte[] spkiSha1 = HashAlgo.SHA1.hash(cert.getSubjectPublicKeyInfo().getPublicKeyData().getBytes());
+      return Arrays.equals(respId.getKeyHash(), spkiSha1);
+    }
+  } // method matches
+
+}
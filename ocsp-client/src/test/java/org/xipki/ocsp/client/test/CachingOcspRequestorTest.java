@@ -0,0 +1,408 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.client.test;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.ocsp.*;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.DigestCalculator;
+import org.bouncycastle.operator.bc.BcDigestCalculatorProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.ocsp.client.*;
+import org.xipki.security.HashAlgo;
+import org.xipki.security.SecurityFactoryImpl;
+import org.xipki.security.X509Cert;
+import org.xipki.util.ReqRespDebug;
+
+import java.math.BigInteger;
+import java.net.URL;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test for {@link CachingOcspRequestor}.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+public class CachingOcspRequestorTest {
+
+  /**
+   * Requestor which builds the responses locally and counts the requests.
+   */
+  private static class MockRequestor implements OcspRequestor {
+
+    private final AtomicInteger numRequests = new AtomicInteger();
+
+    private volatile long validityMs = 60_000;
+
+    // if not null, the CertIDs of the responses are computed for this issuer.
+    private volatile X509Cert certIdIssuer;
+
+    private volatile boolean omitLastSerial;
+
+    // if not null, the requests wait for this latch.
+    private volatile CountDownLatch latch;
+
+    // if not null, the responses are signed by this signer instead of the CA.
+    private volatile ContentSigner signer;
+
+    @Override
+    public OCSPResp ask(X509Cert issuerCert, X509Cert cert, URL responderUrl,
+                        RequestOptions requestOptions, ReqRespDebug debug)
+        throws OcspResponseException, OcspRequestorException {
+      return ask(issuerCert, new BigInteger[]{cert.getSerialNumber()}, responderUrl, requestOptions, debug);
+    }
+
+    @Override
+    public OCSPResp ask(X509Cert issuerCert, X509Cert[] certs, URL responderUrl,
+                        RequestOptions requestOptions, ReqRespDebug debug)
+        throws OcspResponseException, OcspRequestorException {
+      BigInteger[] serialNumbers = new BigInteger[certs.length];
+      for (int i = 0; i < certs.length; i++) {
+        serialNumbers[i] = certs[i].getSerialNumber();
+      }
+      return ask(issuerCert, serialNumbers, responderUrl, requestOptions, debug);
+    }
+
+    @Override
+    public OCSPResp ask(X509Cert issuerCert, BigInteger serialNumber, URL responderUrl,
+                        RequestOptions requestOptions, ReqRespDebug debug)
+        throws OcspResponseException, OcspRequestorException {
+      return ask(issuerCert, new BigInteger[]{serialNumber}, responderUrl, requestOptions, debug);
+    }
+
+    @Override
+    public OCSPResp ask(X509Cert issuerCert, BigInteger[] serialNumbers, URL responderUrl,
+                        RequestOptions requestOptions, ReqRespDebug debug)
+        throws OcspResponseException, OcspRequestorException {
+      numRequests.incrementAndGet();
+      CountDownLatch tmpLatch = latch;
+      try {
+        if (tmpLatch != null && !tmpLatch.await(10, TimeUnit.SECONDS)) {
+          throw new OcspResponseException.ResponderUnreachable("timeout");
+        }
+
+        X509Cert tmpIssuer = certIdIssuer == null ? issuerCert : certIdIssuer;
+        DigestCalculator dc = new BcDigestCalculatorProvider().get(
+            new AlgorithmIdentifier(requestOptions.getHashAlgorithm().getOid()));
+
+        Date now = new Date();
+        Date nextUpdate = new Date(now.getTime() + validityMs);
+        BasicOCSPRespBuilder builder = new BasicOCSPRespBuilder(new RespID(caCert.getSubject()));
+        int num = omitLastSerial ? serialNumbers.length - 1 : serialNumbers.length;
+        for (int i = 0; i < num; i++) {
+          CertificateID certId = new CertificateID(dc, tmpIssuer.toBcCert(), serialNumbers[i]);
+          builder.addResponse(certId, CertificateStatus.GOOD, now, nextUpdate);
+        }
+
+        BasicOCSPResp basicResp = builder.build(signer == null ? caSigner : signer, null, now);
+        return new OCSPRespBuilder().build(OCSPRespBuilder.SUCCESSFUL, basicResp);
+      } catch (OcspResponseException ex) {
+        throw ex;
+      } catch (Exception ex) {
+        throw new OcspRequestorException(ex.getMessage(), ex);
+      }
+    } // method ask
+
+  } // class MockRequestor
+
+  private static X509Cert caCert;
+
+  private static X509Cert otherCaCert;
+
+  private static ContentSigner caSigner;
+
+  private static ContentSigner otherSigner;
+
+  private static URL responderUrl;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    if (Security.getProvider("BC") == null) {
+      Security.addProvider(new BouncyCastleProvider());
+    }
+
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("RSA");
+    kpGen.initialize(2048);
+
+    KeyPair caKeypair = kpGen.generateKeyPair();
+    caSigner = new JcaContentSignerBuilder("SHA256withRSA").build(caKeypair.getPrivate());
+    caCert = selfSignedCert("CN=CA1", caKeypair, caSigner);
+
+    KeyPair otherKeypair = kpGen.generateKeyPair();
+    otherSigner = new JcaContentSignerBuilder("SHA256withRSA").build(otherKeypair.getPrivate());
+    otherCaCert = selfSignedCert("CN=CA2", otherKeypair, otherSigner);
+
+    responderUrl = new URL("http://localhost:8080/ocsp");
+  } // method init
+
+  private static X509Cert selfSignedCert(String subject, KeyPair keypair, ContentSigner signer) {
+    X500Name name = new X500Name(subject);
+    Date notBefore = new Date();
+    Date notAfter = new Date(notBefore.getTime() + 365L * 24 * 3600 * 1000);
+    X509v3CertificateBuilder builder = new X509v3CertificateBuilder(name, BigInteger.ONE, notBefore, notAfter,
+        name, SubjectPublicKeyInfo.getInstance(keypair.getPublic().getEncoded()));
+    return new X509Cert(builder.build(signer));
+  } // method selfSignedCert
+
+  private static CachingOcspRequestor newRequestor(MockRequestor mock) {
+    CachingOcspRequestor requestor = new CachingOcspRequestor(mock, new SecurityFactoryImpl(), 100);
+    requestor.setResponseVerifier((issuerCert, response) -> true);
+    return requestor;
+  }
+
+  private static RequestOptions requestOptions(HashAlgo hashAlgo) {
+    RequestOptions options = new RequestOptions();
+    options.setUseNonce(false);
+    options.setHashAlgorithm(hashAlgo);
+    return options;
+  }
+
+  @Test
+  public void testCacheHit() throws Exception {
+    MockRequestor mock = new MockRequestor();
+    try (CachingOcspRequestor requestor = newRequestor(mock)) {
+      RequestOptions options = requestOptions(HashAlgo.SHA256);
+      BigInteger[] serials = {BigInteger.valueOf(1), BigInteger.valueOf(2), BigInteger.valueOf(3)};
+
+      Map<BigInteger, SingleResp> resps = requestor.getSingleResponses(caCert, serials, responderUrl, options);
+      Assert.assertEquals(new HashSet<>(Arrays.asList(serials)), resps.keySet());
+      Assert.assertEquals(1, mock.numRequests.get());
+
+      // all cached
+      Assert.assertNotNull(requestor.getSingleResponse(caCert, serials[1], responderUrl, options));
+      OCSPResp resp1 = requestor.ask(caCert, serials, responderUrl, options, null);
+      OCSPResp resp2 = requestor.ask(caCert, serials, responderUrl, options, null);
+      Assert.assertSame(resp1, resp2);
+      Assert.assertEquals(1, mock.numRequests.get());
+
+      // only the uncached serial number is requested
+      BigInteger[] serials2 = {BigInteger.valueOf(1), BigInteger.valueOf(4)};
+      resps = requestor.getSingleResponses(caCert, serials2, responderUrl, options);
+      Assert.assertEquals(2, resps.size());
+      Assert.assertEquals(2, mock.numRequests.get());
+
+      // with nonce, the request is always sent
+      RequestOptions nonceOptions = requestOptions(HashAlgo.SHA256);
+      nonceOptions.setUseNonce(true);
+      requestor.getSingleResponse(caCert, serials[0], responderUrl, nonceOptions);
+      Assert.assertEquals(3, mock.numRequests.get());
+    }
+  } // method testCacheHit
+
+  @Test
+  public void testHashAlgoInKey() throws Exception {
+    MockRequestor mock = new MockRequestor();
+    try (CachingOcspRequestor requestor = newRequestor(mock)) {
+      BigInteger serial = BigInteger.valueOf(10);
+      SingleResp sha1Resp = requestor.getSingleResponse(caCert, serial, responderUrl,
+          requestOptions(HashAlgo.SHA1));
+      Assert.assertEquals(HashAlgo.SHA1.getOid(), sha1Resp.getCertID().getHashAlgOID());
+
+      // the response with CertID of SHA-1 must not be returned for requests with SHA-256
+      SingleResp sha256Resp = requestor.getSingleResponse(caCert, serial, responderUrl,
+          requestOptions(HashAlgo.SHA256));
+      Assert.assertEquals(HashAlgo.SHA256.getOid(), sha256Resp.getCertID().getHashAlgOID());
+      Assert.assertEquals(2, mock.numRequests.get());
+
+      requestor.ask(caCert, serial, responderUrl, requestOptions(HashAlgo.SHA1), null);
+      requestor.ask(caCert, serial, responderUrl, requestOptions(HashAlgo.SHA256), null);
+      Assert.assertEquals(2, mock.numRequests.get());
+    }
+  } // method testHashAlgoInKey
+
+  @Test
+  public void testIssuerUnmatched() throws Exception {
+    MockRequestor mock = new MockRequestor();
+    mock.certIdIssuer = otherCaCert;
+    try (CachingOcspRequestor requestor = newRequestor(mock)) {
+      RequestOptions options = requestOptions(HashAlgo.SHA256);
+      BigInteger serial = BigInteger.valueOf(20);
+      try {
+        requestor.getSingleResponse(caCert, serial, responderUrl, options);
+        Assert.fail("OcspTargetUnmatched expected");
+      } catch (OcspResponseException.OcspTargetUnmatched ex) {
+        // expected
+      }
+
+      // the single responses of the other issuer are not cached, neither for the requested issuer
+      requestor.ask(caCert, serial, responderUrl, options, null);
+      Assert.assertEquals(2, mock.numRequests.get());
+
+      // nor for the other issuer
+      mock.certIdIssuer = null;
+      requestor.getSingleResponse(otherCaCert, serial, responderUrl, options);
+      Assert.assertEquals(3, mock.numRequests.get());
+      requestor.getSingleResponse(otherCaCert, serial, responderUrl, options);
+      Assert.assertEquals(3, mock.numRequests.get());
+    }
+  } // method testIssuerUnmatched
+
+  @Test
+  public void testUntrustedSigner() throws Exception {
+    MockRequestor mock = new MockRequestor();
+    // signed by the key of another CA, but with the responderID of the CA
+    mock.signer = otherSigner;
+    // the default verifier
+    try (CachingOcspRequestor requestor = new CachingOcspRequestor(mock, new SecurityFactoryImpl(), 100)) {
+      RequestOptions options = requestOptions(HashAlgo.SHA256);
+      BigInteger serial = BigInteger.valueOf(25);
+      for (int i = 0; i < 2; i++) {
+        try {
+          requestor.getSingleResponse(caCert, serial, responderUrl, options);
+          Assert.fail("InvalidResponse expected");
+        } catch (OcspResponseException.InvalidResponse ex) {
+          // expected
+        }
+      }
+      // the unverified response is not cached
+      Assert.assertEquals(2, mock.numRequests.get());
+
+      // the response signed by the CA is accepted and cached
+      mock.signer = null;
+      Assert.assertNotNull(requestor.getSingleResponse(caCert, serial, responderUrl, options));
+      Assert.assertNotNull(requestor.getSingleResponse(caCert, serial, responderUrl, options));
+      Assert.assertEquals(3, mock.numRequests.get());
+    }
+  } // method testUntrustedSigner
+
+  @Test
+  public void testMissingSingleResponse() throws Exception {
+    MockRequestor mock = new MockRequestor();
+    mock.omitLastSerial = true;
+    try (CachingOcspRequestor requestor = newRequestor(mock)) {
+      BigInteger[] serials = {BigInteger.valueOf(30), BigInteger.valueOf(31)};
+      try {
+        requestor.getSingleResponses(caCert, serials, responderUrl, requestOptions(HashAlgo.SHA256));
+        Assert.fail("OcspTargetUnmatched expected");
+      } catch (OcspResponseException.OcspTargetUnmatched ex) {
+        // expected
+      }
+    }
+  } // method testMissingSingleResponse
+
+  @Test
+  public void testCoalescing() throws Exception {
+    MockRequestor mock = new MockRequestor();
+    mock.latch = new CountDownLatch(1);
+    final int numThreads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try (CachingOcspRequestor requestor = newRequestor(mock)) {
+      RequestOptions options = requestOptions(HashAlgo.SHA256);
+      BigInteger serial = BigInteger.valueOf(40);
+
+      List<Future<OCSPResp>> futures = new ArrayList<>(numThreads);
+      for (int i = 0; i < numThreads; i++) {
+        futures.add(executor.submit(() -> requestor.ask(caCert, serial, responderUrl, options, null)));
+      }
+
+      // wait until all other threads wait for the first request
+      long deadline = System.currentTimeMillis() + 10_000;
+      while (requestor.getCoalesced() < numThreads - 1 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      Assert.assertEquals(numThreads - 1, requestor.getCoalesced());
+      mock.latch.countDown();
+
+      OCSPResp resp = futures.get(0).get(10, TimeUnit.SECONDS);
+      for (Future<OCSPResp> future : futures) {
+        Assert.assertSame(resp, future.get(10, TimeUnit.SECONDS));
+      }
+      Assert.assertEquals(1, mock.numRequests.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  } // method testCoalescing
+
+  @Test
+  public void testExpiry() throws Exception {
+    MockRequestor mock = new MockRequestor();
+    mock.validityMs = 2000;
+    try (CachingOcspRequestor requestor = newRequestor(mock)) {
+      RequestOptions options = requestOptions(HashAlgo.SHA256);
+      BigInteger serial = BigInteger.valueOf(50);
+
+      requestor.getSingleResponse(caCert, serial, responderUrl, options);
+      requestor.getSingleResponse(caCert, serial, responderUrl, options);
+      Assert.assertEquals(1, mock.numRequests.get());
+
+      // after the nextUpdate
+      Thread.sleep(2500);
+      mock.validityMs = 60_000;
+      requestor.getSingleResponse(caCert, serial, responderUrl, options);
+      Assert.assertEquals(2, mock.numRequests.get());
+
+      requestor.getSingleResponse(caCert, serial, responderUrl, options);
+      Assert.assertEquals(2, mock.numRequests.get());
+    }
+  } // method testExpiry
+
+  @Test
+  public void testPrefetch() throws Exception {
+    MockRequestor mock = new MockRequestor();
+    mock.validityMs = 30_000;
+    try (CachingOcspRequestor requestor = newRequestor(mock)) {
+      requestor.setPrefetchBefore(60);
+      RequestOptions options = requestOptions(HashAlgo.SHA256);
+      BigInteger serial = BigInteger.valueOf(60);
+
+      Date nextUpdate1 = requestor.getSingleResponse(caCert, serial, responderUrl, options).getNextUpdate();
+      Assert.assertEquals(1, mock.numRequests.get());
+
+      // cache hit within the prefetch window triggers the background request
+      mock.validityMs = 3600_000;
+      Assert.assertEquals(nextUpdate1,
+          requestor.getSingleResponse(caCert, serial, responderUrl, options).getNextUpdate());
+
+      long deadline = System.currentTimeMillis() + 10_000;
+      while (mock.numRequests.get() < 2 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      Assert.assertEquals(2, mock.numRequests.get());
+      Assert.assertEquals(1, requestor.getPrefetches());
+
+      // the prefetched response replaces the cached one
+      deadline = System.currentTimeMillis() + 10_000;
+      Date nextUpdate2 = nextUpdate1;
+      while (nextUpdate2.equals(nextUpdate1) && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+        nextUpdate2 = requestor.getSingleResponse(caCert, serial, responderUrl, options).getNextUpdate();
+      }
+      Assert.assertTrue(nextUpdate2.after(nextUpdate1));
+
+      // the new response is outside the prefetch window
+      requestor.getSingleResponse(caCert, serial, responderUrl, options);
+      Thread.sleep(100);
+      Assert.assertEquals(2, mock.numRequests.get());
+    }
+  } // method testPrefetch
+
+}
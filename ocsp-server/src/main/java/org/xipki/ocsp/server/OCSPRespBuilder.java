@@ -27,8 +27,8 @@ import org.xipki.util.Hex;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -42,7 +42,14 @@ public class OCSPRespBuilder {
   private static final byte[] successfulStatus = Hex.decode("0a0100");
   private static final byte[] responseTypeBasic = Hex.decode("06092b0601050507300101");
 
-  private final List<SingleResponse> list = new LinkedList<>();
+  // larger TBSResponseData are encoded in a new buffer
+  private static final int MAX_CACHED_TBS_BUFFER_SIZE = 64 * 1024;
+
+  // reusable buffer to encode the TBSResponseData, the final response is copied from it.
+  private static final ThreadLocal<byte[]> TBS_BUFFER = ThreadLocal.withInitial(() -> new byte[4096]);
+
+  // most requests contain only one CertID
+  private final List<SingleResponse> list = new ArrayList<>(1);
   private Extensions responseExtensions = null;
   private final ResponderID responderId;
 
@@ -84,7 +91,8 @@ public class OCSPRespBuilder {
       throws OCSPException, NoIdleSignerException {
     ResponseData responseData = new ResponseData(0, responderId, producedAt, list, responseExtensions);
 
-    byte[] tbs = new byte[responseData.getEncodedLength()];
+    final int tbsLen = responseData.getEncodedLength();
+    byte[] tbs = tbsBuffer(tbsLen);
     responseData.write(tbs, 0);
 
     ConcurrentBagEntrySigner signer0 = signer.borrowSigner();
@@ -96,7 +104,7 @@ public class OCSPRespBuilder {
       XiContentSigner csigner0 = signer0.value();
       OutputStream sigOut = csigner0.getOutputStream();
       try {
-        sigOut.write(tbs);
+        sigOut.write(tbs, 0, tbsLen);
         sigOut.close();
       } catch (IOException ex) {
         throw new OCSPException("exception signing TBSRequest: " + ex.getMessage(), ex);
@@ -114,7 +122,7 @@ public class OCSPRespBuilder {
     int signatureLen = getLen(signatureBodyLen);
 
     // BasicOCSPResponse
-    int basicResponseBodyLen = tbs.length + sigAlgId.length + signatureLen;
+    int basicResponseBodyLen = tbsLen + sigAlgId.length + signatureLen;
     if (taggedCertSequence != null) {
       basicResponseBodyLen += taggedCertSequence.getEncodedLength();
     }
@@ -154,7 +162,8 @@ public class OCSPRespBuilder {
     // BasicOCSPResponse
     offset += ASN1Type.writeHeader((byte) 0x30, basicResponseBodyLen, out, offset);
     // BasicOCSPResponse.tbsResponseData
-    offset += arraycopy(tbs, out, offset);
+    System.arraycopy(tbs, 0, out, offset, tbsLen);
+    offset += tbsLen;
 
     // BasicOCSPResponse.signatureAlgorithm
     offset += arraycopy(sigAlgId, out, offset);
@@ -170,6 +179,22 @@ public class OCSPRespBuilder {
     return out;
   } // method buildOCSPResponse
 
+  private static byte[] tbsBuffer(int size) {
+    byte[] buffer = TBS_BUFFER.get();
+    if (buffer.length >= size) {
+      return buffer;
+    }
+
+    if (size > MAX_CACHED_TBS_BUFFER_SIZE) {
+      return new byte[size];
+    }
+
+    // grow to the next power of 2, so that the buffer is resized only few times per thread
+    buffer = new byte[Integer.highestOneBit(size - 1) << 1];
+    TBS_BUFFER.set(buffer);
+    return buffer;
+  } // method tbsBuffer
+
   private static int getLen(int bodyLen) {
     return ASN1Type.getHeaderLen(bodyLen) + bodyLen;
   }
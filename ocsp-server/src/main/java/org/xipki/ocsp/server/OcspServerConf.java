@@ -405,6 +405,16 @@ public class OcspServerConf extends ValidatableConf {
 
     private String validity;
 
+    /**
+     * In-memory tier consulted before the cache database. Optional.
+     */
+    private MemoryCache memoryCache;
+
+    /**
+     * Background generation of the responses. Optional.
+     */
+    private Presign presign;
+
     public DataSourceConf getDatasource() {
       return datasource;
     }
@@ -425,13 +435,164 @@ public class OcspServerConf extends ValidatableConf {
       return validity == null ? new Validity(1, Unit.DAY) : Validity.getInstance(validity);
     }
 
+    public MemoryCache getMemoryCache() {
+      return memoryCache;
+    }
+
+    public void setMemoryCache(MemoryCache memoryCache) {
+      this.memoryCache = memoryCache;
+    }
+
+    public Presign getPresign() {
+      return presign;
+    }
+
+    public void setPresign(Presign presign) {
+      this.presign = presign;
+    }
+
     @Override
     public void validate() throws InvalidConfException {
       notNull(datasource, "datasource");
+      validate(memoryCache);
+      validate(presign);
     }
 
   } // class ResponseCache
 
+  public static class Presign extends ValidatableConf {
+
+    /**
+     * Interval between two runs, only the certificates changed since the last run are
+     * processed. Default to 1 hour.
+     */
+    private String interval;
+
+    /**
+     * Interval between two runs processing all certificates. Default to the half of the
+     * validity of the response cache.
+     */
+    private String fullInterval;
+
+    /**
+     * Number of threads generating the responses, should not be greater than the number of
+     * signer instances. Default to 4.
+     */
+    private int threads = 4;
+
+    /**
+     * Maximal number of responses generated per second, 0 for unlimited. Default to 1000.
+     */
+    private int maxResponsesPerSecond = 1000;
+
+    /**
+     * Names of the responders whose responses are generated. Default to all responders.
+     */
+    private List<String> responders;
+
+    public String getInterval() {
+      return interval;
+    }
+
+    public void setInterval(String interval) {
+      this.interval = interval;
+    }
+
+    public Validity interval() {
+      return interval == null ? new Validity(1, Unit.HOUR) : Validity.getInstance(interval);
+    }
+
+    public String getFullInterval() {
+      return fullInterval;
+    }
+
+    public void setFullInterval(String fullInterval) {
+      this.fullInterval = fullInterval;
+    }
+
+    public Validity fullInterval() {
+      return fullInterval == null ? null : Validity.getInstance(fullInterval);
+    }
+
+    public int getThreads() {
+      return threads;
+    }
+
+    public void setThreads(int threads) {
+      this.threads = threads;
+    }
+
+    public int getMaxResponsesPerSecond() {
+      return maxResponsesPerSecond;
+    }
+
+    public void setMaxResponsesPerSecond(int maxResponsesPerSecond) {
+      this.maxResponsesPerSecond = maxResponsesPerSecond;
+    }
+
+    public List<String> getResponders() {
+      return responders;
+    }
+
+    public void setResponders(List<String> responders) {
+      this.responders = responders;
+    }
+
+    @Override
+    public void validate() throws InvalidConfException {
+      if (threads < 1) {
+        throw new InvalidConfException("threads must be positive, but is " + threads);
+      }
+
+      if (maxResponsesPerSecond < 0) {
+        throw new InvalidConfException("maxResponsesPerSecond must not be negative, but is "
+            + maxResponsesPerSecond);
+      }
+    }
+
+  } // class Presign
+
+  public static class MemoryCache extends ValidatableConf {
+
+    /**
+     * Maximal number of cached responses. Default to 100,000.
+     */
+    private int maxEntries = 100000;
+
+    /**
+     * Maximal sum of the size of cached responses, in bytes. Default to 256 MiB.
+     */
+    private long maxSize = 256L * 1024 * 1024;
+
+    public int getMaxEntries() {
+      return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+      this.maxEntries = maxEntries;
+    }
+
+    public long getMaxSize() {
+      return maxSize;
+    }
+
+    public void setMaxSize(long maxSize) {
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    public void validate() throws InvalidConfException {
+      if (maxEntries < 1) {
+        throw new InvalidConfException("maxEntries must be positive, but is " + maxEntries);
+      }
+
+      if (maxSize < 1) {
+        throw new InvalidConfException("maxSize must be positive, but is " + maxSize);
+      }
+    }
+
+  } // class MemoryCache
+
   public static class ResponseOption extends ValidatableConf {
 
     private boolean responderIdByName = true;
@@ -801,6 +962,109 @@ public class OcspServerConf extends ValidatableConf {
 
   } // class CaCerts
 
+  public static class StatusIndex extends ValidatableConf {
+
+    /**
+     * Whether the in-memory certificate status index is enabled. Default to false.
+     */
+    private boolean enabled;
+
+    /**
+     * Whether the certificate hash is kept in the index. If false, requests demanding
+     * the certificate hash will be answered from the database. Default to false.
+     */
+    private boolean includeCertHash;
+
+    /**
+     * Whether the database is queried if the certificate is not contained in the index.
+     * Default to true.
+     */
+    private boolean fallbackToDb = true;
+
+    /**
+     * Number of rows read from the database in one query. Default to 10000.
+     */
+    private int pageSize = 10000;
+
+    /**
+     * Expected number of certificates, used to pre-size the index. Default to 1,000,000.
+     */
+    private int expectedSize = 1000000;
+
+    /**
+     * Interval to reload the whole index, the deleted certificates will be removed from
+     * the index only by a full reload. Default to 1 day.
+     *
+     * <p>Between two full reloads the index is refreshed with the certificates changed since
+     * the last refresh, read per issuer via the index IDX_ISSUER_LUPDATE.
+     */
+    private String fullReloadInterval;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public boolean isIncludeCertHash() {
+      return includeCertHash;
+    }
+
+    public void setIncludeCertHash(boolean includeCertHash) {
+      this.includeCertHash = includeCertHash;
+    }
+
+    public boolean isFallbackToDb() {
+      return fallbackToDb;
+    }
+
+    public void setFallbackToDb(boolean fallbackToDb) {
+      this.fallbackToDb = fallbackToDb;
+    }
+
+    public int getPageSize() {
+      return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+      this.pageSize = pageSize;
+    }
+
+    public int getExpectedSize() {
+      return expectedSize;
+    }
+
+    public void setExpectedSize(int expectedSize) {
+      this.expectedSize = expectedSize;
+    }
+
+    public String getFullReloadInterval() {
+      return fullReloadInterval;
+    }
+
+    public void setFullReloadInterval(String fullReloadInterval) {
+      this.fullReloadInterval = fullReloadInterval;
+    }
+
+    public Validity fullReloadInterval() {
+      return fullReloadInterval == null ? new Validity(1, Unit.DAY) : Validity.getInstance(fullReloadInterval);
+    }
+
+    @Override
+    public void validate() throws InvalidConfException {
+      if (pageSize < 1) {
+        throw new InvalidConfException("pageSize must be positive, but is " + pageSize);
+      }
+
+      if (expectedSize < 1) {
+        throw new InvalidConfException("expectedSize must be positive, but is " + expectedSize);
+      }
+    }
+
+  } // class StatusIndex
+
   private ResponseCache responseCache;
 
   private List<Responder> responders;
@@ -819,6 +1083,12 @@ public class OcspServerConf extends ValidatableConf {
 
   private UnknownIssuerBehaviour unknownIssuerBehaviour = UnknownIssuerBehaviour.unknown;
 
+  /**
+   * Number of threads to query the stores of different issuers concurrently for requests with
+   * multiple CertIDs. 0 to query them sequentially in the request thread.
+   */
+  private int storeQueryThreads;
+
   public static OcspServerConf readConfFromFile(String fileName)
       throws IOException, InvalidConfException {
     notBlank(fileName, "fileName");
@@ -920,6 +1190,14 @@ public class OcspServerConf extends ValidatableConf {
     this.unknownIssuerBehaviour = unknownIssuerBehaviour;
   }
 
+  public int getStoreQueryThreads() {
+    return storeQueryThreads;
+  }
+
+  public void setStoreQueryThreads(int storeQueryThreads) {
+    this.storeQueryThreads = storeQueryThreads;
+  }
+
   @Override
   public void validate() throws InvalidConfException {
     notEmpty(responders, "responders");
@@ -928,6 +1206,10 @@ public class OcspServerConf extends ValidatableConf {
     notEmpty(requestOptions, "requestOptions");
     notEmpty(responseOptions, "responseOptions");
 
+    if (storeQueryThreads < 0) {
+      throw new InvalidConfException("storeQueryThreads must not be negative, but is " + storeQueryThreads);
+    }
+
     validate(responders, signers, stores, datasources, requestOptions, responseOptions);
   } // method validate
 
@@ -56,6 +56,12 @@ import java.math.BigInteger;
 import java.security.InvalidKeyException;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.xipki.ocsp.server.OcspServerUtil.*;
@@ -115,6 +121,11 @@ public class OcspServerImpl implements OcspServer {
 
   private ResponseCacher responseCacher;
 
+  private ResponsePresigner responsePresigner;
+
+  // queries the stores of different issuers concurrently, null if disabled.
+  private ThreadPoolExecutor storeQueryExecutor;
+
   private final Map<String, ResponderImpl> responders = new HashMap<>();
 
   private final Map<String, ResponseSigner> signers = new HashMap<>();
@@ -230,6 +241,11 @@ public class OcspServerImpl implements OcspServer {
     initialized.set(false);
 
     // reset
+    if (responsePresigner != null) {
+      responsePresigner.close();
+      responsePresigner = null;
+    }
+    shutdownStoreQueryExecutor();
     responseCacher = null;
     responders.clear();
     signers.clear();
@@ -364,6 +380,20 @@ public class OcspServerImpl implements OcspServer {
       this.unknownIssuerBehaviour = UnknownIssuerBehaviour.unknown;
     }
 
+    int storeQueryThreads = conf.getStoreQueryThreads();
+    if (storeQueryThreads > 0) {
+      // if all threads are busy, the query is executed in the request thread. After the shutdown
+      // RejectedExecutionException is thrown (CallerRunsPolicy would discard the query silently).
+      storeQueryExecutor = new ThreadPoolExecutor(storeQueryThreads, storeQueryThreads, 0, TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<>(storeQueryThreads * 10), (r, executor) -> {
+            if (executor.isShutdown()) {
+              throw new RejectedExecutionException("storeQueryExecutor has been shutdown");
+            }
+            r.run();
+          });
+      LOG.info("query the stores with {} threads", storeQueryThreads);
+    }
+
     // Response Cache
     OcspServerConf.ResponseCache cacheType = conf.getResponseCache();
     if (cacheType != null) {
@@ -380,6 +410,10 @@ public class OcspServerImpl implements OcspServer {
         closeStream(dsStream);
       }
       responseCacher = new ResponseCacher(datasource, master, cacheType.validity());
+      OcspServerConf.MemoryCache memoryCacheConf = cacheType.getMemoryCache();
+      if (memoryCacheConf != null) {
+        responseCacher.setMemoryCache(memoryCacheConf.getMaxEntries(), memoryCacheConf.getMaxSize());
+      }
       responseCacher.init();
     }
 
@@ -493,11 +527,50 @@ public class OcspServerImpl implements OcspServer {
     Collections.sort(tmpList, (o1, o2) -> o2.length() - o1.length());
     this.servletPaths.clear();
     this.servletPaths.addAll(tmpList);
+
+    // pre-signing of the responses
+    OcspServerConf.Presign presignConf = (cacheType == null) ? null : cacheType.getPresign();
+    if (presignConf != null) {
+      if (!master) {
+        LOG.info("pre-signing of responses is only performed by the master");
+      } else {
+        List<ResponsePresigner.Target> presignTargets = new ArrayList<>(responders.size());
+        if (presignConf.getResponders() == null) {
+          for (Entry<String, ResponderImpl> entry : responders.entrySet()) {
+            presignTargets.add(ResponsePresigner.target(this, entry.getKey(), entry.getValue()));
+          }
+        } else {
+          for (String name : presignConf.getResponders()) {
+            ResponderImpl responder = responders.get(name);
+            if (responder == null) {
+              throw new InvalidConfException("no responder named '" + name + "' is defined");
+            }
+            presignTargets.add(ResponsePresigner.target(this, name, responder));
+          }
+        }
+
+        Validity fullInterval = presignConf.fullInterval();
+        // by default, renew the responses after the half of their validity in the cache
+        long fullIntervalSec = (fullInterval == null)
+            ? cacheType.validity().approxMinutes() * 30 : fullInterval.approxMinutes() * 60;
+
+        responsePresigner = new ResponsePresigner(responseCacher::isOnService, presignTargets,
+            presignConf.interval().approxMinutes() * 60, fullIntervalSec,
+            presignConf.getThreads(), presignConf.getMaxResponsesPerSecond());
+        responsePresigner.start();
+      }
+    }
   } // method init0
 
   @Override
   public void close() {
     LOG.info("stopped OCSP Responder");
+    if (responsePresigner != null) {
+      responsePresigner.close();
+    }
+
+    shutdownStoreQueryExecutor();
+
     if (responseCacher != null) {
       responseCacher.close();
     }
@@ -511,9 +584,24 @@ public class OcspServerImpl implements OcspServer {
     }
   } // method close
 
+  private void shutdownStoreQueryExecutor() {
+    if (storeQueryExecutor != null) {
+      storeQueryExecutor.shutdownNow();
+      storeQueryExecutor = null;
+    }
+  }
+
   @Override
   public OcspRespWithCacheInfo answer(Responder responder2, byte[] request, boolean viaGet) {
-    ResponderImpl responder = (ResponderImpl) responder2;
+    return answer((ResponderImpl) responder2, request, viaGet, false);
+  }
+
+  /**
+   * Answers the request.
+   * @param bypassCache whether to generate a new response even if a cached one is available.
+   *          The new response is cached if possible.
+   */
+  OcspRespWithCacheInfo answer(ResponderImpl responder, byte[] request, boolean viaGet, boolean bypassCache) {
     RequestOption reqOpt = responder.getRequestOption();
 
     int version;
@@ -560,18 +648,17 @@ public class OcspServerImpl implements OcspServer {
 
       if (!license.grantAllCAs()) {
         for (CertID cid : requestList) {
-          for (OcspStore store : responder.getStores()) {
-            X509Cert caCert = store.getIssuerCert(cid.getIssuer());
-            if (caCert == null) {
-              continue;
-            }
+          OcspStore store = responder.getStore(cid.getIssuer());
+          X509Cert caCert = (store == null) ? null : store.getIssuerCert(cid.getIssuer());
+          if (caCert == null) {
+            continue;
+          }
 
-            String issuerSubject = caCert.getSubjectText();
-            boolean granted = license.grant(issuerSubject);
-            if (!granted) {
-              LOG.error("Not granted for CA {}, need new license", issuerSubject);
-              return unsuccesfulOCSPRespMap.get(OcspResponseStatus.internalError);
-            }
+          String issuerSubject = caCert.getSubjectText();
+          boolean granted = license.grant(issuerSubject);
+          if (!granted) {
+            LOG.error("Not granted for CA {}, need new license", issuerSubject);
+            return unsuccesfulOCSPRespMap.get(OcspResponseStatus.internalError);
           }
         }
       }
@@ -583,7 +670,7 @@ public class OcspServerImpl implements OcspServer {
       repControl.canCacheInfo = true;
 
       List<ExtendedExtension> reqExtensions = req.getExtensions();
-      List<Extension> respExtensions = new LinkedList<>();
+      List<Extension> respExtensions = new ArrayList<>(2);
 
       ExtendedExtension ocspRespExtn = removeExtension(reqExtensions, OID.ID_PKIX_OCSP_RESPONSE);
       if (ocspRespExtn != null) {
@@ -691,7 +778,18 @@ public class OcspServerImpl implements OcspServer {
         concurrentSigner = signer.getFirstSigner();
       }
 
+      // check the hash algorithms before any status is retrieved
+      for (CertID certId : requestList) {
+        HashAlgo reqHashAlgo = certId.getIssuer().hashAlgorithm();
+        if (!reqOpt.allows(reqHashAlgo)) {
+          LOG.warn("CertID.hashAlgorithm {} not allowed",
+              reqHashAlgo != null ? reqHashAlgo : certId.getIssuer().hashAlgorithmOID());
+          return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
+        }
+      }
+
       SignAlgo cacheDbSigAlg = null;
+      HashAlgo cacheDbCertHashAlgo = null;
       BigInteger cacheDbSerialNumber = null;
       IssuerEntry cacheDbIssuer = null;
 
@@ -700,21 +798,15 @@ public class OcspServerImpl implements OcspServer {
       if (canCacheDb) {
         // try to find the cached response
         CertID certId = requestList.get(0);
-        HashAlgo reqHashAlgo = certId.getIssuer().hashAlgorithm();
-        if (!reqOpt.allows(reqHashAlgo)) {
-          LOG.warn("CertID.hashAlgorithm {} not allowed",
-              reqHashAlgo != null ? reqHashAlgo : certId.getIssuer().hashAlgorithmOID());
-          return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
-        }
-
         cacheDbSigAlg = concurrentSigner.getAlgorithm();
+        cacheDbCertHashAlgo = certId.getIssuer().hashAlgorithm();
 
         cacheDbIssuer = responseCacher.getIssuer(certId.getIssuer());
         cacheDbSerialNumber = certId.getSerialNumber();
 
         if (cacheDbIssuer != null) {
-          OcspRespWithCacheInfo cachedResp = responseCacher.getOcspResponse(
-              cacheDbIssuer.getId(), cacheDbSerialNumber, cacheDbSigAlg);
+          OcspRespWithCacheInfo cachedResp = bypassCache ? null : responseCacher.getOcspResponse(
+              cacheDbIssuer.getId(), cacheDbSerialNumber, cacheDbSigAlg, cacheDbCertHashAlgo);
           if (cachedResp != null) {
             if (license.grant(cacheDbIssuer.getCert().getSubjectText())) {
               return cachedResp;
@@ -725,13 +817,8 @@ public class OcspServerImpl implements OcspServer {
           }
         } else if (master) {
           // store the issuer certificate in cache database.
-          X509Cert issuerCert = null;
-          for (OcspStore store : responder.getStores()) {
-            issuerCert = store.getIssuerCert(certId.getIssuer());
-            if (issuerCert != null) {
-              break;
-            }
-          }
+          OcspStore store = responder.getStore(certId.getIssuer());
+          X509Cert issuerCert = (store == null) ? null : store.getIssuerCert(certId.getIssuer());
 
           if (issuerCert != null) {
             cacheDbIssuer = responseCacher.storeIssuer(issuerCert);
@@ -748,9 +835,16 @@ public class OcspServerImpl implements OcspServer {
 
       boolean unknownAsRevoked = false;
       AtomicBoolean unknownAsRevoked0 = new AtomicBoolean(false);
-      for (CertID certID : requestList) {
-        OcspRespWithCacheInfo failureOcspResp = processCertReq(
-                unknownAsRevoked0, certID, builder, responder, reqOpt, repOpt, repControl);
+      // one reference time for all certificates of the request
+      Date now = new Date();
+      CertStatusInfo[] prefetchedStatuses = (requestsSize > 1)
+          ? prefetchCertStatuses(now, requestList, responder, repOpt) : null;
+
+      for (int i = 0; i < requestsSize; i++) {
+        CertID certID = requestList.get(i);
+        OcspRespWithCacheInfo failureOcspResp = processCertReq(now, unknownAsRevoked0, certID,
+            prefetchedStatuses == null ? null : prefetchedStatuses[i], builder, responder,
+            repOpt, repControl);
 
         if (failureOcspResp != null) {
           return failureOcspResp;
@@ -791,7 +885,7 @@ public class OcspServerImpl implements OcspServer {
         // Don't cache the response with status UNKNOWN, since this may result in DDoS
         // of storage
         responseCacher.storeOcspResponse(cacheDbIssuer.getId(), cacheDbSerialNumber,
-            producedAtSeconds, repControl.cacheNextUpdate, cacheDbSigAlg, encodeOcspResponse);
+            producedAtSeconds, repControl.cacheNextUpdate, cacheDbSigAlg, cacheDbCertHashAlgo, encodeOcspResponse);
       }
 
       if (viaGet && repControl.canCacheInfo) {
@@ -809,31 +903,143 @@ public class OcspServerImpl implements OcspServer {
     }
   } // method ask
 
-  private OcspRespWithCacheInfo processCertReq(
-      AtomicBoolean unknownAsRevoked, CertID certId, OCSPRespBuilder builder, ResponderImpl responder,
-      RequestOption reqOpt, OcspServerConf.ResponseOption repOpt, OcspRespControl repControl) {
-    HashAlgo reqHashAlgo = certId.getIssuer().hashAlgorithm();
-    if (!reqOpt.allows(reqHashAlgo)) {
-      LOG.warn("CertID.hashAlgorithm {} not allowed", reqHashAlgo);
-      return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
+  /**
+   * Retrieves the statuses of all certificates of the same issuer with one call of
+   * {@link OcspStore#getCertStatuses(Date, RequestIssuer, List, boolean, boolean, boolean)}.
+   * If the {@link #storeQueryExecutor} is configured, the statuses of different issuers are
+   * retrieved concurrently.
+   *
+   * @return the statuses in the order of the requestList. Element is {@code null} if the status
+   *         could not be retrieved, it will then be retrieved in
+   *         {@link #processCertReq(Date, AtomicBoolean, CertID, CertStatusInfo, OCSPRespBuilder,
+   *         ResponderImpl, OcspServerConf.ResponseOption, OcspRespControl)}.
+   */
+  private CertStatusInfo[] prefetchCertStatuses(Date now,
+      List<CertID> requestList, ResponderImpl responder, OcspServerConf.ResponseOption repOpt) {
+    final int size = requestList.size();
+    CertStatusInfo[] statuses = new CertStatusInfo[size];
+
+    Map<RequestIssuer, List<Integer>> issuerIndexes = new LinkedHashMap<>();
+    for (int i = 0; i < size; i++) {
+      issuerIndexes.computeIfAbsent(requestList.get(i).getIssuer(), k -> new ArrayList<>(size)).add(i);
+    }
+
+    ThreadPoolExecutor executor = storeQueryExecutor;
+    boolean concurrent = executor != null && issuerIndexes.size() > 1;
+
+    List<Runnable> queries = new ArrayList<>(issuerIndexes.size());
+    for (Map.Entry<RequestIssuer, List<Integer>> entry : issuerIndexes.entrySet()) {
+      RequestIssuer reqIssuer = entry.getKey();
+      List<Integer> indexes = entry.getValue();
+      // a single certificate is only worth prefetching if it is queried concurrently
+      if (indexes.size() < 2 && !concurrent) {
+        continue;
+      }
+
+      OcspStore store = responder.getStore(reqIssuer);
+      if (store != null) {
+        queries.add(() -> queryCertStatuses(now, store, reqIssuer, indexes, requestList, statuses,
+            responder, repOpt));
+      }
+    }
+
+    if (!concurrent || queries.size() < 2) {
+      for (Runnable query : queries) {
+        query.run();
+      }
+      return statuses;
+    }
+
+    // the first query is executed in the request thread
+    List<Future<?>> futures = new ArrayList<>(queries.size() - 1);
+    for (int i = 1; i < queries.size(); i++) {
+      try {
+        futures.add(executor.submit(queries.get(i)));
+      } catch (RejectedExecutionException ex) {
+        // the executor has been shutdown, e.g. while closing
+        queries.get(i).run();
+      }
+    }
+    queries.get(0).run();
+
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        for (Future<?> f : futures) {
+          f.cancel(true);
+        }
+        // the statuses may be set concurrently, retrieve all of them again
+        return new CertStatusInfo[size];
+      } catch (ExecutionException ex) {
+        LogUtil.warn(LOG, ex.getCause(), "could not retrieve the certificate statuses");
+      }
     }
 
+    return statuses;
+  } // method prefetchCertStatuses
+
+  private static void queryCertStatuses(
+      Date now, OcspStore store, RequestIssuer reqIssuer, List<Integer> indexes, List<CertID> requestList,
+      CertStatusInfo[] statuses, ResponderImpl responder, OcspServerConf.ResponseOption repOpt) {
+    List<BigInteger> serials = new ArrayList<>(indexes.size());
+    for (Integer index : indexes) {
+      serials.add(requestList.get(index).getSerialNumber());
+    }
+
+    try {
+      List<CertStatusInfo> infos = store.getCertStatuses(now, reqIssuer, serials,
+          repOpt.isIncludeCerthash(), repOpt.isIncludeInvalidityDate(),
+          responder.getResponderOption().isInheritCaRevocation());
+      if (infos != null) {
+        for (int i = 0; i < indexes.size(); i++) {
+          statuses[indexes.get(i)] = infos.get(i);
+        }
+      }
+    } catch (OcspStoreException ex) {
+      // the statuses will be retrieved one by one
+      LogUtil.warn(LOG, ex, "getCertStatuses() of CertStatusStore " + store.getName());
+    }
+  } // method queryCertStatuses
+
+  private OcspRespWithCacheInfo processCertReq(Date now,
+      AtomicBoolean unknownAsRevoked, CertID certId, CertStatusInfo prefetchedStatus,
+      OCSPRespBuilder builder, ResponderImpl responder,
+      OcspServerConf.ResponseOption repOpt, OcspRespControl repControl) {
     CertStatusInfo certStatusInfo = null;
-    boolean exceptionOccurs = false;
 
     BigInteger serial = certId.getSerialNumber();
 
     RequestIssuer reqIssuer = certId.getIssuer();
-    Date now = new Date();
-    for (OcspStore store : responder.getStores()) {
-      if (!store.knowsIssuer(reqIssuer)) {
-        continue;
-      }
+    // fast path: the store the issuer is routed to. If it fails or does not know the certificate,
+    // the other stores knowing the issuer are tried in the configured order.
+    OcspStore routedStore = responder.getStore(reqIssuer);
+    boolean exceptionOccurs = false;
 
-      try {
-        certStatusInfo = store.getCertStatus(now, certId.getIssuer(), serial,
-            repOpt.isIncludeCerthash(), repOpt.isIncludeInvalidityDate(),
-            responder.getResponderOption().isInheritCaRevocation());
+    if (routedStore != null) {
+      List<OcspStore> stores = responder.getStores();
+      for (int i = -1; i < stores.size(); i++) {
+        OcspStore store;
+        if (i == -1) {
+          store = routedStore;
+        } else {
+          store = stores.get(i);
+          if (store == routedStore || !store.knowsIssuer(reqIssuer)) {
+            continue;
+          }
+        }
+
+        try {
+          // the prefetched status has been retrieved from the routed store
+          certStatusInfo = (store == routedStore && prefetchedStatus != null) ? prefetchedStatus
+              : store.getCertStatus(now, reqIssuer, serial, repOpt.isIncludeCerthash(),
+                  repOpt.isIncludeInvalidityDate(), responder.getResponderOption().isInheritCaRevocation());
+        } catch (OcspStoreException ex) {
+          exceptionOccurs = true;
+          LogUtil.error(LOG, ex, "getCertStatus() of CertStatusStore " + store.getName());
+          continue;
+        }
 
         if (certStatusInfo != null) {
           CertStatus status = certStatusInfo.getCertStatus();
@@ -861,9 +1067,6 @@ public class OcspServerImpl implements OcspServer {
           exceptionOccurs = false;
           break;
         }
-      } catch (OcspStoreException ex) {
-        exceptionOccurs = true;
-        LogUtil.error(LOG, ex, "getCertStatus() of CertStatusStore " + store.getName());
       }
     }
 
@@ -895,12 +1098,13 @@ public class OcspServerImpl implements OcspServer {
     // certStatusInfo may not be null in any case, since at least one store is configured
     Date thisUpdate = certStatusInfo.getThisUpdate();
     if (thisUpdate == null) {
-      thisUpdate = new Date();
+      thisUpdate = now;
     }
 
     Date nextUpdate = certStatusInfo.getNextUpdate();
 
-    List<Extension> extensions = new LinkedList<>();
+    // created only if required, most responses do not have any single extension
+    List<Extension> extensions = null;
     unknownAsRevoked.set(false);
     byte[] certStatus;
     switch (certStatusInfo.getCertStatus()) {
@@ -929,7 +1133,7 @@ public class OcspServerImpl implements OcspServer {
         Date invalidityDate = revInfo.getInvalidityTime();
         if (repOpt.isIncludeInvalidityDate() && invalidityDate != null
             && !invalidityDate.equals(revInfo.getRevocationTime())) {
-          extensions.add(Template.getInvalidityDateExtension(invalidityDate));
+          extensions = addExtension(extensions, Template.getInvalidityDateExtension(invalidityDate));
         }
         break;
       default:
@@ -942,11 +1146,11 @@ public class OcspServerImpl implements OcspServer {
 
     byte[] certHash = certStatusInfo.getCertHash();
     if (certHash != null) {
-      extensions.add(Template.getCertHashExtension(certStatusInfo.getCertHashAlgo(), certHash));
+      extensions = addExtension(extensions, Template.getCertHashExtension(certStatusInfo.getCertHashAlgo(), certHash));
     }
 
     if (certStatusInfo.getArchiveCutOff() != null) {
-      extensions.add(Template.getArchiveOffExtension(certStatusInfo.getArchiveCutOff()));
+      extensions = addExtension(extensions, Template.getArchiveOffExtension(certStatusInfo.getArchiveCutOff()));
     }
 
     if (LOG.isDebugEnabled()) {
@@ -980,6 +1184,12 @@ public class OcspServerImpl implements OcspServer {
     return null;
   } // method processCertReq
 
+  private static List<Extension> addExtension(List<Extension> extensions, Extension extension) {
+    List<Extension> ret = (extensions == null) ? new ArrayList<>(3) : extensions;
+    ret.add(extension);
+    return ret;
+  }
+
   @Override
   public boolean healthCheck(Responder responder2) {
     ResponderImpl responder = (ResponderImpl) responder2;
@@ -18,10 +18,14 @@
 package org.xipki.ocsp.server;
 
 import org.xipki.ocsp.api.OcspStore;
+import org.xipki.ocsp.api.RequestIssuer;
 import org.xipki.ocsp.api.Responder;
 import org.xipki.ocsp.server.OcspServerConf.ResponseOption;
 
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.xipki.util.Args.notEmpty;
 import static org.xipki.util.Args.notNull;
@@ -45,6 +49,9 @@ public class ResponderImpl implements Responder {
 
   private final List<OcspStore> stores;
 
+  // routing table issuer -> store, contains only the issuers known by one of the stores.
+  private final ConcurrentHashMap<RequestIssuer, OcspStore> issuerStores = new ConcurrentHashMap<>();
+
   ResponderImpl(
       ResponderOption responderOption, RequestOption requestOption,
       ResponseOption responseOption, ResponseSigner signer, List<OcspStore> stores) {
@@ -75,6 +82,59 @@ public class ResponderImpl implements Responder {
     return stores;
   }
 
+  /**
+   * Returns the store responsible for the given issuer. This is the first store (in the
+   * configured order) knowing the issuer at the time the route is built. The route is validated
+   * with {@link OcspStore#knowsIssuer(RequestIssuer)} on each call, and rebuilt if the store
+   * does not know the issuer any more, e.g. after the store has been refreshed.
+   *
+   * @param reqIssuer the requested issuer.
+   * @return the store knowing the issuer, or {@code null} if no store knows it.
+   */
+  public OcspStore getStore(RequestIssuer reqIssuer) {
+    if (stores.size() == 1) {
+      OcspStore store = stores.get(0);
+      return store.knowsIssuer(reqIssuer) ? store : null;
+    }
+
+    OcspStore store = issuerStores.get(reqIssuer);
+    if (store != null) {
+      if (store.knowsIssuer(reqIssuer)) {
+        return store;
+      }
+      issuerStores.remove(reqIssuer);
+    }
+
+    for (OcspStore m : stores) {
+      if (m.knowsIssuer(reqIssuer)) {
+        issuerStores.put(detach(reqIssuer), m);
+        return m;
+      }
+    }
+
+    // unknown issuers are not cached, so that the table cannot be flooded by requests
+    return null;
+  } // method getStore
+
+  /**
+   * Copies the issuer, so that the routing table does not reference the whole request.
+   */
+  private static RequestIssuer detach(RequestIssuer reqIssuer) {
+    byte[] data = reqIssuer.getData();
+    int from = reqIssuer.getFrom();
+    int length = reqIssuer.getLength();
+    if (from == 0 && length == data.length) {
+      return reqIssuer;
+    }
+
+    try {
+      return new RequestIssuer(Arrays.copyOfRange(data, from, from + length));
+    } catch (NoSuchAlgorithmException ex) {
+      // cannot happen, the hash algorithm has been parsed before
+      return reqIssuer;
+    }
+  } // method detach
+
   @Override
   public int getMaxRequestSize() {
     return requestOption.getMaxRequestSize();
@@ -0,0 +1,358 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.ocsp.CertID;
+import org.bouncycastle.asn1.ocsp.OCSPRequest;
+import org.bouncycastle.asn1.ocsp.Request;
+import org.bouncycastle.asn1.ocsp.TBSRequest;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ocsp.api.OcspStore;
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.ocsp.server.store.IssuerEntry;
+import org.xipki.ocsp.server.store.ResponseCacher;
+import org.xipki.security.HashAlgo;
+import org.xipki.security.X509Cert;
+import org.xipki.util.LogUtil;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.xipki.util.Args.notNull;
+import static org.xipki.util.Args.positive;
+
+/**
+ * Generates the responses in background and stores them in the {@link ResponseCacher}, so that
+ * the requests can be answered without signing. Each run processes only the certificates whose
+ * status has been changed since the last run, all certificates are processed at least once
+ * within the fullInterval, before the cached responses expire.
+ * <p>
+ * Since the cached responses contain the CertID of the request, a response is generated for
+ * each CertID hash algorithm allowed by the responder.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+class ResponsePresigner implements Closeable {
+
+  /**
+   * Responder whose responses are pre-signed.
+   */
+  interface Target {
+
+    String getName();
+
+    boolean isSignatureRequired();
+
+    Set<HashAlgo> getHashAlgos();
+
+    List<OcspStore> getStores();
+
+    /**
+     * Generates the response of the request and caches it.
+     * @param request the DER-encoded OCSP request.
+     * @throws Exception if the response could not be generated.
+     */
+    void generate(byte[] request) throws Exception;
+
+  } // interface Target
+
+  private static class StoppedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+  } // class StoppedException
+
+  private static final Logger LOG = LoggerFactory.getLogger(ResponsePresigner.class);
+
+  // tolerance of the clocks between the status database and this server
+  private static final long SEC_CLOCK_TOLERANCE = 60;
+
+  private final BooleanSupplier cacheOnService;
+
+  private final List<Target> targets;
+
+  private final long intervalSec;
+
+  private final long fullIntervalSec;
+
+  private final long nanosPerResponse;
+
+  private final AtomicBoolean stopped = new AtomicBoolean(false);
+
+  private final AtomicLong generated = new AtomicLong();
+
+  // number of submitted but not yet generated responses, notified when it drops to 0
+  private final AtomicLong pending = new AtomicLong();
+
+  private final ThreadPoolExecutor workers;
+
+  private ScheduledThreadPoolExecutor scheduler;
+
+  private long nextPermitNanos;
+
+  // in seconds
+  private long lastRunStart;
+
+  // in seconds
+  private long lastFullRunStart;
+
+  /**
+   * Constructor.
+   * @param cacheOnService whether the response cache is on service.
+   * @param targets the responders whose responses are pre-signed.
+   * @param intervalSec interval between two runs in seconds.
+   * @param fullIntervalSec interval between two runs processing all certificates in seconds.
+   * @param threads number of threads generating the responses.
+   * @param maxResponsesPerSecond maximal number of responses generated per second, 0 for unlimited.
+   */
+  ResponsePresigner(BooleanSupplier cacheOnService, List<Target> targets, long intervalSec,
+      long fullIntervalSec, int threads, int maxResponsesPerSecond) {
+    this.cacheOnService = notNull(cacheOnService, "cacheOnService");
+    this.targets = notNull(targets, "targets");
+    this.intervalSec = positive(intervalSec, "intervalSec");
+    this.fullIntervalSec = positive(fullIntervalSec, "fullIntervalSec");
+    this.nanosPerResponse = maxResponsesPerSecond == 0 ? 0 : 1_000_000_000L / maxResponsesPerSecond;
+    this.workers = new ThreadPoolExecutor(positive(threads, "threads"), threads, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(threads * 100), new ThreadPoolExecutor.CallerRunsPolicy());
+  } // constructor
+
+  /**
+   * Creates the {@link Target} of the given responder.
+   * @param server the server generating and caching the responses.
+   * @param name the name of the responder.
+   * @param responder the responder.
+   * @return the target.
+   */
+  static Target target(OcspServerImpl server, String name, ResponderImpl responder) {
+    return new Target() {
+
+      @Override
+      public String getName() {
+        return name;
+      }
+
+      @Override
+      public boolean isSignatureRequired() {
+        return responder.getRequestOption().isSignatureRequired();
+      }
+
+      @Override
+      public Set<HashAlgo> getHashAlgos() {
+        return responder.getRequestOption().getHashAlgos();
+      }
+
+      @Override
+      public List<OcspStore> getStores() {
+        return responder.getStores();
+      }
+
+      @Override
+      public void generate(byte[] request) {
+        server.answer(responder, request, false, true);
+      }
+
+    };
+  } // method target
+
+  void start() {
+    scheduler = new ScheduledThreadPoolExecutor(1);
+    scheduler.scheduleWithFixedDelay(this::run, 60, intervalSec, TimeUnit.SECONDS);
+    LOG.info("started pre-signing responses every {} seconds, all responses every {} seconds",
+        intervalSec, fullIntervalSec);
+  } // method start
+
+  @Override
+  public void close() {
+    stopped.set(true);
+
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+      scheduler = null;
+    }
+
+    workers.shutdownNow();
+  } // method close
+
+  /**
+   * Pre-signs the responses once, returns after all responses are generated.
+   */
+  void run() {
+    if (!cacheOnService.getAsBoolean()) {
+      LOG.warn("response cacher is not on service, skip pre-signing");
+      return;
+    }
+
+    long startSec = System.currentTimeMillis() / 1000;
+    boolean full = lastFullRunStart == 0 || startSec - lastFullRunStart >= fullIntervalSec;
+    long sinceInSec = full ? 0 : Math.max(0, lastRunStart - SEC_CLOCK_TOLERANCE);
+
+    generated.set(0);
+    try {
+      for (Target target : targets) {
+        presign(target, sinceInSec);
+      }
+
+      awaitPending();
+    } catch (StoppedException | InterruptedException ex) {
+      LOG.info("pre-signing responses stopped");
+      return;
+    } catch (Throwable th) {
+      LogUtil.error(LOG, th, "error while pre-signing responses");
+      return;
+    }
+
+    lastRunStart = startSec;
+    if (full) {
+      lastFullRunStart = startSec;
+    }
+
+    LOG.info("pre-signed {} responses ({}) in {} seconds", generated.get(),
+        full ? "all certificates" : "certificates changed since " + sinceInSec,
+        System.currentTimeMillis() / 1000 - startSec);
+  } // method run
+
+  long getGenerated() {
+    return generated.get();
+  }
+
+  private void presign(Target target, long sinceInSec) throws Exception {
+    if (target.isSignatureRequired()) {
+      LOG.warn("responder {}: signed request is required, pre-signing responses is not possible",
+          target.getName());
+      return;
+    }
+
+    HashAlgo[] hashAlgos = target.getHashAlgos().toArray(new HashAlgo[0]);
+    if (hashAlgos.length == 0) {
+      return;
+    }
+
+    for (OcspStore store : target.getStores()) {
+      for (X509Cert issuerCert : store.getIssuerCerts()) {
+        IssuerEntry issuer = new IssuerEntry(0, issuerCert);
+        List<byte[]> nameAndKeyHashes = new ArrayList<>(hashAlgos.length);
+        for (HashAlgo hashAlgo : hashAlgos) {
+          nameAndKeyHashes.add(issuer.getEncodedHash(hashAlgo));
+        }
+
+        RequestIssuer reqIssuer = new RequestIssuer(hashAlgos[0], nameAndKeyHashes.get(0));
+        boolean supported = store.listSerialNumbers(reqIssuer, sinceInSec, serialNumber -> {
+          for (int i = 0; i < hashAlgos.length; i++) {
+            submit(target, hashAlgos[i], nameAndKeyHashes.get(i), serialNumber);
+          }
+        });
+
+        if (!supported) {
+          LOG.info("store {} does not support listing certificates, skip pre-signing", store.getName());
+          break;
+        }
+      }
+    }
+  } // method presign
+
+  private void submit(Target target, HashAlgo hashAlgo, byte[] nameAndKeyHash, BigInteger serialNumber) {
+    if (stopped.get()) {
+      throw new StoppedException();
+    }
+
+    throttle();
+
+    byte[] request;
+    try {
+      request = buildRequest(hashAlgo, nameAndKeyHash, serialNumber);
+    } catch (IOException ex) {
+      LogUtil.warn(LOG, ex, "could not build request for serial number " + serialNumber.toString(16));
+      return;
+    }
+
+    pending.incrementAndGet();
+    workers.execute(() -> {
+      try {
+        target.generate(request);
+        generated.incrementAndGet();
+      } catch (Throwable th) {
+        LogUtil.warn(LOG, th, "could not pre-sign response for serial number " + serialNumber.toString(16));
+      } finally {
+        if (pending.decrementAndGet() == 0) {
+          synchronized (pending) {
+            pending.notifyAll();
+          }
+        }
+      }
+    });
+  } // method submit
+
+  // waits until all submitted responses are generated
+  private void awaitPending() throws InterruptedException {
+    synchronized (pending) {
+      while (pending.get() > 0) {
+        pending.wait();
+      }
+    }
+  } // method awaitPending
+
+  private void throttle() {
+    if (nanosPerResponse == 0) {
+      return;
+    }
+
+    long now = System.nanoTime();
+    if (nextPermitNanos > now) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(nextPermitNanos - now);
+      } catch (InterruptedException ex) {
+        throw new StoppedException();
+      }
+    }
+    nextPermitNanos = Math.max(now, nextPermitNanos) + nanosPerResponse;
+  } // method throttle
+
+  private static byte[] buildRequest(HashAlgo hashAlgo, byte[] nameAndKeyHash, BigInteger serialNumber)
+      throws IOException {
+    // nameAndKeyHash: OCTET STRING of issuerNameHash followed by OCTET STRING of issuerKeyHash
+    int hlen = hashAlgo.getLength();
+    byte[] nameHash = Arrays.copyOfRange(nameAndKeyHash, 2, 2 + hlen);
+    byte[] keyHash = Arrays.copyOfRange(nameAndKeyHash, 4 + hlen, 4 + 2 * hlen);
+
+    // encoded as by the clients, e.g. without parameters for SHA-2 and SHA-3
+    CertID certId = new CertID(hashAlgo.getAlgorithmIdentifier(),
+        new DEROctetString(nameHash), new DEROctetString(keyHash), new ASN1Integer(serialNumber));
+    TBSRequest tbsRequest = new TBSRequest(null, new DERSequence(new Request(certId, null)), (Extensions) null);
+    return new OCSPRequest(tbsRequest, null).getEncoded();
+  } // method buildRequest
+
+}
@@ -0,0 +1,326 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import org.xipki.datasource.DataAccessException;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.ocsp.api.CertStatusInfo;
+import org.xipki.ocsp.api.CertStatusInfo.CertStatus;
+import org.xipki.ocsp.api.CertStatusInfo.UnknownCertBehaviour;
+import org.xipki.ocsp.api.OcspStore;
+import org.xipki.security.CertRevocationInfo;
+import org.xipki.security.CrlReason;
+import org.xipki.security.HashAlgo;
+
+import java.math.BigInteger;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Base class of the OcspStores which read the certificate status from a database table with
+ * one row per certificate.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+public abstract class BaseDbCertStatusStore extends OcspStore {
+
+  /**
+   * Status of a certificate read from the database or the status index.
+   */
+  protected static class StatusRow {
+
+    // in seconds
+    private final long notBefore;
+
+    // in seconds
+    private final long notAfter;
+
+    private final boolean revoked;
+
+    private final int reason;
+
+    // in seconds
+    private final long revTime;
+
+    // in seconds
+    private final long invalTime;
+
+    private final byte[] certHash;
+
+    private final int crlId;
+
+    /**
+     * Constructor.
+     * @param notBefore notBefore in seconds, 0 if unknown.
+     * @param notAfter notAfter in seconds, 0 if unknown.
+     * @param revoked whether the certificate is revoked.
+     * @param reason the revocation reason.
+     * @param revTime the revocation time in seconds.
+     * @param invalTime the invalidity time in seconds, 0 if not present.
+     * @param certHash the hash of the certificate, may be {@code null}.
+     * @param crlId id of the CRL from which the status is imported, 0 if not applicable.
+     */
+    public StatusRow(long notBefore, long notAfter, boolean revoked, int reason, long revTime, long invalTime,
+                     byte[] certHash, int crlId) {
+      this.notBefore = notBefore;
+      this.notAfter = notAfter;
+      this.revoked = revoked;
+      this.reason = reason;
+      this.revTime = revTime;
+      this.invalTime = invalTime;
+      this.certHash = certHash;
+      this.crlId = crlId;
+    }
+
+    public int getCrlId() {
+      return crlId;
+    }
+
+  } // class StatusRow
+
+  /**
+   * Reader of the {@link StatusRow} at the current position of a {@link ResultSet}.
+   */
+  protected interface StatusRowReader {
+
+    StatusRow read(ResultSet rs) throws SQLException;
+
+  } // interface StatusRowReader
+
+  /**
+   * Maximal number of serial numbers in the SQL built by
+   * {@link DataSourceWrapper#buildArraySql(String, int)} for {@link #queryStatusRows}.
+   */
+  protected static final int MAX_SERIALS_PER_QUERY = 10;
+
+  /**
+   * Maximal number of serial numbers read by one query of {@link #listSerialNumbers}.
+   */
+  protected static final int LIST_SERIALS_PAGE_SIZE = 1000;
+
+  protected DataSourceWrapper datasource;
+
+  protected HashAlgo certHashAlgo;
+
+  /**
+   * Retrieves the status of the given certificates with queries
+   * {@code ... WHERE <issuer>=? AND <serial> IN (?,...,?)}.
+   * @param sql the SQL with {@link #MAX_SERIALS_PER_QUERY} serial number parameters.
+   * @param issuerId the id of the issuer in the database, Integer or String.
+   * @param serialNumbers the positive serial numbers.
+   * @param radix the radix of the serial numbers in the database.
+   * @param serialColumn the column of the serial number.
+   * @param reader the reader of the status rows.
+   * @return the status rows with serial number as key.
+   * @throws DataAccessException if database error occurs.
+   */
+  protected Map<BigInteger, StatusRow> queryStatusRows(
+      String sql, Object issuerId, List<BigInteger> serialNumbers, int radix, String serialColumn,
+      StatusRowReader reader) throws DataAccessException {
+    final int size = serialNumbers.size();
+    Map<BigInteger, StatusRow> rows = new HashMap<>();
+    for (int from = 0; from < size; from += MAX_SERIALS_PER_QUERY) {
+      int to = Math.min(size, from + MAX_SERIALS_PER_QUERY);
+
+      ResultSet rs = null;
+      PreparedStatement ps = datasource.prepareStatement(sql);
+      try {
+        int idx = 1;
+        ps.setObject(idx++, issuerId);
+        for (int i = from; i < from + MAX_SERIALS_PER_QUERY; i++) {
+          // fill the unused parameters with the last serial number
+          ps.setString(idx++, serialNumbers.get(Math.min(i, to - 1)).toString(radix));
+        }
+
+        rs = ps.executeQuery();
+        while (rs.next()) {
+          rows.put(new BigInteger(rs.getString(serialColumn), radix), reader.read(rs));
+        }
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      } finally {
+        datasource.releaseResources(ps, rs);
+      }
+    }
+
+    return rows;
+  } // method queryStatusRows
+
+  /**
+   * Lists the serial numbers of an issuer page by page, ordered by a unique key column.
+   * The SQL selects the key and the serial number (in this order) with the parameters issuer,
+   * last key and, if {@code minLastUpdate} is not {@code null}, the minimal last update, e.g.
+   * {@code SELECT ID,SN FROM CERT WHERE IID=? AND ID>? [AND LUPDATE>=?] ORDER BY ID}.
+   * @param sql the SQL.
+   * @param issuerId the id of the issuer in the database, Integer or String.
+   * @param firstKey a value less than all keys.
+   * @param minLastUpdate the minimal last update, {@code null} to list all certificates.
+   * @param radix the radix of the serial numbers in the database.
+   * @param consumer consumer of the serial numbers.
+   * @throws DataAccessException if database error occurs.
+   */
+  protected void listSerialNumbers(
+      String sql, Object issuerId, Object firstKey, Long minLastUpdate, int radix, Consumer<BigInteger> consumer)
+      throws DataAccessException {
+    Object lastKey = firstKey;
+    while (true) {
+      List<BigInteger> serials = new ArrayList<>(LIST_SERIALS_PAGE_SIZE);
+      ResultSet rs = null;
+      PreparedStatement ps = datasource.prepareStatement(sql);
+      try {
+        ps.setObject(1, issuerId);
+        ps.setObject(2, lastKey);
+        if (minLastUpdate != null) {
+          ps.setLong(3, minLastUpdate);
+        }
+
+        rs = ps.executeQuery();
+        while (rs.next()) {
+          lastKey = rs.getObject(1);
+          serials.add(new BigInteger(rs.getString(2), radix));
+        }
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      } finally {
+        datasource.releaseResources(ps, rs);
+      }
+
+      // consume after the database resources are released
+      for (BigInteger serial : serials) {
+        consumer.accept(serial);
+      }
+
+      if (serials.size() < LIST_SERIALS_PAGE_SIZE) {
+        return;
+      }
+    }
+  } // method listSerialNumbers
+
+  /**
+   * Builds the {@link CertStatusInfo}.
+   * @param time the reference time.
+   * @param row the status of the certificate, {@code null} if the certificate is unknown.
+   * @param crlInfo the CRL the status is imported from, {@code null} if not applicable.
+   * @param issuerNotBefore the notBefore of the issuer certificate.
+   * @param issuerRevInfo the revocation information of the issuer, may be {@code null}.
+   * @param inheritCaRevocation whether to inherit the revocation of the issuer.
+   * @return the status.
+   */
+  protected CertStatusInfo buildCertStatusInfo(
+      Date time, StatusRow row, CrlInfo crlInfo, Date issuerNotBefore, CertRevocationInfo issuerRevInfo,
+      boolean inheritCaRevocation) {
+    Date thisUpdate;
+    Date nextUpdate;
+    if (crlInfo == null) {
+      thisUpdate = new Date();
+      nextUpdate = null;
+    } else {
+      thisUpdate = crlInfo.getThisUpdate();
+      nextUpdate = crlInfo.getNextUpdate();
+    }
+
+    boolean ignore = false;
+    if (row != null) {
+      long timeInSec = time.getTime() / 1000;
+      if (ignoreNotYetValidCert) {
+        if (row.notBefore != 0 && timeInSec < row.notBefore) {
+          ignore = true;
+        }
+      }
+
+      if (!ignore && ignoreExpiredCert) {
+        if (row.notAfter != 0 && timeInSec > row.notAfter) {
+          ignore = true;
+        }
+      }
+    }
+
+    CertStatusInfo certStatusInfo;
+    if (row == null) {
+      certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
+    } else if (ignore) {
+      certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
+    } else {
+      if (row.revoked) {
+        long revTime = row.revTime;
+        long invalTime = row.invalTime;
+        Date invTime = (invalTime == 0 || invalTime == revTime) ? null : new Date(invalTime * 1000);
+        CertRevocationInfo revInfo = new CertRevocationInfo(row.reason, new Date(revTime * 1000), invTime);
+        certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
+            certHashAlgo, row.certHash, thisUpdate, nextUpdate, null);
+      } else {
+        certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo, row.certHash,
+            thisUpdate, nextUpdate, null);
+      }
+    }
+
+    if (includeCrlId && crlInfo != null) {
+      certStatusInfo.setCrlId(crlInfo.getCrlId());
+    }
+
+    if (includeArchiveCutoff) {
+      if (retentionInterval != 0) {
+        Date date = (retentionInterval < 0)
+          ? issuerNotBefore // expired certificate remains in status store forever
+          : new Date(Math.max(issuerNotBefore.getTime(), System.currentTimeMillis() - DAY * retentionInterval));
+
+        certStatusInfo.setArchiveCutOff(date);
+      }
+    }
+
+    if ((!inheritCaRevocation) || issuerRevInfo == null) {
+      return certStatusInfo;
+    }
+
+    CertStatus certStatus = certStatusInfo.getCertStatus();
+    boolean replaced = false;
+    if (certStatus == CertStatus.GOOD) {
+      replaced = true;
+    } else if (certStatus == CertStatus.UNKNOWN || certStatus == CertStatus.IGNORE) {
+      if (unknownCertBehaviour == UnknownCertBehaviour.good) {
+        replaced = true;
+      }
+    } else if (certStatus == CertStatus.REVOKED) {
+      if (certStatusInfo.getRevocationInfo().getRevocationTime().after(issuerRevInfo.getRevocationTime())) {
+        replaced = true;
+      }
+    }
+
+    if (replaced) {
+      CertRevocationInfo newRevInfo = (issuerRevInfo.getReason() == CrlReason.CA_COMPROMISE)
+          ? issuerRevInfo
+          : new CertRevocationInfo(CrlReason.CA_COMPROMISE, issuerRevInfo.getRevocationTime(),
+                issuerRevInfo.getInvalidityTime());
+
+      certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
+          certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
+          certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(), certStatusInfo.getCertprofile());
+    }
+    return certStatusInfo;
+  } // method buildCertStatusInfo
+
+}
@@ -23,15 +23,11 @@ import org.slf4j.LoggerFactory;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.ocsp.api.CertStatusInfo;
-import org.xipki.ocsp.api.CertStatusInfo.CertStatus;
-import org.xipki.ocsp.api.CertStatusInfo.UnknownCertBehaviour;
-import org.xipki.ocsp.api.OcspStore;
 import org.xipki.ocsp.api.OcspStoreException;
 import org.xipki.ocsp.api.RequestIssuer;
 import org.xipki.ocsp.server.IssuerFilter;
 import org.xipki.ocsp.server.OcspServerConf;
 import org.xipki.security.CertRevocationInfo;
-import org.xipki.security.CrlReason;
 import org.xipki.security.HashAlgo;
 import org.xipki.security.X509Cert;
 import org.xipki.security.util.X509Util;
@@ -50,6 +46,7 @@ import java.util.*;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import static org.xipki.util.Args.notNull;
 
@@ -60,7 +57,7 @@ import static org.xipki.util.Args.notNull;
  * @since 2.0.0
  */
 
-public class CaDbCertStatusStore extends OcspStore {
+public class CaDbCertStatusStore extends BaseDbCertStatusStore {
 
   private class StoreUpdateService implements Runnable {
 
@@ -71,8 +68,6 @@ public class CaDbCertStatusStore extends OcspStore {
 
   } // class StoreUpdateService
 
-  private DataSourceWrapper datasource;
-
   private static final Logger LOG = LoggerFactory.getLogger(CaDbCertStatusStore.class);
 
   private final StoreUpdateService storeUpdateService = new StoreUpdateService();
@@ -89,12 +84,22 @@ public class CaDbCertStatusStore extends OcspStore {
 
   private String sqlCsWithCertHash;
 
+  private String sqlCsArrayNoRit;
+
+  private String sqlCsArray;
+
+  private String sqlCsArrayNoRitWithCertHash;
+
+  private String sqlListSerials;
+
+  private String sqlListSerialsSince;
+
+  private String sqlCsArrayWithCertHash;
+
   private IssuerFilter issuerFilter;
 
   private final IssuerStore issuerStore = new IssuerStore();
 
-  private HashAlgo certHashAlgo;
-
   private boolean initialized;
 
   private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
@@ -249,17 +254,8 @@ public class CaDbCertStatusStore extends OcspStore {
         sql = includeRit ? sqlCs : sqlCsNoRit;
       }
 
-      Date thisUpdate = new Date();
-
       ResultSet rs = null;
-
-      boolean unknown = true;
-      boolean ignore = false;
-      String b64CertHash = null;
-      boolean revoked = false;
-      int reason = 0;
-      long revTime = 0;
-      long invalTime = 0;
+      StatusRow row = null;
 
       PreparedStatement ps = datasource.prepareStatement(sql);
 
@@ -269,117 +265,93 @@ public class CaDbCertStatusStore extends OcspStore {
         rs = ps.executeQuery();
 
         if (rs.next()) {
-          unknown = false;
-
-          long timeInSec = time.getTime() / 1000;
-          if (ignoreNotYetValidCert) {
-            long notBeforeInSec = rs.getLong("NBEFORE");
-            if (notBeforeInSec != 0 && timeInSec < notBeforeInSec) {
-              ignore = true;
-            }
-          }
-
-          if (!ignore && ignoreExpiredCert) {
-            long notAfterInSec = rs.getLong("NAFTER");
-            if (notAfterInSec != 0 && timeInSec > notAfterInSec) {
-              ignore = true;
-            }
-          }
-
-          if (!ignore) {
-            if (includeCertHash) {
-              b64CertHash = rs.getString("SHA1");
-            }
-
-            revoked = rs.getBoolean("REV");
-            if (revoked) {
-              reason = rs.getInt("RR");
-              revTime = rs.getLong("RT");
-              if (includeRit) {
-                invalTime = rs.getLong("RIT");
-              }
-            }
-          }
-        } // end if (rs.next())
+          row = readStatusRow(rs, includeCertHash, includeRit);
+        }
       } catch (SQLException ex) {
         throw datasource.translate(sql, ex);
       } finally {
         releaseDbResources(ps, rs);
       }
 
-      final Date nextUpdate = null;
+      return buildCertStatusInfo(time, row, null, issuer.getNotBefore(), issuer.getRevocationInfo(),
+          inheritCaRevocation);
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
 
-      CertStatusInfo certStatusInfo;
-      if (unknown) {
-        certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
-      } else if (ignore) {
-        certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
-      } else {
-        byte[] certHash = (b64CertHash == null) ? null : Base64.decodeFast(b64CertHash);
-        if (revoked) {
-          Date invTime = (invalTime == 0 || invalTime == revTime) ? null : new Date(invalTime * 1000);
-          CertRevocationInfo revInfo = new CertRevocationInfo(reason, new Date(revTime * 1000), invTime);
-          certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
-              certHashAlgo, certHash, thisUpdate, nextUpdate, null);
-        } else {
-          certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo, certHash, thisUpdate, nextUpdate, null);
-        }
-      }
+  } // method getCertStatus0
 
-      if (includeArchiveCutoff) {
-        if (retentionInterval != 0) {
-          Date date;
-          // expired certificate remains in status store forever.
-          if (retentionInterval < 0) {
-            date = issuer.getNotBefore();
-          } else {
-            long nowInMs = System.currentTimeMillis();
-            long dateInMs = Math.max(issuer.getNotBefore().getTime(), nowInMs - DAY * retentionInterval);
-            date = new Date(dateInMs);
-          }
+  @Override
+  protected List<CertStatusInfo> getCertStatuses0(
+      Date time, RequestIssuer reqIssuer, List<BigInteger> serialNumbers,
+      boolean includeCertHash, boolean includeRit, boolean inheritCaRevocation)
+      throws OcspStoreException {
+    if (!initialized) {
+      throw new OcspStoreException("initialization of CertStore is still in process");
+    }
 
-          certStatusInfo.setArchiveCutOff(date);
-        }
-      }
+    String sql;
+    if (includeCertHash) {
+      sql = includeRit ? sqlCsArrayWithCertHash : sqlCsArrayNoRitWithCertHash;
+    } else {
+      sql = includeRit ? sqlCsArray : sqlCsArrayNoRit;
+    }
 
-      if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
-        return certStatusInfo;
+    try {
+      IssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
+      if (issuer == null) {
+        return null;
       }
 
-      CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
-      CertStatus certStatus = certStatusInfo.getCertStatus();
-      boolean replaced = false;
-      if (certStatus == CertStatus.GOOD) {
-        replaced = true;
-      } else if (certStatus == CertStatus.UNKNOWN || certStatus == CertStatus.IGNORE) {
-        if (unknownCertBehaviour == UnknownCertBehaviour.good) {
-          replaced = true;
-        }
-      } else if (certStatus == CertStatus.REVOKED) {
-        if (certStatusInfo.getRevocationInfo().getRevocationTime().after(caRevInfo.getRevocationTime())) {
-          replaced = true;
+      List<BigInteger> dbSerialNumbers = new ArrayList<>(serialNumbers.size());
+      for (BigInteger serialNumber : serialNumbers) {
+        if (serialNumber.signum() == 1) {
+          dbSerialNumbers.add(serialNumber);
         }
       }
 
-      if (replaced) {
-        CertRevocationInfo newRevInfo;
-        if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
-          newRevInfo = caRevInfo;
+      Map<BigInteger, StatusRow> rows = queryStatusRows(sql, issuer.getId(), dbSerialNumbers, 16, "SN",
+          rs -> readStatusRow(rs, includeCertHash, includeRit));
+
+      List<CertStatusInfo> ret = new ArrayList<>(serialNumbers.size());
+      for (BigInteger serialNumber : serialNumbers) {
+        if (serialNumber.signum() != 1) { // non-positive serial number
+          ret.add(CertStatusInfo.getUnknownCertStatusInfo(new Date(), null));
         } else {
-          newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
-              caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
+          ret.add(buildCertStatusInfo(time, rows.get(serialNumber), null, issuer.getNotBefore(),
+              issuer.getRevocationInfo(), inheritCaRevocation));
         }
-        certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
-            certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
-            certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
-            certStatusInfo.getCertprofile());
       }
-      return certStatusInfo;
+      return ret;
     } catch (DataAccessException ex) {
       throw new OcspStoreException(ex.getMessage(), ex);
     }
+  } // method getCertStatuses0
+
+  private static StatusRow readStatusRow(ResultSet rs, boolean includeCertHash, boolean includeRit)
+      throws SQLException {
+    byte[] certHash = null;
+    if (includeCertHash) {
+      String b64CertHash = rs.getString("SHA1");
+      if (b64CertHash != null) {
+        certHash = Base64.decodeFast(b64CertHash);
+      }
+    }
 
-  } // method getCertStatus0
+    boolean revoked = rs.getBoolean("REV");
+    int reason = 0;
+    long revTime = 0;
+    long invalTime = 0;
+    if (revoked) {
+      reason = rs.getInt("RR");
+      revTime = rs.getLong("RT");
+      if (includeRit) {
+        invalTime = rs.getLong("RIT");
+      }
+    }
+    return new StatusRow(rs.getLong("NBEFORE"), rs.getLong("NAFTER"), revoked, reason, revTime, invalTime,
+        certHash, 0);
+  } // method readStatusRow
 
   /**
    * Borrow Prepared Statement.
@@ -449,6 +421,21 @@ public class CaDbCertStatusStore extends OcspStore {
     sqlCsNoRitWithCertHash = datasource.buildSelectFirstSql(1,
         "NBEFORE,NAFTER,REV,RR,RT,SHA1 FROM CERT WHERE CA_ID=? AND SN=?");
 
+    sqlCsArray = datasource.buildArraySql(
+        "SN,NBEFORE,NAFTER,REV,RR,RT,RIT FROM CERT WHERE CA_ID=? AND SN", MAX_SERIALS_PER_QUERY);
+    sqlCsArrayNoRit = datasource.buildArraySql(
+        "SN,NBEFORE,NAFTER,REV,RR,RT FROM CERT WHERE CA_ID=? AND SN", MAX_SERIALS_PER_QUERY);
+    sqlCsArrayWithCertHash = datasource.buildArraySql(
+        "SN,NBEFORE,NAFTER,REV,RR,RT,RIT,SHA1 FROM CERT WHERE CA_ID=? AND SN", MAX_SERIALS_PER_QUERY);
+    sqlCsArrayNoRitWithCertHash = datasource.buildArraySql(
+        "SN,NBEFORE,NAFTER,REV,RR,RT,SHA1 FROM CERT WHERE CA_ID=? AND SN", MAX_SERIALS_PER_QUERY);
+
+    sqlListSerials = datasource.buildSelectFirstSql(LIST_SERIALS_PAGE_SIZE, "ID ASC",
+        "ID,SN FROM CERT WHERE CA_ID=? AND ID>?");
+    // uses the index IDX_CA_LUPDATE
+    sqlListSerialsSince = datasource.buildSelectFirstSql(LIST_SERIALS_PAGE_SIZE, "ID ASC",
+        "ID,SN FROM CERT WHERE CA_ID=? AND ID>? AND LUPDATE>=?");
+
     this.certHashAlgo = HashAlgo.SHA1;
 
     try {
@@ -513,6 +500,39 @@ public class CaDbCertStatusStore extends OcspStore {
     return (issuer == null) ? null : issuer.getCert();
   } // method getIssuerCert
 
+  @Override
+  public List<X509Cert> getIssuerCerts() {
+    Set<Integer> ids = issuerStore.getIds();
+    List<X509Cert> certs = new ArrayList<>(ids.size());
+    for (Integer id : ids) {
+      IssuerEntry issuer = issuerStore.getIssuerForId(id);
+      if (issuer != null) {
+        certs.add(issuer.getCert());
+      }
+    }
+    return certs;
+  } // method getIssuerCerts
+
+  @Override
+  public boolean listSerialNumbers(RequestIssuer reqIssuer, long sinceInSec, Consumer<BigInteger> consumer)
+      throws OcspStoreException {
+    IssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
+    if (issuer == null) {
+      return true;
+    }
+
+    try {
+      if (sinceInSec == 0) {
+        listSerialNumbers(sqlListSerials, issuer.getId(), 0L, null, 16, consumer);
+      } else {
+        listSerialNumbers(sqlListSerialsSince, issuer.getId(), 0L, sinceInSec, 16, consumer);
+      }
+      return true;
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
+  } // method listSerialNumbers
+
   protected boolean isInitialized() {
     return initialized;
   }
@@ -0,0 +1,441 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * In-memory index of the certificate status, keyed by (issuer id, serial number).
+ * <p>
+ * The entries are stored as fixed-size records in direct (off-heap) {@link ByteBuffer}
+ * segments, and are located via an open-addressing hash table of primitive {@code int}s,
+ * so that no object is kept per certificate. The index supports a single writer and
+ * multiple lock-free readers.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+class CertStatusIndex {
+
+  /**
+   * Status of a certificate contained in the index.
+   */
+  static class Entry {
+
+    private final boolean revoked;
+
+    private final int reason;
+
+    private final long revTime;
+
+    private final long invalidityTime;
+
+    private final long notBefore;
+
+    private final long notAfter;
+
+    private final int crlId;
+
+    private final byte[] certHash;
+
+    private Entry(boolean revoked, int reason, long revTime, long invalidityTime,
+                  long notBefore, long notAfter, int crlId, byte[] certHash) {
+      this.revoked = revoked;
+      this.reason = reason;
+      this.revTime = revTime;
+      this.invalidityTime = invalidityTime;
+      this.notBefore = notBefore;
+      this.notAfter = notAfter;
+      this.crlId = crlId;
+      this.certHash = certHash;
+    }
+
+    public boolean isRevoked() {
+      return revoked;
+    }
+
+    public int getReason() {
+      return reason;
+    }
+
+    /**
+     * Returns the revocation time in seconds since January 1, 1970, 00:00:00 GMT.
+     * @return the revocation time.
+     */
+    public long getRevTime() {
+      return revTime;
+    }
+
+    /**
+     * Returns the invalidity time in seconds since January 1, 1970, 00:00:00 GMT.
+     * @return the invalidity time, 0 if not present.
+     */
+    public long getInvalidityTime() {
+      return invalidityTime;
+    }
+
+    public long getNotBefore() {
+      return notBefore;
+    }
+
+    public long getNotAfter() {
+      return notAfter;
+    }
+
+    public int getCrlId() {
+      return crlId;
+    }
+
+    public byte[] getCertHash() {
+      return certHash;
+    }
+
+  } // class Entry
+
+  /**
+   * Maximal length of the serial number, see RFC 5280 section 4.1.2.2.
+   */
+  private static final int MAX_SERIAL_LEN = 20;
+
+  private static final int RECORDS_PER_SEGMENT_BITS = 16;
+
+  private static final int RECORDS_PER_SEGMENT = 1 << RECORDS_PER_SEGMENT_BITS;
+
+  private static final int SEGMENT_MASK = RECORDS_PER_SEGMENT - 1;
+
+  // record layout
+  private static final int OFF_IID = 0;          // int
+
+  private static final int OFF_SN_LEN = 4;       // byte
+
+  private static final int OFF_STATUS = 5;       // byte: bit 7 revoked, bit 6 with hash, bit 0-3 reason
+
+  private static final int OFF_SN = 6;           // byte[MAX_SERIAL_LEN], followed by 2 bytes padding
+
+  private static final int OFF_CRL_ID = 28;      // int
+
+  private static final int OFF_NBEFORE = 32;     // unsigned int, seconds
+
+  private static final int OFF_NAFTER = 36;      // unsigned int, seconds
+
+  private static final int OFF_RT = 40;          // unsigned int, seconds
+
+  private static final int OFF_RIT = 44;         // unsigned int, seconds
+
+  private static final int OFF_HASH = 48;        // byte[hashLen]
+
+  private static final int FLAG_REVOKED = 0x80;
+
+  private static final int FLAG_WITH_HASH = 0x40;
+
+  private static final int MASK_REASON = 0x0F;
+
+  private static final long MAX_UINT = 0xFFFFFFFFL;
+
+  private final StampedLock lock = new StampedLock();
+
+  private final int hashLen;
+
+  private final int recordSize;
+
+  private ByteBuffer[] segments = new ByteBuffer[0];
+
+  /**
+   * Hash table, the value is (record index + 1), 0 for empty slot.
+   */
+  private int[] slots;
+
+  private int size;
+
+  private long maxLastUpdate;
+
+  /**
+   * Constructor.
+   * @param hashLen
+   *          Length of the certificate hash to be kept in the index, 0 if the hash is not kept.
+   * @param expectedSize
+   *          Expected number of entries.
+   */
+  CertStatusIndex(int hashLen, int expectedSize) {
+    this.hashLen = hashLen;
+    this.recordSize = OFF_HASH + hashLen;
+    this.slots = new int[tableSizeFor(expectedSize)];
+  }
+
+  private static int tableSizeFor(int numEntries) {
+    // load factor 0.75
+    long minCapacity = Math.max(16, (long) numEntries * 4 / 3 + 1);
+    long capacity = Long.highestOneBit(minCapacity);
+    if (capacity < minCapacity) {
+      capacity <<= 1;
+    }
+
+    if (capacity > (1 << 30)) {
+      throw new IllegalArgumentException("too many entries: " + numEntries);
+    }
+    return (int) capacity;
+  }
+
+  boolean isWithCertHash() {
+    return hashLen > 0;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Returns the maximal LUPDATE (seconds since January 1, 1970, 00:00:00 GMT) of all
+   * entries put into this index.
+   * @return the maximal last update.
+   */
+  long getMaxLastUpdate() {
+    return maxLastUpdate;
+  }
+
+  /**
+   * Adds or replaces the status of the given certificate.
+   * @return whether the certificate can be indexed. Certificates with serial number longer
+   *         than 20 bytes cannot be indexed.
+   */
+  boolean put(int iid, BigInteger serialNumber, boolean revoked, int reason, long revTime, long invalidityTime,
+              long notBefore, long notAfter, int crlId, byte[] certHash, long lastUpdate) {
+    byte[] sn = toMagnitude(serialNumber);
+    if (sn == null) {
+      return false;
+    }
+
+    int hash = hash(iid, sn);
+
+    long stamp = lock.writeLock();
+    try {
+      if (lastUpdate > maxLastUpdate) {
+        maxLastUpdate = lastUpdate;
+      }
+
+      int recordIndex = find(slots, segments, iid, sn, hash);
+      if (recordIndex == -1) {
+        if ((long) (size + 1) * 4 > (long) slots.length * 3) {
+          rehash(slots.length << 1);
+        }
+
+        recordIndex = size;
+        int segmentIndex = recordIndex >>> RECORDS_PER_SEGMENT_BITS;
+        if (segmentIndex == segments.length) {
+          ByteBuffer[] newSegments = Arrays.copyOf(segments, segmentIndex + 1);
+          newSegments[segmentIndex] = ByteBuffer.allocateDirect(RECORDS_PER_SEGMENT * recordSize);
+          segments = newSegments;
+        }
+
+        writeKey(segments, recordIndex, iid, sn);
+        insertSlot(slots, hash, recordIndex);
+        size++;
+      }
+
+      ByteBuffer segment = segments[recordIndex >>> RECORDS_PER_SEGMENT_BITS];
+      int offset = (recordIndex & SEGMENT_MASK) * recordSize;
+
+      int status = revoked ? FLAG_REVOKED | (reason & MASK_REASON) : 0;
+      if (hashLen > 0 && certHash != null && certHash.length == hashLen) {
+        status |= FLAG_WITH_HASH;
+        for (int i = 0; i < hashLen; i++) {
+          segment.put(offset + OFF_HASH + i, certHash[i]);
+        }
+      }
+
+      segment.put(offset + OFF_STATUS, (byte) status);
+      segment.putInt(offset + OFF_CRL_ID, crlId);
+      segment.putInt(offset + OFF_NBEFORE, toUint(notBefore));
+      segment.putInt(offset + OFF_NAFTER, toUint(notAfter));
+      segment.putInt(offset + OFF_RT, revoked ? toUint(revTime) : 0);
+      segment.putInt(offset + OFF_RIT, revoked ? toUint(invalidityTime) : 0);
+      return true;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  } // method put
+
+  /**
+   * Returns the status of the given certificate.
+   * @return the status of the given certificate, {@code null} if the certificate is not indexed.
+   */
+  Entry get(int iid, BigInteger serialNumber) {
+    byte[] sn = toMagnitude(serialNumber);
+    if (sn == null) {
+      return null;
+    }
+
+    int hash = hash(iid, sn);
+
+    long stamp = lock.tryOptimisticRead();
+    if (stamp != 0) {
+      try {
+        Entry entry = get0(iid, sn, hash);
+        if (lock.validate(stamp)) {
+          return entry;
+        }
+      } catch (RuntimeException ex) {
+        // concurrent modification, retry with read lock
+      }
+    }
+
+    stamp = lock.readLock();
+    try {
+      return get0(iid, sn, hash);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  } // method get
+
+  private Entry get0(int iid, byte[] sn, int hash) {
+    ByteBuffer[] segments = this.segments;
+    int recordIndex = find(slots, segments, iid, sn, hash);
+    if (recordIndex == -1) {
+      return null;
+    }
+
+    ByteBuffer segment = segments[recordIndex >>> RECORDS_PER_SEGMENT_BITS];
+    int offset = (recordIndex & SEGMENT_MASK) * recordSize;
+
+    int status = segment.get(offset + OFF_STATUS) & 0xFF;
+    byte[] certHash = null;
+    if ((status & FLAG_WITH_HASH) != 0) {
+      certHash = new byte[hashLen];
+      for (int i = 0; i < hashLen; i++) {
+        certHash[i] = segment.get(offset + OFF_HASH + i);
+      }
+    }
+
+    return new Entry((status & FLAG_REVOKED) != 0, status & MASK_REASON,
+        Integer.toUnsignedLong(segment.getInt(offset + OFF_RT)),
+        Integer.toUnsignedLong(segment.getInt(offset + OFF_RIT)),
+        Integer.toUnsignedLong(segment.getInt(offset + OFF_NBEFORE)),
+        Integer.toUnsignedLong(segment.getInt(offset + OFF_NAFTER)),
+        segment.getInt(offset + OFF_CRL_ID), certHash);
+  } // method get0
+
+  private int find(int[] slots, ByteBuffer[] segments, int iid, byte[] sn, int hash) {
+    int mask = slots.length - 1;
+    int pos = hash & mask;
+    for (int i = 0; i < slots.length; i++) {
+      int value = slots[pos];
+      if (value == 0) {
+        return -1;
+      }
+
+      int recordIndex = value - 1;
+      if (keyEquals(segments, recordIndex, iid, sn)) {
+        return recordIndex;
+      }
+      pos = (pos + 1) & mask;
+    }
+    return -1;
+  } // method find
+
+  private boolean keyEquals(ByteBuffer[] segments, int recordIndex, int iid, byte[] sn) {
+    ByteBuffer segment = segments[recordIndex >>> RECORDS_PER_SEGMENT_BITS];
+    int offset = (recordIndex & SEGMENT_MASK) * recordSize;
+    if (segment.getInt(offset + OFF_IID) != iid || segment.get(offset + OFF_SN_LEN) != sn.length) {
+      return false;
+    }
+
+    for (int i = 0; i < sn.length; i++) {
+      if (segment.get(offset + OFF_SN + i) != sn[i]) {
+        return false;
+      }
+    }
+    return true;
+  } // method keyEquals
+
+  private void writeKey(ByteBuffer[] segments, int recordIndex, int iid, byte[] sn) {
+    ByteBuffer segment = segments[recordIndex >>> RECORDS_PER_SEGMENT_BITS];
+    int offset = (recordIndex & SEGMENT_MASK) * recordSize;
+    segment.putInt(offset + OFF_IID, iid);
+    segment.put(offset + OFF_SN_LEN, (byte) sn.length);
+    for (int i = 0; i < sn.length; i++) {
+      segment.put(offset + OFF_SN + i, sn[i]);
+    }
+  } // method writeKey
+
+  private static void insertSlot(int[] slots, int hash, int recordIndex) {
+    int mask = slots.length - 1;
+    int pos = hash & mask;
+    while (slots[pos] != 0) {
+      pos = (pos + 1) & mask;
+    }
+    slots[pos] = recordIndex + 1;
+  }
+
+  private void rehash(int newCapacity) {
+    int[] newSlots = new int[newCapacity];
+    byte[] sn = new byte[MAX_SERIAL_LEN];
+    for (int recordIndex = 0; recordIndex < size; recordIndex++) {
+      ByteBuffer segment = segments[recordIndex >>> RECORDS_PER_SEGMENT_BITS];
+      int offset = (recordIndex & SEGMENT_MASK) * recordSize;
+      int iid = segment.getInt(offset + OFF_IID);
+      int snLen = segment.get(offset + OFF_SN_LEN);
+      for (int i = 0; i < snLen; i++) {
+        sn[i] = segment.get(offset + OFF_SN + i);
+      }
+      insertSlot(newSlots, hash(iid, sn, snLen), recordIndex);
+    }
+    slots = newSlots;
+  } // method rehash
+
+  private static byte[] toMagnitude(BigInteger serialNumber) {
+    if (serialNumber.signum() != 1) {
+      return null;
+    }
+
+    byte[] bytes = serialNumber.toByteArray();
+    // remove the leading sign byte
+    if (bytes[0] == 0 && bytes.length > 1) {
+      bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+    }
+    return bytes.length > MAX_SERIAL_LEN ? null : bytes;
+  }
+
+  private static int hash(int iid, byte[] sn) {
+    return hash(iid, sn, sn.length);
+  }
+
+  private static int hash(int iid, byte[] sn, int snLen) {
+    int h = iid * 0x9E3779B9;
+    for (int i = 0; i < snLen; i++) {
+      h = 31 * h + sn[i];
+    }
+
+    // finalization of MurmurHash3
+    h ^= h >>> 16;
+    h *= 0x85EBCA6B;
+    h ^= h >>> 13;
+    h *= 0xC2B2AE35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  private static int toUint(long value) {
+    // values after year 2106 are truncated to the maximal value.
+    return (int) Math.max(0, Math.min(value, MAX_UINT));
+  }
+
+}
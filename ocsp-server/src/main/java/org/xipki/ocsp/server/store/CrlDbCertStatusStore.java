@@ -144,6 +144,8 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
 
   private boolean ignoreExpiredCrls;
 
+  private int crlImportWriters;
+
   private boolean crlUpdated;
 
   private boolean firstTime = true;
@@ -165,6 +167,10 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
    * <li>ignoreExpiredCrls:
    *   <p>
    *   Whether expired CRLs are ignored, default to true.</li>
+   * <li>crlImportWriters:
+   *   <p>
+   *   Number of threads (and database connections) writing the changes of a CRL import
+   *   in parallel, default to 4.</li>
    * </ul>
    * @param datasource DataSource.
    */
@@ -208,6 +214,9 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
     value = getStrValue(sourceConf, "ignoreExpiredCrls", false);
     this.ignoreExpiredCrls = StringUtil.isBlank(value) || Boolean.parseBoolean(value);
 
+    value = getStrValue(sourceConf, "crlImportWriters", false);
+    this.crlImportWriters = StringUtil.isBlank(value) ? 4 : Integer.parseInt(value);
+
     super.datasource = datasource;
 
     value = getStrValue(sourceConf, "startupDelay", false);
@@ -305,7 +314,7 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
         }
 
         if (updateMe) {
-          ImportCrl importCrl = new ImportCrl(datasource, dir, sqlBatchCommit, ignoreExpiredCrls);
+          ImportCrl importCrl = new ImportCrl(datasource, dir, sqlBatchCommit, ignoreExpiredCrls, crlImportWriters);
 
           if (importCrl.importCrlToOcspDb()) {
             LOG.info("updated CertStore {} successfully", name);
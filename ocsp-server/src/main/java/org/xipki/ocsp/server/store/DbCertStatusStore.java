@@ -23,20 +23,17 @@ import org.slf4j.LoggerFactory;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.ocsp.api.CertStatusInfo;
-import org.xipki.ocsp.api.CertStatusInfo.CertStatus;
-import org.xipki.ocsp.api.CertStatusInfo.UnknownCertBehaviour;
-import org.xipki.ocsp.api.OcspStore;
 import org.xipki.ocsp.api.OcspStoreException;
 import org.xipki.ocsp.api.RequestIssuer;
 import org.xipki.ocsp.server.IssuerFilter;
 import org.xipki.ocsp.server.OcspServerConf;
 import org.xipki.security.CertRevocationInfo;
-import org.xipki.security.CrlReason;
 import org.xipki.security.HashAlgo;
 import org.xipki.security.X509Cert;
 import org.xipki.security.util.X509Util;
 import org.xipki.util.Base64;
 import org.xipki.util.*;
+import org.xipki.util.exception.InvalidConfException;
 
 import java.io.File;
 import java.io.IOException;
@@ -51,6 +48,7 @@ import java.util.*;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import static org.xipki.util.Args.notNull;
 
@@ -61,7 +59,7 @@ import static org.xipki.util.Args.notNull;
  * @since 2.0.0
  */
 
-public class DbCertStatusStore extends OcspStore {
+public class DbCertStatusStore extends BaseDbCertStatusStore {
 
   private class StoreUpdateService implements Runnable {
 
@@ -72,8 +70,6 @@ public class DbCertStatusStore extends OcspStore {
 
   } // class StoreUpdateService
 
-  protected DataSourceWrapper datasource;
-
   private static final Logger LOG = LoggerFactory.getLogger(DbCertStatusStore.class);
 
   private static final long MS_PER_5MIN = 300L * 1000;
@@ -92,14 +88,34 @@ public class DbCertStatusStore extends OcspStore {
 
   private String sqlCsWithCertHash;
 
+  private String sqlCsArrayNoRit;
+
+  private String sqlCsArray;
+
+  private String sqlCsArrayNoRitWithCertHash;
+
+  private String sqlCsArrayWithCertHash;
+
   private IssuerFilter issuerFilter;
 
   private final IssuerStore issuerStore = new IssuerStore();
 
-  private HashAlgo certHashAlgo;
-
   private boolean initialized;
 
+  private OcspServerConf.StatusIndex statusIndexConf;
+
+  private volatile CertStatusIndex statusIndex;
+
+  private long statusIndexFullLoadTime;
+
+  private String sqlStatusIndex;
+
+  private String sqlStatusIndexSince;
+
+  private String sqlListSerials;
+
+  private String sqlListSerialsSince;
+
   private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
 
   protected List<Runnable> getScheduledServices() {
@@ -134,8 +150,11 @@ public class DbCertStatusStore extends OcspStore {
 
       storeUpdateInProcess.set(true);
       try {
-        updateIssuers();
+        boolean issuersChanged = updateIssuers();
         updateCrls();
+        if (statusIndexConf != null) {
+          updateStatusIndex(issuersChanged);
+        }
       } finally {
         initialized = true;
         storeUpdateInProcess.set(false);
@@ -143,7 +162,11 @@ public class DbCertStatusStore extends OcspStore {
     } // end lock
   } // method updateIssuerStore
 
-  private void updateIssuers() {
+  /**
+   * Updates the issuers.
+   * @return whether the issuers have been changed.
+   */
+  private boolean updateIssuers() {
     try {
       if (initialized) {
         final String sql = "SELECT ID,REV_INFO,S1C FROM ISSUER";
@@ -188,7 +211,7 @@ public class DbCertStatusStore extends OcspStore {
           }
 
           if (issuersUnchanged) {
-            return;
+            return false;
           }
         } finally {
           releaseDbResources(ps, rs);
@@ -245,7 +268,9 @@ public class DbCertStatusStore extends OcspStore {
       }
     } catch (Throwable th) {
       LogUtil.error(LOG, th, "error while executing updateIssuers()");
+      return false;
     }
+    return true;
   } // method updateIssuers
 
   private void updateCrls() {
@@ -273,6 +298,103 @@ public class DbCertStatusStore extends OcspStore {
     }
   } // method updateCrls
 
+  /**
+   * Loads the changed certificates (with LUPDATE not before the last loaded one) into the
+   * status index. The whole index will be reloaded if the issuers have been changed, or the
+   * configured fullReloadInterval has been reached. The new index is switched atomically.
+   *
+   * <p>The full load reads the whole table pagewise via the primary key. The refresh reads only
+   * the changed certificates of each issuer via the index IDX_ISSUER_LUPDATE. Rows deleted from
+   * the table are not seen by the refresh, the deleted certificates remain in the index until
+   * the next full reload.
+   */
+  private void updateStatusIndex(boolean issuersChanged) {
+    try {
+      CertStatusIndex index = statusIndex;
+      boolean fullLoad = index == null || issuersChanged
+          || statusIndexConf.fullReloadInterval().add(new Date(statusIndexFullLoadTime)).before(new Date());
+
+      long start = System.currentTimeMillis();
+      if (fullLoad) {
+        index = new CertStatusIndex(statusIndexConf.isIncludeCertHash() ? certHashAlgo.getLength() : 0,
+            Math.max(statusIndexConf.getExpectedSize(), index == null ? 0 : index.size()));
+        loadStatusIndex(index, sqlStatusIndex, null, 0);
+        this.statusIndex = index;
+        this.statusIndexFullLoadTime = start;
+      } else {
+        // tolerate the clock difference between the publishers.
+        long minLastUpdate = Math.max(0, index.getMaxLastUpdate() - 60);
+        for (Integer issuerId : issuerStore.getIds()) {
+          loadStatusIndex(index, sqlStatusIndexSince, issuerId, minLastUpdate);
+        }
+      }
+
+      LOG.info("{} status index of store {} with {} entries in {} ms", fullLoad ? "Loaded" : "Refreshed",
+          name, index.size(), System.currentTimeMillis() - start);
+    } catch (Throwable th) {
+      LogUtil.error(LOG, th, "error while executing updateStatusIndex()");
+    }
+  } // method updateStatusIndex
+
+  /**
+   * Loads the certificates into the status index.
+   * @param sql either {@link #sqlStatusIndex} (issuerId is {@code null}) or {@link #sqlStatusIndexSince}.
+   */
+  private void loadStatusIndex(CertStatusIndex index, String sql, Integer issuerId, long minLastUpdate)
+      throws DataAccessException {
+    final boolean withHash = index.isWithCertHash();
+    final int pageSize = statusIndexConf.getPageSize();
+
+    long startId = 0;
+    while (true) {
+      PreparedStatement ps = preparedStatement(sql);
+      ResultSet rs = null;
+      int num = 0;
+      try {
+        int idx = 1;
+        if (issuerId != null) {
+          ps.setInt(idx++, issuerId);
+          ps.setLong(idx++, startId);
+          ps.setLong(idx, minLastUpdate);
+        } else {
+          ps.setLong(idx, startId);
+        }
+        rs = ps.executeQuery();
+
+        while (rs.next()) {
+          num++;
+          startId = rs.getLong("ID");
+
+          int iid = rs.getInt("IID");
+          if (issuerStore.getIssuerForId(iid) == null) {
+            continue;
+          }
+
+          boolean revoked = rs.getBoolean("REV");
+          byte[] certHash = null;
+          if (withHash) {
+            String b64CertHash = rs.getString("HASH");
+            if (b64CertHash != null) {
+              certHash = Base64.decodeFast(b64CertHash);
+            }
+          }
+
+          index.put(iid, new BigInteger(rs.getString("SN"), 16), revoked,
+              revoked ? rs.getInt("RR") : 0, revoked ? rs.getLong("RT") : 0, revoked ? rs.getLong("RIT") : 0,
+              rs.getLong("NBEFORE"), rs.getLong("NAFTER"), rs.getInt("CRL_ID"), certHash, rs.getLong("LUPDATE"));
+        }
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      } finally {
+        releaseDbResources(ps, rs);
+      }
+
+      if (num < pageSize) {
+        break;
+      }
+    }
+  } // method loadStatusIndex
+
   @Override
   protected CertStatusInfo getCertStatus0(Date time, RequestIssuer reqIssuer, BigInteger serialNumber,
                                           boolean includeCertHash, boolean includeRit, boolean inheritCaRevocation)
@@ -285,181 +407,205 @@ public class DbCertStatusStore extends OcspStore {
       throw new OcspStoreException("initialization of CertStore is still in process");
     }
 
-    String sql;
-
     try {
       IssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
       if (issuer == null) {
         return null;
       }
 
-      CrlInfo crlInfo = null;
-      if (issuer.getCrlId() != 0) {
-        crlInfo = issuerStore.getCrlInfo(issuer.getCrlId());
-        // check whether CRL is expired
-        if (isIgnoreExpiredCrls()) {
-          // CRL will expire in 5 minutes
-          if (crlInfo.getNextUpdate().getTime() < time.getTime() + MS_PER_5MIN) {
-            return CertStatusInfo.getCrlExpiredStatusInfo();
-          }
-        }
+      CrlInfo crlInfo = getIssuerCrlInfo(issuer);
+      if (isCrlExpired(crlInfo, time)) {
+        return CertStatusInfo.getCrlExpiredStatusInfo();
       }
 
-      if (includeCertHash) {
-        sql = includeRit ? sqlCsWithCertHash : sqlCsNoRitWithCertHash;
-      } else {
-        sql = includeRit ? sqlCs : sqlCsNoRit;
-      }
+      StatusRow row = null;
 
-      ResultSet rs = null;
-      CertStatusInfo certStatusInfo;
-
-      boolean unknown = true;
-      boolean ignore = false;
-      String b64CertHash = null;
-      boolean revoked = false;
-      int reason = 0;
-      long revTime = 0;
-      long invalTime = 0;
-      int crlId = 0;
+      CertStatusIndex index = statusIndex;
+      boolean useIndex = index != null && (!includeCertHash || index.isWithCertHash());
+      if (useIndex) {
+        row = getStatusRow(index, issuer.getId(), serialNumber, includeCertHash, includeRit);
+      }
 
-      PreparedStatement ps = datasource.prepareStatement(sql);
+      if (row == null && (!useIndex || statusIndexConf.isFallbackToDb())) {
+        String sql;
+        if (includeCertHash) {
+          sql = includeRit ? sqlCsWithCertHash : sqlCsNoRitWithCertHash;
+        } else {
+          sql = includeRit ? sqlCs : sqlCsNoRit;
+        }
 
-      try {
-        ps.setInt(1, issuer.getId());
-        ps.setString(2, serialNumber.toString(16));
-        rs = ps.executeQuery();
+        ResultSet rs = null;
+        PreparedStatement ps = datasource.prepareStatement(sql);
 
-        if (rs.next()) {
-          unknown = false;
-          crlId = rs.getInt("CRL_ID");
+        try {
+          ps.setInt(1, issuer.getId());
+          ps.setString(2, serialNumber.toString(16));
+          rs = ps.executeQuery();
 
-          long timeInSec = time.getTime() / 1000;
-          if (ignoreNotYetValidCert) {
-            long notBeforeInSec = rs.getLong("NBEFORE");
-            if (notBeforeInSec != 0 && timeInSec < notBeforeInSec) {
-              ignore = true;
-            }
+          if (rs.next()) {
+            row = readStatusRow(rs, includeCertHash, includeRit);
           }
+        } catch (SQLException ex) {
+          throw datasource.translate(sql, ex);
+        } finally {
+          releaseDbResources(ps, rs);
+        }
+      }
 
-          if (!ignore && ignoreExpiredCert) {
-            long notAfterInSec = rs.getLong("NAFTER");
-            if (notAfterInSec != 0 && timeInSec > notAfterInSec) {
-              ignore = true;
-            }
-          }
+      return buildCertStatusInfo(time, issuer, crlInfo, row, inheritCaRevocation);
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
+  } // method getCertStatus0
 
-          if (!ignore) {
-            if (includeCertHash) {
-              b64CertHash = rs.getString("HASH");
-            }
+  @Override
+  protected List<CertStatusInfo> getCertStatuses0(
+      Date time, RequestIssuer reqIssuer, List<BigInteger> serialNumbers,
+      boolean includeCertHash, boolean includeRit, boolean inheritCaRevocation)
+      throws OcspStoreException {
+    if (!initialized) {
+      throw new OcspStoreException("initialization of CertStore is still in process");
+    }
 
-            revoked = rs.getBoolean("REV");
-            if (revoked) {
-              reason = rs.getInt("RR");
-              revTime = rs.getLong("RT");
-              if (includeRit) {
-                invalTime = rs.getLong("RIT");
-              }
-            }
-          }
-        } // end if (rs.next())
-      } catch (SQLException ex) {
-        throw datasource.translate(sql, ex);
-      } finally {
-        releaseDbResources(ps, rs);
+    try {
+      IssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
+      if (issuer == null) {
+        return null;
       }
 
-      if (crlId == 0) {
-        crlId = issuer.getCrlId();
+      final int size = serialNumbers.size();
+      List<CertStatusInfo> ret = new ArrayList<>(size);
+
+      CrlInfo crlInfo = getIssuerCrlInfo(issuer);
+      if (isCrlExpired(crlInfo, time)) {
+        for (int i = 0; i < size; i++) {
+          ret.add(CertStatusInfo.getCrlExpiredStatusInfo());
+        }
+        return ret;
       }
 
-      if (crlInfo == null && crlId != 0) {
-        crlInfo = issuerStore.getCrlInfo(crlId);
+      StatusRow[] rows = new StatusRow[size];
+
+      CertStatusIndex index = statusIndex;
+      boolean useIndex = index != null && (!includeCertHash || index.isWithCertHash());
+
+      List<BigInteger> dbSerialNumbers = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        BigInteger serialNumber = serialNumbers.get(i);
+        if (serialNumber.signum() != 1) {
+          continue;
+        }
+
+        if (useIndex) {
+          rows[i] = getStatusRow(index, issuer.getId(), serialNumber, includeCertHash, includeRit);
+        }
+
+        if (rows[i] == null && (!useIndex || statusIndexConf.isFallbackToDb())) {
+          dbSerialNumbers.add(serialNumber);
+        }
       }
 
-      Date thisUpdate;
-      Date nextUpdate;
-      if (crlInfo == null) {
-        thisUpdate = new Date();
-        nextUpdate = null;
-      } else {
-        thisUpdate = crlInfo.getThisUpdate();
-        nextUpdate = crlInfo.getNextUpdate();
+      if (!dbSerialNumbers.isEmpty()) {
+        String sql;
+        if (includeCertHash) {
+          sql = includeRit ? sqlCsArrayWithCertHash : sqlCsArrayNoRitWithCertHash;
+        } else {
+          sql = includeRit ? sqlCsArray : sqlCsArrayNoRit;
+        }
 
-        if (isIgnoreExpiredCrls()) {
-          // CRL will expire in 5 minutes
-          if (crlInfo.getNextUpdate().getTime() < time.getTime() + MS_PER_5MIN) {
-            return CertStatusInfo.getCrlExpiredStatusInfo();
+        Map<BigInteger, StatusRow> dbRows = queryStatusRows(sql, issuer.getId(), dbSerialNumbers, 16, "SN",
+            rs -> readStatusRow(rs, includeCertHash, includeRit));
+        for (int i = 0; i < size; i++) {
+          if (rows[i] == null) {
+            rows[i] = dbRows.get(serialNumbers.get(i));
           }
         }
       }
 
-      if (unknown) {
-        certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
-      } else if (ignore) {
-        certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
-      } else {
-        byte[] certHash = (b64CertHash == null) ? null : Base64.decodeFast(b64CertHash);
-        if (revoked) {
-          Date invTime = (invalTime == 0 || invalTime == revTime) ? null : new Date(invalTime * 1000);
-          CertRevocationInfo revInfo = new CertRevocationInfo(reason, new Date(revTime * 1000), invTime);
-          certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
-              certHashAlgo, certHash, thisUpdate, nextUpdate, null);
+      for (int i = 0; i < size; i++) {
+        if (serialNumbers.get(i).signum() != 1) { // non-positive serial number
+          ret.add(CertStatusInfo.getUnknownCertStatusInfo(new Date(), null));
         } else {
-          certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo, certHash, thisUpdate, nextUpdate, null);
+          ret.add(buildCertStatusInfo(time, issuer, crlInfo, rows[i], inheritCaRevocation));
         }
       }
+      return ret;
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
+  } // method getCertStatuses0
+
+  private static StatusRow readStatusRow(ResultSet rs, boolean includeCertHash, boolean includeRit)
+      throws SQLException {
+    byte[] certHash = null;
+    if (includeCertHash) {
+      String b64CertHash = rs.getString("HASH");
+      if (b64CertHash != null) {
+        certHash = Base64.decodeFast(b64CertHash);
+      }
+    }
 
-      if (includeCrlId && crlInfo != null) {
-        certStatusInfo.setCrlId(crlInfo.getCrlId());
+    boolean revoked = rs.getBoolean("REV");
+    int reason = 0;
+    long revTime = 0;
+    long invalTime = 0;
+    if (revoked) {
+      reason = rs.getInt("RR");
+      revTime = rs.getLong("RT");
+      if (includeRit) {
+        invalTime = rs.getLong("RIT");
       }
+    }
+    return new StatusRow(rs.getLong("NBEFORE"), rs.getLong("NAFTER"), revoked, reason, revTime, invalTime,
+        certHash, rs.getInt("CRL_ID"));
+  } // method readStatusRow
+
+  private static StatusRow getStatusRow(CertStatusIndex index, int issuerId, BigInteger serialNumber,
+                                        boolean includeCertHash, boolean includeRit) {
+    CertStatusIndex.Entry entry = index.get(issuerId, serialNumber);
+    if (entry == null) {
+      return null;
+    }
 
-      if (includeArchiveCutoff) {
-        if (retentionInterval != 0) {
-          Date date = (retentionInterval < 0)
-            ? issuer.getNotBefore() // expired certificate remains in status store forever
-            : new Date(Math.max(issuer.getNotBefore().getTime(), System.currentTimeMillis() - DAY * retentionInterval));
+    boolean revoked = entry.isRevoked();
+    return new StatusRow(entry.getNotBefore(), entry.getNotAfter(), revoked,
+        revoked ? entry.getReason() : 0, revoked ? entry.getRevTime() : 0,
+        (revoked && includeRit) ? entry.getInvalidityTime() : 0,
+        includeCertHash ? entry.getCertHash() : null, entry.getCrlId());
+  } // method getStatusRow
 
-          certStatusInfo.setArchiveCutOff(date);
-        }
-      }
+  private CrlInfo getIssuerCrlInfo(IssuerEntry issuer) {
+    return (issuer.getCrlId() == 0) ? null : issuerStore.getCrlInfo(issuer.getCrlId());
+  }
 
-      if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
-        return certStatusInfo;
-      }
+  private boolean isCrlExpired(CrlInfo crlInfo, Date time) {
+    // CRL will expire in 5 minutes
+    return crlInfo != null && isIgnoreExpiredCrls()
+        && crlInfo.getNextUpdate().getTime() < time.getTime() + MS_PER_5MIN;
+  }
 
-      CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
-      CertStatus certStatus = certStatusInfo.getCertStatus();
-      boolean replaced = false;
-      if (certStatus == CertStatus.GOOD) {
-        replaced = true;
-      } else if (certStatus == CertStatus.UNKNOWN || certStatus == CertStatus.IGNORE) {
-        if (unknownCertBehaviour == UnknownCertBehaviour.good) {
-          replaced = true;
-        }
-      } else if (certStatus == CertStatus.REVOKED) {
-        if (certStatusInfo.getRevocationInfo().getRevocationTime().after(caRevInfo.getRevocationTime())) {
-          replaced = true;
-        }
-      }
+  /**
+   * Builds the {@link CertStatusInfo}.
+   * @param row the status of the certificate, {@code null} if the certificate is unknown.
+   */
+  private CertStatusInfo buildCertStatusInfo(
+      Date time, IssuerEntry issuer, CrlInfo crlInfo, StatusRow row, boolean inheritCaRevocation) {
+    int crlId = (row == null) ? 0 : row.getCrlId();
+    if (crlId == 0) {
+      crlId = issuer.getCrlId();
+    }
 
-      if (replaced) {
-        CertRevocationInfo newRevInfo = (caRevInfo.getReason() == CrlReason.CA_COMPROMISE)
-            ? caRevInfo
-            : new CertRevocationInfo(CrlReason.CA_COMPROMISE, caRevInfo.getRevocationTime(),
-                  caRevInfo.getInvalidityTime());
+    if (crlInfo == null && crlId != 0) {
+      crlInfo = issuerStore.getCrlInfo(crlId);
+    }
 
-        certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
-            certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
-            certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(), certStatusInfo.getCertprofile());
-      }
-      return certStatusInfo;
-    } catch (DataAccessException ex) {
-      throw new OcspStoreException(ex.getMessage(), ex);
+    if (isCrlExpired(crlInfo, time)) {
+      return CertStatusInfo.getCrlExpiredStatusInfo();
     }
 
-  } // method getCertStatus0
+    return buildCertStatusInfo(time, row, crlInfo, issuer.getNotBefore(), issuer.getRevocationInfo(),
+        inheritCaRevocation);
+  } // method buildCertStatusInfo
 
   /**
    * Borrow Prepared Statement.
@@ -506,6 +652,9 @@ public class DbCertStatusStore extends OcspStore {
    * <li>caCerts: optional
    *   <p>
    *   CA certificate files to be included / excluded.</li>
+   * <li>statusIndex: optional
+   *   <p>
+   *   In-memory index of the certificate status, see {@link OcspServerConf.StatusIndex}.</li>
    *  </ul>
    * @param datasource DataSource.
    */
@@ -517,6 +666,21 @@ public class DbCertStatusStore extends OcspStore {
       if (objValue != null) {
         caCerts = JSON.parseObject(JSON.toJSONBytes(objValue), OcspServerConf.CaCerts.class);
       }
+
+      objValue = sourceConf.get("statusIndex");
+      if (objValue != null) {
+        OcspServerConf.StatusIndex conf =
+            JSON.parseObject(JSON.toJSONBytes(objValue), OcspServerConf.StatusIndex.class);
+        try {
+          conf.validate();
+        } catch (InvalidConfException ex) {
+          throw new OcspStoreException("invalid statusIndex: " + ex.getMessage(), ex);
+        }
+
+        if (conf.isEnabled()) {
+          statusIndexConf = conf;
+        }
+      }
     }
 
     this.datasource = notNull(datasource, "datasource");
@@ -531,6 +695,31 @@ public class DbCertStatusStore extends OcspStore {
     sqlCsNoRitWithCertHash = datasource.buildSelectFirstSql(1,
         "NBEFORE,NAFTER,REV,RR,RT,HASH,CRL_ID FROM CERT WHERE IID=? AND SN=?");
 
+    sqlCsArray = datasource.buildArraySql(
+        "SN,NBEFORE,NAFTER,REV,RR,RT,RIT,CRL_ID FROM CERT WHERE IID=? AND SN", MAX_SERIALS_PER_QUERY);
+    sqlCsArrayNoRit = datasource.buildArraySql(
+        "SN,NBEFORE,NAFTER,REV,RR,RT,CRL_ID FROM CERT WHERE IID=? AND SN", MAX_SERIALS_PER_QUERY);
+    sqlCsArrayWithCertHash = datasource.buildArraySql(
+        "SN,NBEFORE,NAFTER,REV,RR,RT,RIT,HASH,CRL_ID FROM CERT WHERE IID=? AND SN", MAX_SERIALS_PER_QUERY);
+    sqlCsArrayNoRitWithCertHash = datasource.buildArraySql(
+        "SN,NBEFORE,NAFTER,REV,RR,RT,HASH,CRL_ID FROM CERT WHERE IID=? AND SN", MAX_SERIALS_PER_QUERY);
+
+    sqlListSerials = datasource.buildSelectFirstSql(LIST_SERIALS_PAGE_SIZE, "ID ASC",
+        "ID,SN FROM CERT WHERE IID=? AND ID>?");
+    // uses the index IDX_ISSUER_LUPDATE
+    sqlListSerialsSince = datasource.buildSelectFirstSql(LIST_SERIALS_PAGE_SIZE, "ID ASC",
+        "ID,SN FROM CERT WHERE IID=? AND ID>? AND LUPDATE>=?");
+
+    if (statusIndexConf != null) {
+      String columns = "ID,IID,SN,NBEFORE,NAFTER,REV,RR,RT,RIT,CRL_ID,LUPDATE"
+          + (statusIndexConf.isIncludeCertHash() ? ",HASH" : "");
+      sqlStatusIndex = datasource.buildSelectFirstSql(statusIndexConf.getPageSize(), "ID ASC",
+          columns + " FROM CERT WHERE ID>?");
+      // uses the index IDX_ISSUER_LUPDATE
+      sqlStatusIndexSince = datasource.buildSelectFirstSql(statusIndexConf.getPageSize(), "ID ASC",
+          columns + " FROM CERT WHERE IID=? AND ID>? AND LUPDATE>=?");
+    }
+
     try {
       this.certHashAlgo = getCertHashAlgo(datasource);
     } catch (NoSuchAlgorithmException | DataAccessException ex) {
@@ -599,6 +788,39 @@ public class DbCertStatusStore extends OcspStore {
     return (issuer == null) ? null : issuer.getCert();
   }
 
+  @Override
+  public List<X509Cert> getIssuerCerts() {
+    Set<Integer> ids = issuerStore.getIds();
+    List<X509Cert> certs = new ArrayList<>(ids.size());
+    for (Integer id : ids) {
+      IssuerEntry issuer = issuerStore.getIssuerForId(id);
+      if (issuer != null) {
+        certs.add(issuer.getCert());
+      }
+    }
+    return certs;
+  }
+
+  @Override
+  public boolean listSerialNumbers(RequestIssuer reqIssuer, long sinceInSec, Consumer<BigInteger> consumer)
+      throws OcspStoreException {
+    IssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
+    if (issuer == null) {
+      return true;
+    }
+
+    try {
+      if (sinceInSec == 0) {
+        listSerialNumbers(sqlListSerials, issuer.getId(), 0L, null, 16, consumer);
+      } else {
+        listSerialNumbers(sqlListSerialsSince, issuer.getId(), 0L, sinceInSec, 16, consumer);
+      }
+      return true;
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
+  } // method listSerialNumbers
+
   protected boolean isInitialized() {
     return initialized;
   }
@@ -25,6 +25,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.datasource.DatabaseType;
+import org.xipki.ocsp.server.store.SerialRecordSorter.SerialRecord;
+import org.xipki.ocsp.server.store.SerialRecordSorter.SortedRecords;
 import org.xipki.security.CertRevocationInfo;
 import org.xipki.security.CrlReason;
 import org.xipki.security.HashAlgo;
@@ -76,26 +79,6 @@ class ImportCrl {
 
     private long invalidityTime;
 
-    boolean isDifferent(RevokedCert revokedCert, int crlId) {
-      if (this.crlId != crlId) {
-        return true;
-      }
-
-      if (revoked) {
-        if (revocationReason != revokedCert.getReason()) {
-          return true;
-        }
-
-        if (revocationTime != revokedCert.getRevocationDate()) {
-          return true;
-        }
-
-        return invalidityTime != revokedCert.getInvalidityDate();
-      } else {
-        return true;
-      }
-    }
-
   } // class CertInfo
 
   private static class CrlDirInfo {
@@ -191,6 +174,16 @@ class ImportCrl {
 
   private static final String SQL_DELETE_CERT = "DELETE FROM CERT WHERE IID=? AND SN=?";
 
+  private static final String SQL_DELETE_CERT_BY_ID = "DELETE FROM CERT WHERE ID=?";
+
+  private static final String SQL_SELECT_CERTS_OF_ISSUER = "SELECT ID,SN,REV,RR,RT,RIT,CRL_ID FROM CERT WHERE IID=?";
+
+  // number of records sorted in memory
+  private static final int SORT_CHUNK_SIZE = 100_000;
+
+  // number of serial numbers looked up with one query while importing a delta CRL
+  private static final int DELTA_LOOKUP_SIZE = 100;
+
   private static final String SQL_UPDATE_CERT_LUPDATE = "UPDATE CERT SET LUPDATE=? WHERE ID=?";
 
   private static final String SQL_UPDATE_CERT
@@ -213,25 +206,22 @@ class ImportCrl {
 
   private final boolean ignoreExpiredCrls;
 
-  private PreparedStatement psDeleteCert;
+  private final int numWriters;
 
   private PreparedStatement psInsertCert;
 
-  private PreparedStatement psInsertCertRev;
-
   private PreparedStatement psSelectIdCert;
 
   private PreparedStatement psUpdateCert;
 
-  private PreparedStatement psUpdateCertRev;
-
   private PreparedStatement psUpdateCertLastupdate;
 
   private final AtomicInteger cachedIssuerId = new AtomicInteger(0);
 
-  public ImportCrl(DataSourceWrapper datasource, String basedir, int sqlBatchCommit, boolean ignoreExpiredCrls)
-      throws DataAccessException, NoSuchAlgorithmException {
+  public ImportCrl(DataSourceWrapper datasource, String basedir, int sqlBatchCommit, boolean ignoreExpiredCrls,
+      int numWriters) throws DataAccessException, NoSuchAlgorithmException {
     this.sqlBatchCommit = min(sqlBatchCommit, "sqlBatchCommit", 1);
+    this.numWriters = min(numWriters, "numWriters", 1);
     this.ignoreExpiredCrls = ignoreExpiredCrls;
     this.datasource = notNull(datasource, "datasource");
     this.basedir = notNull(basedir, "basedir");
@@ -374,12 +364,9 @@ class ImportCrl {
         autoCommitChanged = true;
       }
 
-      psDeleteCert = datasource.prepareStatement(conn, SQL_DELETE_CERT);
       psInsertCert = datasource.prepareStatement(conn, SQL_INSERT_CERT);
-      psInsertCertRev = datasource.prepareStatement(conn, SQL_INSERT_CERT_REV);
       psSelectIdCert = datasource.prepareStatement(conn, sqlSelectIdCert);
       psUpdateCert = datasource.prepareStatement(conn, SQL_UPDATE_CERT);
-      psUpdateCertRev = datasource.prepareStatement(conn, SQL_UPDATE_CERT_REV);
       psUpdateCertLastupdate = datasource.prepareStatement(conn, SQL_UPDATE_CERT_LUPDATE);
 
       for (CrlDirInfo crlDirInfo : crlDirInfos) {
@@ -407,12 +394,9 @@ class ImportCrl {
         }
       }
 
-      releaseResources(psDeleteCert, null);
       releaseResources(psInsertCert, null);
-      releaseResources(psInsertCertRev, null);
       releaseResources(psSelectIdCert, null);
       releaseResources(psUpdateCert, null);
-      releaseResources(psUpdateCertRev, null);
       releaseResources(psUpdateCertLastupdate, null);
 
       if (conn != null) {
@@ -588,7 +572,7 @@ class ImportCrl {
         commit(conn);
 
         if (!crl.isDeltaCrl()) {
-          deleteEntriesNotUpdatedSince(conn, id, startTimeSec);
+          deleteEntriesNotUpdatedSince(conn, id, caCert.databaseId, startTimeSec);
           commit(conn);
         }
       }
@@ -770,104 +754,11 @@ class ImportCrl {
     int caId = caCert.databaseId;
     AtomicLong maxId = new AtomicLong(datasource.getMax(conn, "CERT", "ID"));
 
-    boolean isDeltaCrl = crl.isDeltaCrl();
-
     // import the revoked information
-    try (RevokedCertsIterator revokedCertList = crl.revokedCertificates()) {
-      int num = 0;
-      while (revokedCertList.hasNext()) {
-        num++;
-
-        // If the system time is adjusted to a previous time point during the
-        // import process, System.currentTime...() may be before startTime.
-        // Since all entries in the database whose Last-Update is before
-        // startTime will be deleted, we must ensure that the Last-Update is
-        // not before startTime.
-        long updateTimeSec = Math.max(System.currentTimeMillis() / 1000, startTimeSec);
-
-        RevokedCert revCert = revokedCertList.next();
-        BigInteger serial = revCert.getSerialNumber();
-        long rt = revCert.getRevocationDate();
-        long rit = revCert.getInvalidityDate();
-        int reason = revCert.getReason();
-        X500Name issuer = revCert.getCertificateIssuer();
-        if (issuer != null && !issuer.equals(caCert.subject)) {
-          throw new ImportCrlException("invalid CRLEntry for certificate number " + serial);
-        }
-
-        String sql = null;
-        try {
-          if (reason == CrlReason.REMOVE_FROM_CRL.getCode()) {
-            if (isDeltaCrl) {
-              // delete the entry
-              sql = SQL_DELETE_CERT;
-              psDeleteCert.setInt(1, caId);
-              psDeleteCert.setString(2, serial.toString(16));
-              psDeleteCert.executeUpdate();
-            } else {
-              LOG.warn("ignore CRL entry with reason removeFromCRL in non-Delta CRL");
-            }
-            continue;
-          }
-
-          CertInfo existingCertInfo = getCertInfo(caId, serial);
-          PreparedStatement ps;
-
-          if (existingCertInfo == null) {
-            sql = SQL_INSERT_CERT_REV;
-            long id = maxId.incrementAndGet();
-            ps = psInsertCertRev;
-            int offset = 1;
-
-            ps.setLong(offset++, id);
-            ps.setInt(offset++, caId);
-            ps.setString(offset++, serial.toString(16));
-            ps.setInt(offset++, 1);
-            ps.setInt(offset++, reason);
-            ps.setLong(offset++, rt);
-            if (rit != 0) {
-              ps.setLong(offset++, rit);
-            } else {
-              ps.setNull(offset++, Types.BIGINT);
-            }
-            ps.setLong(offset++, updateTimeSec);
-            ps.setInt(offset, crlInfoId);
-          } else {
-            if (existingCertInfo.isDifferent(revCert, crlInfoId)) {
-              sql = SQL_UPDATE_CERT_REV;
-              ps = psUpdateCertRev;
-              int offset = 1;
-
-              ps.setInt(offset++, 1);
-              ps.setInt(offset++, reason);
-              ps.setLong(offset++, rt);
-              if (rit != 0) {
-                ps.setLong(offset++, rit);
-              } else {
-                ps.setNull(offset++, Types.BIGINT);
-              }
-              ps.setLong(offset++, updateTimeSec);
-              ps.setInt(offset++, crlInfoId);
-              ps.setLong(offset, existingCertInfo.id);
-            } else {
-              sql = SQL_UPDATE_CERT_LUPDATE;
-              ps = psUpdateCertLastupdate;
-              ps.setLong(1, updateTimeSec);
-              ps.setLong(2, existingCertInfo.id);
-            }
-          }
-
-          ps.executeUpdate();
-
-          if (num % sqlBatchCommit == 0) {
-            commit(conn);
-          }
-        } catch (SQLException ex) {
-          throw datasource.translate(sql, ex);
-        }
-      }
-
-      LOG.info("imported {} revoked certificates", num);
+    if (crl.isDeltaCrl()) {
+      importDeltaCrlEntries(conn, crlInfoId, caCert, crl, startTimeSec, maxId);
+    } else {
+      importFullCrlEntries(crlInfoId, caCert, crl, startTimeSec, maxId);
     }
 
     commit(conn);
@@ -948,6 +839,253 @@ class ImportCrl {
     }
   } // method importCrlRevokedCertificates
 
+  /**
+   * Merges the entries of a full CRL into the table CERT. The CRL entries and the rows of the CA
+   * are both sorted by the serial number, so that each row is compared with the matching entry
+   * only once. Only the new, changed and no more revoked rows are written.
+   */
+  private void importFullCrlEntries(
+      int crlInfoId, CertWrapper caCert, CrlStreamParser crl, long startTimeSec, AtomicLong maxId)
+      throws DataAccessException, ImportCrlException, IOException {
+    final int caId = caCert.databaseId;
+    // If the system time is adjusted to a previous time point during the
+    // import process, System.currentTime...() may be before startTime.
+    // Since all entries in the database whose Last-Update is before
+    // startTime will be deleted, we must ensure that the Last-Update is
+    // not before startTime.
+    final long updateTimeSec = Math.max(System.currentTimeMillis() / 1000, startTimeSec);
+
+    try (SerialRecordSorter crlEntries = new SerialRecordSorter(SORT_CHUNK_SIZE);
+         SerialRecordSorter dbRows = new SerialRecordSorter(SORT_CHUNK_SIZE);
+         ParallelBatchWriter writer = new ParallelBatchWriter(datasource, numWriters, sqlBatchCommit)) {
+      long start = System.currentTimeMillis();
+      int numIgnored = 0;
+      try (RevokedCertsIterator revokedCertList = crl.revokedCertificates()) {
+        while (revokedCertList.hasNext()) {
+          SerialRecord entry = toSerialRecord(revokedCertList.next(), caCert);
+          if (entry.reason == CrlReason.REMOVE_FROM_CRL.getCode()) {
+            numIgnored++;
+          } else {
+            crlEntries.add(entry);
+          }
+        }
+      }
+
+      if (numIgnored > 0) {
+        LOG.warn("ignored {} CRL entries with reason removeFromCRL in non-Delta CRL", numIgnored);
+      }
+
+      readCertsOfIssuer(caId, dbRows);
+      LOG.info("sorted {} CRL entries and {} certificates in {} ms",
+          crlEntries.size(), dbRows.size(), System.currentTimeMillis() - start);
+
+      SortedRecords entries = crlEntries.sorted();
+      SortedRecords rows = dbRows.sorted();
+
+      final int[] counts = new int[3];
+      SerialRecordMerger.merge(entries, rows, crlInfoId, new SerialRecordMerger.Handler() {
+        @Override
+        public void insert(SerialRecord crlEntry) throws DataAccessException {
+          insertRevokedCert(writer, maxId.incrementAndGet(), caId, crlEntry, crlInfoId, updateTimeSec);
+          counts[0]++;
+        }
+
+        @Override
+        public void update(SerialRecord row, SerialRecord crlEntry) throws DataAccessException {
+          updateRevokedCert(writer, row.id, crlEntry, crlInfoId, updateTimeSec);
+          counts[1]++;
+        }
+
+        @Override
+        public void delete(SerialRecord row) throws DataAccessException {
+          final long id = row.id;
+          writer.add(SQL_DELETE_CERT_BY_ID, ps -> ps.setLong(1, id));
+          counts[2]++;
+        }
+      });
+
+      writer.flush();
+      LOG.info("imported {} revoked certificates: inserted {}, updated {}, deleted {} in {} ms",
+          crlEntries.size(), counts[0], counts[1], counts[2], System.currentTimeMillis() - start);
+    }
+  } // method importFullCrlEntries
+
+  /**
+   * Imports the entries of a delta CRL. The existing rows are looked up with one query for
+   * {@link #DELTA_LOOKUP_SIZE} serial numbers.
+   */
+  private void importDeltaCrlEntries(
+      Connection conn, int crlInfoId, CertWrapper caCert, CrlStreamParser crl, long startTimeSec, AtomicLong maxId)
+      throws DataAccessException, ImportCrlException, IOException {
+    final int caId = caCert.databaseId;
+    final long updateTimeSec = Math.max(System.currentTimeMillis() / 1000, startTimeSec);
+
+    long start = System.currentTimeMillis();
+    int num = 0;
+    try (RevokedCertsIterator revokedCertList = crl.revokedCertificates();
+         ParallelBatchWriter writer = new ParallelBatchWriter(datasource, numWriters, sqlBatchCommit)) {
+      List<SerialRecord> entries = new ArrayList<>(DELTA_LOOKUP_SIZE);
+      while (revokedCertList.hasNext()) {
+        num++;
+        SerialRecord entry = toSerialRecord(revokedCertList.next(), caCert);
+        if (entry.reason == CrlReason.REMOVE_FROM_CRL.getCode()) {
+          // delete the entry
+          writer.add(SQL_DELETE_CERT, ps -> {
+            ps.setInt(1, caId);
+            ps.setString(2, entry.sn);
+          });
+          continue;
+        }
+
+        entries.add(entry);
+        if (entries.size() == DELTA_LOOKUP_SIZE) {
+          importDeltaCrlEntries(conn, writer, crlInfoId, caId, entries, updateTimeSec, maxId);
+          entries.clear();
+        }
+      }
+
+      if (!entries.isEmpty()) {
+        importDeltaCrlEntries(conn, writer, crlInfoId, caId, entries, updateTimeSec, maxId);
+      }
+
+      writer.flush();
+    }
+
+    LOG.info("imported {} revoked certificates in {} ms", num, System.currentTimeMillis() - start);
+  } // method importDeltaCrlEntries
+
+  private void importDeltaCrlEntries(
+      Connection conn, ParallelBatchWriter writer, int crlInfoId, int caId, List<SerialRecord> entries,
+      long updateTimeSec, AtomicLong maxId) throws DataAccessException {
+    StringBuilder sb = new StringBuilder(SQL_SELECT_CERTS_OF_ISSUER.length() + 20 + 2 * entries.size());
+    sb.append(SQL_SELECT_CERTS_OF_ISSUER).append(" AND SN IN (?");
+    for (int i = 1; i < entries.size(); i++) {
+      sb.append(",?");
+    }
+    String sql = sb.append(")").toString();
+
+    Map<String, SerialRecord> existingRows = new HashMap<>();
+    PreparedStatement ps = null;
+    ResultSet rs = null;
+    try {
+      ps = datasource.prepareStatement(conn, sql);
+      int offset = 1;
+      ps.setInt(offset++, caId);
+      for (SerialRecord entry : entries) {
+        ps.setString(offset++, entry.sn);
+      }
+
+      rs = ps.executeQuery();
+      while (rs.next()) {
+        SerialRecord row = toSerialRecord(rs);
+        existingRows.put(row.sn, row);
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      releaseResources(ps, rs);
+    }
+
+    for (SerialRecord entry : entries) {
+      SerialRecord row = existingRows.get(entry.sn);
+      if (row == null) {
+        insertRevokedCert(writer, maxId.incrementAndGet(), caId, entry, crlInfoId, updateTimeSec);
+      } else if (row.isDifferent(entry, crlInfoId)) {
+        updateRevokedCert(writer, row.id, entry, crlInfoId, updateTimeSec);
+      }
+    }
+  } // method importDeltaCrlEntries
+
+  private void readCertsOfIssuer(int caId, SerialRecordSorter sorter) throws DataAccessException, IOException {
+    final String sql = SQL_SELECT_CERTS_OF_ISSUER;
+    Connection conn = datasource.getConnection();
+    try {
+      // PostgreSQL streams the result only if autoCommit is disabled.
+      boolean autoCommit = conn.getAutoCommit();
+      if (autoCommit) {
+        conn.setAutoCommit(false);
+      }
+
+      PreparedStatement ps = null;
+      ResultSet rs = null;
+      try {
+        ps = datasource.prepareStatement(conn, sql);
+        // MySQL streams the result only with the fetch size Integer.MIN_VALUE.
+        ps.setFetchSize(datasource.getDatabaseType() == DatabaseType.MYSQL ? Integer.MIN_VALUE : 1000);
+        ps.setInt(1, caId);
+        rs = ps.executeQuery();
+        while (rs.next()) {
+          sorter.add(toSerialRecord(rs));
+        }
+      } finally {
+        releaseResources(ps, rs);
+        if (autoCommit) {
+          conn.setAutoCommit(true);
+        }
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.returnConnection(conn);
+    }
+  } // method readCertsOfIssuer
+
+  private static SerialRecord toSerialRecord(ResultSet rs) throws SQLException {
+    return new SerialRecord(rs.getString("SN"), rs.getLong("ID"), rs.getInt("CRL_ID"), rs.getBoolean("REV"),
+        rs.getInt("RR"), rs.getLong("RT"), rs.getLong("RIT"));
+  }
+
+  private static SerialRecord toSerialRecord(RevokedCert revCert, CertWrapper caCert) throws ImportCrlException {
+    BigInteger serial = revCert.getSerialNumber();
+    X500Name issuer = revCert.getCertificateIssuer();
+    if (issuer != null && !issuer.equals(caCert.subject)) {
+      throw new ImportCrlException("invalid CRLEntry for certificate number " + serial);
+    }
+
+    return new SerialRecord(serial.toString(16), 0, 0, true, revCert.getReason(),
+        revCert.getRevocationDate(), revCert.getInvalidityDate());
+  } // method toSerialRecord
+
+  private static void insertRevokedCert(
+      ParallelBatchWriter writer, long id, int caId, SerialRecord entry, int crlInfoId, long updateTimeSec)
+      throws DataAccessException {
+    writer.add(SQL_INSERT_CERT_REV, ps -> {
+      int offset = 1;
+      ps.setLong(offset++, id);
+      ps.setInt(offset++, caId);
+      ps.setString(offset++, entry.sn);
+      ps.setInt(offset++, 1);
+      ps.setInt(offset++, entry.reason);
+      ps.setLong(offset++, entry.revocationTime);
+      if (entry.invalidityTime != 0) {
+        ps.setLong(offset++, entry.invalidityTime);
+      } else {
+        ps.setNull(offset++, Types.BIGINT);
+      }
+      ps.setLong(offset++, updateTimeSec);
+      ps.setInt(offset, crlInfoId);
+    });
+  } // method insertRevokedCert
+
+  private static void updateRevokedCert(
+      ParallelBatchWriter writer, long id, SerialRecord entry, int crlInfoId, long updateTimeSec)
+      throws DataAccessException {
+    writer.add(SQL_UPDATE_CERT_REV, ps -> {
+      int offset = 1;
+      ps.setInt(offset++, 1);
+      ps.setInt(offset++, entry.reason);
+      ps.setLong(offset++, entry.revocationTime);
+      if (entry.invalidityTime != 0) {
+        ps.setLong(offset++, entry.invalidityTime);
+      } else {
+        ps.setNull(offset++, Types.BIGINT);
+      }
+      ps.setLong(offset++, updateTimeSec);
+      ps.setInt(offset++, crlInfoId);
+      ps.setLong(offset, id);
+    });
+  } // method updateRevokedCert
+
   private static X509Cert parseCert(File certFile) throws ImportCrlException {
     try {
       return X509Util.parseCert(certFile);
@@ -1149,10 +1287,12 @@ class ImportCrl {
     LOG.info(" Imported certificate by serial number {}", serialNumber);
   } // method addCertificateBySerialNumber
 
-  private void deleteEntriesNotUpdatedSince(Connection conn, int crlInfoId, long timeSec)
+  private void deleteEntriesNotUpdatedSince(Connection conn, int crlInfoId, int caId, long timeSec)
       throws DataAccessException {
-    // remove the unmodified entries
-    String sql = "DELETE FROM CERT WHERE CRL_ID=" + crlInfoId + " AND LUPDATE<" + timeSec;
+    // remove the unmodified entries. The revoked certificates of the CA not contained in the CRL
+    // have been deleted while merging, the unchanged ones are not updated.
+    String sql = "DELETE FROM CERT WHERE CRL_ID=" + crlInfoId + " AND LUPDATE<" + timeSec
+        + " AND (REV=0 OR IID<>" + caId + ")";
     Statement stmt = datasource.createStatement(conn);
     try {
       stmt.executeUpdate(sql);
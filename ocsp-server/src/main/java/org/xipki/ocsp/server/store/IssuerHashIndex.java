@@ -0,0 +1,122 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.security.HashAlgo;
+import org.xipki.util.CompareUtil;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index of issuers keyed by (hash algorithm, issuerNameHash, issuerKeyHash). The index
+ * is not modified after it has been built; to change its content, build a new one and
+ * replace the reference.
+ *
+ * @param <T> type of the issuer entry.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+public class IssuerHashIndex<T> {
+
+  private static final class HashKey {
+
+    private final HashAlgo hashAlgo;
+
+    private final byte[] data;
+
+    private final int offset;
+
+    private final int length;
+
+    private final int hash;
+
+    HashKey(HashAlgo hashAlgo, byte[] data, int offset, int length) {
+      this.hashAlgo = hashAlgo;
+      this.data = data;
+      this.offset = offset;
+      this.length = length;
+
+      int h = hashAlgo.hashCode();
+      for (int i = offset; i < offset + length; i++) {
+        h = 31 * h + data[i];
+      }
+      this.hash = h;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      } else if (!(obj instanceof HashKey)) {
+        return false;
+      }
+
+      HashKey other = (HashKey) obj;
+      return hash == other.hash && hashAlgo == other.hashAlgo && length == other.length
+          && CompareUtil.areEqual(data, offset, other.data, other.offset, length);
+    }
+
+  } // class HashKey
+
+  private final Map<HashKey, T> map;
+
+  public IssuerHashIndex(int expectedIssuers) {
+    this.map = new HashMap<>(expectedIssuers * HashAlgo.values().length * 2);
+  }
+
+  /**
+   * Adds the issuer for the given hash algorithm.
+   * @param hashAlgo the hash algorithm.
+   * @param nameAndKeyHash DER encoded issuerNameHash and issuerKeyHash, as returned by
+   *          {@link IssuerEntry#getEncodedHash(HashAlgo)}.
+   * @param issuer the issuer.
+   */
+  public void put(HashAlgo hashAlgo, byte[] nameAndKeyHash, T issuer) {
+    map.put(new HashKey(hashAlgo, nameAndKeyHash, 0, nameAndKeyHash.length), issuer);
+  }
+
+  public T get(RequestIssuer reqIssuer) {
+    HashAlgo hashAlgo = reqIssuer.hashAlgorithm();
+    if (hashAlgo == null) {
+      return null;
+    }
+
+    // two OCTET STRINGs of the hash length.
+    int length = (2 + hashAlgo.getLength()) << 1;
+    int offset = reqIssuer.getNameHashFrom();
+    if (offset + length > reqIssuer.getData().length) {
+      return null;
+    }
+
+    return map.get(new HashKey(hashAlgo, reqIssuer.getData(), offset, length));
+  }
+
+  public int size() {
+    return map.size();
+  }
+
+}
@@ -18,6 +18,7 @@
 package org.xipki.ocsp.server.store;
 
 import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.security.HashAlgo;
 
 import java.util.*;
 
@@ -30,65 +31,74 @@ import java.util.*;
 
 class IssuerStore {
 
-  private List<IssuerEntry> issuers = new ArrayList<>();
+  /**
+   * Immutable view of the issuers, replaced as a whole if the issuers change.
+   */
+  private static final class Snapshot {
 
-  private Set<Integer> ids = Collections.emptySet();
+    private final List<IssuerEntry> issuers;
 
-  private Map<Integer, CrlInfo> crlInfos = new HashMap<>();
+    private final Set<Integer> ids;
 
-  public IssuerStore() {
-  }
+    private final Map<Integer, IssuerEntry> idMap;
+
+    private final IssuerHashIndex<IssuerEntry> hashIndex;
+
+    private Snapshot(List<IssuerEntry> issuers) {
+      int size = issuers.size();
+      Map<Integer, IssuerEntry> newIdMap = new HashMap<>(size * 2);
+      IssuerHashIndex<IssuerEntry> newHashIndex = new IssuerHashIndex<>(size);
+
+      for (IssuerEntry issuer : issuers) {
+        int id = issuer.getId();
+        if (newIdMap.put(id, issuer) != null) {
+          throw new IllegalArgumentException("issuer with the same id " + id + " duplicated");
+        }
 
-  public void setIssuers(List<IssuerEntry> issuers) {
-    Set<Integer> newIds = new HashSet<>();
-    for (IssuerEntry issuer : issuers) {
-      int id = issuer.getId();
-      if (newIds.contains(id)) {
-        throw new IllegalArgumentException("issuer with the same id " + id + " duplicated");
+        for (HashAlgo ha : HashAlgo.values()) {
+          newHashIndex.put(ha, issuer.getEncodedHash(ha), issuer);
+        }
       }
-      newIds.add(id);
+
+      this.issuers = Collections.unmodifiableList(new ArrayList<>(issuers));
+      this.ids = Collections.unmodifiableSet(new HashSet<>(newIdMap.keySet()));
+      this.idMap = newIdMap;
+      this.hashIndex = newHashIndex;
     }
 
-    // to accelerate the switch
-    List<IssuerEntry> copy = new ArrayList<>(issuers);
-    this.ids = Collections.unmodifiableSet(newIds);
-    this.issuers = copy;
+  } // class Snapshot
+
+  private volatile Snapshot snapshot = new Snapshot(Collections.emptyList());
+
+  private Map<Integer, CrlInfo> crlInfos = new HashMap<>();
+
+  public IssuerStore() {
+  }
+
+  public synchronized void setIssuers(List<IssuerEntry> issuers) {
+    this.snapshot = new Snapshot(issuers);
   } // method setIssuers
 
   public int size() {
-    return ids.size();
+    return snapshot.ids.size();
   }
 
   public Set<Integer> getIds() {
-    return ids;
+    return snapshot.ids;
   }
 
   public IssuerEntry getIssuerForId(int id) {
-    for (IssuerEntry entry : issuers) {
-      if (entry.getId() == id) {
-        return entry;
-      }
-    }
-
-    return null;
+    return snapshot.idMap.get(id);
   }
 
   public IssuerEntry getIssuerForFp(RequestIssuer reqIssuer) {
-    for (IssuerEntry entry : issuers) {
-      if (entry.matchHash(reqIssuer)) {
-        return entry;
-      }
-    }
-
-    return null;
+    return snapshot.hashIndex.get(reqIssuer);
   }
 
-  public void addIssuer(IssuerEntry issuer) {
-    this.issuers.add(issuer);
-
-    Set<Integer> newIds = new HashSet<>(this.ids);
-    newIds.add(issuer.getId());
-    this.ids = Collections.unmodifiableSet(newIds);
+  public synchronized void addIssuer(IssuerEntry issuer) {
+    List<IssuerEntry> newIssuers = new ArrayList<>(snapshot.issuers);
+    newIssuers.add(issuer);
+    this.snapshot = new Snapshot(newIssuers);
   }
 
   public void setCrlInfos(Map<Integer, CrlInfo> crlInfos) {
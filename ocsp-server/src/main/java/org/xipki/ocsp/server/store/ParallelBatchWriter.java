@@ -0,0 +1,283 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.datasource.DataAccessException;
+import org.xipki.datasource.DataSourceWrapper;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.xipki.util.Args.notNull;
+import static org.xipki.util.Args.positive;
+
+/**
+ * Executes the SQL changes of the CRL import with JDBC batches. The rows are grouped per SQL
+ * statement, each full group is written by one of the writer threads in its own connection
+ * and transaction.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+class ParallelBatchWriter implements Closeable {
+
+  /**
+   * Sets the parameters of one row.
+   */
+  interface RowSetter {
+
+    void set(PreparedStatement ps) throws SQLException;
+
+  } // interface RowSetter
+
+  private static final Logger LOG = LoggerFactory.getLogger(ParallelBatchWriter.class);
+
+  private static final int MAX_ATTEMPTS = 3;
+
+  private final DataSourceWrapper datasource;
+
+  private final int batchSize;
+
+  private final ExecutorService writers;
+
+  // limits the number of batches held in memory
+  private final Semaphore pendingBatches;
+
+  private final Map<String, List<RowSetter>> groups = new LinkedHashMap<>();
+
+  private final List<Future<?>> futures = new ArrayList<>();
+
+  // the first error of any batch
+  private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+  private long numRows;
+
+  ParallelBatchWriter(DataSourceWrapper datasource, int numWriters, int batchSize) {
+    this.datasource = notNull(datasource, "datasource");
+    this.batchSize = positive(batchSize, "batchSize");
+    positive(numWriters, "numWriters");
+    this.pendingBatches = new Semaphore(2 * numWriters);
+
+    AtomicInteger threadIndex = new AtomicInteger();
+    this.writers = Executors.newFixedThreadPool(numWriters, r -> {
+      Thread thread = new Thread(r, "crl-import-writer-" + threadIndex.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  } // constructor
+
+  /**
+   * Adds a row. The row is written when the batch of the given SQL is full, or by
+   * {@link #flush()}.
+   * @param sql the SQL statement.
+   * @param row sets the parameters of the row.
+   * @throws DataAccessException if writing a previous batch failed.
+   */
+  void add(String sql, RowSetter row) throws DataAccessException {
+    checkError();
+
+    List<RowSetter> rows = groups.computeIfAbsent(sql, k -> new ArrayList<>(batchSize));
+    rows.add(row);
+    numRows++;
+    if (rows.size() >= batchSize) {
+      groups.remove(sql);
+      submit(sql, rows);
+    }
+  } // method add
+
+  long getNumRows() {
+    return numRows;
+  }
+
+  /**
+   * Writes the remaining rows, and waits until all batches are committed.
+   * @throws DataAccessException if writing any batch failed.
+   */
+  void flush() throws DataAccessException {
+    for (Map.Entry<String, List<RowSetter>> m : groups.entrySet()) {
+      submit(m.getKey(), m.getValue());
+    }
+    groups.clear();
+
+    try {
+      for (Future<?> future : futures) {
+        checkFuture(future);
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new DataAccessException("interrupted while waiting for the writers");
+    } finally {
+      futures.clear();
+    }
+
+    checkError();
+  } // method flush
+
+  private void checkFuture(Future<?> future) throws InterruptedException {
+    try {
+      future.get();
+    } catch (ExecutionException ex) {
+      // should not happen, since the task catches any Throwable
+      error.compareAndSet(null, ex.getCause() == null ? ex : ex.getCause());
+    } catch (CancellationException ex) {
+      error.compareAndSet(null, ex);
+    }
+  } // method checkFuture
+
+  private void checkError() throws DataAccessException {
+    Throwable th = error.get();
+    if (th == null) {
+      return;
+    }
+
+    if (th instanceof DataAccessException) {
+      throw (DataAccessException) th;
+    } else if (th instanceof RuntimeException) {
+      throw (RuntimeException) th;
+    } else if (th instanceof Error) {
+      throw (Error) th;
+    } else {
+      throw new DataAccessException(th.getMessage(), th);
+    }
+  } // method checkError
+
+  private void submit(String sql, List<RowSetter> rows) throws DataAccessException {
+    try {
+      pendingBatches.acquire();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new DataAccessException("interrupted while waiting for the writers");
+    }
+
+    try {
+      futures.add(writers.submit(() -> {
+        try {
+          write(sql, rows);
+        } catch (Throwable th) {
+          // also unchecked exceptions, e.g. thrown by a RowSetter, must abort the import.
+          error.compareAndSet(null, th);
+        } finally {
+          pendingBatches.release();
+        }
+      }));
+    } catch (RejectedExecutionException ex) {
+      pendingBatches.release();
+      throw new DataAccessException("ParallelBatchWriter has been closed");
+    }
+
+    // check and forget the completed futures
+    for (Iterator<Future<?>> it = futures.iterator(); it.hasNext(); ) {
+      Future<?> future = it.next();
+      if (future.isDone()) {
+        try {
+          checkFuture(future);
+        } catch (InterruptedException ex) {
+          // cannot happen, the future is done
+          Thread.currentThread().interrupt();
+        }
+        it.remove();
+      }
+    }
+    checkError();
+  } // method submit
+
+  private void write(String sql, List<RowSetter> rows) throws DataAccessException {
+    if (error.get() != null) {
+      // another batch failed, the import will be aborted.
+      return;
+    }
+
+    for (int attempt = 1; ; attempt++) {
+      try {
+        writeInTransaction(sql, rows);
+        return;
+      } catch (DataAccessException ex) {
+        if (attempt >= MAX_ATTEMPTS) {
+          throw ex;
+        }
+
+        // e.g. deadlock between the writers, the whole transaction has been rolled back.
+        LOG.warn("could not write {} rows (attempt {}), try again: {}", rows.size(), attempt, ex.getMessage());
+      }
+    }
+  } // method write
+
+  private void writeInTransaction(String sql, List<RowSetter> rows) throws DataAccessException {
+    Connection conn = datasource.getConnection();
+    try {
+      boolean autoCommit = conn.getAutoCommit();
+      if (autoCommit) {
+        conn.setAutoCommit(false);
+      }
+
+      PreparedStatement ps = null;
+      boolean committed = false;
+      try {
+        ps = datasource.prepareStatement(conn, sql);
+        for (RowSetter row : rows) {
+          row.set(ps);
+          ps.addBatch();
+        }
+        ps.executeBatch();
+        conn.commit();
+        committed = true;
+      } finally {
+        if (!committed) {
+          try {
+            conn.rollback();
+          } catch (SQLException ex) {
+            LOG.warn("could not rollback: {}", ex.getMessage());
+          }
+        }
+
+        datasource.releaseResources(ps, null, false);
+        if (autoCommit) {
+          conn.setAutoCommit(true);
+        }
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.returnConnection(conn);
+    }
+  } // method writeInTransaction
+
+  @Override
+  public void close() {
+    groups.clear();
+    writers.shutdown();
+    try {
+      if (!writers.awaitTermination(60, TimeUnit.SECONDS)) {
+        writers.shutdownNow();
+      }
+    } catch (InterruptedException ex) {
+      writers.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  } // method close
+
+}
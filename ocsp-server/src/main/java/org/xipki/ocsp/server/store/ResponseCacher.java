@@ -112,6 +112,10 @@ public class ResponseCacher implements Closeable {
         long minNextUpdate = now + SEC_NEXT_UPDATE_BUFFER;
 
         try {
+          if (memoryCache != null) {
+            memoryCache.evict(now);
+          }
+
           int num1 = removeExpiredResponses(maxGeneratedAt, minNextUpdate);
           if (num1 > 0 && LOG.isInfoEnabled()) {
             LOG.info("removed {} with thisUpdate < {} ({}) OR nextUpdate < {} ({})",
@@ -152,6 +156,8 @@ public class ResponseCacher implements Closeable {
 
   private final AtomicInteger cachedIssuerId = new AtomicInteger(0);
 
+  private ResponseMemoryCache memoryCache;
+
   public ResponseCacher(DataSourceWrapper datasource, boolean master, Validity validity) {
     this.datasource = notNull(datasource, "datasource");
     this.master = master;
@@ -167,6 +173,15 @@ public class ResponseCacher implements Closeable {
     }
   }
 
+  /**
+   * Enables the in-memory tier, which is consulted before the cache database.
+   * @param maxEntries maximal number of cached responses.
+   * @param maxSize maximal sum of the size of cached responses, in bytes.
+   */
+  public void setMemoryCache(int maxEntries, long maxSize) {
+    this.memoryCache = new ResponseMemoryCache(maxEntries, maxSize);
+  }
+
   public boolean isOnService() {
     return onService.get();
   }
@@ -214,6 +229,10 @@ public class ResponseCacher implements Closeable {
       }
       scheduledThreadPoolExecutor = null;
     }
+
+    if (memoryCache != null) {
+      memoryCache.clear();
+    }
   } // method close
 
   public IssuerEntry getIssuer(RequestIssuer reqIssuer) {
@@ -268,10 +287,19 @@ public class ResponseCacher implements Closeable {
     }
   } // method storeIssuer
 
-  public OcspRespWithCacheInfo getOcspResponse(int issuerId, BigInteger serialNumber, SignAlgo sigAlgo)
+  public OcspRespWithCacheInfo getOcspResponse(
+      int issuerId, BigInteger serialNumber, SignAlgo sigAlgo, HashAlgo certHashAlgo)
       throws DataAccessException {
+    if (memoryCache != null) {
+      OcspRespWithCacheInfo resp = memoryCache.get(issuerId, serialNumber, sigAlgo, certHashAlgo,
+          System.currentTimeMillis() / 1000);
+      if (resp != null) {
+        return resp;
+      }
+    }
+
     final String sql = sqlSelectOcsp;
-    byte[] identBytes = buildIdent(serialNumber, sigAlgo);
+    byte[] identBytes = buildIdent(serialNumber, sigAlgo, certHashAlgo);
     long id = deriveId(issuerId, identBytes);
     PreparedStatement ps = datasource.prepareStatement(sql);
     ResultSet rs = null;
@@ -311,7 +339,12 @@ public class ResponseCacher implements Closeable {
       if (nextUpdate != 0) {
         cacheInfo.setNextUpdate(nextUpdate);
       }
-      return new OcspRespWithCacheInfo(resp, cacheInfo);
+      OcspRespWithCacheInfo ret = new OcspRespWithCacheInfo(resp, cacheInfo);
+      if (memoryCache != null) {
+        memoryCache.put(issuerId, serialNumber, sigAlgo, certHashAlgo, ret,
+            memoryCacheExpireAt(generatedAt, nextUpdate));
+      }
+      return ret;
     } catch (SQLException ex) {
       throw datasource.translate(sql, ex);
     } finally {
@@ -319,8 +352,8 @@ public class ResponseCacher implements Closeable {
     }
   } // method getOcspResponse
 
-  public void storeOcspResponse(
-      int issuerId, BigInteger serialNumber, long generatedAt, Long nextUpdate, SignAlgo sigAlgo, byte[] response) {
+  public void storeOcspResponse(int issuerId, BigInteger serialNumber, long generatedAt, Long nextUpdate,
+      SignAlgo sigAlgo, HashAlgo certHashAlgo, byte[] response) {
     long nowInSec = System.currentTimeMillis() / 1000;
     if (nextUpdate == null) {
       nextUpdate = nowInSec + SEC_DFLT_NEXT_UPDATE_DURATION;
@@ -330,7 +363,14 @@ public class ResponseCacher implements Closeable {
       return;
     }
 
-    byte[] identBytes = buildIdent(serialNumber, sigAlgo);
+    if (memoryCache != null) {
+      ResponseCacheInfo cacheInfo = new ResponseCacheInfo(generatedAt);
+      cacheInfo.setNextUpdate(nextUpdate);
+      memoryCache.put(issuerId, serialNumber, sigAlgo, certHashAlgo,
+          new OcspRespWithCacheInfo(response, cacheInfo), memoryCacheExpireAt(generatedAt, nextUpdate));
+    }
+
+    byte[] identBytes = buildIdent(serialNumber, sigAlgo, certHashAlgo);
     String ident = Base64.encodeToString(identBytes);
     try {
       long id = deriveId(issuerId, identBytes);
@@ -392,6 +432,15 @@ public class ResponseCacher implements Closeable {
     }
   } // method storeOcspResponse
 
+  private long memoryCacheExpireAt(long generatedAt, long nextUpdate) {
+    // the same rules as for the responses in the cache database
+    long expireAt = generatedAt + validity;
+    if (nextUpdate != 0) {
+      expireAt = Math.min(expireAt, nextUpdate - SEC_NEXT_UPDATE_BUFFER);
+    }
+    return expireAt;
+  }
+
   private int removeExpiredResponses(long maxGeneratedAt, long minNextUpdate)
       throws DataAccessException {
     final String sql = SQL_DELETE_EXPIRED_RESP;
@@ -489,11 +538,12 @@ public class ResponseCacher implements Closeable {
     return true;
   } // method updateCacheStore0
 
-  private static byte[] buildIdent(BigInteger serialNumber, SignAlgo sigAlgo) {
+  private static byte[] buildIdent(BigInteger serialNumber, SignAlgo sigAlgo, HashAlgo certHashAlgo) {
     byte[] snBytes = serialNumber.toByteArray();
-    byte[] bytes = new byte[1 + snBytes.length];
+    byte[] bytes = new byte[2 + snBytes.length];
     bytes[0] = sigAlgo.getCode();
-    System.arraycopy(snBytes, 0, bytes, 1, snBytes.length);
+    bytes[1] = certHashAlgo.getCode();
+    System.arraycopy(snBytes, 0, bytes, 2, snBytes.length);
     return bytes;
   }
 
@@ -0,0 +1,307 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ocsp.api.OcspRespWithCacheInfo;
+import org.xipki.security.HashAlgo;
+import org.xipki.security.SignAlgo;
+
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.xipki.util.Args.positive;
+
+/**
+ * Bounded in-memory tier of the {@link ResponseCacher}. Lookups are lock-free. If the number
+ * of entries or the total size of the responses exceeds the limit, responses are evicted by
+ * the CLOCK (second chance) policy in amortized constant time: a response which has been read
+ * since it was last visited gets a second chance, the others are evicted. Expired responses
+ * are removed in the background by {@link #evict(long)}.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+class ResponseMemoryCache {
+
+  private static final class Key {
+
+    private final int issuerId;
+
+    // code of the signature algorithm followed by the code of the CertID hash algorithm
+    private final int algoCodes;
+
+    private final BigInteger serialNumber;
+
+    private final int hash;
+
+    Key(int issuerId, BigInteger serialNumber, SignAlgo sigAlgo, HashAlgo certHashAlgo) {
+      this.issuerId = issuerId;
+      this.serialNumber = serialNumber;
+      this.algoCodes = (sigAlgo.getCode() & 0xFF) << 8 | (certHashAlgo.getCode() & 0xFF);
+      this.hash = 31 * (31 * issuerId + algoCodes) + serialNumber.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      } else if (!(obj instanceof Key)) {
+        return false;
+      }
+
+      Key other = (Key) obj;
+      return issuerId == other.issuerId && algoCodes == other.algoCodes
+          && serialNumber.equals(other.serialNumber);
+    }
+
+  } // class Key
+
+  private static final class Entry {
+
+    private final Key key;
+
+    private final OcspRespWithCacheInfo response;
+
+    // in seconds
+    private final long expireAt;
+
+    // whether the entry has been read since the clock hand visited it last time.
+    private volatile boolean referenced;
+
+    Entry(Key key, OcspRespWithCacheInfo response, long expireAt) {
+      this.key = key;
+      this.response = response;
+      this.expireAt = expireAt;
+    }
+
+  } // class Entry
+
+  private static final Logger LOG = LoggerFactory.getLogger(ResponseMemoryCache.class);
+
+  private final ConcurrentHashMap<Key, Entry> map = new ConcurrentHashMap<>();
+
+  // the clock, entries are added at the tail, the hand is at the head. It may contain entries
+  // which have been removed from the map, they are skipped by the hand.
+  private final ConcurrentLinkedQueue<Entry> clock = new ConcurrentLinkedQueue<>();
+
+  private final int maxEntries;
+
+  private final long maxSize;
+
+  private final AtomicLong size = new AtomicLong();
+
+  private final AtomicBoolean evictionInProcess = new AtomicBoolean(false);
+
+  private final LongAdder hits = new LongAdder();
+
+  private final LongAdder misses = new LongAdder();
+
+  private final LongAdder evictions = new LongAdder();
+
+  ResponseMemoryCache(int maxEntries, long maxSize) {
+    this.maxEntries = positive(maxEntries, "maxEntries");
+    this.maxSize = positive(maxSize, "maxSize");
+  }
+
+  /**
+   * Returns the cached response.
+   * @param nowInSec current time in seconds.
+   * @return the cached response, or {@code null} if not cached or expired.
+   */
+  OcspRespWithCacheInfo get(int issuerId, BigInteger serialNumber, SignAlgo sigAlgo, HashAlgo certHashAlgo,
+                            long nowInSec) {
+    Key key = new Key(issuerId, serialNumber, sigAlgo, certHashAlgo);
+    Entry entry = map.get(key);
+    if (entry == null) {
+      misses.increment();
+      return null;
+    }
+
+    if (entry.expireAt < nowInSec) {
+      remove(entry);
+      misses.increment();
+      return null;
+    }
+
+    if (!entry.referenced) {
+      entry.referenced = true;
+    }
+    hits.increment();
+    return entry.response;
+  } // method get
+
+  /**
+   * Caches the response. If the limits are exceeded, responses are evicted.
+   * @param expireAt time in seconds after which the response will not be delivered.
+   */
+  void put(int issuerId, BigInteger serialNumber, SignAlgo sigAlgo, HashAlgo certHashAlgo,
+           OcspRespWithCacheInfo response, long expireAt) {
+    Key key = new Key(issuerId, serialNumber, sigAlgo, certHashAlgo);
+    Entry entry = new Entry(key, response, expireAt);
+    Entry old = map.put(key, entry);
+    clock.add(entry);
+
+    long delta = response.getResponse().length - (old == null ? 0 : old.response.getResponse().length);
+    size.addAndGet(delta);
+
+    if (isFull()) {
+      evictByClock();
+    }
+  } // method put
+
+  /**
+   * Removes the expired responses, and if still required, evicts responses until the limits
+   * are reached. Called periodically in the background.
+   * @param nowInSec current time in seconds.
+   */
+  void evict(long nowInSec) {
+    if (!evictionInProcess.compareAndSet(false, true)) {
+      return;
+    }
+
+    int removed = 0;
+    try {
+      Iterator<Entry> it = clock.iterator();
+      while (it.hasNext()) {
+        Entry entry = it.next();
+        if (map.get(entry.key) != entry) {
+          // has been removed or replaced
+          it.remove();
+        } else if (entry.expireAt < nowInSec) {
+          it.remove();
+          if (remove(entry)) {
+            removed++;
+          }
+        }
+      }
+    } finally {
+      evictionInProcess.set(false);
+    }
+
+    evictByClock();
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("removed {} expired responses from memory cache, remaining {} responses ({} bytes), "
+          + "evicted {}, hit rate {}%", removed, map.size(), size.get(), evictions.sum(), getHitRate());
+    }
+  } // method evict
+
+  /**
+   * Evicts responses by the CLOCK policy until the number of entries and the total size are
+   * within the limits. Only one thread evicts at the same time, the others return immediately.
+   */
+  private void evictByClock() {
+    if (!evictionInProcess.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+      while (isFull()) {
+        Entry entry = clock.poll();
+        if (entry == null) {
+          break;
+        }
+
+        if (map.get(entry.key) != entry) {
+          // has been removed or replaced
+          continue;
+        }
+
+        if (entry.referenced) {
+          // second chance
+          entry.referenced = false;
+          clock.add(entry);
+        } else if (remove(entry)) {
+          evictions.increment();
+        }
+      }
+    } finally {
+      evictionInProcess.set(false);
+    }
+  } // method evictByClock
+
+  private boolean isFull() {
+    return map.size() > maxEntries || size.get() > maxSize;
+  }
+
+  private boolean remove(Entry entry) {
+    if (map.remove(entry.key, entry)) {
+      size.addAndGet(-entry.response.getResponse().length);
+      return true;
+    }
+    return false;
+  } // method remove
+
+  void clear() {
+    map.clear();
+    clock.clear();
+    size.set(0);
+  }
+
+  int getNumEntries() {
+    return map.size();
+  }
+
+  /**
+   * Returns the total size of the cached responses.
+   * @return the total size in bytes.
+   */
+  long getSize() {
+    return size.get();
+  }
+
+  long getHits() {
+    return hits.sum();
+  }
+
+  long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * Returns the number of responses evicted to keep the limits. Expired responses are not counted.
+   * @return the number of evicted responses.
+   */
+  long getEvictions() {
+    return evictions.sum();
+  }
+
+  /**
+   * Returns the hit rate in percent.
+   * @return the hit rate, 0 if no response has been requested.
+   */
+  int getHitRate() {
+    long h = hits.sum();
+    long m = misses.sum();
+    return (h + m) == 0 ? 0 : (int) (h * 100 / (h + m));
+  }
+
+}
@@ -0,0 +1,113 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import org.xipki.datasource.DataAccessException;
+import org.xipki.ocsp.server.store.SerialRecordSorter.SerialRecord;
+import org.xipki.ocsp.server.store.SerialRecordSorter.SortedRecords;
+
+import java.io.IOException;
+
+import static org.xipki.ocsp.server.store.SerialRecordSorter.SERIAL_COMPARATOR;
+
+/**
+ * Merge join of the sorted entries of a full CRL with the sorted rows of the table CERT of the
+ * same issuer. Computes the changes to bring the table in line with the CRL.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+class SerialRecordMerger {
+
+  /**
+   * Receives the changes.
+   */
+  interface Handler {
+
+    /**
+     * The CRL entry is not in the database.
+     * @param crlEntry the CRL entry.
+     * @throws DataAccessException if database error occurs.
+     */
+    void insert(SerialRecord crlEntry) throws DataAccessException;
+
+    /**
+     * The row differs from the CRL entry.
+     * @param row the row in the database.
+     * @param crlEntry the CRL entry.
+     * @throws DataAccessException if database error occurs.
+     */
+    void update(SerialRecord row, SerialRecord crlEntry) throws DataAccessException;
+
+    /**
+     * The row has been revoked by the CRL, but is not contained in it any more.
+     * @param row the row in the database.
+     * @throws DataAccessException if database error occurs.
+     */
+    void delete(SerialRecord row) throws DataAccessException;
+
+  } // interface Handler
+
+  private SerialRecordMerger() {
+  }
+
+  /**
+   * Merges the CRL entries with the rows in the database. Of duplicated CRL entries only the first
+   * one is considered. Rows not revoked by the given CRL are not deleted.
+   *
+   * @param crlEntries the CRL entries sorted by {@link SerialRecordSorter}.
+   * @param rows the rows of the issuer sorted by {@link SerialRecordSorter}.
+   * @param crlId the id of the CRL.
+   * @param handler the receiver of the changes.
+   * @throws IOException if error occurs while reading the sorted records.
+   * @throws DataAccessException if the handler throws it.
+   */
+  static void merge(SortedRecords crlEntries, SortedRecords rows, int crlId, Handler handler)
+      throws IOException, DataAccessException {
+    String lastSn = null;
+
+    SerialRecord entry = crlEntries.next();
+    SerialRecord row = rows.next();
+    while (entry != null || row != null) {
+      int diff = entry == null ? 1 : row == null ? -1 : SERIAL_COMPARATOR.compare(entry.sn, row.sn);
+      if (diff < 0) {
+        // not in the database
+        if (!entry.sn.equals(lastSn)) {
+          handler.insert(entry);
+        }
+        lastSn = entry.sn;
+        entry = crlEntries.next();
+      } else if (diff > 0) {
+        // not in the CRL
+        if (row.revoked && row.crlId == crlId) {
+          handler.delete(row);
+        }
+        row = rows.next();
+      } else {
+        if (!entry.sn.equals(lastSn) && row.isDifferent(entry, crlId)) {
+          handler.update(row, entry);
+        }
+        lastSn = entry.sn;
+        entry = crlEntries.next();
+        row = rows.next();
+      }
+    }
+  } // method merge
+
+}
@@ -0,0 +1,264 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static org.xipki.util.Args.positive;
+
+/**
+ * External sort of the revocation entries by serial number. Up to {@code chunkSize} records
+ * are kept in memory, the sorted chunks are spilled to temporary files, and merged while
+ * reading. The CRL entries and the rows of the table CERT are sorted with the same comparator,
+ * so that the merge join does not depend on the collation of the database.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+class SerialRecordSorter implements Closeable {
+
+  static class SerialRecord {
+
+    // serial number in hex, as saved in the column CERT.SN
+    final String sn;
+
+    // database ID, 0 for CRL entries
+    final long id;
+
+    final int crlId;
+
+    final boolean revoked;
+
+    final int reason;
+
+    final long revocationTime;
+
+    final long invalidityTime;
+
+    SerialRecord(String sn, long id, int crlId, boolean revoked, int reason, long revocationTime,
+        long invalidityTime) {
+      this.sn = sn;
+      this.id = id;
+      this.crlId = crlId;
+      this.revoked = revoked;
+      this.reason = reason;
+      this.revocationTime = revocationTime;
+      this.invalidityTime = invalidityTime;
+    }
+
+    boolean isDifferent(SerialRecord crlEntry, int crlId) {
+      if (this.crlId != crlId || !revoked) {
+        return true;
+      }
+
+      return reason != crlEntry.reason || revocationTime != crlEntry.revocationTime
+          || invalidityTime != crlEntry.invalidityTime;
+    }
+
+    private void write(DataOutputStream out) throws IOException {
+      out.writeUTF(sn);
+      out.writeLong(id);
+      out.writeInt(crlId);
+      out.writeBoolean(revoked);
+      out.writeInt(reason);
+      out.writeLong(revocationTime);
+      out.writeLong(invalidityTime);
+    }
+
+    private static SerialRecord read(DataInputStream in) throws IOException {
+      return new SerialRecord(in.readUTF(), in.readLong(), in.readInt(), in.readBoolean(), in.readInt(),
+          in.readLong(), in.readLong());
+    }
+
+  } // class SerialRecord
+
+  /**
+   * Iterator of the sorted records.
+   */
+  interface SortedRecords {
+
+    /**
+     * Returns the next record.
+     * @return the next record, or {@code null} if there is no more record.
+     * @throws IOException if error occurs while reading the spilled records.
+     */
+    SerialRecord next() throws IOException;
+
+  } // interface SortedRecords
+
+  private static class ChunkReader {
+
+    private final DataInputStream in;
+
+    private int remaining;
+
+    private SerialRecord current;
+
+    ChunkReader(File file, int size) throws IOException {
+      this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()), 64 * 1024));
+      this.remaining = size;
+    }
+
+    boolean advance() throws IOException {
+      if (remaining == 0) {
+        current = null;
+        return false;
+      }
+
+      current = SerialRecord.read(in);
+      remaining--;
+      return true;
+    }
+
+  } // class ChunkReader
+
+  /**
+   * Numerical order of the non-negative hex serial numbers without leading zeros, any other
+   * string is ordered consistently.
+   */
+  static final Comparator<String> SERIAL_COMPARATOR = (a, b) -> {
+    int diff = a.length() - b.length();
+    return diff != 0 ? diff : a.compareTo(b);
+  };
+
+  private static final Comparator<SerialRecord> RECORD_COMPARATOR = (a, b) -> SERIAL_COMPARATOR.compare(a.sn, b.sn);
+
+  private final int chunkSize;
+
+  private final List<SerialRecord> buffer;
+
+  private final List<File> chunkFiles = new ArrayList<>();
+
+  private final List<Integer> chunkSizes = new ArrayList<>();
+
+  private final List<ChunkReader> readers = new ArrayList<>();
+
+  private long size;
+
+  private boolean sorted;
+
+  SerialRecordSorter(int chunkSize) {
+    this.chunkSize = positive(chunkSize, "chunkSize");
+    this.buffer = new ArrayList<>(Math.min(chunkSize, 10000));
+  }
+
+  void add(SerialRecord record) throws IOException {
+    if (sorted) {
+      throw new IllegalStateException("records have been sorted");
+    }
+
+    buffer.add(record);
+    size++;
+    if (buffer.size() >= chunkSize) {
+      spill();
+    }
+  } // method add
+
+  long size() {
+    return size;
+  }
+
+  private void spill() throws IOException {
+    buffer.sort(RECORD_COMPARATOR);
+    File file = Files.createTempFile("crl-import-", ".bin").toFile();
+    chunkFiles.add(file);
+    chunkSizes.add(buffer.size());
+
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(file.toPath()), 64 * 1024))) {
+      for (SerialRecord m : buffer) {
+        m.write(out);
+      }
+    }
+    buffer.clear();
+  } // method spill
+
+  /**
+   * Finishes the adding of records, and returns the records ordered by the serial number.
+   * @return the sorted records.
+   * @throws IOException if error occurs while spilling the records.
+   */
+  SortedRecords sorted() throws IOException {
+    if (sorted) {
+      throw new IllegalStateException("sorted() has been called");
+    }
+    sorted = true;
+
+    if (chunkFiles.isEmpty()) {
+      // all records are in memory
+      buffer.sort(RECORD_COMPARATOR);
+      final int[] index = {0};
+      return () -> index[0] < buffer.size() ? buffer.get(index[0]++) : null;
+    }
+
+    if (!buffer.isEmpty()) {
+      spill();
+    }
+
+    PriorityQueue<ChunkReader> queue = new PriorityQueue<>(chunkFiles.size(),
+        (a, b) -> RECORD_COMPARATOR.compare(a.current, b.current));
+    for (int i = 0; i < chunkFiles.size(); i++) {
+      ChunkReader reader = new ChunkReader(chunkFiles.get(i), chunkSizes.get(i));
+      readers.add(reader);
+      if (reader.advance()) {
+        queue.add(reader);
+      }
+    }
+
+    return () -> {
+      ChunkReader reader = queue.poll();
+      if (reader == null) {
+        return null;
+      }
+
+      SerialRecord record = reader.current;
+      if (reader.advance()) {
+        queue.add(reader);
+      }
+      return record;
+    };
+  } // method sorted
+
+  @Override
+  public void close() {
+    buffer.clear();
+
+    for (ChunkReader reader : readers) {
+      try {
+        reader.in.close();
+      } catch (IOException ex) {
+        // ignore
+      }
+    }
+
+    for (File file : chunkFiles) {
+      try {
+        Files.deleteIfExists(file.toPath());
+      } catch (IOException ex) {
+        file.deleteOnExit();
+      }
+    }
+  } // method close
+
+}
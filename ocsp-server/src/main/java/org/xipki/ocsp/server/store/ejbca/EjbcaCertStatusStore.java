@@ -23,15 +23,11 @@ import org.slf4j.LoggerFactory;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.ocsp.api.CertStatusInfo;
-import org.xipki.ocsp.api.CertStatusInfo.CertStatus;
-import org.xipki.ocsp.api.CertStatusInfo.UnknownCertBehaviour;
-import org.xipki.ocsp.api.OcspStore;
 import org.xipki.ocsp.api.OcspStoreException;
 import org.xipki.ocsp.api.RequestIssuer;
 import org.xipki.ocsp.server.IssuerFilter;
 import org.xipki.ocsp.server.OcspServerConf;
-import org.xipki.security.CertRevocationInfo;
-import org.xipki.security.CrlReason;
+import org.xipki.ocsp.server.store.BaseDbCertStatusStore;
 import org.xipki.security.HashAlgo;
 import org.xipki.security.X509Cert;
 import org.xipki.security.util.X509Util;
@@ -49,6 +45,7 @@ import java.util.*;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import static org.xipki.util.Args.notNull;
 
@@ -59,7 +56,7 @@ import static org.xipki.util.Args.notNull;
  * @since 2.0.0
  */
 
-public class EjbcaCertStatusStore extends OcspStore {
+public class EjbcaCertStatusStore extends BaseDbCertStatusStore {
 
   private class StoreUpdateService implements Runnable {
 
@@ -72,23 +69,27 @@ public class EjbcaCertStatusStore extends OcspStore {
 
   private static final Logger LOG = LoggerFactory.getLogger(EjbcaCertStatusStore.class);
 
-  private final HashAlgo certHashAlgo = HashAlgo.SHA1;
-
   private final StoreUpdateService storeUpdateService = new StoreUpdateService();
 
   private final AtomicBoolean storeUpdateInProcess = new AtomicBoolean(false);
 
   private final Object lock = new Object();
 
-  private DataSourceWrapper datasource;
-
   private String sqlCs;
 
   private String sqlCsWithCertHash;
 
+  private String sqlCsArray;
+
+  private String sqlCsArrayWithCertHash;
+
+  private String sqlListSerials;
+
+  private String sqlListSerialsSince;
+
   private IssuerFilter issuerFilter;
 
-  private EjbcaIssuerStore issuerStore;
+  private volatile EjbcaIssuerStore issuerStore;
 
   private boolean initialized;
 
@@ -225,13 +226,7 @@ public class EjbcaCertStatusStore extends OcspStore {
       return CertStatusInfo.getUnknownCertStatusInfo(new Date(), null);
     }
 
-    if (!initialized) {
-      throw new OcspStoreException("initialization of CertStore is still in process");
-    }
-
-    if (initializationFailed) {
-      throw new OcspStoreException("initialization of CertStore failed");
-    }
+    assertInitialized();
 
     try {
       EjbcaIssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
@@ -241,17 +236,8 @@ public class EjbcaCertStatusStore extends OcspStore {
 
       String sql = includeCertHash ? sqlCsWithCertHash : sqlCs;
 
-      Date thisUpdate = new Date();
-      final Date nextUpdate = null;
-
       ResultSet rs = null;
-
-      boolean unknown = true;
-      boolean ignore = false;
-      String hexCertHash = null;
-      boolean revoked = false;
-      int reason = 0;
-      long revTime = 0;
+      StatusRow row = null;
 
       PreparedStatement ps = datasource.prepareStatement(sql);
 
@@ -262,113 +248,99 @@ public class EjbcaCertStatusStore extends OcspStore {
         rs = ps.executeQuery();
 
         if (rs.next()) {
-          unknown = false;
-
-          long timeInMs = time.getTime();
-          if (ignoreNotYetValidCert) {
-            long notBefore = rs.getLong("notBefore");
-            if (timeInMs < notBefore) {
-              ignore = true;
-            }
-          }
-
-          if (!ignore && ignoreExpiredCert) {
-            long notAfterInSec = rs.getLong("expireDate");
-            if (timeInMs > notAfterInSec) {
-              ignore = true;
-            }
-          }
-
-          if (!ignore) {
-            if (includeCertHash) {
-              hexCertHash = rs.getString("fingerprint");
-            }
-
-            int status = rs.getInt("status");
-            revoked = status == 40;
-            if (revoked) {
-              reason = rs.getInt("revocationReason");
-              revTime = rs.getLong("revocationDate") / 1000;
-            }
-          }
-        } // end if (rs.next())
+          row = readStatusRow(rs, includeCertHash);
+        }
       } catch (SQLException ex) {
         throw datasource.translate(sql, ex);
       } finally {
         releaseDbResources(ps, rs);
       }
 
-      CertStatusInfo certStatusInfo;
-      if (unknown) {
-        certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
-      } else if (ignore) {
-        certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
-      } else {
-        byte[] certHash = (hexCertHash == null) ? null : Hex.decode(hexCertHash);
-        if (revoked) {
-          CertRevocationInfo revInfo = new CertRevocationInfo(reason, new Date(revTime * 1000), null);
-          certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
-              certHashAlgo, certHash, thisUpdate, nextUpdate, null);
-        } else {
-          certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo,
-              certHash, thisUpdate, nextUpdate, null);
-        }
-      }
+      return buildCertStatusInfo(time, row, null, issuer.getNotBefore(), issuer.getRevocationInfo(),
+          inheritCaRevocation);
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
 
-      if (includeArchiveCutoff) {
-        if (retentionInterval != 0) {
-          Date date;
-          // expired certificate remains in status store forever
-          if (retentionInterval < 0) {
-            date = issuer.getNotBefore();
-          } else {
-            long nowInMs = System.currentTimeMillis();
-            long dateInMs = Math.max(issuer.getNotBefore().getTime(), nowInMs - DAY * retentionInterval);
-            date = new Date(dateInMs);
-          }
+  } // method getCertStatus0
 
-          certStatusInfo.setArchiveCutOff(date);
-        }
-      }
+  @Override
+  protected List<CertStatusInfo> getCertStatuses0(
+      Date time, RequestIssuer reqIssuer, List<BigInteger> serialNumbers,
+      boolean includeCertHash, boolean includeRit, boolean inheritCaRevocation)
+      throws OcspStoreException {
+    if (includeRit) {
+      throw new OcspStoreException("EJBCA store does not support includeRit");
+    }
+
+    assertInitialized();
+
+    String sql = includeCertHash ? sqlCsArrayWithCertHash : sqlCsArray;
 
-      if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
-        return certStatusInfo;
+    try {
+      EjbcaIssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
+      if (issuer == null) {
+        return null;
       }
 
-      CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
-      CertStatus certStatus = certStatusInfo.getCertStatus();
-      boolean replaced = false;
-      if (certStatus == CertStatus.GOOD) {
-        replaced = true;
-      } else if (certStatus == CertStatus.UNKNOWN || certStatus == CertStatus.IGNORE) {
-        if (unknownCertBehaviour == UnknownCertBehaviour.good) {
-          replaced = true;
-        }
-      } else if (certStatus == CertStatus.REVOKED) {
-        if (certStatusInfo.getRevocationInfo().getRevocationTime().after(caRevInfo.getRevocationTime())) {
-          replaced = true;
+      List<BigInteger> dbSerialNumbers = new ArrayList<>(serialNumbers.size());
+      for (BigInteger serialNumber : serialNumbers) {
+        if (serialNumber.signum() == 1) {
+          dbSerialNumbers.add(serialNumber);
         }
       }
 
-      if (replaced) {
-        CertRevocationInfo newRevInfo;
-        if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
-          newRevInfo = caRevInfo;
+      // decimal serial number
+      Map<BigInteger, StatusRow> rows = queryStatusRows(sql, issuer.getId(), dbSerialNumbers, 10, "serialNumber",
+          rs -> readStatusRow(rs, includeCertHash));
+
+      List<CertStatusInfo> ret = new ArrayList<>(serialNumbers.size());
+      for (BigInteger serialNumber : serialNumbers) {
+        if (serialNumber.signum() != 1) { // non-positive serial number
+          ret.add(CertStatusInfo.getUnknownCertStatusInfo(new Date(), null));
         } else {
-          newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
-                        caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
+          ret.add(buildCertStatusInfo(time, rows.get(serialNumber), null, issuer.getNotBefore(),
+              issuer.getRevocationInfo(), inheritCaRevocation));
         }
-        certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
-            certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
-            certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
-            certStatusInfo.getCertprofile());
       }
-      return certStatusInfo;
+      return ret;
     } catch (DataAccessException ex) {
       throw new OcspStoreException(ex.getMessage(), ex);
     }
+  } // method getCertStatuses0
 
-  } // method getCertStatus0
+  private void assertInitialized() throws OcspStoreException {
+    if (!initialized) {
+      throw new OcspStoreException("initialization of CertStore is still in process");
+    }
+
+    if (initializationFailed) {
+      throw new OcspStoreException("initialization of CertStore failed");
+    }
+  } // method assertInitialized
+
+  private static StatusRow readStatusRow(ResultSet rs, boolean includeCertHash)
+      throws SQLException {
+    byte[] certHash = null;
+    if (includeCertHash) {
+      String hexCertHash = rs.getString("fingerprint");
+      if (hexCertHash != null) {
+        certHash = Hex.decode(hexCertHash);
+      }
+    }
+
+    boolean revoked = rs.getInt("status") == 40;
+    int reason = 0;
+    long revTime = 0;
+    if (revoked) {
+      reason = rs.getInt("revocationReason");
+      revTime = rs.getLong("revocationDate") / 1000;
+    }
+
+    // notBefore and expireDate are in milliseconds
+    return new StatusRow(rs.getLong("notBefore") / 1000, rs.getLong("expireDate") / 1000, revoked, reason,
+        revTime, 0, certHash, 0);
+  } // method readStatusRow
 
   /**
    * Borrow Prepared Statement.
@@ -438,6 +410,7 @@ public class EjbcaCertStatusStore extends OcspStore {
     }
 
     this.datasource = notNull(datasource, "datasource");
+    this.certHashAlgo = HashAlgo.SHA1;
 
     String coreSql = "notBefore,expireDate,status,revocationReason,revocationDate"
         + " FROM CertificateData WHERE cAFingerprint=? AND serialNumber=?";
@@ -445,6 +418,17 @@ public class EjbcaCertStatusStore extends OcspStore {
 
     sqlCsWithCertHash = datasource.buildSelectFirstSql(1, "fingerprint," + coreSql);
 
+    String arrayPrefix = "serialNumber,notBefore,expireDate,status,revocationReason,revocationDate"
+        + " FROM CertificateData WHERE cAFingerprint=? AND serialNumber";
+    sqlCsArray = datasource.buildArraySql(arrayPrefix, MAX_SERIALS_PER_QUERY);
+    sqlCsArrayWithCertHash = datasource.buildArraySql(
+        "fingerprint," + arrayPrefix, MAX_SERIALS_PER_QUERY);
+
+    sqlListSerials = datasource.buildSelectFirstSql(LIST_SERIALS_PAGE_SIZE, "fingerprint ASC",
+        "fingerprint,serialNumber FROM CertificateData WHERE cAFingerprint=? AND fingerprint>?");
+    sqlListSerialsSince = datasource.buildSelectFirstSql(LIST_SERIALS_PAGE_SIZE, "fingerprint ASC",
+        "fingerprint,serialNumber FROM CertificateData WHERE cAFingerprint=? AND fingerprint>? AND updateTime>=?");
+
     try {
       Set<X509Cert> includeIssuers = null;
       Set<X509Cert> excludeIssuers = null;
@@ -507,6 +491,46 @@ public class EjbcaCertStatusStore extends OcspStore {
     return (issuer == null) ? null : issuer.getCert();
   }
 
+  @Override
+  public List<X509Cert> getIssuerCerts() {
+    EjbcaIssuerStore store = issuerStore;
+    if (store == null) {
+      return Collections.emptyList();
+    }
+
+    Set<String> ids = store.getIds();
+    List<X509Cert> certs = new ArrayList<>(ids.size());
+    for (String id : ids) {
+      EjbcaIssuerEntry issuer = store.getIssuerForId(id);
+      if (issuer != null) {
+        certs.add(issuer.getCert());
+      }
+    }
+    return certs;
+  } // method getIssuerCerts
+
+  @Override
+  public boolean listSerialNumbers(RequestIssuer reqIssuer, long sinceInSec, Consumer<BigInteger> consumer)
+      throws OcspStoreException {
+    EjbcaIssuerStore store = issuerStore;
+    EjbcaIssuerEntry issuer = (store == null) ? null : store.getIssuerForFp(reqIssuer);
+    if (issuer == null) {
+      return true;
+    }
+
+    try {
+      if (sinceInSec == 0) {
+        listSerialNumbers(sqlListSerials, issuer.getId(), "", null, 10, consumer);
+      } else {
+        // updateTime is in milliseconds
+        listSerialNumbers(sqlListSerialsSince, issuer.getId(), "", sinceInSec * 1000, 10, consumer);
+      }
+      return true;
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
+  } // method listSerialNumbers
+
   protected boolean isInitialized() {
     return initialized;
   }
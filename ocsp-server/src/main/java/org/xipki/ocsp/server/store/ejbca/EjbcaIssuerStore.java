@@ -18,6 +18,8 @@
 package org.xipki.ocsp.server.store.ejbca;
 
 import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.ocsp.server.store.IssuerHashIndex;
+import org.xipki.security.HashAlgo;
 
 import java.util.*;
 
@@ -30,26 +32,29 @@ import java.util.*;
 
 class EjbcaIssuerStore {
 
-  private final List<EjbcaIssuerEntry> entries;
+  private final Map<String, EjbcaIssuerEntry> idMap;
+
+  private final IssuerHashIndex<EjbcaIssuerEntry> hashIndex;
 
   private final Set<String> ids;
 
   public EjbcaIssuerStore(Collection<EjbcaIssuerEntry> entries) {
-    this.entries = new ArrayList<>(entries.size());
-    Set<String> idSet = new HashSet<>(entries.size());
+    this.idMap = new HashMap<>(entries.size() * 2);
+    this.hashIndex = new IssuerHashIndex<>(entries.size());
 
     for (EjbcaIssuerEntry entry : entries) {
-      for (EjbcaIssuerEntry existingEntry : this.entries) {
-        if (existingEntry.getId().contentEquals(entry.getId())) {
-          throw new IllegalArgumentException(
-              "issuer with the same id (fingerprint) " + entry.getId() + " already available");
-        }
+      if (idMap.containsKey(entry.getId())) {
+        throw new IllegalArgumentException(
+            "issuer with the same id (fingerprint) " + entry.getId() + " already available");
+      }
+      idMap.put(entry.getId(), entry);
+
+      for (HashAlgo ha : HashAlgo.values()) {
+        hashIndex.put(ha, entry.getEncodedHash(ha), entry);
       }
-      this.entries.add(entry);
-      idSet.add(entry.getId());
     }
 
-    this.ids = Collections.unmodifiableSet(idSet);
+    this.ids = Collections.unmodifiableSet(new HashSet<>(idMap.keySet()));
   }
 
   public int size() {
@@ -61,23 +66,11 @@ class EjbcaIssuerStore {
   }
 
   public EjbcaIssuerEntry getIssuerForId(String id) {
-    for (EjbcaIssuerEntry entry : entries) {
-      if (entry.getId().contentEquals(id)) {
-        return entry;
-      }
-    }
-
-    return null;
+    return idMap.get(id);
   }
 
   public EjbcaIssuerEntry getIssuerForFp(RequestIssuer reqIssuer) {
-    for (EjbcaIssuerEntry entry : entries) {
-      if (entry.matchHash(reqIssuer)) {
-        return entry;
-      }
-    }
-
-    return null;
+    return hashIndex.get(reqIssuer);
   }
 
 }
@@ -20,6 +20,7 @@ package org.xipki.ocsp.server.type;
 import org.xipki.ocsp.api.RequestIssuer;
 
 import java.math.BigInteger;
+import java.util.Arrays;
 
 /**
  * ASN.1 CertID.
@@ -32,7 +33,14 @@ public class CertID extends ASN1Type {
 
   private final RequestIssuer issuer;
 
-  private final BigInteger serialNumber;
+  // content octets of the serialNumber, either a slice of the request or the encoded serialNumber
+  private final byte[] snData;
+
+  private final int snFrom;
+
+  private final int snLength;
+
+  private BigInteger serialNumber;
 
   private final int bodyLength;
 
@@ -41,13 +49,30 @@ public class CertID extends ASN1Type {
   public CertID(RequestIssuer issuer, BigInteger serialNumber) {
     this.issuer = issuer;
     this.serialNumber = serialNumber;
+    this.snData = serialNumber.toByteArray();
+    this.snFrom = 0;
+    this.snLength = snData.length;
 
-    int len = issuer.getLength();
+    this.bodyLength = issuer.getLength() + getLen(snLength);
+    this.encodedLength = getLen(bodyLength);
+  }
 
-    int snBytesLen = 1 + serialNumber.bitLength() / 8;
-    len += getLen(snBytesLen);
+  /**
+   * Constructor. The serial number is referenced, and will be converted to {@link BigInteger}
+   * only if required.
+   *
+   * @param issuer the issuer.
+   * @param snData the byte array containing the content octets of the serialNumber.
+   * @param snFrom offset of the content octets in {@code snData}.
+   * @param snLength length of the content octets.
+   */
+  public CertID(RequestIssuer issuer, byte[] snData, int snFrom, int snLength) {
+    this.issuer = issuer;
+    this.snData = snData;
+    this.snFrom = snFrom;
+    this.snLength = snLength;
 
-    this.bodyLength = len;
+    this.bodyLength = issuer.getLength() + getLen(snLength);
     this.encodedLength = getLen(bodyLength);
   }
 
@@ -56,6 +81,10 @@ public class CertID extends ASN1Type {
   }
 
   public BigInteger getSerialNumber() {
+    if (serialNumber == null) {
+      // BigInteger(byte[], int, int) is not available in Java 8
+      serialNumber = new BigInteger(Arrays.copyOfRange(snData, snFrom, snFrom + snLength));
+    }
     return serialNumber;
   }
 
@@ -69,10 +98,10 @@ public class CertID extends ASN1Type {
     idx += writeHeader((byte) 0x30, bodyLength, out, idx);
     idx += issuer.write(out, idx);
 
-    // serialNumbers
-    byte[] snBytes = serialNumber.toByteArray();
-    idx += writeHeader((byte) 0x02, snBytes.length, out, idx);
-    idx += arraycopy(snBytes, out, idx);
+    // serialNumber
+    idx += writeHeader((byte) 0x02, snLength, out, idx);
+    System.arraycopy(snData, snFrom, out, idx, snLength);
+    idx += snLength;
 
     return idx - offset;
   }
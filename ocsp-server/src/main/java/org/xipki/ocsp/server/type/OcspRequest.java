@@ -26,10 +26,8 @@ import org.xipki.ocsp.api.RequestIssuer;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.math.BigInteger;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -102,7 +100,8 @@ public class OcspRequest {
       }
     }
 
-    List<CertID> requestList = new LinkedList<>();
+    // most requests contain only one CertID
+    List<CertID> requestList = new ArrayList<>(1);
     Header hdrRequestList = hdr;
 
     Header hdrSingleReq = readHeader(request, hdr.readerIndex);
@@ -121,9 +120,8 @@ public class OcspRequest {
         throw new EncodingException(ex);
       }
 
-      BigInteger serialNumber = new BigInteger(readContent(request, hdrSerial));
-      CertID certId = new CertID(issuer, serialNumber);
-      requestList.add(certId);
+      // the serialNumber is referenced, not copied
+      requestList.add(new CertID(issuer, request, hdrSerial.readerIndex, hdrSerial.len));
 
       int nextIndex = hdrSingleReq.readerIndex + hdrSingleReq.len;
       if (nextIndex < hdrRequestList.readerIndex + hdrRequestList.len) {
@@ -134,7 +132,7 @@ public class OcspRequest {
     }
 
     // extensions
-    List<ExtendedExtension> extensions = new LinkedList<>();
+    List<ExtendedExtension> extensions = new ArrayList<>(2);
     int extensionsOffset = hdrRequestList.readerIndex + hdrRequestList.len;
 
     if (extensionsOffset < hdrTbs.readerIndex + hdrTbs.len) {
@@ -190,7 +188,7 @@ public class OcspRequest {
       }
     }
 
-    List<ExtendedExtension> extensions = new LinkedList<>();
+    List<ExtendedExtension> extensions = new ArrayList<>(2);
     if (extensions0 != null) {
       ASN1ObjectIdentifier[] extOids = extensions0.getExtensionOIDs();
       for (ASN1ObjectIdentifier oid : extOids) {
@@ -259,12 +257,6 @@ public class OcspRequest {
     return new Header(readerIndex, tag, len, off);
   } // method readHeader
 
-  private static byte[] readContent(byte[] encoded, Header header) {
-    byte[] content = new byte[header.len];
-    System.arraycopy(encoded, header.readerIndex, content, 0, header.len);
-    return content;
-  }
-
   public int getVersion() {
     return version;
   }
@@ -0,0 +1,271 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server;
+
+import org.bouncycastle.asn1.ocsp.CertID;
+import org.bouncycastle.asn1.ocsp.OCSPRequest;
+import org.bouncycastle.asn1.ocsp.Request;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.ocsp.api.CertStatusInfo;
+import org.xipki.ocsp.api.OcspStore;
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.ocsp.server.store.IssuerEntry;
+import org.xipki.security.HashAlgo;
+import org.xipki.security.X509Cert;
+import org.xipki.util.CollectionUtil;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Test for {@link ResponsePresigner}.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+public class ResponsePresignerTest {
+
+  private static class MockStore extends OcspStore {
+
+    private final List<X509Cert> issuerCerts;
+
+    private final List<BigInteger> serialNumbers;
+
+    private final boolean supportsListing;
+
+    private final List<Long> listedSince = new ArrayList<>();
+
+    MockStore(List<X509Cert> issuerCerts, List<BigInteger> serialNumbers, boolean supportsListing) {
+      this.issuerCerts = issuerCerts;
+      this.serialNumbers = serialNumbers;
+      this.supportsListing = supportsListing;
+    }
+
+    @Override
+    public List<X509Cert> getIssuerCerts() {
+      return issuerCerts;
+    }
+
+    @Override
+    public boolean listSerialNumbers(RequestIssuer reqIssuer, long sinceInSec, Consumer<BigInteger> consumer) {
+      if (!supportsListing) {
+        return false;
+      }
+
+      listedSince.add(sinceInSec);
+      serialNumbers.forEach(consumer);
+      return true;
+    }
+
+    @Override
+    public boolean knowsIssuer(RequestIssuer reqIssuer) {
+      return true;
+    }
+
+    @Override
+    public X509Cert getIssuerCert(RequestIssuer reqIssuer) {
+      return issuerCerts.get(0);
+    }
+
+    @Override
+    protected CertStatusInfo getCertStatus0(Date time, RequestIssuer reqIssuer, BigInteger serialNumber,
+        boolean includeCertHash, boolean includeRit, boolean inheritCaRevocation) {
+      return null;
+    }
+
+    @Override
+    public void init(Map<String, ?> sourceConf, DataSourceWrapper datasource) {
+    }
+
+    @Override
+    public boolean isHealthy() {
+      return true;
+    }
+
+    @Override
+    public void close() {
+    }
+
+  } // class MockStore
+
+  private static class MockTarget implements ResponsePresigner.Target {
+
+    private final Set<HashAlgo> hashAlgos;
+
+    private final List<OcspStore> stores;
+
+    private final boolean signatureRequired;
+
+    private final ConcurrentLinkedQueue<CertID> generated = new ConcurrentLinkedQueue<>();
+
+    MockTarget(Set<HashAlgo> hashAlgos, boolean signatureRequired, OcspStore... stores) {
+      this.hashAlgos = hashAlgos;
+      this.signatureRequired = signatureRequired;
+      this.stores = Arrays.asList(stores);
+    }
+
+    @Override
+    public String getName() {
+      return "responder1";
+    }
+
+    @Override
+    public boolean isSignatureRequired() {
+      return signatureRequired;
+    }
+
+    @Override
+    public Set<HashAlgo> getHashAlgos() {
+      return hashAlgos;
+    }
+
+    @Override
+    public List<OcspStore> getStores() {
+      return stores;
+    }
+
+    @Override
+    public void generate(byte[] request) throws Exception {
+      // slow signer
+      Thread.sleep(2);
+      OCSPRequest req = OCSPRequest.getInstance(request);
+      generated.add(Request.getInstance(req.getTbsRequest().getRequestList().getObjectAt(0)).getReqCert());
+    }
+
+  } // class MockTarget
+
+  private static X509Cert issuerCert;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+    kpGen.initialize(256);
+    KeyPair keypair = kpGen.generateKeyPair();
+
+    X500Name name = new X500Name("CN=CA1");
+    Date notBefore = new Date();
+    Date notAfter = new Date(notBefore.getTime() + 365L * 24 * 3600 * 1000);
+    X509v3CertificateBuilder builder = new X509v3CertificateBuilder(name, BigInteger.ONE, notBefore, notAfter,
+        name, SubjectPublicKeyInfo.getInstance(keypair.getPublic().getEncoded()));
+    issuerCert = new X509Cert(builder.build(
+        new JcaContentSignerBuilder("SHA256withECDSA").build(keypair.getPrivate())));
+  } // method init
+
+  private static List<BigInteger> serials(int num) {
+    List<BigInteger> serials = new ArrayList<>(num);
+    for (int i = 1; i <= num; i++) {
+      serials.add(BigInteger.valueOf(i));
+    }
+    return serials;
+  }
+
+  @Test
+  public void testAllHashAlgos() throws Exception {
+    MockStore store = new MockStore(Collections.singletonList(issuerCert), serials(20), true);
+    Set<HashAlgo> hashAlgos = CollectionUtil.asSet(HashAlgo.SHA1, HashAlgo.SHA256, HashAlgo.SHA3_256);
+    MockTarget target = new MockTarget(hashAlgos, false, store);
+
+    try (ResponsePresigner presigner = new ResponsePresigner(() -> true,
+        Collections.singletonList(target), 3600, 86400, 4, 0)) {
+      presigner.run();
+
+      // run() returns only after all responses are generated
+      Assert.assertEquals(60, presigner.getGenerated());
+      Assert.assertEquals(60, target.generated.size());
+    }
+
+    IssuerEntry issuer = new IssuerEntry(0, issuerCert);
+    Map<HashAlgo, Set<BigInteger>> serialsPerAlgo = new HashMap<>();
+    for (CertID certId : target.generated) {
+      HashAlgo hashAlgo = HashAlgo.getInstance(certId.getHashAlgorithm());
+      // encoded as by the clients, e.g. without NULL parameters for SHA-2 and SHA-3
+      Assert.assertEquals(hashAlgo.getAlgorithmIdentifier(), certId.getHashAlgorithm());
+      // nameAndKeyHash: OCTET STRING of issuerNameHash followed by OCTET STRING of issuerKeyHash
+      byte[] nameAndKeyHash = issuer.getEncodedHash(hashAlgo);
+      int hlen = hashAlgo.getLength();
+      Assert.assertArrayEquals(Arrays.copyOfRange(nameAndKeyHash, 2, 2 + hlen),
+          certId.getIssuerNameHash().getOctets());
+      Assert.assertArrayEquals(Arrays.copyOfRange(nameAndKeyHash, 4 + hlen, 4 + 2 * hlen),
+          certId.getIssuerKeyHash().getOctets());
+      serialsPerAlgo.computeIfAbsent(hashAlgo, k -> new HashSet<>()).add(certId.getSerialNumber().getValue());
+    }
+
+    Assert.assertEquals(hashAlgos, serialsPerAlgo.keySet());
+    for (Set<BigInteger> serials : serialsPerAlgo.values()) {
+      Assert.assertEquals(new HashSet<>(serials(20)), serials);
+    }
+  } // method testAllHashAlgos
+
+  @Test
+  public void testIncrementalRun() {
+    MockStore store = new MockStore(Collections.singletonList(issuerCert), serials(5), true);
+    MockTarget target = new MockTarget(Collections.singleton(HashAlgo.SHA1), false, store);
+
+    long startSec = System.currentTimeMillis() / 1000;
+    try (ResponsePresigner presigner = new ResponsePresigner(() -> true,
+        Collections.singletonList(target), 3600, 86400, 2, 0)) {
+      presigner.run();
+      presigner.run();
+    }
+
+    Assert.assertEquals(2, store.listedSince.size());
+    // the first run processes all certificates
+    Assert.assertEquals(0L, (long) store.listedSince.get(0));
+    // the second run only the ones changed since the start of the first run
+    long since = store.listedSince.get(1);
+    Assert.assertTrue("since " + since, since > 0 && since <= startSec);
+  } // method testIncrementalRun
+
+  @Test
+  public void testSkipped() {
+    MockStore noListing = new MockStore(Collections.singletonList(issuerCert), serials(5), false);
+    MockTarget target = new MockTarget(Collections.singleton(HashAlgo.SHA1), false, noListing);
+
+    MockStore store = new MockStore(Collections.singletonList(issuerCert), serials(5), true);
+    MockTarget signedTarget = new MockTarget(Collections.singleton(HashAlgo.SHA1), true, store);
+
+    try (ResponsePresigner presigner = new ResponsePresigner(() -> true,
+        Arrays.asList(target, signedTarget), 3600, 86400, 2, 0)) {
+      presigner.run();
+      Assert.assertEquals(0, presigner.getGenerated());
+    }
+
+    try (ResponsePresigner presigner = new ResponsePresigner(() -> false,
+        Collections.singletonList(new MockTarget(Collections.singleton(HashAlgo.SHA1), false, store)),
+        3600, 86400, 2, 0)) {
+      // response cacher not on service
+      presigner.run();
+      Assert.assertEquals(0, presigner.getGenerated());
+    }
+
+    Assert.assertTrue(store.listedSince.isEmpty());
+  } // method testSkipped
+
+}
@@ -0,0 +1,149 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+/**
+ * Test for {@link CertStatusIndex}.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+public class CertStatusIndexTest {
+
+  @Test
+  public void testPutAndGet() {
+    CertStatusIndex index = new CertStatusIndex(0, 16);
+    BigInteger serial = new BigInteger("1234567890abcdef", 16);
+
+    Assert.assertTrue(index.put(1, serial, false, 0, 0, 0, 1000, 2000, 0, null, 100));
+    CertStatusIndex.Entry entry = index.get(1, serial);
+    Assert.assertNotNull(entry);
+    Assert.assertFalse(entry.isRevoked());
+    Assert.assertEquals(1000, entry.getNotBefore());
+    Assert.assertEquals(2000, entry.getNotAfter());
+    Assert.assertNull(entry.getCertHash());
+
+    // other issuer, other serial number
+    Assert.assertNull(index.get(2, serial));
+    Assert.assertNull(index.get(1, serial.add(BigInteger.ONE)));
+
+    // revoke it
+    Assert.assertTrue(index.put(1, serial, true, 1, 1500, 1400, 1000, 2000, 3, null, 200));
+    Assert.assertEquals(1, index.size());
+    Assert.assertEquals(200, index.getMaxLastUpdate());
+
+    entry = index.get(1, serial);
+    Assert.assertTrue(entry.isRevoked());
+    Assert.assertEquals(1, entry.getReason());
+    Assert.assertEquals(1500, entry.getRevTime());
+    Assert.assertEquals(1400, entry.getInvalidityTime());
+    Assert.assertEquals(3, entry.getCrlId());
+  } // method testPutAndGet
+
+  @Test
+  public void testLargeIssuerId() {
+    CertStatusIndex index = new CertStatusIndex(0, 16);
+    BigInteger serial = BigInteger.valueOf(0x1234);
+
+    // the issuer ids differ only above the lower 16 bits
+    int iid1 = 1;
+    int iid2 = 1 + (1 << 16);
+    int iid3 = Integer.MAX_VALUE;
+
+    Assert.assertTrue(index.put(iid1, serial, false, 0, 0, 0, 1, 2, 0, null, 1));
+    Assert.assertTrue(index.put(iid2, serial, true, 4, 5, 0, 1, 2, 0, null, 1));
+    Assert.assertTrue(index.put(iid3, serial, true, 5, 6, 0, 1, 2, 0, null, 1));
+    Assert.assertEquals(3, index.size());
+
+    Assert.assertFalse(index.get(iid1, serial).isRevoked());
+    Assert.assertEquals(4, index.get(iid2, serial).getReason());
+    Assert.assertEquals(5, index.get(iid3, serial).getReason());
+    Assert.assertNull(index.get(2 + (1 << 16), serial));
+  } // method testLargeIssuerId
+
+  @Test
+  public void testCertHash() {
+    CertStatusIndex index = new CertStatusIndex(32, 16);
+    Assert.assertTrue(index.isWithCertHash());
+
+    byte[] hash = new byte[32];
+    new Random(1).nextBytes(hash);
+
+    index.put(1, BigInteger.ONE, false, 0, 0, 0, 1, 2, 0, hash, 1);
+    // hash with invalid length is not kept
+    index.put(1, BigInteger.TEN, false, 0, 0, 0, 1, 2, 0, new byte[20], 1);
+
+    Assert.assertArrayEquals(hash, index.get(1, BigInteger.ONE).getCertHash());
+    Assert.assertNull(index.get(1, BigInteger.TEN).getCertHash());
+  } // method testCertHash
+
+  @Test
+  public void testInvalidSerialNumbers() {
+    CertStatusIndex index = new CertStatusIndex(0, 16);
+
+    // more than 20 bytes
+    BigInteger tooLong = BigInteger.ONE.shiftLeft(20 * 8);
+    Assert.assertFalse(index.put(1, tooLong, false, 0, 0, 0, 1, 2, 0, null, 1));
+    Assert.assertNull(index.get(1, tooLong));
+
+    // exactly 20 bytes
+    BigInteger maxLen = tooLong.subtract(BigInteger.ONE);
+    Assert.assertTrue(index.put(1, maxLen, false, 0, 0, 0, 1, 2, 0, null, 1));
+    Assert.assertNotNull(index.get(1, maxLen));
+
+    Assert.assertFalse(index.put(1, BigInteger.ZERO, false, 0, 0, 0, 1, 2, 0, null, 1));
+    Assert.assertNull(index.get(1, BigInteger.valueOf(-1)));
+  } // method testInvalidSerialNumbers
+
+  @Test
+  public void testTimeAfter2106() {
+    CertStatusIndex index = new CertStatusIndex(0, 16);
+    index.put(1, BigInteger.ONE, false, 0, 0, 0, 1, 1L << 40, 0, null, 1);
+    Assert.assertEquals(0xFFFFFFFFL, index.get(1, BigInteger.ONE).getNotAfter());
+  }
+
+  @Test
+  public void testManyEntries() {
+    // more entries than one segment, with rehash
+    final int num = 200_000;
+    CertStatusIndex index = new CertStatusIndex(0, 16);
+    Random random = new Random(1);
+    BigInteger[] serials = new BigInteger[num];
+    for (int i = 0; i < num; i++) {
+      serials[i] = new BigInteger(159, random).setBit(0).add(BigInteger.valueOf(i));
+      Assert.assertTrue(index.put(i % 3 + 70_000, serials[i], false, 0, 0, 0, i, i + 1, 0, null, i));
+    }
+    Assert.assertEquals(num, index.size());
+    Assert.assertEquals(num - 1, index.getMaxLastUpdate());
+
+    for (int i = 0; i < num; i++) {
+      CertStatusIndex.Entry entry = index.get(i % 3 + 70_000, serials[i]);
+      Assert.assertNotNull("entry " + i, entry);
+      Assert.assertEquals(i, entry.getNotBefore());
+      Assert.assertNull(index.get((i + 1) % 3 + 70_000, serials[i]));
+    }
+  } // method testManyEntries
+
+}
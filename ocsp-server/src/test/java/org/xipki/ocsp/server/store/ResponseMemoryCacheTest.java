@@ -0,0 +1,177 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.ocsp.api.OcspRespWithCacheInfo;
+import org.xipki.security.HashAlgo;
+import org.xipki.security.SignAlgo;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Test for {@link ResponseMemoryCache}.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+public class ResponseMemoryCacheTest {
+
+  private static final SignAlgo SIG_ALGO = SignAlgo.RSA_SHA256;
+
+  private static final HashAlgo HASH_ALGO = HashAlgo.SHA1;
+
+  private static final long NOW = 1_000_000L;
+
+  private static OcspRespWithCacheInfo response(int len) {
+    return new OcspRespWithCacheInfo(new byte[len], null);
+  }
+
+  private static BigInteger serial(int i) {
+    return BigInteger.valueOf(i);
+  }
+
+  @Test
+  public void testPutAndGet() {
+    ResponseMemoryCache cache = new ResponseMemoryCache(10, 1000);
+    OcspRespWithCacheInfo resp = response(10);
+    cache.put(1, serial(1), SIG_ALGO, HASH_ALGO, resp, NOW + 100);
+
+    Assert.assertSame(resp, cache.get(1, serial(1), SIG_ALGO, HASH_ALGO, NOW));
+    Assert.assertNull(cache.get(2, serial(1), SIG_ALGO, HASH_ALGO, NOW));
+    Assert.assertNull(cache.get(1, serial(2), SIG_ALGO, HASH_ALGO, NOW));
+    Assert.assertNull(cache.get(1, serial(1), SignAlgo.ECDSA_SHA256, HASH_ALGO, NOW));
+    Assert.assertNull(cache.get(1, serial(1), SIG_ALGO, HashAlgo.SHA256, NOW));
+
+    Assert.assertEquals(1, cache.getHits());
+    Assert.assertEquals(4, cache.getMisses());
+    Assert.assertEquals(20, cache.getHitRate());
+    Assert.assertEquals(10, cache.getSize());
+  }
+
+  @Test
+  public void testReplace() {
+    ResponseMemoryCache cache = new ResponseMemoryCache(10, 1000);
+    cache.put(1, serial(1), SIG_ALGO, HASH_ALGO, response(10), NOW + 100);
+    OcspRespWithCacheInfo resp = response(30);
+    cache.put(1, serial(1), SIG_ALGO, HASH_ALGO, resp, NOW + 100);
+
+    Assert.assertSame(resp, cache.get(1, serial(1), SIG_ALGO, HASH_ALGO, NOW));
+    Assert.assertEquals(1, cache.getNumEntries());
+    Assert.assertEquals(30, cache.getSize());
+  }
+
+  @Test
+  public void testExpired() {
+    ResponseMemoryCache cache = new ResponseMemoryCache(10, 1000);
+    cache.put(1, serial(1), SIG_ALGO, HASH_ALGO, response(10), NOW - 1);
+    cache.put(1, serial(2), SIG_ALGO, HASH_ALGO, response(10), NOW - 1);
+    cache.put(1, serial(3), SIG_ALGO, HASH_ALGO, response(10), NOW + 100);
+
+    Assert.assertNull(cache.get(1, serial(1), SIG_ALGO, HASH_ALGO, NOW));
+    Assert.assertEquals(2, cache.getNumEntries());
+
+    cache.evict(NOW);
+    Assert.assertEquals(1, cache.getNumEntries());
+    Assert.assertEquals(10, cache.getSize());
+    Assert.assertNotNull(cache.get(1, serial(3), SIG_ALGO, HASH_ALGO, NOW));
+    // expired responses are not counted as evictions
+    Assert.assertEquals(0, cache.getEvictions());
+  }
+
+  @Test
+  public void testMaxEntries() {
+    ResponseMemoryCache cache = new ResponseMemoryCache(100, 1_000_000);
+    for (int i = 0; i < 1000; i++) {
+      cache.put(1, serial(i), SIG_ALGO, HASH_ALGO, response(10), NOW + 100);
+      Assert.assertTrue(cache.getNumEntries() <= 100);
+    }
+    Assert.assertEquals(100, cache.getNumEntries());
+    Assert.assertEquals(900, cache.getEvictions());
+    Assert.assertEquals(1000, cache.getSize());
+  }
+
+  @Test
+  public void testMaxSize() {
+    ResponseMemoryCache cache = new ResponseMemoryCache(1000, 500);
+    for (int i = 0; i < 100; i++) {
+      cache.put(1, serial(i), SIG_ALGO, HASH_ALGO, response(10), NOW + 100);
+      Assert.assertTrue(cache.getSize() <= 500);
+    }
+    Assert.assertEquals(50, cache.getNumEntries());
+  }
+
+  @Test
+  public void testSecondChance() {
+    ResponseMemoryCache cache = new ResponseMemoryCache(10, 1_000_000);
+    for (int i = 0; i < 10; i++) {
+      cache.put(1, serial(i), SIG_ALGO, HASH_ALGO, response(10), NOW + 100);
+    }
+
+    // the oldest response is read and shall survive the next eviction
+    Assert.assertNotNull(cache.get(1, serial(0), SIG_ALGO, HASH_ALGO, NOW));
+    cache.put(1, serial(10), SIG_ALGO, HASH_ALGO, response(10), NOW + 100);
+
+    Assert.assertEquals(10, cache.getNumEntries());
+    Assert.assertNotNull(cache.get(1, serial(0), SIG_ALGO, HASH_ALGO, NOW));
+    Assert.assertNull(cache.get(1, serial(1), SIG_ALGO, HASH_ALGO, NOW));
+    Assert.assertNotNull(cache.get(1, serial(10), SIG_ALGO, HASH_ALGO, NOW));
+  }
+
+  @Test
+  public void testConcurrentPut() throws Exception {
+    final int maxEntries = 500;
+    ResponseMemoryCache cache = new ResponseMemoryCache(maxEntries, 1_000_000);
+
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      final int offset = t * 10000;
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException ex) {
+          return;
+        }
+
+        for (int i = 0; i < 5000; i++) {
+          cache.put(1, serial(offset + i), SIG_ALGO, HASH_ALGO, response(10), NOW + 100);
+          cache.get(1, serial(offset + i / 2), SIG_ALGO, HASH_ALGO, NOW);
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    // the eviction of the last concurrent put may have been skipped
+    cache.evict(NOW);
+    Assert.assertTrue("too many entries: " + cache.getNumEntries(), cache.getNumEntries() <= maxEntries);
+    Assert.assertEquals(10L * cache.getNumEntries(), cache.getSize());
+  }
+
+}
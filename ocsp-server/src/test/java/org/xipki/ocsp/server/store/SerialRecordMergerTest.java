@@ -0,0 +1,198 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.datasource.DataAccessException;
+import org.xipki.ocsp.server.store.SerialRecordSorter.SerialRecord;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test for {@link SerialRecordMerger}.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+public class SerialRecordMergerTest {
+
+  private static final int CRL_ID = 7;
+
+  private static class RecordingHandler implements SerialRecordMerger.Handler {
+
+    private final List<String> inserted = new ArrayList<>();
+
+    private final List<String> updated = new ArrayList<>();
+
+    private final List<Long> deleted = new ArrayList<>();
+
+    @Override
+    public void insert(SerialRecord crlEntry) {
+      inserted.add(crlEntry.sn);
+    }
+
+    @Override
+    public void update(SerialRecord row, SerialRecord crlEntry) {
+      Assert.assertEquals("sn of updated row", row.sn, crlEntry.sn);
+      updated.add(row.sn);
+    }
+
+    @Override
+    public void delete(SerialRecord row) {
+      deleted.add(row.id);
+    }
+
+  } // class RecordingHandler
+
+  @Test
+  public void testDiff() throws Exception {
+    List<SerialRecord> crl = new ArrayList<>();
+    // unchanged
+    crl.add(crlEntry("1", 1, 100, 0));
+    // new
+    crl.add(crlEntry("2", 1, 100, 0));
+    // reason changed
+    crl.add(crlEntry("3", 4, 100, 0));
+    // revocation time changed
+    crl.add(crlEntry("4", 1, 200, 0));
+    // invalidity time changed
+    crl.add(crlEntry("5", 1, 100, 50));
+    // known, but not revoked yet
+    crl.add(crlEntry("6", 1, 100, 0));
+    // revoked by another CRL
+    crl.add(crlEntry("7", 1, 100, 0));
+    // new, sorted after the last row
+    crl.add(crlEntry("100", 1, 100, 0));
+
+    List<SerialRecord> rows = new ArrayList<>();
+    rows.add(row("1", 11, CRL_ID, true, 1, 100, 0));
+    rows.add(row("3", 13, CRL_ID, true, 1, 100, 0));
+    rows.add(row("4", 14, CRL_ID, true, 1, 100, 0));
+    rows.add(row("5", 15, CRL_ID, true, 1, 100, 0));
+    rows.add(row("6", 16, 0, false, 0, 0, 0));
+    rows.add(row("7", 17, CRL_ID + 1, true, 1, 100, 0));
+    // removed from the CRL
+    rows.add(row("8", 18, CRL_ID, true, 1, 100, 0));
+    // revoked by another CRL, not in this CRL
+    rows.add(row("9", 19, CRL_ID + 1, true, 1, 100, 0));
+    // not revoked
+    rows.add(row("a", 20, CRL_ID, false, 0, 0, 0));
+
+    RecordingHandler handler = merge(crl, rows);
+    Assert.assertEquals("inserted", list("2", "100"), handler.inserted);
+    Assert.assertEquals("updated", list("3", "4", "5", "6", "7"), handler.updated);
+    Assert.assertEquals("deleted", list(18L), handler.deleted);
+  } // method testDiff
+
+  @Test
+  public void testDuplicatedCrlEntries() throws Exception {
+    List<SerialRecord> crl = new ArrayList<>();
+    crl.add(crlEntry("1", 1, 100, 0));
+    crl.add(crlEntry("1", 4, 300, 0));
+    crl.add(crlEntry("2", 1, 100, 0));
+    crl.add(crlEntry("2", 1, 100, 0));
+
+    List<SerialRecord> rows = new ArrayList<>();
+    rows.add(row("2", 12, CRL_ID, true, 3, 100, 0));
+
+    RecordingHandler handler = merge(crl, rows);
+    // only the first entry of a serial number is considered
+    Assert.assertEquals("inserted", list("1"), handler.inserted);
+    Assert.assertEquals("updated", list("2"), handler.updated);
+    Assert.assertTrue("deleted", handler.deleted.isEmpty());
+  } // method testDuplicatedCrlEntries
+
+  @Test
+  public void testEmptyCrl() throws Exception {
+    List<SerialRecord> rows = new ArrayList<>();
+    rows.add(row("1", 11, CRL_ID, true, 1, 100, 0));
+    rows.add(row("2", 12, CRL_ID, false, 0, 0, 0));
+    rows.add(row("3", 13, CRL_ID, true, 1, 100, 0));
+
+    RecordingHandler handler = merge(new ArrayList<>(), rows);
+    Assert.assertTrue("inserted", handler.inserted.isEmpty());
+    Assert.assertTrue("updated", handler.updated.isEmpty());
+    Assert.assertEquals("deleted", list(11L, 13L), handler.deleted);
+  } // method testEmptyCrl
+
+  @Test
+  public void testSpilled() throws Exception {
+    // the records are spilled to files with chunk size 3
+    List<SerialRecord> crl = new ArrayList<>();
+    List<SerialRecord> rows = new ArrayList<>();
+    for (int i = 100; i > 0; i--) {
+      String sn = Integer.toHexString(i);
+      if (i % 2 == 0) {
+        crl.add(crlEntry(sn, 1, 100, 0));
+      }
+      if (i % 3 == 0) {
+        rows.add(row(sn, i, CRL_ID, true, 1, 100, 0));
+      }
+    }
+
+    RecordingHandler handler = merge(crl, rows);
+    // in CRL, not in the database: multiples of 2 but not of 3
+    Assert.assertEquals("inserted", 50 - 16, handler.inserted.size());
+    Assert.assertTrue("updated", handler.updated.isEmpty());
+    // in the database, not in CRL: multiples of 3 but not of 2
+    Assert.assertEquals("deleted", 33 - 16, handler.deleted.size());
+    for (Long id : handler.deleted) {
+      Assert.assertTrue("deleted id " + id, id % 3 == 0 && id % 2 != 0);
+    }
+  } // method testSpilled
+
+  private static RecordingHandler merge(List<SerialRecord> crl, List<SerialRecord> rows)
+      throws IOException, DataAccessException {
+    try (SerialRecordSorter crlSorter = new SerialRecordSorter(3);
+         SerialRecordSorter rowSorter = new SerialRecordSorter(3)) {
+      for (SerialRecord m : crl) {
+        crlSorter.add(m);
+      }
+      for (SerialRecord m : rows) {
+        rowSorter.add(m);
+      }
+
+      RecordingHandler handler = new RecordingHandler();
+      SerialRecordMerger.merge(crlSorter.sorted(), rowSorter.sorted(), CRL_ID, handler);
+      return handler;
+    }
+  } // method merge
+
+  private static SerialRecord crlEntry(String sn, int reason, long revocationTime, long invalidityTime) {
+    return new SerialRecord(sn, 0, 0, true, reason, revocationTime, invalidityTime);
+  }
+
+  private static SerialRecord row(String sn, long id, int crlId, boolean revoked, int reason,
+      long revocationTime, long invalidityTime) {
+    return new SerialRecord(sn, id, crlId, revoked, reason, revocationTime, invalidityTime);
+  }
+
+  @SafeVarargs
+  private static <T> List<T> list(T... values) {
+    List<T> list = new ArrayList<>(values.length);
+    for (T value : values) {
+      list.add(value);
+    }
+    return list;
+  }
+
+}
@@ -0,0 +1,141 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.ocsp.server.store.SerialRecordSorter.SerialRecord;
+import org.xipki.ocsp.server.store.SerialRecordSorter.SortedRecords;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Test for {@link SerialRecordSorter}.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+public class SerialRecordSorterTest {
+
+  @Test
+  public void testComparator() {
+    Assert.assertTrue("f < 10", SerialRecordSorter.SERIAL_COMPARATOR.compare("f", "10") < 0);
+    Assert.assertTrue("ff < 100", SerialRecordSorter.SERIAL_COMPARATOR.compare("ff", "100") < 0);
+    Assert.assertTrue("1a < 1b", SerialRecordSorter.SERIAL_COMPARATOR.compare("1a", "1b") < 0);
+    Assert.assertEquals("abc = abc", 0, SerialRecordSorter.SERIAL_COMPARATOR.compare("abc", "abc"));
+  }
+
+  @Test
+  public void testInMemory() throws IOException {
+    checkSort(1000, 10_000, 1);
+  }
+
+  @Test
+  public void testSpilledMerge() throws IOException {
+    // 1000 records in 143 chunks
+    checkSort(1000, 7, 2);
+  }
+
+  @Test
+  public void testSpilledMergeWithOneChunk() throws IOException {
+    checkSort(100, 100, 3);
+  }
+
+  @Test
+  public void testDuplicates() throws IOException {
+    try (SerialRecordSorter sorter = new SerialRecordSorter(3)) {
+      String[] sns = {"5", "1", "5", "3", "1", "5", "2"};
+      for (int i = 0; i < sns.length; i++) {
+        sorter.add(record(sns[i], i + 1));
+      }
+
+      List<SerialRecord> sorted = toList(sorter.sorted());
+      Assert.assertEquals("number of records", sns.length, sorted.size());
+
+      String[] expected = {"1", "1", "2", "3", "5", "5", "5"};
+      for (int i = 0; i < expected.length; i++) {
+        Assert.assertEquals("sn of record " + i, expected[i], sorted.get(i).sn);
+      }
+    }
+  } // method testDuplicates
+
+  @Test
+  public void testEmpty() throws IOException {
+    try (SerialRecordSorter sorter = new SerialRecordSorter(10)) {
+      Assert.assertNull(sorter.sorted().next());
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testAddAfterSorted() throws IOException {
+    try (SerialRecordSorter sorter = new SerialRecordSorter(10)) {
+      sorter.sorted();
+      sorter.add(record("1", 1));
+    }
+  }
+
+  private static void checkSort(int numRecords, int chunkSize, long seed) throws IOException {
+    Random random = new Random(seed);
+    List<BigInteger> serials = new ArrayList<>(numRecords);
+    try (SerialRecordSorter sorter = new SerialRecordSorter(chunkSize)) {
+      for (int i = 0; i < numRecords; i++) {
+        // serial numbers of different lengths
+        BigInteger serial = new BigInteger(1 + random.nextInt(100), random);
+        serials.add(serial);
+        sorter.add(new SerialRecord(serial.toString(16), i + 1, 2, true, 1, 1000L * i, i % 2 == 0 ? 0 : 500L * i));
+      }
+
+      Assert.assertEquals("size", numRecords, sorter.size());
+      List<SerialRecord> sorted = toList(sorter.sorted());
+      Assert.assertEquals("number of sorted records", numRecords, sorted.size());
+
+      serials.sort(null);
+      for (int i = 0; i < numRecords; i++) {
+        SerialRecord m = sorted.get(i);
+        Assert.assertEquals("serial of record " + i, serials.get(i), new BigInteger(m.sn, 16));
+
+        // the fields are preserved while spilling
+        int index = (int) m.id - 1;
+        Assert.assertEquals("crlId", 2, m.crlId);
+        Assert.assertTrue("revoked", m.revoked);
+        Assert.assertEquals("reason", 1, m.reason);
+        Assert.assertEquals("revocationTime", 1000L * index, m.revocationTime);
+        Assert.assertEquals("invalidityTime", index % 2 == 0 ? 0 : 500L * index, m.invalidityTime);
+      }
+    }
+  } // method checkSort
+
+  static SerialRecord record(String sn, long id) {
+    return new SerialRecord(sn, id, 0, true, 0, 0, 0);
+  }
+
+  static List<SerialRecord> toList(SortedRecords records) throws IOException {
+    List<SerialRecord> list = new ArrayList<>();
+    SerialRecord m;
+    while ((m = records.next()) != null) {
+      list.add(m);
+    }
+    return list;
+  }
+
+}
@@ -50,24 +50,35 @@ public class CaEnrollBenchmark extends BenchmarkExecutor {
     @Override
     public void run() {
       while (!stop() && getErrorAccout() < 1) {
+        long start = 0;
         try {
           EnrollCertsRequest certReq = nextCertRequest();
           if (certReq == null) {
             break;
           }
 
+          start = beginOperation();
           testNext(certReq);
-          account(1, 0);
+          account(1, 0, start);
         } catch (Exception ex) {
           LOG.warn("exception", ex);
-          account(1, 1);
+          accountFailure(start);
         } catch (Error ex) {
           LOG.warn("unexpected exception", ex);
-          account(1, 1);
+          accountFailure(start);
         }
       }
     }
 
+    private void accountFailure(long start) {
+      if (start == 0) {
+        // failed before sending the request
+        account(1, 1);
+      } else {
+        account(1, 1, start);
+      }
+    }
+
     private void testNext(EnrollCertsRequest request) throws Exception {
       EnrollOrPollCertsResponse sdkResponse = client.enrollCerts(caName, request);
       parseEnrollCertResult(sdkResponse, num);
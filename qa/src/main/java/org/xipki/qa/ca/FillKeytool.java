@@ -54,6 +54,7 @@ import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.security.SecureRandom;
 import java.security.interfaces.*;
@@ -63,6 +64,9 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Fill the keypool with keypairs.
@@ -99,7 +103,21 @@ public class FillKeytool implements AutoCloseable {
   }
 
   public void execute(int numKeypairs, String encAlg, char[] password) throws Exception {
+    execute(numKeypairs, encAlg, password, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Fills the keypool. The keypairs of a keyspec are generated and encrypted in parallel.
+   * @param numKeypairs number of keypairs per keyspec.
+   * @param encAlg the encryption algorithm, AES128/GCM, AES192/GCM or AES256/GCM.
+   * @param password the password to derive the encryption key.
+   * @param threads number of threads to generate the keypairs.
+   * @throws Exception if error occurs.
+   * @since 6.0.1
+   */
+  public void execute(int numKeypairs, String encAlg, char[] password, int threads) throws Exception {
     Args.notNull(password, "password");
+    Args.positive(threads, "threads");
 
     int encAlgCode;
     int keyLength;
@@ -119,8 +137,15 @@ public class FillKeytool implements AutoCloseable {
     KeySpec spec = new PBEKeySpec(password, "ENC".getBytes(StandardCharsets.UTF_8), 10000, keyLength);
     SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
     SecretKey key = new SecretKeySpec(factory.generateSecret(spec).getEncoded(), "AES");
-    Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+    ThreadLocal<Cipher> cipher = ThreadLocal.withInitial(() -> {
+      try {
+        return Cipher.getInstance("AES/GCM/NoPadding");
+      } catch (GeneralSecurityException ex) {
+        throw new IllegalStateException(ex);
+      }
+    });
 
+    ForkJoinPool pool = new ForkJoinPool(threads);
     Connection conn = datasource.getConnection();
 
     PreparedStatement ps = null;
@@ -211,33 +236,41 @@ public class FillKeytool implements AutoCloseable {
           rsaKeys = rsaKeysMap.get(keyspec);
         }
 
-        for (int i = 0; i < numKeypairs; i++) {
-          byte[] keyInfo;
-          if (rsa) {
-            keyInfo = rsaKeys.get(i % rsaKeys.size());
-          } else {
-            keyInfo = generateKeypair(keyspec, rnd).getEncoded();
-          }
-
-          byte[] nonce = new byte[12];
-          rnd.nextBytes(nonce);
-          GCMParameterSpec gcmSpec = new GCMParameterSpec(128, nonce);
-
-          cipher.init(Cipher.ENCRYPT_MODE, key, gcmSpec);
-          byte[] encryptedData = cipher.doFinal(keyInfo);
-
-          int idx = 1;
-          ps.setInt(idx++, id++);
-          ps.setInt(idx++, kid);
-          ps.setInt(idx++, 0); // SHARD_ID
-          ps.setInt(idx++, encAlgCode); // AES128/GCM
-          ps.setString(idx++, Base64.encodeToString(nonce));
-          ps.setString(idx, Base64.encodeToString(encryptedData));
-          ps.addBatch();
-
-          if ((i == numKeypairs - 1) || (i % 100 == 0)) {
-            ps.executeBatch();
+        final List<byte[]> rsaKeys0 = rsaKeys;
+        for (int i = 0; i < numKeypairs; i += 100) {
+          int offset = i;
+          int n = Math.min(100, numKeypairs - i);
+
+          // generate and encrypt the keypairs in parallel, and insert them in one batch
+          List<byte[][]> encryptedKeys = pool.submit(() -> IntStream.range(offset, offset + n).parallel()
+              .mapToObj(j -> {
+                try {
+                  byte[] keyInfo = rsa ? rsaKeys0.get(j % rsaKeys0.size())
+                      : generateKeypair(keyspec, rnd).getEncoded();
+
+                  byte[] nonce = new byte[12];
+                  rnd.nextBytes(nonce);
+                  GCMParameterSpec gcmSpec = new GCMParameterSpec(128, nonce);
+
+                  Cipher cipher0 = cipher.get();
+                  cipher0.init(Cipher.ENCRYPT_MODE, key, gcmSpec);
+                  return new byte[][]{nonce, cipher0.doFinal(keyInfo)};
+                } catch (Exception ex) {
+                  throw new IllegalStateException("error generating keypair " + keyspec, ex);
+                }
+              }).collect(Collectors.toList())).get();
+
+          for (byte[][] encryptedKey : encryptedKeys) {
+            int idx = 1;
+            ps.setInt(idx++, id++);
+            ps.setInt(idx++, kid);
+            ps.setInt(idx++, 0); // SHARD_ID
+            ps.setInt(idx++, encAlgCode); // AES128/GCM
+            ps.setString(idx++, Base64.encodeToString(encryptedKey[0]));
+            ps.setString(idx, Base64.encodeToString(encryptedKey[1]));
+            ps.addBatch();
           }
+          ps.executeBatch();
         } // end for
         long duration = System.currentTimeMillis() - start;
         System.out.println("\t" + (rsa ? "loaded " : "generated ")
@@ -246,6 +279,7 @@ public class FillKeytool implements AutoCloseable {
     } catch (SQLException ex) {
       throw datasource.translate(sql, ex);
     } finally {
+      pool.shutdown();
       datasource.releaseResources(ps, null, false);
       datasource.returnConnection(conn);
     }
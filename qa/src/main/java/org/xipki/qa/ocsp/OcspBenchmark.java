@@ -59,12 +59,13 @@ public class OcspBenchmark extends BenchmarkExecutor {
           break;
         }
 
+        long start = beginOperation();
         try {
           boolean valid = ask(new BigInteger[]{sn});
-          account(1, valid ? 0 : 1);
+          account(1, valid ? 0 : 1, start);
         } catch (Throwable th) {
           LOG.warn("{}: {}", th.getClass().getName(), th.getMessage());
-          account(1, 1);
+          account(1, 1, start);
         }
       }
     }
@@ -44,23 +44,25 @@ import static org.bouncycastle.asn1.nist.NISTObjectIdentifiers.*;
 //See https://www.itu.int/ITU-T/formal-language/itu-t/x/x509/2019/AlgorithmObjectIdentifiers.html
 public enum HashAlgo {
 
-  SHA1(20, OIWObjectIdentifiers.idSHA1, "SHA1", true),
+  SHA1(0x01, 20, OIWObjectIdentifiers.idSHA1, "SHA1", true),
   // rfc5754: no parameters
-  SHA224(28, id_sha224,  "SHA224"),
-  SHA256(32,   id_sha256, "SHA256"),
-  SHA384(48,   id_sha384,  "SHA384"),
-  SHA512(64,   id_sha512,  "SHA512"),
-  SHA3_224(28, id_sha3_224,  "SHA3-224"),
-  SHA3_256(32, id_sha3_256,  "SHA3-256"),
-  SHA3_384(48, id_sha3_384,  "SHA3-384"),
-  SHA3_512(64, id_sha3_512, "SHA3-512"),
-  SM3(32, GMObjectIdentifiers.sm3,     "SM3"),
-
-  SHAKE128(32, id_shake128, "SHAKE128"),
-  SHAKE256(64, id_shake256, "SHAKE256");
+  SHA224(0x02, 28, id_sha224,  "SHA224"),
+  SHA256(0x03, 32,   id_sha256, "SHA256"),
+  SHA384(0x04, 48,   id_sha384,  "SHA384"),
+  SHA512(0x05, 64,   id_sha512,  "SHA512"),
+  SHA3_224(0x06, 28, id_sha3_224,  "SHA3-224"),
+  SHA3_256(0x07, 32, id_sha3_256,  "SHA3-256"),
+  SHA3_384(0x08, 48, id_sha3_384,  "SHA3-384"),
+  SHA3_512(0x09, 64, id_sha3_512, "SHA3-512"),
+  SM3(0x0A, 32, GMObjectIdentifiers.sm3,     "SM3"),
+
+  SHAKE128(0x0B, 32, id_shake128, "SHAKE128"),
+  SHAKE256(0x0C, 64, id_shake256, "SHAKE256");
 
   private static final Map<String, HashAlgo> map = new HashMap<>();
 
+  private final byte code;
+
   private final int length;
 
   private final ASN1ObjectIdentifier oid;
@@ -92,11 +94,12 @@ public enum HashAlgo {
     map.put("SHAKE256", SHAKE256);
   }
 
-  HashAlgo(int length, ASN1ObjectIdentifier oid, String jceName) {
-    this(length, oid, jceName, false);
+  HashAlgo(int code, int length, ASN1ObjectIdentifier oid, String jceName) {
+    this(code, length, oid, jceName, false);
   }
 
-  HashAlgo(int length, ASN1ObjectIdentifier oid, String jceName, boolean withNullParams) {
+  HashAlgo(int code, int length, ASN1ObjectIdentifier oid, String jceName, boolean withNullParams) {
+    this.code = (byte) Args.range(code, "code", 0, 255);
     this.length = length;
     this.oid = oid;
     if (withNullParams) {
@@ -119,6 +122,10 @@ public enum HashAlgo {
     return length;
   }
 
+  public byte getCode() {
+    return code;
+  }
+
   public ASN1ObjectIdentifier getOid() {
     return oid;
   }
@@ -0,0 +1,448 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.security.asn1;
+
+import org.bouncycastle.asn1.*;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.*;
+import org.bouncycastle.operator.ContentSigner;
+import org.xipki.security.CrlReason;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.xipki.util.Args.notNull;
+import static org.xipki.util.Args.positive;
+
+/**
+ * Counterpart of {@link CrlStreamParser}. BouncyCastle's X509v2CRLBuilder keeps all
+ * revoked certificates as ASN.1 objects in memory until the CRL is signed.
+ *
+ * <p>This class DER-encodes each revoked certificate, and writes them sorted by the serial number
+ * to a temporary file, so that only the final encoded CRL is held in memory. While building, the
+ * TBSCertList is streamed from the temporary file to the signer.
+ *
+ * <p>The entries are sorted in memory in runs of up to {@code maxEntriesInMemory} entries. If
+ * more entries are added, each run is written sorted to its own temporary file, and the runs
+ * are merged while building.
+ *
+ * <p>For an indirect CRL, the extension certificateIssuer is added to the first entry in the
+ * sorted order, so that it applies to all entries.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+public class CrlStreamWriter implements Closeable {
+
+  private static class EncodedEntry {
+
+    private final BigInteger serialNumber;
+
+    private final byte[] encoded;
+
+    EncodedEntry(BigInteger serialNumber, byte[] encoded) {
+      this.serialNumber = serialNumber;
+      this.encoded = encoded;
+    }
+
+  } // class EncodedEntry
+
+  /**
+   * Reader of a sorted run.
+   */
+  private static class RunReader implements Closeable {
+
+    private final DataInputStream in;
+
+    private int remaining;
+
+    private EncodedEntry current;
+
+    RunReader(File file) throws IOException {
+      this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()), 64 * 1024));
+      this.remaining = in.readInt();
+    }
+
+    boolean next() throws IOException {
+      if (remaining == 0) {
+        current = null;
+        return false;
+      }
+
+      remaining--;
+      byte[] serialBytes = new byte[in.readInt()];
+      in.readFully(serialBytes);
+      byte[] encoded = new byte[in.readInt()];
+      in.readFully(encoded);
+      current = new EncodedEntry(new BigInteger(serialBytes), encoded);
+      return true;
+    } // method next
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+
+  } // class RunReader
+
+  private static final ASN1Integer V2 = new ASN1Integer(1);
+
+  private static final int DFLT_MAX_ENTRIES_IN_MEMORY = 100_000;
+
+  private static final Comparator<EncodedEntry> SERIAL_COMPARATOR =
+      Comparator.comparing(entry -> entry.serialNumber);
+
+  private final X500Name issuer;
+
+  private final X500Name certificateIssuer;
+
+  private final Date thisUpdate;
+
+  private final Date nextUpdate;
+
+  private final List<Extension> extensions = new ArrayList<>();
+
+  private final int maxEntriesInMemory;
+
+  private final List<EncodedEntry> entries = new ArrayList<>();
+
+  private final List<File> runFiles = new ArrayList<>();
+
+  private File entriesFile;
+
+  private boolean built;
+
+  private boolean closed;
+
+  private long entriesLength;
+
+  private int numRevokedCerts;
+
+  public CrlStreamWriter(X500Name issuer, Date thisUpdate, Date nextUpdate) {
+    this(issuer, null, thisUpdate, nextUpdate, DFLT_MAX_ENTRIES_IN_MEMORY);
+  }
+
+  public CrlStreamWriter(X500Name issuer, X500Name certificateIssuer, Date thisUpdate, Date nextUpdate) {
+    this(issuer, certificateIssuer, thisUpdate, nextUpdate, DFLT_MAX_ENTRIES_IN_MEMORY);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param issuer issuer of the CRL.
+   * @param certificateIssuer issuer of the revoked certificates for indirect CRL. May be {@code null}.
+   * @param thisUpdate thisUpdate of the CRL.
+   * @param nextUpdate nextUpdate of the CRL. May be {@code null}.
+   * @param maxEntriesInMemory maximal number of entries sorted in memory, the further entries
+   *        are sorted in runs written to temporary files.
+   */
+  public CrlStreamWriter(X500Name issuer, X500Name certificateIssuer, Date thisUpdate, Date nextUpdate,
+      int maxEntriesInMemory) {
+    this.issuer = notNull(issuer, "issuer");
+    this.certificateIssuer = certificateIssuer;
+    this.thisUpdate = notNull(thisUpdate, "thisUpdate");
+    this.nextUpdate = nextUpdate;
+    this.maxEntriesInMemory = positive(maxEntriesInMemory, "maxEntriesInMemory");
+  }
+
+  /**
+   * Adds a revoked certificate.
+   *
+   * @param serialNumber serial number of the revoked certificate.
+   * @param revocationDate revocation date.
+   * @param reason CRL reason. {@link CrlReason#UNSPECIFIED} will not be encoded.
+   * @param invalidityDate invalidity date. May be {@code null}.
+   * @throws IOException if error occurs while writing to the temporary file.
+   */
+  public void addRevokedCert(BigInteger serialNumber, Date revocationDate, CrlReason reason, Date invalidityDate)
+      throws IOException {
+    assertNotBuilt();
+
+    ASN1EncodableVector entry = new ASN1EncodableVector(3);
+    entry.add(new ASN1Integer(serialNumber));
+    entry.add(new Time(revocationDate));
+
+    if ((reason != null && reason != CrlReason.UNSPECIFIED) || invalidityDate != null) {
+      List<Extension> entryExtns = new ArrayList<>(2);
+      if (reason != null && reason != CrlReason.UNSPECIFIED) {
+        entryExtns.add(new Extension(Extension.reasonCode, false,
+            CRLReason.lookup(reason.getCode()).getEncoded(ASN1Encoding.DER)));
+      }
+
+      if (invalidityDate != null) {
+        entryExtns.add(new Extension(Extension.invalidityDate, false,
+            new DERGeneralizedTime(invalidityDate).getEncoded(ASN1Encoding.DER)));
+      }
+
+      entry.add(new Extensions(entryExtns.toArray(new Extension[0])));
+    }
+
+    byte[] encoded = new DERSequence(entry).getEncoded(ASN1Encoding.DER);
+    entries.add(new EncodedEntry(serialNumber, encoded));
+    entriesLength += encoded.length;
+    numRevokedCerts++;
+
+    if (entries.size() >= maxEntriesInMemory) {
+      writeRun();
+    }
+  } // method addRevokedCert
+
+  public void addExtension(ASN1ObjectIdentifier oid, boolean critical, ASN1Encodable value) throws IOException {
+    extensions.add(new Extension(oid, critical, value.toASN1Primitive().getEncoded(ASN1Encoding.DER)));
+  }
+
+  public int getNumRevokedCerts() {
+    return numRevokedCerts;
+  }
+
+  /**
+   * Signs the CRL and returns its DER encoding. The signer is only used within this method.
+   *
+   * @param signer the signer.
+   * @return the DER-encoded CRL.
+   * @throws IOException if error occurs while reading the temporary file or signing.
+   */
+  public byte[] build(ContentSigner signer) throws IOException {
+    notNull(signer, "signer");
+    assertNotBuilt();
+    built = true;
+
+    if (numRevokedCerts > 0) {
+      writeSortedEntries();
+    }
+
+    AlgorithmIdentifier sigAlgId = signer.getAlgorithmIdentifier();
+    byte[] encodedSigAlgId = sigAlgId.getEncoded(ASN1Encoding.DER);
+
+    // TBSCertList fields before and after the revokedCertificates
+    ASN1EncodableVector v = new ASN1EncodableVector(5);
+    v.add(V2);
+    v.add(sigAlgId);
+    v.add(issuer);
+    v.add(new Time(thisUpdate));
+    if (nextUpdate != null) {
+      v.add(new Time(nextUpdate));
+    }
+    byte[] tbsPrefix = encodeContent(v);
+
+    byte[] tbsSuffix = extensions.isEmpty() ? new byte[0]
+        : new DERTaggedObject(true, 0, new Extensions(extensions.toArray(new Extension[0])))
+            .getEncoded(ASN1Encoding.DER);
+
+    byte[] entriesHeader = numRevokedCerts == 0 ? new byte[0]
+        : encodeHeader(Asn1StreamParser.TAG_CONSTRUCTED_SEQUENCE, entriesLength);
+
+    long tbsBodyLen = tbsPrefix.length + entriesHeader.length + entriesLength + tbsSuffix.length;
+    byte[] tbsHeader = encodeHeader(Asn1StreamParser.TAG_CONSTRUCTED_SEQUENCE, tbsBodyLen);
+
+    // sign the TBSCertList
+    try (OutputStream sigOut = signer.getOutputStream()) {
+      writeTbs(sigOut, tbsHeader, tbsPrefix, entriesHeader, tbsSuffix);
+    }
+    byte[] signature = new DERBitString(signer.getSignature()).getEncoded(ASN1Encoding.DER);
+
+    long bodyLen = tbsHeader.length + tbsBodyLen + encodedSigAlgId.length + signature.length;
+    byte[] header = encodeHeader(Asn1StreamParser.TAG_CONSTRUCTED_SEQUENCE, bodyLen);
+    long totalLen = header.length + bodyLen;
+    if (totalLen > Integer.MAX_VALUE - 8) {
+      throw new IOException("CRL too large: " + totalLen + " bytes");
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream((int) totalLen);
+    out.write(header);
+    writeTbs(out, tbsHeader, tbsPrefix, entriesHeader, tbsSuffix);
+    out.write(encodedSigAlgId);
+    out.write(signature);
+    return out.toByteArray();
+  } // method build
+
+  private void writeTbs(OutputStream out, byte[] tbsHeader, byte[] tbsPrefix, byte[] entriesHeader,
+      byte[] tbsSuffix) throws IOException {
+    out.write(tbsHeader);
+    out.write(tbsPrefix);
+    if (numRevokedCerts > 0) {
+      out.write(entriesHeader);
+      Files.copy(entriesFile.toPath(), out);
+    }
+    out.write(tbsSuffix);
+  } // method writeTbs
+
+  private void assertNotBuilt() {
+    if (built || closed) {
+      throw new IllegalStateException("CRL has been built or closed");
+    }
+  }
+
+  /**
+   * Sorts the entries in memory and writes them to a new run file.
+   */
+  private void writeRun() throws IOException {
+    entries.sort(SERIAL_COMPARATOR);
+    File runFile = Files.createTempFile("crl-run-", ".bin").toFile();
+    runFiles.add(runFile);
+
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(runFile.toPath()), 64 * 1024))) {
+      out.writeInt(entries.size());
+      for (EncodedEntry entry : entries) {
+        byte[] serialBytes = entry.serialNumber.toByteArray();
+        out.writeInt(serialBytes.length);
+        out.write(serialBytes);
+        out.writeInt(entry.encoded.length);
+        out.write(entry.encoded);
+      }
+    }
+    entries.clear();
+  } // method writeRun
+
+  /**
+   * Writes all entries sorted by the serial number to the entries file.
+   */
+  private void writeSortedEntries() throws IOException {
+    entriesFile = Files.createTempFile("crl-entries-", ".der").toFile();
+    try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(entriesFile.toPath()), 64 * 1024)) {
+      boolean first = true;
+      if (runFiles.isEmpty()) {
+        entries.sort(SERIAL_COMPARATOR);
+        for (EncodedEntry entry : entries) {
+          writeEntry(out, entry.encoded, first);
+          first = false;
+        }
+        entries.clear();
+        return;
+      }
+
+      if (!entries.isEmpty()) {
+        writeRun();
+      }
+
+      // k-way merge of the sorted runs
+      PriorityQueue<RunReader> queue = new PriorityQueue<>(runFiles.size(),
+          (a, b) -> SERIAL_COMPARATOR.compare(a.current, b.current));
+      List<RunReader> readers = new ArrayList<>(runFiles.size());
+      try {
+        for (File runFile : runFiles) {
+          RunReader reader = new RunReader(runFile);
+          readers.add(reader);
+          if (reader.next()) {
+            queue.add(reader);
+          }
+        }
+
+        RunReader reader;
+        while ((reader = queue.poll()) != null) {
+          writeEntry(out, reader.current.encoded, first);
+          first = false;
+          if (reader.next()) {
+            queue.add(reader);
+          }
+        }
+      } finally {
+        for (RunReader r : readers) {
+          try {
+            r.close();
+          } catch (IOException ex) {
+            // ignore
+          }
+        }
+      }
+    }
+  } // method writeSortedEntries
+
+  private void writeEntry(OutputStream out, byte[] encodedEntry, boolean first) throws IOException {
+    if (!first || certificateIssuer == null) {
+      out.write(encodedEntry);
+      return;
+    }
+
+    // add the extension certificateIssuer to the first entry
+    ASN1Sequence entry = ASN1Sequence.getInstance(encodedEntry);
+    Extension certIssuerExtn = new Extension(Extension.certificateIssuer, true,
+        new GeneralNames(new GeneralName(certificateIssuer)).getEncoded(ASN1Encoding.DER));
+
+    List<Extension> entryExtns = new ArrayList<>(3);
+    if (entry.size() > 2) {
+      Extensions extns = Extensions.getInstance(entry.getObjectAt(2));
+      for (ASN1ObjectIdentifier oid : extns.getExtensionOIDs()) {
+        entryExtns.add(extns.getExtension(oid));
+      }
+    }
+    entryExtns.add(certIssuerExtn);
+
+    ASN1EncodableVector v = new ASN1EncodableVector(3);
+    v.add(entry.getObjectAt(0));
+    v.add(entry.getObjectAt(1));
+    v.add(new Extensions(entryExtns.toArray(new Extension[0])));
+
+    byte[] encoded = new DERSequence(v).getEncoded(ASN1Encoding.DER);
+    entriesLength += encoded.length - encodedEntry.length;
+    out.write(encoded);
+  } // method writeEntry
+
+  @Override
+  public void close() {
+    closed = true;
+    entries.clear();
+
+    List<File> files = new ArrayList<>(runFiles);
+    if (entriesFile != null) {
+      files.add(entriesFile);
+    }
+
+    for (File file : files) {
+      try {
+        Files.deleteIfExists(file.toPath());
+      } catch (IOException ex) {
+        file.deleteOnExit();
+      }
+    }
+    runFiles.clear();
+    entriesFile = null;
+  } // method close
+
+  private static byte[] encodeContent(ASN1EncodableVector v) throws IOException {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    for (int i = 0; i < v.size(); i++) {
+      bout.write(v.get(i).toASN1Primitive().getEncoded(ASN1Encoding.DER));
+    }
+    return bout.toByteArray();
+  }
+
+  private static byte[] encodeHeader(int tag, long bodyLen) {
+    if (bodyLen < 0x80) {
+      return new byte[]{(byte) tag, (byte) bodyLen};
+    }
+
+    int numLenBytes = 0;
+    for (long l = bodyLen; l != 0; l >>>= 8) {
+      numLenBytes++;
+    }
+
+    byte[] header = new byte[2 + numLenBytes];
+    header[0] = (byte) tag;
+    header[1] = (byte) (0x80 | numLenBytes);
+    for (int i = header.length - 1; i > 1; i--) {
+      header[i] = (byte) bodyLen;
+      bodyLen >>>= 8;
+    }
+    return header;
+  } // method encodeHeader
+
+}
@@ -17,13 +17,26 @@
 
 package org.xipki.security.test;
 
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x509.Certificate;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.IssuingDistributionPoint;
+import org.bouncycastle.cert.X509CRLEntryHolder;
+import org.bouncycastle.cert.X509CRLHolder;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.xipki.security.CrlReason;
 import org.xipki.security.asn1.CrlStreamParser;
+import org.xipki.security.asn1.CrlStreamParser.RevokedCert;
 import org.xipki.security.asn1.CrlStreamParser.RevokedCertsIterator;
+import org.xipki.security.asn1.CrlStreamWriter;
 import org.xipki.security.util.X509Util;
 
 import javax.security.cert.CertificateEncodingException;
@@ -31,8 +44,12 @@ import java.io.File;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
 import java.security.Security;
+import java.util.*;
 
 /**
  * CRL Stream Parser test.
@@ -169,6 +186,141 @@ public class CrlStreamParserTest {
     Assert.assertEquals("#revokedCertificates", 2, numRevokedCerts);
   }
 
+  @Test
+  public void writeAndParseCrl() throws Exception {
+    // all entries are sorted in memory
+    writeAndParseCrl(1000, 10_000, false);
+  }
+
+  @Test
+  public void writeAndParseCrlWithRuns() throws Exception {
+    // the entries are sorted in runs written to temporary files, and merged
+    writeAndParseCrl(1000, 64, false);
+  }
+
+  @Test
+  public void writeAndParseCrlWithNoRevokedCerts() throws Exception {
+    writeAndParseCrl(0, 64, false);
+  }
+
+  @Test
+  public void writeAndParseIndirectCrl() throws Exception {
+    writeAndParseCrl(1000, 10_000, true);
+  }
+
+  @Test
+  public void writeAndParseIndirectCrlWithRuns() throws Exception {
+    writeAndParseCrl(1000, 64, true);
+  }
+
+  private void writeAndParseCrl(int numEntries, int maxEntriesInMemory, boolean indirect) throws Exception {
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+    kpGen.initialize(256);
+    KeyPair keypair = kpGen.generateKeyPair();
+
+    X500Name issuer = new X500Name("CN=CRL Writer Test");
+    X500Name certIssuer = new X500Name("CN=Certificate Issuer");
+    // without millis, since they are not encoded
+    long now = System.currentTimeMillis() / 1000 * 1000;
+    Date thisUpdate = new Date(now);
+    Date nextUpdate = new Date(now + 24 * 3600 * 1000L);
+
+    // serial numbers in random order, with different lengths
+    Random random = new Random(1);
+    List<BigInteger> serials = new ArrayList<>(numEntries);
+    for (int i = 0; i < numEntries; i++) {
+      serials.add(new BigInteger(8 + random.nextInt(150), random).add(BigInteger.valueOf(i)));
+    }
+
+    byte[] encodedCrl;
+    try (CrlStreamWriter writer = new CrlStreamWriter(issuer, indirect ? certIssuer : null, thisUpdate, nextUpdate,
+        maxEntriesInMemory)) {
+      for (int i = 0; i < numEntries; i++) {
+        BigInteger serial = serials.get(i);
+        Date revocationDate = new Date(now - i * 1000L);
+        CrlReason reason = (i % 3 == 0) ? CrlReason.KEY_COMPROMISE : null;
+        Date invalidityDate = (i % 5 == 0) ? new Date(now - 3600 * 1000L) : null;
+        writer.addRevokedCert(serial, revocationDate, reason, invalidityDate);
+      }
+      writer.addExtension(Extension.cRLNumber, false, new ASN1Integer(5));
+      if (indirect) {
+        writer.addExtension(Extension.issuingDistributionPoint, true,
+            new IssuingDistributionPoint(null, false, false, null, true, false));
+      }
+      Assert.assertEquals("#revokedCertificates", numEntries, writer.getNumRevokedCerts());
+
+      encodedCrl = writer.build(new JcaContentSignerBuilder("SHA256withECDSA").build(keypair.getPrivate()));
+    }
+
+    // parse with BouncyCastle
+    X509CRLHolder crl = X509Util.parseCrl(encodedCrl);
+    Assert.assertTrue("signature", crl.isSignatureValid(
+        new JcaContentVerifierProviderBuilder().build(keypair.getPublic())));
+    Assert.assertEquals("issuer", issuer, crl.getIssuer());
+    Assert.assertEquals("thisUpdate", thisUpdate, crl.getThisUpdate());
+    Assert.assertEquals("nextUpdate", nextUpdate, crl.getNextUpdate());
+    Assert.assertEquals("#revokedCertificates", numEntries, crl.getRevokedCertificates().size());
+
+    if (indirect) {
+      // only the first entry contains the certificateIssuer, which applies to all entries
+      GeneralNames expectedCertIssuer = new GeneralNames(new GeneralName(certIssuer));
+      int index = 0;
+      for (Object obj : crl.getRevokedCertificates()) {
+        X509CRLEntryHolder entry = (X509CRLEntryHolder) obj;
+        Extension extn = entry.getExtension(Extension.certificateIssuer);
+        if (index == 0) {
+          Assert.assertNotNull("certificateIssuer in entry 0", extn);
+          Assert.assertTrue("certificateIssuer critical", extn.isCritical());
+        } else {
+          Assert.assertNull("certificateIssuer in entry " + index, extn);
+        }
+        Assert.assertEquals("certificateIssuer of entry " + index, expectedCertIssuer, entry.getCertificateIssuer());
+        index++;
+      }
+    }
+
+    // parse with CrlStreamParser
+    Path crlFile = Files.createTempFile("crl-", ".crl");
+    try {
+      Files.write(crlFile, encodedCrl);
+      CrlStreamParser parser = new CrlStreamParser(crlFile.toFile());
+      Assert.assertEquals("version", 1, parser.getVersion());
+      Assert.assertEquals("CRL number", BigInteger.valueOf(5), parser.getCrlNumber());
+      Assert.assertTrue("signature", parser.verifySignature(keypair.getPublic()));
+
+      Map<BigInteger, Integer> serialToIndex = new HashMap<>();
+      for (int i = 0; i < numEntries; i++) {
+        serialToIndex.put(serials.get(i), i);
+      }
+
+      BigInteger previousSerial = null;
+      int numRevokedCerts = 0;
+      try (RevokedCertsIterator iterator = parser.revokedCertificates()) {
+        while (iterator.hasNext()) {
+          RevokedCert revokedCert = iterator.next();
+          numRevokedCerts++;
+
+          BigInteger serial = revokedCert.getSerialNumber();
+          if (previousSerial != null) {
+            Assert.assertTrue("entries are not sorted by serial number", previousSerial.compareTo(serial) < 0);
+          }
+          previousSerial = serial;
+
+          Integer index = serialToIndex.get(serial);
+          Assert.assertNotNull("unknown serial number " + serial, index);
+          Assert.assertEquals("revocationDate", (now - index * 1000L) / 1000, revokedCert.getRevocationDate());
+          Assert.assertEquals("reason", (index % 3 == 0) ? CrlReason.KEY_COMPROMISE.getCode() : 0,
+              revokedCert.getReason());
+          Assert.assertEquals("invalidityDate", (index % 5 == 0) ? (now - 3600 * 1000L) / 1000 : 0,
+              revokedCert.getInvalidityDate());
+        }
+      }
+      Assert.assertEquals("#revokedCertificates", numEntries, numRevokedCerts);
+    } finally {
+      Files.deleteIfExists(crlFile);
+    }
+  } // method writeAndParseCrl
+
   private static Certificate parseCert(String fileName) throws IOException, CertificateEncodingException {
     try {
       return Certificate.getInstance(
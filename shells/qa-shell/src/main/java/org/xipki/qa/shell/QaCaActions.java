@@ -246,6 +246,10 @@ public class QaCaActions {
 
     @Option(name = "--max-num", description = "maximal number of requests\n0 for unlimited")
     protected Integer maxRequests = 0;
+
+    @Option(name = "--rate", description = "target number of requests per second (open-loop)\n"
+        + "0 to send the next request after the previous one is answered")
+    protected Integer targetRate = 0;
   }
 
   @Command(scope = "xiqa", name = "benchmark-enroll-serverkeygen",
@@ -272,7 +276,7 @@ public class QaCaActions {
       CaEnrollBenchEntry benchmarkEntry = new CaEnrollBenchEntry(certprofile, null, subjectTemplate, randomDn);
       CaEnrollBenchmark benchmark = new CaEnrollBenchmark(caName, benchmarkEntry, maxRequests, num, description);
 
-      benchmark.setDuration(duration).setThreads(numThreads).execute();
+      benchmark.setDuration(duration).setThreads(numThreads).setTargetRate(targetRate).execute();
 
       return null;
     } // method execute0
@@ -335,7 +339,7 @@ public class QaCaActions {
       CaEnrollBenchEntry benchmarkEntry = new CaEnrollBenchEntry(certprofile, keyEntry, subjectTemplate, randomDn);
       CaEnrollBenchmark benchmark = new CaEnrollBenchmark(caName, benchmarkEntry, maxRequests, num, description);
 
-      benchmark.setDuration(duration).setThreads(numThreads).execute();
+      benchmark.setDuration(duration).setThreads(numThreads).setTargetRate(targetRate).execute();
 
       return null;
     } // method execute0
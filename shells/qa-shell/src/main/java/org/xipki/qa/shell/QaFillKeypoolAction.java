@@ -54,6 +54,10 @@ public class QaFillKeypoolAction extends XiAction {
   @Option(name = "--password", description = "password to encrypt the generated keypair")
   private String password;
 
+  @Option(name = "--threads", description = "number of threads to generate the keypairs, "
+      + "default to the number of processors")
+  private Integer threads;
+
   private DataSourceFactory datasourceFactory;
 
   @Reference
@@ -71,7 +75,11 @@ public class QaFillKeypoolAction extends XiAction {
 
     char[] passwordChars = (password == null) ? readPassword() : password.toCharArray();
     try (FillKeytool fillKeytool = new FillKeytool(datasourceFactory, passwordResolver, dbconfFile)) {
-      fillKeytool.execute(num, encAlg, passwordChars);
+      int numThreads = (threads == null) ? Runtime.getRuntime().availableProcessors() : threads;
+      if (numThreads < 1) {
+        throw new IllegalCmdParamException("invalid threads " + numThreads);
+      }
+      fillKeytool.execute(num, encAlg, passwordChars, numThreads);
     }
     return null;
   }
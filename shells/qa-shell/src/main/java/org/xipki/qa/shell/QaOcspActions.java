@@ -464,6 +464,10 @@ public class QaOcspActions {
     @Option(name = "--max-num", description = "maximal number of OCSP queries\n0 for unlimited")
     private Integer maxRequests = 0;
 
+    @Option(name = "--rate", description = "target number of OCSP queries per second (open-loop)\n"
+        + "0 to send the next query after the previous one is answered")
+    private Integer targetRate = 0;
+
     @Override
     protected Object execute0() throws Exception {
       int ii = 0;
@@ -527,7 +531,7 @@ public class QaOcspActions {
         RequestOptions options = getRequestOptions();
         OcspBenchmark loadTest = new OcspBenchmark(issuerCert, serverUrl, options,
             serialNumberIterator, maxRequests, description);
-        loadTest.setDuration(duration).setThreads(numThreads).execute();
+        loadTest.setDuration(duration).setThreads(numThreads).setTargetRate(targetRate).execute();
       } finally {
         if (serialNumberIterator instanceof FileBigIntegerIterator) {
           ((FileBigIntegerIterator) serialNumberIterator).close();
@@ -24,6 +24,8 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Benchmark executor.
@@ -54,6 +56,19 @@ public abstract class BenchmarkExecutor {
 
   private String unit = "";
 
+  // requests per second in the open-loop mode, 0 for the closed-loop mode.
+  private int targetRate;
+
+  private long nanosPerOperation;
+
+  private long startNanos;
+
+  private final AtomicLong nextSlot = new AtomicLong(0);
+
+  private final LatencyHistogram totalLatencies = new LatencyHistogram();
+
+  private final AtomicReference<LatencyHistogram> intervalLatencies = new AtomicReference<>(new LatencyHistogram());
+
   public BenchmarkExecutor(String description) {
     this(description, 0);
   }
@@ -61,6 +76,7 @@ public abstract class BenchmarkExecutor {
   public BenchmarkExecutor(String description, int total) {
     this.description = Args.notNull(description, "description");
     this.processLog = new ProcessLog(total);
+    this.processLog.setStatusSuffix(this::nextIntervalLatencies);
   }
 
   protected abstract Runnable getTestor() throws Exception;
@@ -98,6 +114,9 @@ public abstract class BenchmarkExecutor {
     sb.append("threads: ").append(threads).append("\n");
     sb.append("duration: ").append(StringUtil.formatTime(duration, false)).append("\n");
     sb.append("unit: ").append(unit);
+    if (targetRate > 0) {
+      sb.append("\ntarget rate: ").append(targetRate).append(" requests/s (open-loop)");
+    }
 
     System.out.println(sb.toString());
 
@@ -175,6 +194,21 @@ public abstract class BenchmarkExecutor {
     return this;
   }
 
+  /**
+   * Sets the target rate. If positive, the requests are scheduled at this fixed rate
+   * (open-loop), and the latency is measured from the scheduled start time, so that
+   * the waiting time of requests delayed by a slow server is included.
+   * @param targetRate requests per second, 0 for the closed-loop mode.
+   * @return this instance.
+   */
+  public BenchmarkExecutor setTargetRate(int targetRate) {
+    if (targetRate < 0) {
+      throw new IllegalArgumentException("invalid targetRate " + targetRate);
+    }
+    this.targetRate = targetRate;
+    return this;
+  }
+
   public long getErrorAccout() {
     return errorAccount.get();
   }
@@ -186,12 +220,45 @@ public abstract class BenchmarkExecutor {
     }
   }
 
+  /**
+   * Accounts the processed requests and records the latency of the operation.
+   * @param all number of processed requests.
+   * @param failed number of failed requests.
+   * @param operationStartNanos start time of the operation returned by {@link #beginOperation()}.
+   */
+  public void account(long all, long failed, long operationStartNanos) {
+    intervalLatencies.get().recordNanos(System.nanoTime() - operationStartNanos);
+    account(all, failed);
+  }
+
+  /**
+   * Begins the next operation. In the open-loop mode, waits until the scheduled start time
+   * of the next request.
+   * @return the start time of the operation in nanoseconds, to be passed to
+   *         {@link #account(long, long, long)}.
+   */
+  protected long beginOperation() {
+    if (targetRate == 0) {
+      return System.nanoTime();
+    }
+
+    long intendedStart = startNanos + nextSlot.getAndIncrement() * nanosPerOperation;
+    long waitNanos;
+    while ((waitNanos = intendedStart - System.nanoTime()) > 0) {
+      LockSupport.parkNanos(waitNanos);
+    }
+    return intendedStart;
+  } // method beginOperation
+
   public int getThreads() {
     return threads;
   }
 
   protected void resetStartTime() {
     processLog.reset();
+    startNanos = System.nanoTime();
+    nanosPerOperation = targetRate == 0 ? 0 : 1_000_000_000L / targetRate;
+    nextSlot.set(0);
   }
 
   protected boolean stop() {
@@ -225,9 +292,25 @@ public abstract class BenchmarkExecutor {
         "\n     failed: ", StringUtil.formatAccount(errorAccount.get(), 1), " ", unit,
         "\n    average: ", averageText, " ", unit, "/s\n");
 
+    // the latencies not yet reported by a status line, which may have been skipped or overridden.
+    totalLatencies.merge(intervalLatencies.getAndSet(new LatencyHistogram()));
+    if (totalLatencies.getTotalCount() > 0) {
+      msg += "    latency: " + totalLatencies.formatPercentiles()
+          + (targetRate > 0 ? " (from scheduled start)" : "") + "\n";
+    }
+
     System.out.println(msg);
   }
 
+  /**
+   * Returns the latencies recorded since the last call and adds them to the total latencies.
+   */
+  private String nextIntervalLatencies() {
+    LatencyHistogram interval = intervalLatencies.getAndSet(new LatencyHistogram());
+    totalLatencies.merge(interval);
+    return interval.getTotalCount() == 0 ? null : "  " + interval.formatPercentiles();
+  }
+
   protected static long getSecureIndex() {
     while (true) {
       long nextLong = RandomUtil.nextLong();
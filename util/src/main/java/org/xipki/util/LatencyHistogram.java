@@ -0,0 +1,162 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies with logarithmic buckets. Values are recorded in
+ * microseconds, each power of 2 is divided into 32 linear sub-buckets, so that the relative
+ * error of the reported percentiles is less than 3.2%. Histograms can be merged.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  // values up to 2^40 microseconds (about 12 days)
+  private static final int MAX_EXPONENT = 40;
+
+  private static final int NUM_BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+
+  private final AtomicLong totalCount = new AtomicLong();
+
+  private final AtomicLong maxValue = new AtomicLong();
+
+  /**
+   * Records the latency.
+   * @param latencyNanos latency in nanoseconds.
+   */
+  public void recordNanos(long latencyNanos) {
+    long micros = Math.max(0, latencyNanos / 1000);
+    counts.incrementAndGet(bucketIndex(micros));
+    totalCount.incrementAndGet();
+
+    long max;
+    while (micros > (max = maxValue.get())) {
+      if (maxValue.compareAndSet(max, micros)) {
+        break;
+      }
+    }
+  } // method recordNanos
+
+  /**
+   * Adds the values of the other histogram to this histogram.
+   * @param other the other histogram.
+   */
+  public void merge(LatencyHistogram other) {
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      long count = other.counts.get(i);
+      if (count != 0) {
+        counts.addAndGet(i, count);
+      }
+    }
+    totalCount.addAndGet(other.totalCount.get());
+
+    long otherMax = other.maxValue.get();
+    long max;
+    while (otherMax > (max = maxValue.get())) {
+      if (maxValue.compareAndSet(max, otherMax)) {
+        break;
+      }
+    }
+  } // method merge
+
+  public long getTotalCount() {
+    return totalCount.get();
+  }
+
+  /**
+   * Returns the maximal recorded value.
+   * @return the maximal recorded value in microseconds.
+   */
+  public long getMaxMicros() {
+    return maxValue.get();
+  }
+
+  /**
+   * Returns the value at the given percentile.
+   * @param percentile the percentile, between 0 and 100.
+   * @return the value in microseconds, 0 if no value is recorded.
+   */
+  public long getPercentileMicros(double percentile) {
+    long total = totalCount.get();
+    if (total == 0) {
+      return 0;
+    }
+
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+    long sum = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      sum += counts.get(i);
+      if (sum >= rank) {
+        return Math.min(bucketUpperValue(i), maxValue.get());
+      }
+    }
+    return maxValue.get();
+  } // method getPercentileMicros
+
+  /**
+   * Formats the percentiles p50, p90, p99, p99.9 and max in milliseconds.
+   * @return the formatted text.
+   */
+  public String formatPercentiles() {
+    return "p50 " + formatMs(getPercentileMicros(50)) + ", p90 " + formatMs(getPercentileMicros(90))
+        + ", p99 " + formatMs(getPercentileMicros(99)) + ", p99.9 " + formatMs(getPercentileMicros(99.9))
+        + ", max " + formatMs(getMaxMicros()) + " ms";
+  }
+
+  private static String formatMs(long micros) {
+    return micros >= 100_000 ? Long.toString(micros / 1000)
+        : String.format("%.2f", micros / 1000.0);
+  }
+
+  private static int bucketIndex(long micros) {
+    if (micros < SUB_BUCKETS) {
+      return (int) micros;
+    }
+
+    int exponent = 63 - Long.numberOfLeadingZeros(micros);
+    if (exponent > MAX_EXPONENT) {
+      return NUM_BUCKETS - 1;
+    }
+
+    int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  } // method bucketIndex
+
+  private static long bucketUpperValue(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+
+    int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    int subBucket = index % SUB_BUCKETS;
+    int shift = exponent - SUB_BUCKET_BITS;
+    return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+  } // method bucketUpperValue
+
+}
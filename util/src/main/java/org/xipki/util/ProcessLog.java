@@ -21,6 +21,7 @@ import java.util.Calendar;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 /**
  * Process Logger.
@@ -78,6 +79,9 @@ public class ProcessLog {
 
   private final ConcurrentLinkedDeque<MeasurePoint> measureDeque = new ConcurrentLinkedDeque<>();
 
+  // supplies text appended to each status line, may be null.
+  private Supplier<String> statusSuffix;
+
   public ProcessLog(long total) {
     this.total = total;
     reset();
@@ -169,6 +173,10 @@ public class ProcessLog {
     hasTotal = total > 0;
   }
 
+  public void setStatusSuffix(Supplier<String> statusSuffix) {
+    this.statusSuffix = statusSuffix;
+  }
+
   public long startTimeMs() {
     return startTimeMs;
   }
@@ -255,6 +263,13 @@ public class ProcessLog {
       }
     }
 
+    if (statusSuffix != null) {
+      String suffix = statusSuffix.get();
+      if (suffix != null) {
+        sb.append(suffix);
+      }
+    }
+
     System.out.print(sb.toString());
     System.out.flush();
   } // method printStatus
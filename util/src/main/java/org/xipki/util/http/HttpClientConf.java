@@ -0,0 +1,132 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.util.http;
+
+import org.xipki.util.ValidatableConf;
+import org.xipki.util.exception.InvalidConfException;
+
+/**
+ * Configuration of the connections of {@link XiHttpClient}.
+ *
+ * <p>The connections are kept alive and reused by the JDK. The number of idle connections
+ * kept per host is limited by the system property {@code http.maxConnections} (default 5),
+ * which should not be less than {@link #getMaxConnectionsPerHost()}.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+public class HttpClientConf extends ValidatableConf {
+
+  /**
+   * Connect timeout in milliseconds, 0 for no timeout.
+   */
+  private int connectTimeout;
+
+  /**
+   * Read timeout in milliseconds, 0 for no timeout.
+   */
+  private int readTimeout;
+
+  /**
+   * Maximal number of concurrent requests per host, 0 for no limit. Only up to
+   * {@code http.maxConnections} (default 5) connections per host are kept alive, so set this
+   * system property to at least the same value.
+   */
+  private int maxConnectionsPerHost;
+
+  /**
+   * Maximal time in milliseconds to wait for a free connection if maxConnectionsPerHost is
+   * reached, 0 to wait without limit.
+   */
+  private int connectionWaitTimeout;
+
+  /**
+   * Number of cached TLS sessions for the session resumption, 0 to use the JDK's default.
+   */
+  private int sslSessionCacheSize;
+
+  /**
+   * Timeout in seconds of the cached TLS sessions, 0 to use the JDK's default.
+   */
+  private int sslSessionTimeout;
+
+  public int getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  public void setConnectTimeout(int connectTimeout) {
+    this.connectTimeout = connectTimeout;
+  }
+
+  public int getReadTimeout() {
+    return readTimeout;
+  }
+
+  public void setReadTimeout(int readTimeout) {
+    this.readTimeout = readTimeout;
+  }
+
+  public int getMaxConnectionsPerHost() {
+    return maxConnectionsPerHost;
+  }
+
+  public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+    this.maxConnectionsPerHost = maxConnectionsPerHost;
+  }
+
+  public int getConnectionWaitTimeout() {
+    return connectionWaitTimeout;
+  }
+
+  public void setConnectionWaitTimeout(int connectionWaitTimeout) {
+    this.connectionWaitTimeout = connectionWaitTimeout;
+  }
+
+  public int getSslSessionCacheSize() {
+    return sslSessionCacheSize;
+  }
+
+  public void setSslSessionCacheSize(int sslSessionCacheSize) {
+    this.sslSessionCacheSize = sslSessionCacheSize;
+  }
+
+  public int getSslSessionTimeout() {
+    return sslSessionTimeout;
+  }
+
+  public void setSslSessionTimeout(int sslSessionTimeout) {
+    this.sslSessionTimeout = sslSessionTimeout;
+  }
+
+  @Override
+  public void validate() throws InvalidConfException {
+    checkNotNegative(connectTimeout, "connectTimeout");
+    checkNotNegative(readTimeout, "readTimeout");
+    checkNotNegative(maxConnectionsPerHost, "maxConnectionsPerHost");
+    checkNotNegative(connectionWaitTimeout, "connectionWaitTimeout");
+    checkNotNegative(sslSessionCacheSize, "sslSessionCacheSize");
+    checkNotNegative(sslSessionTimeout, "sslSessionTimeout");
+  }
+
+  private static void checkNotNegative(int value, String name) throws InvalidConfException {
+    if (value < 0) {
+      throw new InvalidConfException(name + " must not be negative, but is " + value);
+    }
+  }
+
+}
@@ -20,10 +20,12 @@ package org.xipki.util.http;
 import org.xipki.util.Args;
 import org.xipki.util.Base64;
 import org.xipki.util.IoUtil;
+import org.xipki.util.LatencyHistogram;
 import org.xipki.util.exception.ObjectCreationException;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocketFactory;
 import java.io.IOException;
 import java.io.InputStream;
@@ -31,49 +33,229 @@ import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * The HTTP client.
  *
+ * <p>The connections are reused (HTTP keep-alive) by the JDK if the response is read completely,
+ * and the TLS sessions are resumed as long as the same {@link SSLSocketFactory} is used.
+ * Optionally the number of concurrent requests per host can be limited, see {@link HttpClientConf}.
+ *
  * @author Lijun Liao
  */
 
 public class XiHttpClient {
 
+  /**
+   * Metrics of the requests sent by the client.
+   *
+   * @since 6.0.1
+   */
+  public static class Metrics {
+
+    private final LongAdder requests = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private final LatencyHistogram waitTime = new LatencyHistogram();
+
+    public long getRequests() {
+      return requests.sum();
+    }
+
+    /**
+     * Returns the number of requests failed with IOException, e.g. timeout.
+     * @return number of failed requests.
+     */
+    public long getFailures() {
+      return failures.sum();
+    }
+
+    /**
+     * Returns the number of requests rejected since no connection is free within the
+     * connectionWaitTimeout.
+     * @return number of rejected requests.
+     */
+    public long getRejected() {
+      return rejected.sum();
+    }
+
+    public int getInFlight() {
+      return inFlight.get();
+    }
+
+    public int getWaiting() {
+      return waiting.get();
+    }
+
+    public LatencyHistogram getLatency() {
+      return latency;
+    }
+
+    public LatencyHistogram getWaitTime() {
+      return waitTime;
+    }
+
+    @Override
+    public String toString() {
+      return "requests=" + getRequests() + ", failures=" + getFailures() + ", rejected=" + getRejected()
+          + ", inFlight=" + getInFlight() + ", waiting=" + getWaiting()
+          + ", latency: " + latency.formatPercentiles() + ", wait time: " + waitTime.formatPercentiles();
+    }
+
+  } // class Metrics
+
   private final SSLSocketFactory sslSocketFactory;
 
   private final HostnameVerifier hostnameVerifier;
 
+  private final int connectTimeout;
+
+  private final int readTimeout;
+
+  private final int maxConnectionsPerHost;
+
+  private final int connectionWaitTimeout;
+
+  private final ConcurrentHashMap<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+  private final Metrics metrics = new Metrics();
+
   public XiHttpClient() {
-    this.sslSocketFactory = null;
-    this.hostnameVerifier = null;
+    this((SSLSocketFactory) null, null, null);
   }
 
   public XiHttpClient(SslContextConf sslContextConf) throws ObjectCreationException {
-    this.sslSocketFactory = sslContextConf.getSslSocketFactory();
-    this.hostnameVerifier = sslContextConf.buildHostnameVerifier();
+    this(sslContextConf, null);
   }
 
   public XiHttpClient(SSLSocketFactory sslSocketFactory, HostnameVerifier hostnameVerifier) {
+    this(sslSocketFactory, hostnameVerifier, null);
+  }
+
+  /**
+   * Constructor.
+   * @param sslContextConf the SSL context configuration.
+   * @param conf configuration of the connections, may be {@code null}.
+   * @throws ObjectCreationException if the SSL context could not be created.
+   * @since 6.0.1
+   */
+  public XiHttpClient(SslContextConf sslContextConf, HttpClientConf conf) throws ObjectCreationException {
+    this(sslContextConf.getSslSocketFactory(), sslContextConf.buildHostnameVerifier(), conf);
+
+    if (conf != null && sslContextConf.getSslContext() != null) {
+      SSLSessionContext sessionContext = sslContextConf.getSslContext().getClientSessionContext();
+      if (conf.getSslSessionCacheSize() > 0) {
+        sessionContext.setSessionCacheSize(conf.getSslSessionCacheSize());
+      }
+      if (conf.getSslSessionTimeout() > 0) {
+        sessionContext.setSessionTimeout(conf.getSslSessionTimeout());
+      }
+    }
+  }
+
+  /**
+   * Constructor.
+   * @param sslSocketFactory the SSL socket factory, may be {@code null}.
+   * @param hostnameVerifier the hostname verifier, may be {@code null}.
+   * @param conf configuration of the connections, may be {@code null}.
+   * @since 6.0.1
+   */
+  public XiHttpClient(SSLSocketFactory sslSocketFactory, HostnameVerifier hostnameVerifier, HttpClientConf conf) {
     this.sslSocketFactory = sslSocketFactory;
     this.hostnameVerifier = hostnameVerifier;
+    if (conf == null) {
+      this.connectTimeout = 0;
+      this.readTimeout = 0;
+      this.maxConnectionsPerHost = 0;
+      this.connectionWaitTimeout = 0;
+    } else {
+      this.connectTimeout = conf.getConnectTimeout();
+      this.readTimeout = conf.getReadTimeout();
+      this.maxConnectionsPerHost = conf.getMaxConnectionsPerHost();
+      this.connectionWaitTimeout = conf.getConnectionWaitTimeout();
+    }
+  }
+
+  public Metrics getMetrics() {
+    return metrics;
   }
 
   public HttpRespContent httpGet(String url) throws IOException {
+    return httpGet(url, null);
+  }
+
+  public HttpRespContent httpGet(String url, String acceptContentType) throws IOException {
+    return httpGet(url, acceptContentType, -1);
+  }
+
+  /**
+   * Sends a GET request.
+   * @param url the URL.
+   * @param acceptContentType value of the header Accept, may be {@code null}.
+   * @param readTimeout read timeout in milliseconds of this request, -1 to use the configured one.
+   * @return the response.
+   * @throws IOException if error occurs while sending the request or receiving the response.
+   * @since 6.0.1
+   */
+  public HttpRespContent httpGet(String url, String acceptContentType, int readTimeout) throws IOException {
     Args.notNull(url, "url");
+    URL url0 = new URL(url);
+    Semaphore permits = acquirePermit(url0);
+    long start = System.nanoTime();
+    metrics.inFlight.incrementAndGet();
     try {
-      HttpURLConnection httpConn = openHttpConn(new URL(url));
+      HttpURLConnection httpConn = openHttpConn(url0, readTimeout);
       httpConn.setRequestMethod("GET");
+      if (acceptContentType != null) {
+        httpConn.setRequestProperty("Accept", acceptContentType);
+      }
       return parseResponse(httpConn);
     } catch (XiHttpClientException ex) {
+      metrics.failures.increment();
       throw new IOException(ex);
+    } catch (IOException ex) {
+      metrics.failures.increment();
+      throw ex;
+    } finally {
+      finish(permits, start);
     }
   } // method httpGet
 
   public HttpRespContent httpPost(
       String url, String requestContentType, byte[] request, String expectedRespContentType)
       throws IOException {
-    HttpRespContent resp = httpPost(url, requestContentType, request);
+    return httpPost(url, requestContentType, request, expectedRespContentType, -1);
+  }
+
+  /**
+   * Sends a POST request and checks the content type of the response.
+   * @param url the URL.
+   * @param requestContentType content type of the request.
+   * @param request the request.
+   * @param expectedRespContentType the expected content type of the response.
+   * @param readTimeout read timeout in milliseconds of this request, -1 to use the configured one.
+   * @return the response.
+   * @throws IOException if error occurs while sending the request or receiving the response.
+   * @since 6.0.1
+   */
+  public HttpRespContent httpPost(
+      String url, String requestContentType, byte[] request, String expectedRespContentType, int readTimeout)
+      throws IOException {
+    HttpRespContent resp = httpPost(url, requestContentType, request, readTimeout);
 
     String responseContentType = resp.getContentType();
     boolean isValidContentType = false;
@@ -92,9 +274,18 @@ public class XiHttpClient {
 
   public HttpRespContent httpPost(String url, String requestContentType, byte[] request)
       throws IOException {
+    return httpPost(url, requestContentType, request, -1);
+  }
+
+  private HttpRespContent httpPost(String url, String requestContentType, byte[] request, int readTimeout)
+      throws IOException {
     Args.notNull(url, "url");
+    URL url0 = new URL(url);
+    Semaphore permits = acquirePermit(url0);
+    long start = System.nanoTime();
+    metrics.inFlight.incrementAndGet();
     try {
-      HttpURLConnection httpConn = openHttpConn(new URL(url));
+      HttpURLConnection httpConn = openHttpConn(url0, readTimeout);
       httpConn.setRequestMethod("POST");
       httpConn.setDoOutput(true);
       httpConn.setUseCaches(false);
@@ -104,7 +295,7 @@ public class XiHttpClient {
           httpConn.setRequestProperty("Content-Type", requestContentType);
         }
 
-        httpConn.setRequestProperty("Content-Length", Integer.toString(request.length));
+        httpConn.setFixedLengthStreamingMode(request.length);
         OutputStream outputstream = httpConn.getOutputStream();
         outputstream.write(request);
         outputstream.flush();
@@ -112,16 +303,69 @@ public class XiHttpClient {
 
       return parseResponse(httpConn);
     } catch (XiHttpClientException ex) {
+      metrics.failures.increment();
       throw new IOException(ex.getMessage(), ex);
+    } catch (IOException ex) {
+      metrics.failures.increment();
+      throw ex;
+    } finally {
+      finish(permits, start);
     }
   } // method httpPost
 
+  private Semaphore acquirePermit(URL url) throws IOException {
+    metrics.requests.increment();
+    if (maxConnectionsPerHost < 1) {
+      return null;
+    }
+
+    String hostKey = url.getProtocol() + "://" + url.getHost() + ":" + url.getPort();
+    Semaphore permits = hostPermits.computeIfAbsent(hostKey, k -> new Semaphore(maxConnectionsPerHost, true));
+    if (permits.tryAcquire()) {
+      metrics.waitTime.recordNanos(0);
+      return permits;
+    }
+
+    long start = System.nanoTime();
+    metrics.waiting.incrementAndGet();
+    boolean acquired;
+    try {
+      if (connectionWaitTimeout > 0) {
+        acquired = permits.tryAcquire(connectionWaitTimeout, TimeUnit.MILLISECONDS);
+      } else {
+        permits.acquire();
+        acquired = true;
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while waiting for a connection to " + hostKey);
+    } finally {
+      metrics.waiting.decrementAndGet();
+      metrics.waitTime.recordNanos(System.nanoTime() - start);
+    }
+
+    if (!acquired) {
+      metrics.rejected.increment();
+      throw new IOException("no free connection to " + hostKey + " within " + connectionWaitTimeout + " ms");
+    }
+    return permits;
+  } // method acquirePermit
+
+  private void finish(Semaphore permits, long startNanos) {
+    metrics.latency.recordNanos(System.nanoTime() - startNanos);
+    metrics.inFlight.decrementAndGet();
+    if (permits != null) {
+      permits.release();
+    }
+  } // method finish
+
   private HttpRespContent parseResponse(HttpURLConnection conn) throws XiHttpClientException {
     Args.notNull(conn, "conn");
 
     try {
       int respCode = conn.getResponseCode();
       InputStream inputstream = respCode == HttpURLConnection.HTTP_OK ? conn.getInputStream() : conn.getErrorStream();
+      // the stream is read completely and closed, so that the connection can be reused.
       byte[] content = inputstream == null ? new byte[0] : IoUtil.read(inputstream);
       if (content.length > 0) {
         String encoding = conn.getHeaderField("content-transfer-encoding");
@@ -137,7 +381,7 @@ public class XiHttpClient {
     }
   } // method parseResponse
 
-  private HttpURLConnection openHttpConn(URL url) throws IOException {
+  private HttpURLConnection openHttpConn(URL url, int readTimeout) throws IOException {
     Args.notNull(url, "url");
     URLConnection conn = url.openConnection();
     if (!(conn instanceof HttpURLConnection)) {
@@ -153,7 +397,16 @@ public class XiHttpClient {
       }
     }
 
+    if (connectTimeout > 0) {
+      conn.setConnectTimeout(connectTimeout);
+    }
+
+    int timeout = readTimeout >= 0 ? readTimeout : this.readTimeout;
+    if (timeout > 0) {
+      conn.setReadTimeout(timeout);
+    }
+
     return (HttpURLConnection) conn;
-  }
+  } // method openHttpConn
 
 }
@@ -0,0 +1,70 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.common.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.util.LatencyHistogram;
+
+/**
+ * Test for {@link LatencyHistogram}.
+ *
+ * @author Lijun Liao
+ * @since 6.0.1
+ */
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    // 1 to 10000 microseconds
+    for (int i = 1; i <= 10000; i++) {
+      histogram.recordNanos(i * 1000L);
+    }
+
+    Assert.assertEquals("count", 10000, histogram.getTotalCount());
+    Assert.assertEquals("max", 10000, histogram.getMaxMicros());
+    assertWithinError("p50", 5000, histogram.getPercentileMicros(50));
+    assertWithinError("p99", 9900, histogram.getPercentileMicros(99));
+    assertWithinError("p99.9", 9990, histogram.getPercentileMicros(99.9));
+    Assert.assertEquals("p100", 10000, histogram.getPercentileMicros(100));
+  }
+
+  @Test
+  public void testMerge() {
+    LatencyHistogram h1 = new LatencyHistogram();
+    LatencyHistogram h2 = new LatencyHistogram();
+    for (int i = 0; i < 99; i++) {
+      h1.recordNanos(1_000_000L);
+    }
+    h2.recordNanos(1_000_000_000L);
+
+    h1.merge(h2);
+    Assert.assertEquals("count", 100, h1.getTotalCount());
+    Assert.assertEquals("max", 1_000_000, h1.getMaxMicros());
+    assertWithinError("p99", 1000, h1.getPercentileMicros(99));
+    Assert.assertEquals("p100", 1_000_000, h1.getPercentileMicros(100));
+  }
+
+  private static void assertWithinError(String desc, long expected, long actual) {
+    Assert.assertTrue(desc + ": expected " + expected + ", but was " + actual,
+        Math.abs(actual - expected) <= expected * 0.032);
+  }
+
+}